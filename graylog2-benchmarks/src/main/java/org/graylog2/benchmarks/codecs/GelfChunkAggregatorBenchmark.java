@@ -0,0 +1,92 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.codecs;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.inputs.codecs.GelfChunkAggregator;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reassembly of chunked GELF messages. Every operation adds all chunks of a message with a new message id.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GelfChunkAggregatorBenchmark {
+    private static final int CHUNK_SIZE = 1024;
+    private static final int HEADER_SIZE = 12;
+
+    @Param({"2", "8", "32"})
+    public int numberOfChunks;
+
+    private ScheduledExecutorService scheduler;
+    private GelfChunkAggregator aggregator;
+    private byte[][] chunks;
+    private long messageId = 0L;
+
+    @Setup
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        aggregator = new GelfChunkAggregator(scheduler, new MetricRegistry());
+
+        chunks = new byte[numberOfChunks][];
+        for (int i = 0; i < numberOfChunks; i++) {
+            chunks[i] = new byte[HEADER_SIZE + CHUNK_SIZE];
+            chunks[i][0] = 0x1e;
+            chunks[i][1] = 0x0f;
+            chunks[i][10] = (byte) i;
+            chunks[i][11] = (byte) numberOfChunks;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public CodecAggregator.Result addChunks() {
+        messageId++;
+        CodecAggregator.Result result = null;
+        for (byte[] chunk : chunks) {
+            ByteBuffer.wrap(chunk, 2, 8).putLong(messageId);
+            result = aggregator.addChunk(ChannelBuffers.wrappedBuffer(chunk));
+        }
+        return result;
+    }
+}
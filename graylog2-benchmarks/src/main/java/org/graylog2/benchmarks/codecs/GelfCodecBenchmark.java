@@ -0,0 +1,113 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.codecs;
+
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.inputs.codecs.GelfCodec;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decoding of GELF messages. Every operation decodes the journal entry of the message first, just like the process
+ * buffer does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GelfCodecBenchmark {
+    private static final String MESSAGE = "{"
+            + "\"version\":\"1.1\","
+            + "\"host\":\"example.org\","
+            + "\"short_message\":\"A short message that helps you identify what is going on\","
+            + "\"full_message\":\"Backtrace here\\n\\nmore stuff\","
+            + "\"timestamp\":1385053862.3072,"
+            + "\"level\":1,"
+            + "\"_user_id\":9001,"
+            + "\"_some_info\":\"foo\","
+            + "\"_some_env_var\":\"bar\","
+            + "\"_http_method\":\"GET\","
+            + "\"_http_status\":200,"
+            + "\"_took_ms\":12.5"
+            + "}";
+
+    @Param({"UNCOMPRESSED", "GZIP", "ZLIB"})
+    public String compression;
+
+    private GelfCodec codec;
+    private byte[] journalEntry;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = new GelfCodec(new Configuration(ImmutableMap.<String, Object>of()), null);
+
+        final RawMessage rawMessage = new RawMessage(compress(MESSAGE.getBytes(StandardCharsets.UTF_8)),
+                new InetSocketAddress("127.0.0.1", 12201));
+        rawMessage.setCodecName("gelf");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+        journalEntry = rawMessage.encode();
+    }
+
+    private byte[] compress(byte[] payload) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final OutputStream out;
+        switch (compression) {
+            case "GZIP":
+                out = new GZIPOutputStream(bytes);
+                break;
+            case "ZLIB":
+                out = new DeflaterOutputStream(bytes);
+                break;
+            default:
+                return payload;
+        }
+        try {
+            out.write(payload);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Message decode() {
+        return codec.decode(RawMessage.decode(journalEntry, 0L));
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.codecs;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.inputs.codecs.SyslogCodec;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.dns.ReverseDnsResolver;
+import org.graylog2.plugin.dns.SystemReverseDnsBackend;
+import org.graylog2.plugin.journal.RawMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of RFC 3164 and RFC 5424 syslog messages, including the journal entry of the message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SyslogCodecBenchmark {
+    private static final Map<String, String> MESSAGES = ImmutableMap.of(
+            "RFC3164", "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8",
+            "RFC5424", "<165>1 2012-12-25T22:14:15.003Z mymachine.example.com evntslog - ID47 "
+                    + "[exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"] "
+                    + "BOMAn application event log entry");
+
+    @Param({"RFC3164", "RFC5424"})
+    public String format;
+
+    private SyslogCodec codec;
+    private byte[] journalEntry;
+
+    @Setup
+    public void setUp() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        codec = new SyslogCodec(new Configuration(ImmutableMap.<String, Object>of(
+                SyslogCodec.CK_FORCE_RDNS, false,
+                SyslogCodec.CK_ALLOW_OVERRIDE_DATE, true,
+                SyslogCodec.CK_EXPAND_STRUCTURED_DATA, true,
+                SyslogCodec.CK_STORE_FULL_MESSAGE, false)),
+                metricRegistry,
+                new ReverseDnsResolver(new SystemReverseDnsBackend(), metricRegistry));
+
+        final RawMessage rawMessage = new RawMessage(MESSAGES.get(format).getBytes(StandardCharsets.UTF_8),
+                new InetSocketAddress("127.0.0.1", 514));
+        rawMessage.setCodecName("syslog");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+        journalEntry = rawMessage.encode();
+    }
+
+    @Benchmark
+    public Message decode() {
+        return codec.decode(RawMessage.decode(journalEntry, 0L));
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.extractors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.inputs.converters.ConverterFactory;
+import org.graylog2.inputs.converters.LearnedDateFormats;
+import org.graylog2.plugin.inputs.Converter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each converter type against a value it is typically used for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConverterBenchmark {
+    @Param({"NUMERIC", "DATE", "HASH", "SPLIT_AND_COUNT", "SYSLOG_PRI_LEVEL", "SYSLOG_PRI_FACILITY", "TOKENIZER",
+            "IP_ANONYMIZER", "CSV", "LOWERCASE", "UPPERCASE", "FLEXDATE"})
+    public Converter.Type type;
+
+    private Converter converter;
+    private String value;
+
+    @Setup
+    public void setUp() throws Exception {
+        Map<String, Object> config = Collections.emptyMap();
+        switch (type) {
+            case NUMERIC:
+                value = "2326";
+                break;
+            case DATE:
+                config = ImmutableMap.<String, Object>of("date_format", "dd/MMM/yyyy:HH:mm:ss Z");
+                value = "10/Oct/2000:13:55:36 -0700";
+                break;
+            case SPLIT_AND_COUNT:
+                config = ImmutableMap.<String, Object>of("split_by", ",");
+                value = "foo,bar,baz,qux";
+                break;
+            case SYSLOG_PRI_LEVEL:
+            case SYSLOG_PRI_FACILITY:
+                value = "165";
+                break;
+            case TOKENIZER:
+                value = "Ohai I am a message k1=v1 k2=v2 Awesome! k3=\"v3 with spaces\"";
+                break;
+            case IP_ANONYMIZER:
+                value = "Client 192.168.1.123 connected from 10.0.0.42";
+                break;
+            case CSV:
+                config = ImmutableMap.<String, Object>of("column_header", "client,ident,user,status,bytes");
+                value = "127.0.0.1,-,frank,200,2326";
+                break;
+            case FLEXDATE:
+                value = "Oct 10 13:55:36 2000";
+                break;
+            default:
+                value = "The Quick Brown Fox Jumps Over The Lazy Dog";
+                break;
+        }
+        converter = new ConverterFactory(new LearnedDateFormats(new MetricRegistry())).factory(type, config);
+    }
+
+    @Benchmark
+    public Object convert() {
+        return converter.convert(value);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.extractors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog2.grok.CompiledGrokCache;
+import org.graylog2.grok.GrokPattern;
+import org.graylog2.inputs.extractors.CopyInputExtractor;
+import org.graylog2.inputs.extractors.GrokExtractor;
+import org.graylog2.inputs.extractors.RegexExtractor;
+import org.graylog2.inputs.extractors.SplitAndIndexExtractor;
+import org.graylog2.inputs.extractors.SubstringExtractor;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.inputs.Converter;
+import org.graylog2.plugin.inputs.Extractor;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a single extractor of each type against a typical access log line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtractorBenchmark {
+    private static final String MESSAGE = "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] "
+            + "\"GET /apache_pb.gif HTTP/1.0\" 200 2326";
+
+    @Param({"REGEX", "SUBSTRING", "SPLIT_AND_INDEX", "COPY_INPUT", "GROK"})
+    public Extractor.Type type;
+
+    private Extractor extractor;
+    private Message message;
+
+    @Setup
+    public void setUp() throws Exception {
+        extractor = buildExtractor(type, new MetricRegistry());
+        message = new Message(MESSAGE, "localhost", new DateTime());
+    }
+
+    private static Extractor buildExtractor(Extractor.Type type, MetricRegistry metricRegistry) throws Exception {
+        final String id = "extractor";
+        final String title = "benchmark";
+        final Extractor.CursorStrategy cursorStrategy = Extractor.CursorStrategy.COPY;
+        final List<Converter> converters = Collections.emptyList();
+        final Extractor.ConditionType conditionType = Extractor.ConditionType.NONE;
+
+        switch (type) {
+            case REGEX:
+                return new RegexExtractor(metricRegistry, id, title, 0L, cursorStrategy, "message", "status",
+                        config("regex_value", "\" (\\d{3}) "), "admin", converters, conditionType, null);
+            case SUBSTRING:
+                return new SubstringExtractor(metricRegistry, id, title, 0L, cursorStrategy, "message", "client",
+                        ImmutableMap.<String, Object>of("begin_index", 0, "end_index", 9), "admin", converters, conditionType, null);
+            case SPLIT_AND_INDEX:
+                return new SplitAndIndexExtractor(metricRegistry, id, title, 0L, cursorStrategy, "message", "user",
+                        ImmutableMap.<String, Object>of("split_by", " ", "index", 3), "admin", converters, conditionType, null);
+            case COPY_INPUT:
+                return new CopyInputExtractor(metricRegistry, id, title, 0L, cursorStrategy, "message", "copy",
+                        ImmutableMap.<String, Object>of(), "admin", converters, conditionType, null);
+            case GROK:
+                return new GrokExtractor(metricRegistry, grokPatterns(), new CompiledGrokCache(), id, title, 0L, cursorStrategy, "message", "access",
+                        config("grok_pattern", "%{IP:client} %{USER:ident} %{USER:auth} \\[%{DATA:timestamp}\\] "
+                                + "\"%{WORD:verb} %{NOTSPACE:request} HTTP/%{NUMBER:httpversion}\" %{NUMBER:response} %{NUMBER:bytes}"),
+                        "admin", converters, conditionType, null);
+            default:
+                throw new IllegalArgumentException("Unknown extractor type " + type);
+        }
+    }
+
+    private static Map<String, Object> config(String key, Object value) {
+        return ImmutableMap.of(key, value);
+    }
+
+    private static Set<GrokPattern> grokPatterns() {
+        return ImmutableSet.of(
+                grokPattern("USER", "[a-zA-Z0-9._-]+"),
+                grokPattern("WORD", "\\b\\w+\\b"),
+                grokPattern("DATA", ".*?"),
+                grokPattern("NOTSPACE", "\\S+"),
+                grokPattern("INT", "(?:[+-]?(?:[0-9]+))"),
+                grokPattern("BASE10NUM", "(?<![0-9.+-])(?>[+-]?(?:(?:[0-9]+(?:\\.[0-9]+)?)|(?:\\.[0-9]+)))"),
+                grokPattern("NUMBER", "(?:%{BASE10NUM})"),
+                grokPattern("IPV4", "(?<![0-9])(?:(?:25[0-5]|2[0-4][0-9]|[0-1]?[0-9]{1,2})[.](?:25[0-5]|2[0-4][0-9]|[0-1]?[0-9]{1,2})"
+                        + "[.](?:25[0-5]|2[0-4][0-9]|[0-1]?[0-9]{1,2})[.](?:25[0-5]|2[0-4][0-9]|[0-1]?[0-9]{1,2}))(?![0-9])"),
+                grokPattern("IP", "%{IPV4}"));
+    }
+
+    private static GrokPattern grokPattern(String name, String pattern) {
+        final GrokPattern grokPattern = new GrokPattern();
+        grokPattern.name = name;
+        grokPattern.pattern = pattern;
+        return grokPattern;
+    }
+
+    @Benchmark
+    public Message runExtractor() {
+        extractor.runExtractor(message);
+        return message;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.journal;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.joda.time.Duration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes to and reads from a {@link KafkaJournal} in a temporary directory. The results are reported per journal
+ * entry, entries are written and read in batches of {@value #BATCH_SIZE}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KafkaJournalBenchmark {
+    private static final int BATCH_SIZE = 100;
+    private static final int READ_ENTRIES = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class JournalState {
+        @Param({"256", "4096"})
+        public int entrySize;
+
+        @Param({"1", "4"})
+        public int partitions;
+
+        ScheduledExecutorService scheduler;
+        File journalDirectory;
+        KafkaJournal journal;
+        List<Journal.Entry> entries;
+
+        @Setup
+        public void setUp() {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            journalDirectory = Files.createTempDir();
+            journal = new KafkaJournal(journalDirectory,
+                    scheduler,
+                    Size.megabytes(100L),
+                    Duration.standardHours(1),
+                    Size.gigabytes(1L),
+                    Duration.standardHours(1),
+                    1_000_000,
+                    Duration.standardMinutes(1),
+                    partitions,
+                    new MetricRegistry());
+            journal.startAsync().awaitRunning();
+
+            final byte[] messageBytes = new byte[entrySize];
+            Arrays.fill(messageBytes, (byte) 'x');
+            entries = Lists.newArrayListWithCapacity(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                entries.add(journal.createEntry(("id-" + i).getBytes(StandardCharsets.UTF_8), messageBytes));
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            journal.stopAsync().awaitTerminated();
+            scheduler.shutdownNow();
+            FileUtils.deleteDirectory(journalDirectory);
+        }
+    }
+
+    // every reading thread gets its own journal, journal partitions must not be read concurrently
+    @State(Scope.Thread)
+    public static class FilledJournalState extends JournalState {
+        int partition = 0;
+        long readOffset = 0L;
+
+        @Override
+        @Setup
+        public void setUp() {
+            super.setUp();
+            for (int i = 0; i < READ_ENTRIES / BATCH_SIZE; i++) {
+                journal.write(entries);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long write(JournalState state) {
+        final long offset = state.journal.write(state.entries);
+        // allow the retention cleaner to delete the written segments
+        state.journal.markJournalOffsetCommitted(offset);
+        return offset;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Journal.JournalReadEntry> read(FilledJournalState state) {
+        final KafkaJournal journal = state.journal;
+        List<Journal.JournalReadEntry> entries = journal.read(state.partition, state.readOffset, BATCH_SIZE);
+        for (int i = 0; entries.isEmpty() && i < journal.getNumberOfPartitions(); i++) {
+            // start over with the next partition once a partition has been read completely
+            state.partition = (state.partition + 1) % journal.getNumberOfPartitions();
+            state.readOffset = journal.getLogStartOffset(state.partition);
+            entries = journal.read(state.partition, state.readOffset, BATCH_SIZE);
+        }
+        if (!entries.isEmpty()) {
+            state.readOffset = KafkaJournal.logOffsetOf(entries.get(entries.size() - 1).getOffset()) + 1;
+        }
+        return entries;
+    }
+}
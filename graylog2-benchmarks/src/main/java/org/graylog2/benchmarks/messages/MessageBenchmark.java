@@ -0,0 +1,75 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.messages;
+
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of messages into the document which is sent to Elasticsearch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MessageBenchmark {
+    @Param({"5", "20", "100"})
+    public int numberOfFields;
+
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        message = new Message("A short message that helps you identify what is going on", "example.org", new DateTime());
+        message.addField("full_message", "Backtrace here\n\nmore stuff");
+        message.addField("level", 1);
+        for (int i = 0; i < numberOfFields; i++) {
+            switch (i % 3) {
+                case 0:
+                    message.addField("string_field_" + i, "value " + i);
+                    break;
+                case 1:
+                    message.addField("long_field_" + i, (long) i);
+                    break;
+                default:
+                    message.addField("double_field_" + i, i + 0.5d);
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> toElasticSearchObject() {
+        return message.toElasticSearchObject();
+    }
+}
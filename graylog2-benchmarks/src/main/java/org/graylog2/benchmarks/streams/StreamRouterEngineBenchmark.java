@@ -0,0 +1,168 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.benchmarks.streams;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.bson.types.ObjectId;
+import org.graylog2.Configuration;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Output;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.streams.StreamFaultManager;
+import org.graylog2.streams.StreamImpl;
+import org.graylog2.streams.StreamMetrics;
+import org.graylog2.streams.StreamRouterEngine;
+import org.graylog2.streams.StreamRuleImpl;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream routing of a message against a synthetic set of streams with a mix of all stream rule types.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StreamRouterEngineBenchmark {
+    private static final int NUMBER_OF_MESSAGES = 64;
+    private static final String[] SOURCES = {"web-1", "web-2", "db-1", "db-2", "lb-1"};
+    private static final String[] FACILITIES = {"kernel", "user", "mail", "daemon", "auth", "local0"};
+
+    @Param({"10", "100", "1000"})
+    public int numberOfStreams;
+
+    @Param({"3"})
+    public int rulesPerStream;
+
+    private ExecutorService executorService;
+    private StreamRouterEngine engine;
+    private Message[] messages;
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42L);
+        final List<Stream> streams = Lists.newArrayList();
+        for (int i = 0; i < numberOfStreams; i++) {
+            final List<StreamRule> rules = Lists.newArrayList();
+            for (int j = 0; j < rulesPerStream; j++) {
+                rules.add(randomRule(random));
+            }
+
+            final Map<String, Object> fields = Maps.newHashMap();
+            fields.put(StreamImpl.FIELD_TITLE, "stream-" + i);
+            fields.put(StreamImpl.FIELD_MATCHING_TYPE,
+                    random.nextBoolean() ? Stream.MatchingType.AND.name() : Stream.MatchingType.OR.name());
+            streams.add(new StreamImpl(new ObjectId(), fields, rules, Collections.<Output>emptySet()));
+        }
+
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final StreamMetrics streamMetrics = new StreamMetrics(metricRegistry);
+        final StreamFaultManager streamFaultManager = new StreamFaultManager(new Configuration(), streamMetrics, null, null);
+        executorService = Executors.newCachedThreadPool();
+        engine = new StreamRouterEngine(streams, executorService, streamFaultManager, streamMetrics);
+
+        messages = new Message[NUMBER_OF_MESSAGES];
+        for (int i = 0; i < NUMBER_OF_MESSAGES; i++) {
+            final Message message = new Message("request " + i + " failed with error " + random.nextInt(1000),
+                    SOURCES[random.nextInt(SOURCES.length)], new DateTime());
+            message.addField("level", random.nextInt(8));
+            message.addField("facility", FACILITIES[random.nextInt(FACILITIES.length)]);
+            message.addField("took_ms", random.nextInt(500));
+            if (random.nextBoolean()) {
+                message.addField("user_id", random.nextInt(100));
+            }
+            messages[i] = message;
+        }
+    }
+
+    private static StreamRule randomRule(Random random) {
+        final Map<String, Object> fields = Maps.newHashMap();
+        final StreamRuleType type;
+        switch (random.nextInt(6)) {
+            case 0:
+                type = StreamRuleType.EXACT;
+                fields.put(StreamRuleImpl.FIELD_FIELD, "source");
+                fields.put(StreamRuleImpl.FIELD_VALUE, SOURCES[random.nextInt(SOURCES.length)]);
+                break;
+            case 1:
+                type = StreamRuleType.EXACT;
+                fields.put(StreamRuleImpl.FIELD_FIELD, "facility");
+                fields.put(StreamRuleImpl.FIELD_VALUE, FACILITIES[random.nextInt(FACILITIES.length)]);
+                break;
+            case 2:
+                type = StreamRuleType.GREATER;
+                fields.put(StreamRuleImpl.FIELD_FIELD, "took_ms");
+                fields.put(StreamRuleImpl.FIELD_VALUE, String.valueOf(random.nextInt(500)));
+                break;
+            case 3:
+                type = StreamRuleType.SMALLER;
+                fields.put(StreamRuleImpl.FIELD_FIELD, "level");
+                fields.put(StreamRuleImpl.FIELD_VALUE, String.valueOf(random.nextInt(8)));
+                break;
+            case 4:
+                type = StreamRuleType.PRESENCE;
+                fields.put(StreamRuleImpl.FIELD_FIELD, "user_id");
+                break;
+            default:
+                type = StreamRuleType.REGEX;
+                fields.put(StreamRuleImpl.FIELD_FIELD, "message");
+                fields.put(StreamRuleImpl.FIELD_VALUE, "error " + random.nextInt(10) + "\\d+$");
+                break;
+        }
+        fields.put(StreamRuleImpl.FIELD_TYPE, type.toInteger());
+        fields.put(StreamRuleImpl.FIELD_INVERTED, random.nextInt(10) == 0);
+
+        return new StreamRuleImpl(fields);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Stream> match() {
+        index = (index + 1) % NUMBER_OF_MESSAGES;
+        return engine.match(messages[index]);
+    }
+}
@@ -31,7 +31,7 @@ public class CodecsModule extends Graylog2Module {
     protected void configure() {
         final MapBinder<String, Codec.Factory<? extends Codec>> mapBinder = codecMapBinder();
 
-        // Aggregators must be singletons because codecs are instantiated in DecodingProcessor per message!
+        // Aggregators must be singletons because codecs are instantiated per input and decoder thread!
         bind(GelfChunkAggregator.class).in(Scopes.SINGLETON);
 
         installCodec(mapBinder, RawCodec.class);
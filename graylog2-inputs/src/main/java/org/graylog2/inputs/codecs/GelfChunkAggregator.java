@@ -18,8 +18,9 @@ package org.graylog2.inputs.codecs;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Maps;
+import org.graylog2.inputs.codecs.gelf.GELFChunkArena;
 import org.graylog2.inputs.codecs.gelf.GELFMessage;
 import org.graylog2.inputs.codecs.gelf.GELFMessageChunk;
 import org.graylog2.plugin.Tools;
@@ -32,16 +33,20 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
+/**
+ * Reassembles chunked GELF messages.
+ * <p>
+ * Incomplete messages are kept in a map keyed by the 8 byte message id, their chunk payloads are copied straight
+ * from the network buffer into a {@link GELFChunkArena bounded off-heap arena}. Messages which don't complete within
+ * {@link #VALIDITY_PERIOD} are expired by a timing wheel with one bucket per {@link #CHECK_PERIOD}. If the arena is
+ * full, the oldest incomplete messages are dropped to make room for new chunks.
+ * </p>
+ */
 public class GelfChunkAggregator implements CodecAggregator {
     private static final Logger log = LoggerFactory.getLogger(GelfChunkAggregator.class);
 
@@ -49,46 +54,69 @@ public class GelfChunkAggregator implements CodecAggregator {
     public static final Result INVALID_RESULT = new Result(null, false);
     public static final int VALIDITY_PERIOD = 5000; // millis
     private static final long CHECK_PERIOD = 1000;
+    public static final Size DEFAULT_MAX_SIZE = Size.megabytes(64L);
+
+    // the GELF specification limits the number of chunks to 128
+    private static final int MAX_SEQUENCE_COUNT = 128;
+    // enough buckets for all ticks of the validity period plus the one currently being filled, power of two
+    private static final int WHEEL_SIZE = 8;
 
     public static final String CHUNK_COUNTER = name(GelfChunkAggregator.class, "total-chunks");
     public static final String WAITING_MESSAGES = name(GelfChunkAggregator.class, "waiting-messages");
     public static final String COMPLETE_MESSAGES = name(GelfChunkAggregator.class, "complete-messages");
     public static final String EXPIRED_MESSAGES = name(GelfChunkAggregator.class, "expired-messages");
     public static final String EXPIRED_CHUNKS = name(GelfChunkAggregator.class, "expired-chunks");
+    public static final String EVICTED_MESSAGES = name(GelfChunkAggregator.class, "evicted-messages");
+    public static final String EVICTED_CHUNKS = name(GelfChunkAggregator.class, "evicted-chunks");
+
+    // all state below is guarded by the aggregator's monitor
+    private final ChunkEntryMap chunks = new ChunkEntryMap();
+    private final ChunkEntry[] wheel = new ChunkEntry[WHEEL_SIZE];
+    private final GELFChunkArena arena;
+    private long nextSweepTick = Long.MIN_VALUE;
 
-    private final ConcurrentMap<String, ChunkEntry> chunks = Maps.newConcurrentMap();
-    private final ConcurrentSkipListSet<ChunkEntry> sortedEvictionSet = new ConcurrentSkipListSet<>();
     private final Counter chunkCounter;
     private final Counter waitingMessages;
     private final Counter expiredMessages;
     private final Counter expiredChunks;
     private final Counter completeMessages;
+    private final Counter evictedMessages;
+    private final Counter evictedChunks;
 
     @Inject
-    public GelfChunkAggregator(@Named("daemonScheduler") ScheduledExecutorService scheduler, MetricRegistry metricRegistry) {
+    public GelfChunkAggregator(@Named("daemonScheduler") ScheduledExecutorService scheduler,
+                               MetricRegistry metricRegistry,
+                               @Named("gelf_chunk_aggregator_max_size") Size maxSize) {
+        arena = new GELFChunkArena(maxSize.toBytes());
         scheduler.scheduleAtFixedRate(new ChunkEvictionTask(), VALIDITY_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
         chunkCounter = metricRegistry.counter(CHUNK_COUNTER);
-        // this is a counter instead of a Gauge, because calling sortedEvictionSet.size() is expensive
+        // this is a counter instead of a Gauge, to avoid synchronizing with the aggregator
         waitingMessages = metricRegistry.counter(WAITING_MESSAGES);
         completeMessages = metricRegistry.counter(COMPLETE_MESSAGES);
         expiredMessages = metricRegistry.counter(EXPIRED_MESSAGES);
         expiredChunks = metricRegistry.counter(EXPIRED_CHUNKS);
+        evictedMessages = metricRegistry.counter(EVICTED_MESSAGES);
+        evictedChunks = metricRegistry.counter(EVICTED_CHUNKS);
+    }
+
+    public GelfChunkAggregator(ScheduledExecutorService scheduler, MetricRegistry metricRegistry) {
+        this(scheduler, metricRegistry, DEFAULT_MAX_SIZE);
     }
 
     @Nonnull
     @Override
     public Result addChunk(ChannelBuffer buffer) {
-        final byte[] readable = new byte[buffer.readableBytes()];
-        buffer.toByteBuffer().get(readable, buffer.readerIndex(), buffer.readableBytes());
-
-        final GELFMessage msg = new GELFMessage(readable);
+        if (buffer.readableBytes() < 2) {
+            return INVALID_RESULT;
+        }
 
+        final int index = buffer.readerIndex();
         final ChannelBuffer aggregatedBuffer;
-        switch (msg.getGELFType()) {
+        switch (GELFMessage.Type.determineType(buffer.getByte(index), buffer.getByte(index + 1))) {
             case CHUNKED:
                 try {
                     chunkCounter.inc();
-                    aggregatedBuffer = checkForCompletion(msg);
+                    aggregatedBuffer = checkForCompletion(buffer);
                     if (aggregatedBuffer == null) {
                         return VALID_EMPTY_RESULT;
                     }
@@ -115,130 +143,318 @@ public class GelfChunkAggregator implements CodecAggregator {
      * If the message isn't complete, it adds the chunk to the internal buffer and waits for more incoming messages.
      * Outdated chunks are being purged regularly.
      *
-     * @param gelfMessage   the gelf message chunk
-     * @return null or a {@link org.graylog2.plugin.journal.RawMessage raw message} object
+     * @param buffer the gelf message chunk including its header
+     * @return null or the payload of the complete message
      */
-    private ChannelBuffer checkForCompletion(GELFMessage gelfMessage) {
-        if (!chunks.isEmpty() && log.isDebugEnabled()) {
-            log.debug("Dumping GELF chunk map [chunks for {} messages]:\n{}", chunks.size(), humanReadableChunkMap());
+    private synchronized ChannelBuffer checkForCompletion(ChannelBuffer buffer) {
+        final int index = buffer.readerIndex();
+        final int length = buffer.readableBytes() - GELFMessageChunk.HEADER_TOTAL_LENGTH;
+        if (length < 0) {
+            throw new IllegalArgumentException("This GELF message chunk is too short. Cannot even contain the required header.");
+        }
+        final long messageId = buffer.getLong(index + GELFMessageChunk.HEADER_PART_HASH_START);
+        final int sequenceNumber = buffer.getUnsignedByte(index + GELFMessageChunk.HEADER_PART_SEQNUM_START);
+        final int sequenceCount = buffer.getUnsignedByte(index + GELFMessageChunk.HEADER_PART_SEQCNT_START);
+        if (sequenceCount < 1 || sequenceCount > MAX_SEQUENCE_COUNT) {
+            throw new IllegalArgumentException("Invalid GELF chunk sequence count " + sequenceCount);
+        }
+        if (sequenceNumber < 0 || sequenceNumber >= sequenceCount) {
+            throw new IllegalArgumentException("Invalid GELF chunk sequence number " + sequenceNumber + "/" + sequenceCount);
         }
-        final GELFMessageChunk chunk = new GELFMessageChunk(gelfMessage, null); // TODO second parameter
-        final int sequenceCount = chunk.getSequenceCount();
 
-        final String messageId = chunk.getId();
+        if (log.isDebugEnabled() && chunks.size() > 0) {
+            log.debug("Dumping GELF chunk map [chunks for {} messages]:\n{}", chunks.size(), humanReadableChunkMap());
+        }
 
-        ChunkEntry entry = new ChunkEntry(sequenceCount, chunk.getArrival(), messageId);
-        final ChunkEntry existing = chunks.putIfAbsent(messageId, entry);
-        if (existing == null) {
-            // add this chunk entry to the eviction set
+        final long now = Tools.iso8601().getMillis();
+        ChunkEntry entry = chunks.get(messageId);
+        if (entry != null && isOutdated(entry, now)) {
+            // chunks are outdated, the oldest came in over 5 seconds ago, clean them all up
+            log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", hexId(messageId), VALIDITY_PERIOD);
+            expireEntry(entry);
+            entry = null;
+        }
+        if (entry == null) {
+            entry = new ChunkEntry(messageId, sequenceCount, now);
+            chunks.put(entry);
+            link(entry);
             waitingMessages.inc();
-            sortedEvictionSet.add(entry);
-        } else {
-            // the entry is already in the eviction set and chunk map
-            entry = existing;
+        } else if (entry.slots.length != sequenceCount) {
+            throw new IllegalArgumentException("GELF chunk sequence count " + sequenceCount + " doesn't match previous chunks of <" + hexId(messageId) + ">");
         }
 
-        final int chunkWatermark = entry.chunkSlotsWritten.incrementAndGet();
-        entry.payloadArray.set(chunk.getSequenceNumber(), chunk);
+        if (entry.slots[sequenceNumber] != null) {
+            log.debug("Ignoring duplicate chunk {} of <{}>.", sequenceNumber, hexId(messageId));
+            return null;
+        }
 
-        if (chunkWatermark == sequenceCount) {
+        int[] slots;
+        while ((slots = arena.write(buffer, index + GELFMessageChunk.HEADER_TOTAL_LENGTH, length)) == null) {
+            final ChunkEntry oldest = oldestEntry(now);
+            log.debug("GELF chunk memory exhausted, dropping incomplete message <{}>.", hexId(oldest.id));
+            evictEntry(oldest);
+            if (oldest == entry) {
+                // not even this message alone fits into the arena
+                return null;
+            }
+        }
+        entry.slots[sequenceNumber] = slots;
+        entry.lengths[sequenceNumber] = length;
+        entry.totalLength += length;
+
+        if (++entry.chunkCount == sequenceCount) {
             // message is complete by chunk count, assemble and return it.
             // it might still be corrupt etc, but we've seen enough chunks
-            // remove before operating on it, to avoid racing too much with the clean up job, some race is inevitable, though.
-            entry = getAndCleanupEntry(messageId);
-
-            final byte[] allChunks[] = new byte[sequenceCount][];
-            for (int i = 0; i < entry.payloadArray.length(); i++) {
-                final GELFMessageChunk messageChunk = entry.payloadArray.get(i);
-                allChunks[i] = messageChunk.getData();
-
+            final byte[] message = new byte[entry.totalLength];
+            int offset = 0;
+            for (int i = 0; i < sequenceCount; i++) {
+                arena.read(entry.slots[i], entry.lengths[i], message, offset);
+                offset += entry.lengths[i];
             }
+            removeEntry(entry);
             completeMessages.inc();
-            return ChannelBuffers.wrappedBuffer(allChunks);
+            return ChannelBuffers.wrappedBuffer(message);
         }
 
-        // message isn't complete yet, check if we should remove the other parts as well
-        if (isOutdated(entry)) {
-            // chunks are outdated, the oldest came in over 5 seconds ago, clean them all up
-            log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", messageId, VALIDITY_PERIOD);
-            expireEntry(messageId);
-        }
         return null;
     }
 
-    private void expireEntry(String messageId) {
-        final ChunkEntry cleanupEntry = getAndCleanupEntry(messageId);
+    private void expireEntry(ChunkEntry entry) {
+        removeEntry(entry);
         expiredMessages.inc();
-        expiredChunks.inc(cleanupEntry.chunkSlotsWritten.get());
+        expiredChunks.inc(entry.chunkCount);
     }
 
-    private boolean isOutdated(ChunkEntry entry) {
-        return (Tools.iso8601().getMillis() - entry.firstTimestamp) > VALIDITY_PERIOD;
+    private void evictEntry(ChunkEntry entry) {
+        removeEntry(entry);
+        evictedMessages.inc();
+        evictedChunks.inc(entry.chunkCount);
     }
 
-    private ChunkEntry getAndCleanupEntry(String id) {
-        final ChunkEntry entry = chunks.remove(id);
-        sortedEvictionSet.remove(entry);
+    private void removeEntry(ChunkEntry entry) {
+        chunks.remove(entry.id);
+        unlink(entry);
+        for (int[] slots : entry.slots) {
+            if (slots != null) {
+                arena.release(slots);
+            }
+        }
         waitingMessages.dec();
-        return entry;
+    }
+
+    private static boolean isOutdated(ChunkEntry entry, long now) {
+        return (now - entry.firstTimestamp) > VALIDITY_PERIOD;
+    }
+
+    private static long tick(long millis) {
+        return millis / CHECK_PERIOD;
+    }
+
+    private static int bucket(long tick) {
+        return (int) (tick & (WHEEL_SIZE - 1));
+    }
+
+    private void link(ChunkEntry entry) {
+        // entries are appended to their bucket, so the head of a bucket is its oldest entry
+        final int bucket = bucket(tick(entry.firstTimestamp));
+        final ChunkEntry head = wheel[bucket];
+        if (head == null) {
+            entry.previous = entry;
+            wheel[bucket] = entry;
+        } else {
+            final ChunkEntry tail = head.previous;
+            tail.next = entry;
+            entry.previous = tail;
+            head.previous = entry;
+        }
+    }
+
+    private void unlink(ChunkEntry entry) {
+        final int bucket = bucket(tick(entry.firstTimestamp));
+        final ChunkEntry head = wheel[bucket];
+        if (entry == head) {
+            wheel[bucket] = entry.next;
+            if (entry.next != null) {
+                entry.next.previous = entry.previous;
+            }
+        } else {
+            entry.previous.next = entry.next;
+            if (entry.next != null) {
+                entry.next.previous = entry.previous;
+            } else {
+                head.previous = entry.previous;
+            }
+        }
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    private ChunkEntry oldestEntry(long now) {
+        // the bucket following the current one holds the oldest messages
+        final long currentTick = tick(now);
+        for (int i = 1; i <= WHEEL_SIZE; i++) {
+            final ChunkEntry head = wheel[bucket(currentTick + i)];
+            if (head != null) {
+                return head;
+            }
+        }
+        throw new IllegalStateException("GELF chunk arena is full without any waiting messages.");
+    }
+
+    private synchronized void expireOutdatedEntries() {
+        final long now = Tools.iso8601().getMillis();
+        final long lastOutdatedTick = tick(now - VALIDITY_PERIOD);
+        // after a pause of the eviction task, sweeping every bucket once is sufficient
+        long sweepTick = Math.max(nextSweepTick, lastOutdatedTick - WHEEL_SIZE + 1);
+        for (; sweepTick <= lastOutdatedTick; sweepTick++) {
+            final int bucket = bucket(sweepTick);
+            ChunkEntry entry = wheel[bucket];
+            while (entry != null) {
+                final ChunkEntry next = entry.next;
+                if (isOutdated(entry, now)) {
+                    log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", hexId(entry.id), VALIDITY_PERIOD);
+                    expireEntry(entry);
+                }
+                entry = next;
+            }
+        }
+        // the last bucket might contain messages which aren't outdated yet, look at it again next time
+        nextSweepTick = lastOutdatedTick;
+    }
+
+    private static String hexId(long id) {
+        return String.format("%016x", id);
     }
 
     private String humanReadableChunkMap() {
         final StringBuilder sb = new StringBuilder();
 
-        for (final Map.Entry<String, ChunkEntry> entry : chunks.entrySet()) {
-            sb.append("Message <").append(entry.getKey()).append("> ");
-            sb.append("\tChunks:\n");
-            for (int i = 0; i < entry.getValue().payloadArray.length(); i++) {
-                final GELFMessageChunk chunk = entry.getValue().payloadArray.get(i);
-                sb.append("\t\t").append(chunk == null ? "<not arrived yet>" : chunk).append(("\n"));
+        for (ChunkEntry head : wheel) {
+            for (ChunkEntry entry = head; entry != null; entry = entry.next) {
+                sb.append("Message <").append(hexId(entry.id)).append("> ");
+                sb.append("\tChunks:\n");
+                for (int i = 0; i < entry.slots.length; i++) {
+                    sb.append("\t\t");
+                    if (entry.slots[i] == null) {
+                        sb.append("<not arrived yet>");
+                    } else {
+                        sb.append("Sequence: ").append(i + 1).append('/').append(entry.slots.length)
+                                .append("\tData size: ").append(entry.lengths[i]);
+                    }
+                    sb.append('\n');
+                }
             }
         }
 
         return sb.toString();
     }
 
-    private static class ChunkEntry implements Comparable<ChunkEntry> {
-        private final AtomicInteger chunkSlotsWritten = new AtomicInteger(0);
+    private static final class ChunkEntry {
+        private final long id;
         private final long firstTimestamp;
-        private final AtomicReferenceArray<GELFMessageChunk> payloadArray;
-        private final String id;
+        // arena slots and payload length of each chunk, indexed by sequence number
+        private final int[][] slots;
+        private final int[] lengths;
+        private int chunkCount = 0;
+        private int totalLength = 0;
 
-        private ChunkEntry(int chunkCount, long firstTimestamp, String id) {
-            this.payloadArray = new AtomicReferenceArray<>(chunkCount);
-            this.firstTimestamp = firstTimestamp;
+        // timing wheel bucket list, the head's previous entry is the tail of the bucket
+        private ChunkEntry previous;
+        private ChunkEntry next;
+
+        private ChunkEntry(long id, int chunkCount, long firstTimestamp) {
             this.id = id;
+            this.firstTimestamp = firstTimestamp;
+            this.slots = new int[chunkCount][];
+            this.lengths = new int[chunkCount];
         }
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+    /**
+     * Open addressing hash map from message id to chunk entry, avoids boxing the ids of every chunk.
+     */
+    private static final class ChunkEntryMap {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private ChunkEntry[] values = new ChunkEntry[INITIAL_CAPACITY];
+        private int size = 0;
 
-            final ChunkEntry that = (ChunkEntry) o;
+        private int size() {
+            return size;
+        }
 
-            if (firstTimestamp != that.firstTimestamp) return false;
-            if (!chunkSlotsWritten.equals(that.chunkSlotsWritten)) return false;
-            //noinspection RedundantIfStatement
-            if (!payloadArray.equals(that.payloadArray)) return false;
+        private ChunkEntry get(long id) {
+            final int mask = values.length - 1;
+            for (int i = index(id, mask); values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == id) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
 
-            return true;
+        private void put(ChunkEntry entry) {
+            if (2 * (size + 1) > values.length) {
+                resize(values.length * 2);
+            }
+            final int mask = values.length - 1;
+            int i = index(entry.id, mask);
+            while (values[i] != null && keys[i] != entry.id) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) {
+                size++;
+            }
+            keys[i] = entry.id;
+            values[i] = entry;
         }
 
-        @Override
-        public int hashCode() {
-            int result = chunkSlotsWritten.hashCode();
-            result = 31 * result + (int) (firstTimestamp ^ (firstTimestamp >>> 32));
-            result = 31 * result + payloadArray.hashCode();
-            return result;
+        private void remove(long id) {
+            final int mask = values.length - 1;
+            int i = index(id, mask);
+            while (values[i] != null && keys[i] != id) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) {
+                return;
+            }
+            size--;
+
+            // shift following entries of the probe sequence back, so lookups don't need tombstones
+            int gap = i;
+            for (int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                final int home = index(keys[j], mask);
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            values[gap] = null;
+
+            if (values.length > INITIAL_CAPACITY && 8 * size < values.length) {
+                resize(values.length / 2);
+            }
         }
 
-        @Override
-        public int compareTo(@Nonnull ChunkEntry o) {
-            if (equals(o)) {
-                return 0;
+        private void resize(int capacity) {
+            final long[] oldKeys = keys;
+            final ChunkEntry[] oldValues = values;
+            keys = new long[capacity];
+            values = new ChunkEntry[capacity];
+            size = 0;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    put(oldValues[i]);
+                }
             }
-            return firstTimestamp < o.firstTimestamp ? -1 : 1;
+        }
+
+        private static int index(long id, int mask) {
+            // message ids are often counters or timestamps, spread them over the whole table
+            final long hash = id * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
         }
     }
 
@@ -247,21 +463,11 @@ public class GelfChunkAggregator implements CodecAggregator {
         @Override
         public void run() {
             try {
-                // loop until we've either evicted all outdated chunk entries, or the set is completely empty.
                 // this task will run every second by default (see constant in constructor)
-                while (true) {
-                    final ChunkEntry oldestChunkEntry = sortedEvictionSet.first();
-                    if (isOutdated(oldestChunkEntry)) {
-                        expireEntry(oldestChunkEntry.id);
-                    } else {
-                        log.debug("No more outdated chunk entries found to evict, leaving cleanup loop.");
-                        break;
-                    }
-                }
-            } catch (Exception ignored) {
-                // set empty, nothing more to do. make sure to never throw an exception out of this runnable, it's
-                // being run in an executor
-                log.debug("Eviction set empty, nothing more to do.");
+                expireOutdatedEntries();
+            } catch (Exception e) {
+                // make sure to never throw an exception out of this runnable, it's being run in an executor
+                log.error("Unable to expire outdated GELF chunks.", e);
             }
         }
     }
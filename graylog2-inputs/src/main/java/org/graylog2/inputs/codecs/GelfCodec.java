@@ -16,10 +16,16 @@
  */
 package org.graylog2.inputs.codecs;
 
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberInput;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.google.common.collect.Maps;
 import com.google.inject.assistedinject.Assisted;
+import org.graylog2.inputs.codecs.gelf.GELFInflater;
 import org.graylog2.inputs.codecs.gelf.GELFMessage;
 import org.graylog2.inputs.transports.TcpTransport;
 import org.graylog2.plugin.Message;
@@ -40,13 +46,21 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.util.Iterator;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 @Codec(name = "gelf", displayName = "GELF")
 public class GelfCodec extends AbstractCodec {
     private static final Logger log = LoggerFactory.getLogger(GelfCodec.class);
 
+    private static final ThreadLocal<GELFInflater> INFLATERS = new ThreadLocal<GELFInflater>() {
+        @Override
+        protected GELFInflater initialValue() {
+            return new GELFInflater();
+        }
+    };
+
     private final GelfChunkAggregator aggregator;
     private final ObjectMapper objectMapper;
 
@@ -58,46 +72,57 @@ public class GelfCodec extends AbstractCodec {
         objectMapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
     }
 
-    private static String stringValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asText();
-            }
+    // The values of the parsed fields are represented by the same types the nodes of a JSON tree would wrap: String,
+    // Boolean, Integer, Long, BigInteger and Double. JSON null and containers are kept as JsonNode.
+    private static String stringValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        if (value == null) {
+            return null;
+        } else if (value instanceof JsonNode) {
+            return ((JsonNode) value).asText();
+        } else {
+            return value.toString();
         }
-        return null;
     }
 
-    private static long longValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asLong(-1L);
-            }
+    private static long longValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        if (value instanceof String) {
+            return NumberInput.parseAsLong((String) value, -1L);
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        } else if (value instanceof JsonNode) {
+            return ((JsonNode) value).asLong(-1L);
         }
         return -1L;
     }
 
-    private static int intValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asInt(-1);
-            }
+    private static int intValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        if (value instanceof String) {
+            return NumberInput.parseAsInt((String) value, -1);
+        } else if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        } else if (value instanceof JsonNode) {
+            return ((JsonNode) value).asInt(-1);
         }
         return -1;
     }
 
-    private static double doubleValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asDouble(-1.0);
-            }
+    private static double doubleValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        if (value instanceof String) {
+            return NumberInput.parseAsDouble((String) value, -1.0);
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1.0 : 0.0;
+        } else if (value instanceof JsonNode) {
+            return ((JsonNode) value).asDouble(-1.0);
         }
         return -1.0;
     }
@@ -106,19 +131,43 @@ public class GelfCodec extends AbstractCodec {
     @Override
     public Message decode(@Nonnull final RawMessage rawMessage) {
         final GELFMessage gelfMessage = new GELFMessage(rawMessage.getPayload());
-        final String json = gelfMessage.getJSON();
 
-        final JsonNode node;
+        final byte[] json;
+        final int length;
+        switch (gelfMessage.getGELFType()) {
+            case ZLIB:
+            case GZIP:
+                final GELFInflater inflater = INFLATERS.get();
+                try {
+                    length = inflater.inflate(gelfMessage);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to decompress the GELF message payload", e);
+                }
+                json = inflater.getBuffer();
+                break;
+            case UNCOMPRESSED:
+                json = gelfMessage.getPayload();
+                length = json.length;
+                break;
+            default:
+                throw new IllegalStateException("Unknown GELF type. Not supported.");
+        }
 
+        Map<String, Object> fields;
         try {
-            node = objectMapper.readTree(json);
+            try {
+                fields = parseFields(objectMapper.getFactory().createParser(json, 0, length));
+            } catch (JsonParseException e) {
+                // the decoded string replaces malformed UTF-8 sequences instead of rejecting the message
+                fields = parseFields(objectMapper.getFactory().createParser(new String(json, 0, length, StandardCharsets.UTF_8)));
+            }
         } catch (final Exception e) {
             log.error("Could not parse JSON!", e);
             throw new IllegalStateException("JSON is null/could not be parsed (invalid JSON)", e);
         }
 
         // Timestamp.
-        final double messageTimestamp = doubleValue(node, "timestamp");
+        final double messageTimestamp = doubleValue(fields, "timestamp");
         final DateTime timestamp;
         if (messageTimestamp <= 0) {
             timestamp = rawMessage.getTimestamp();
@@ -128,44 +177,40 @@ public class GelfCodec extends AbstractCodec {
         }
 
         final Message message = new Message(
-                stringValue(node, "short_message"),
-                stringValue(node, "host"),
+                stringValue(fields, "short_message"),
+                stringValue(fields, "host"),
                 timestamp
         );
 
-        message.addField("full_message", stringValue(node, "full_message"));
+        message.addField("full_message", stringValue(fields, "full_message"));
 
-        final String file = stringValue(node, "file");
+        final String file = stringValue(fields, "file");
 
         if (file != null && !file.isEmpty()) {
             message.addField("file", file);
         }
 
-        final long line = longValue(node, "line");
+        final long line = longValue(fields, "line");
         if (line > -1) {
             message.addField("line", line);
         }
 
         // Level is set by server if not specified by client.
-        final int level = intValue(node, "level");
+        final int level = intValue(fields, "level");
         if (level > -1) {
             message.addField("level", level);
         }
 
         // Facility is set by server if not specified by client.
-        final String facility = stringValue(node, ("facility"));
+        final String facility = stringValue(fields, ("facility"));
         if (facility != null && !facility.isEmpty()) {
             message.addField("facility", facility);
         }
 
         // Add additional data if there is some.
-        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
-
-        while (fields.hasNext()) {
-            final Map.Entry<String, JsonNode> entry = fields.next();
-
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
             String key = entry.getKey();
-            final JsonNode value = entry.getValue();
+            final Object value = entry.getValue();
 
             // Don't include GELF syntax underscore in message field key.
             if (key.startsWith("_") && key.length() > 1) {
@@ -184,17 +229,17 @@ public class GelfCodec extends AbstractCodec {
 
             // Convert JSON containers to Strings, and pick a suitable number representation.
             final Object fieldValue;
-            if (value.isContainerNode()) {
+            if (value instanceof JsonNode && ((JsonNode) value).isContainerNode()) {
                 fieldValue = value.toString();
-            } else if (value.isFloatingPointNumber()) {
-                fieldValue = value.asDouble();
-            } else if (value.isIntegralNumber()) {
-                fieldValue = value.asLong();
-            } else if (value.isNull()) {
+            } else if (value instanceof Double) {
+                fieldValue = value;
+            } else if (value instanceof Number) {
+                fieldValue = ((Number) value).longValue();
+            } else if (value instanceof JsonNode) {
                 log.debug("Field [{}] is NULL. Skipping.", key);
                 continue;
-            } else if (value.isTextual()) {
-                fieldValue = value.asText();
+            } else if (value instanceof String) {
+                fieldValue = value;
             } else {
                 log.debug("Field [{}] has unknown value type. Skipping.", key);
                 continue;
@@ -206,6 +251,55 @@ public class GelfCodec extends AbstractCodec {
         return message;
     }
 
+    /**
+     * Reads the top level fields of the JSON document without building a tree for it, only nested objects and arrays
+     * are read into a tree.
+     */
+    private static Map<String, Object> parseFields(JsonParser jsonParser) throws IOException {
+        final Map<String, Object> fields = Maps.newLinkedHashMap();
+        try (final JsonParser parser = jsonParser) {
+            final JsonToken rootToken = parser.nextToken();
+            if (rootToken == null) {
+                throw new IllegalStateException("Empty JSON document");
+            }
+            if (rootToken != JsonToken.START_OBJECT) {
+                // no fields, but the document must still be valid
+                parser.skipChildren();
+                return fields;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String key = parser.getCurrentName();
+                switch (parser.nextToken()) {
+                    case START_OBJECT:
+                    case START_ARRAY:
+                        fields.put(key, parser.readValueAsTree());
+                        break;
+                    case VALUE_STRING:
+                        fields.put(key, parser.getText());
+                        break;
+                    case VALUE_NUMBER_INT:
+                        fields.put(key, parser.getNumberValue());
+                        break;
+                    case VALUE_NUMBER_FLOAT:
+                        fields.put(key, parser.getDoubleValue());
+                        break;
+                    case VALUE_TRUE:
+                        fields.put(key, Boolean.TRUE);
+                        break;
+                    case VALUE_FALSE:
+                        fields.put(key, Boolean.FALSE);
+                        break;
+                    default:
+                        fields.put(key, NullNode.getInstance());
+                        break;
+                }
+            }
+        }
+
+        return fields;
+    }
+
     @Nullable
     @Override
     public CodecAggregator getAggregator() {
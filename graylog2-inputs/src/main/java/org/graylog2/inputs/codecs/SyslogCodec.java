@@ -30,6 +30,7 @@ import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
 import org.graylog2.plugin.configuration.fields.BooleanField;
+import org.graylog2.plugin.dns.ReverseDnsResolver;
 import org.graylog2.plugin.inputs.codecs.AbstractCodec;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
 import org.graylog2.plugin.inputs.transports.NettyTransport;
@@ -45,7 +46,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
@@ -67,12 +67,16 @@ public class SyslogCodec extends AbstractCodec {
     public static final String CK_EXPAND_STRUCTURED_DATA = "expand_structured_data";
     public static final String CK_STORE_FULL_MESSAGE = "store_full_message";
 
+    private final ReverseDnsResolver reverseDnsResolver;
     private final Timer resolveTime;
     private final Timer decodeTime;
 
     @AssistedInject
-    public SyslogCodec(@Assisted Configuration configuration, MetricRegistry metricRegistry) {
+    public SyslogCodec(@Assisted Configuration configuration,
+                       MetricRegistry metricRegistry,
+                       ReverseDnsResolver reverseDnsResolver) {
         super(configuration);
+        this.reverseDnsResolver = reverseDnsResolver;
         this.resolveTime = metricRegistry.timer(name(SyslogCodec.class, "resolveTime"));
         this.decodeTime = metricRegistry.timer(name(SyslogCodec.class, "decodeTime"));
     }
@@ -177,10 +181,9 @@ public class SyslogCodec extends AbstractCodec {
 
     private String parseHost(SyslogServerEventIF msg, InetAddress remoteAddress) {
         if (remoteAddress != null && configuration.getBoolean(CK_FORCE_RDNS)) {
+            // never blocks, uses the address itself until the lookup has finished
             try (Timer.Context ignored = this.resolveTime.time()) {
-                return Tools.rdnsLookup(remoteAddress);
-            } catch (UnknownHostException e) {
-                LOG.warn("Reverse DNS lookup failed. Falling back to parsed hostname.", e);
+                return reverseDnsResolver.resolve(remoteAddress);
             }
         }
 
@@ -0,0 +1,160 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.codecs.gelf;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed size pool of off-heap memory for the payloads of GELF message chunks which are waiting for the rest of
+ * their message.
+ * <p>
+ * The memory is split into slots of {@link #SLOT_SIZE} bytes which are handed out from a free list, a chunk occupies
+ * as many slots as it needs. Slots are backed by direct buffers of up to {@link #PAGE_SIZE} bytes which are
+ * allocated on demand and kept for reuse, the arena never allocates more than its configured maximum size.
+ * </p>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class GELFChunkArena {
+    public static final int SLOT_SIZE = 1024;
+    public static final int PAGE_SIZE = 1024 * 1024;
+
+    private static final int SLOTS_PER_PAGE = PAGE_SIZE / SLOT_SIZE;
+
+    private final int maxSlots;
+    private final ByteBuffer[] pages;
+    private final int[] freeSlots;
+    private int freeSlotCount = 0;
+    // slots above this index have never been handed out
+    private int slotWatermark = 0;
+
+    public GELFChunkArena(long maxBytes) {
+        if (maxBytes < SLOT_SIZE) {
+            throw new IllegalArgumentException("The chunk arena must hold at least " + SLOT_SIZE + " bytes.");
+        }
+        this.maxSlots = (int) Math.min(maxBytes / SLOT_SIZE, Integer.MAX_VALUE - SLOTS_PER_PAGE);
+        this.pages = new ByteBuffer[(maxSlots + SLOTS_PER_PAGE - 1) / SLOTS_PER_PAGE];
+        this.freeSlots = new int[maxSlots];
+    }
+
+    /**
+     * @param length the length of a chunk payload in bytes
+     * @return the number of slots needed to store the payload
+     */
+    public static int slotsFor(int length) {
+        return Math.max(1, (length + SLOT_SIZE - 1) / SLOT_SIZE);
+    }
+
+    /**
+     * Copies the given bytes into the arena.
+     *
+     * @param buffer the buffer to copy from
+     * @param index  the index of the first byte in the buffer
+     * @param length the number of bytes to copy
+     * @return the slots holding the bytes, or {@code null} if there aren't enough free slots
+     */
+    public int[] write(ChannelBuffer buffer, int index, int length) {
+        final int slotCount = slotsFor(length);
+        if (slotCount > getAvailableSlots()) {
+            return null;
+        }
+
+        final int[] slots = new int[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = allocateSlot();
+            final int slotLength = Math.min(SLOT_SIZE, length - i * SLOT_SIZE);
+            if (slotLength > 0) {
+                buffer.getBytes(index + i * SLOT_SIZE, select(slots[i], slotLength));
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Copies the bytes stored in the given slots into the array.
+     *
+     * @param slots  the slots returned by {@link #write(ChannelBuffer, int, int)}
+     * @param length the number of bytes originally written
+     * @param dst    the destination array
+     * @param offset the offset in the destination array
+     */
+    public void read(int[] slots, int length, byte[] dst, int offset) {
+        for (int i = 0; i < slots.length; i++) {
+            final int slotLength = Math.min(SLOT_SIZE, length - i * SLOT_SIZE);
+            if (slotLength > 0) {
+                select(slots[i], slotLength).get(dst, offset + i * SLOT_SIZE, slotLength);
+            }
+        }
+    }
+
+    /**
+     * Returns the slots to the free list, they must not be used afterwards.
+     */
+    public void release(int[] slots) {
+        for (int slot : slots) {
+            freeSlots[freeSlotCount++] = slot;
+        }
+    }
+
+    public int getAvailableSlots() {
+        return freeSlotCount + maxSlots - slotWatermark;
+    }
+
+    public int getMaxSlots() {
+        return maxSlots;
+    }
+
+    public long getUsedBytes() {
+        return (long) (maxSlots - getAvailableSlots()) * SLOT_SIZE;
+    }
+
+    public long getAllocatedBytes() {
+        long allocated = 0;
+        for (ByteBuffer page : pages) {
+            if (page != null) {
+                allocated += page.capacity();
+            }
+        }
+        return allocated;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+
+        final int slot = slotWatermark++;
+        final int page = slot / SLOTS_PER_PAGE;
+        if (pages[page] == null) {
+            final int slotsInPage = Math.min(SLOTS_PER_PAGE, maxSlots - page * SLOTS_PER_PAGE);
+            pages[page] = ByteBuffer.allocateDirect(slotsInPage * SLOT_SIZE);
+        }
+        return slot;
+    }
+
+    private ByteBuffer select(int slot, int length) {
+        final ByteBuffer page = pages[slot / SLOTS_PER_PAGE];
+        final int offset = (slot % SLOTS_PER_PAGE) * SLOT_SIZE;
+        page.clear();
+        page.position(offset);
+        page.limit(offset + length);
+        return page;
+    }
+}
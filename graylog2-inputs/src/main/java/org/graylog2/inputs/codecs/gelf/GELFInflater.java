@@ -0,0 +1,170 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.codecs.gelf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses ZLIB and GZIP compressed GELF payloads into a reusable buffer.
+ * <p>
+ * Instances keep their {@link Inflater inflaters} and their buffer between messages and are not thread-safe, the
+ * decompressed bytes are only valid until the next call of {@link #inflate(GELFMessage)}.
+ * </p>
+ */
+public class GELFInflater {
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    // don't keep the buffer of exceptionally large messages around forever
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final Inflater zlibInflater = new Inflater();
+    private final Inflater gzipInflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    /**
+     * Decompresses the payload of the given message.
+     *
+     * @param message a ZLIB or GZIP compressed GELF message
+     * @return the number of decompressed bytes in {@link #getBuffer()}
+     * @throws IOException if the payload is not a valid compressed message
+     */
+    public int inflate(GELFMessage message) throws IOException {
+        if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+        }
+
+        final byte[] payload = message.getPayload();
+        switch (message.getGELFType()) {
+            case ZLIB:
+                return inflate(zlibInflater, payload, 0, payload.length);
+            case GZIP:
+                return inflateGzip(payload);
+            default:
+                throw new IllegalArgumentException("GELF message is not compressed.");
+        }
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    private int inflateGzip(byte[] payload) throws IOException {
+        final int offset = skipGzipHeader(payload);
+        final int length = inflate(gzipInflater, payload, offset, payload.length - offset);
+
+        final int trailer = payload.length - gzipInflater.getRemaining();
+        if (payload.length - trailer < GZIP_TRAILER_SIZE) {
+            throw new EOFException("Unexpected end of GZIP input stream");
+        }
+        crc.reset();
+        crc.update(buffer, 0, length);
+        if (readInt(payload, trailer) != (int) crc.getValue() || readInt(payload, trailer + 4) != length) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+
+        return length;
+    }
+
+    private int inflate(Inflater inflater, byte[] input, int offset, int length) throws IOException {
+        inflater.reset();
+        inflater.setInput(input, offset, length);
+        try {
+            int total = 0;
+            while (!inflater.finished()) {
+                if (total == buffer.length) {
+                    final byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, total);
+                    buffer = grown;
+                }
+                final int inflated = inflater.inflate(buffer, total, buffer.length - total);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("Compressed GELF message requires a preset dictionary");
+                    }
+                    if (inflater.needsInput()) {
+                        throw new EOFException("Unexpected end of compressed GELF message");
+                    }
+                }
+                total += inflated;
+            }
+            return total;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    private static int skipGzipHeader(byte[] payload) throws IOException {
+        if (payload.length < GZIP_HEADER_SIZE) {
+            throw new EOFException("Unexpected end of GZIP header");
+        }
+        if (payload[2] != 8) {
+            throw new ZipException("Unsupported GZIP compression method");
+        }
+
+        final int flags = payload[3] & 0xff;
+        int offset = GZIP_HEADER_SIZE;
+        if ((flags & FEXTRA) != 0) {
+            if (offset + 2 > payload.length) {
+                throw new EOFException("Unexpected end of GZIP header");
+            }
+            offset += 2 + ((payload[offset] & 0xff) | ((payload[offset + 1] & 0xff) << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            offset = skipZeroTerminated(payload, offset);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            offset = skipZeroTerminated(payload, offset);
+        }
+        if ((flags & FHCRC) != 0) {
+            offset += 2;
+        }
+        if (offset > payload.length) {
+            throw new EOFException("Unexpected end of GZIP header");
+        }
+
+        return offset;
+    }
+
+    private static int skipZeroTerminated(byte[] payload, int offset) throws EOFException {
+        for (int i = offset; i < payload.length; i++) {
+            if (payload[i] == 0) {
+                return i + 1;
+            }
+        }
+        throw new EOFException("Unexpected end of GZIP header");
+    }
+
+    // GZIP stores integers in little endian byte order
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+                | ((bytes[offset + 1] & 0xff) << 8)
+                | ((bytes[offset + 2] & 0xff) << 16)
+                | ((bytes[offset + 3] & 0xff) << 24);
+    }
+}
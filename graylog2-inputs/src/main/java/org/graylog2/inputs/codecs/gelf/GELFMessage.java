@@ -64,7 +64,7 @@ public class GELFMessage {
             bytes = new byte[]{first, second};
         }
 
-        static Type determineType(final byte first, final byte second) {
+        public static Type determineType(final byte first, final byte second) {
 
             if (first == ZLIB.first()) {
                 // zlib's second byte is for flags and a checksum -
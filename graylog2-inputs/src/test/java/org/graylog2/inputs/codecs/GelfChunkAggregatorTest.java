@@ -19,6 +19,7 @@ package org.graylog2.inputs.codecs;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
 import org.graylog2.plugin.InstantMillisProvider;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -195,6 +196,52 @@ public class GelfChunkAggregatorTest {
         assertEquals(0, counterValueNamed(metricRegistry, EXPIRED_MESSAGES));
     }
 
+    @Test
+    public void evictsOldestMessagesWhenFull() {
+        // room for exactly four chunks of 1024 bytes
+        aggregator = new GelfChunkAggregator(poolExecutor, metricRegistry, Size.kilobytes(4L));
+        final ChannelBuffer[] msg1 = createChunkedMessage(3 * 1024 + 1, 1024, generateMessageId(1)); // 4 chunks
+        final ChannelBuffer[] msg2 = createChunkedMessage(3 * 1024 - 1, 1024, generateMessageId(2)); // 3 chunks
+
+        assertNull(aggregator.addChunk(msg1[0]).getMessage());
+        assertNull(aggregator.addChunk(msg1[1]).getMessage());
+        assertNull(aggregator.addChunk(msg2[0]).getMessage());
+        assertNull(aggregator.addChunk(msg2[1]).getMessage());
+
+        final CodecAggregator.Result result = aggregator.addChunk(msg2[2]);
+        assertTrue(result.isValid());
+        assertNotNull("message 2 should be complete after evicting message 1", result.getMessage());
+        assertEquals(3 * 1024 - 1, result.getMessage().readableBytes());
+
+        assertEquals(1, counterValueNamed(metricRegistry, COMPLETE_MESSAGES));
+        assertEquals(0, counterValueNamed(metricRegistry, WAITING_MESSAGES));
+        assertEquals(1, counterValueNamed(metricRegistry, EVICTED_MESSAGES));
+        assertEquals(2, counterValueNamed(metricRegistry, EVICTED_CHUNKS));
+        assertEquals(0, counterValueNamed(metricRegistry, EXPIRED_MESSAGES));
+    }
+
+    @Test
+    public void invalidSequenceNumber() {
+        final ChannelBuffer[] chunks = createChunkedMessage(2048, 1024);
+        chunks[1].setByte(10, 2);
+
+        assertTrue(aggregator.addChunk(chunks[0]).isValid());
+        assertFalse(aggregator.addChunk(chunks[1]).isValid());
+    }
+
+    @Test
+    public void duplicateChunksAreIgnored() {
+        final ChannelBuffer[] chunks = createChunkedMessage(2048 + 512, 1024); // creates 3 chunks
+
+        assertNull(aggregator.addChunk(chunks[0]).getMessage());
+        assertNull(aggregator.addChunk(chunks[0].duplicate()).getMessage());
+        assertNull(aggregator.addChunk(chunks[1]).getMessage());
+
+        final CodecAggregator.Result result = aggregator.addChunk(chunks[2]);
+        assertNotNull(result.getMessage());
+        assertEquals(2048 + 512, result.getMessage().readableBytes());
+    }
+
     private ChannelBuffer[] createChunkedMessage(int messageSize, int maxChunkSize) {
         return createChunkedMessage(messageSize, maxChunkSize, generateMessageId());
     }
@@ -0,0 +1,141 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.codecs;
+
+import org.graylog2.inputs.TestHelper;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class GelfCodecTest {
+    private static final String GELF_JSON = "{"
+            + "\"version\":\"1.1\","
+            + "\"host\":\"example.org\","
+            + "\"short_message\":\"A short message\","
+            + "\"full_message\":\"Backtrace here\\n\\nmore stuff\","
+            + "\"timestamp\":1385053862.3072,"
+            + "\"level\":\"3\","
+            + "\"line\":42,"
+            + "\"_user_id\":9001,"
+            + "\"_took_ms\":12.5,"
+            + "\"_some_info\":\"foo \\u00FC\","
+            + "\"_nested\":{\"a\":[1,2]},"
+            + "\"_nothing\":null,"
+            + "\"_flag\":true,"
+            + "\"_id\":\"reserved\","
+            + "\"_source\":\"also reserved\","
+            + "\"_\":\"underscore\""
+            + "}";
+
+    private GelfCodec codec;
+
+    @Before
+    public void setUp() {
+        codec = new GelfCodec(Configuration.EMPTY_CONFIGURATION, null);
+    }
+
+    @Test
+    public void testDecodeUncompressed() throws Exception {
+        assertMessage(codec.decode(new RawMessage(GELF_JSON.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testDecodeZlib() throws Exception {
+        assertMessage(codec.decode(new RawMessage(TestHelper.zlibCompress(GELF_JSON))));
+    }
+
+    @Test
+    public void testDecodeGzip() throws Exception {
+        assertMessage(codec.decode(new RawMessage(TestHelper.gzipCompress(GELF_JSON))));
+    }
+
+    @Test
+    public void testDecodeReusesInflaterBuffer() throws Exception {
+        final StringBuilder longMessage = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            longMessage.append("long message ");
+        }
+        final String json = "{\"host\":\"example.org\",\"short_message\":\"" + longMessage + "\"}";
+
+        assertEquals(longMessage.toString(), codec.decode(new RawMessage(TestHelper.gzipCompress(json))).getMessage());
+        assertMessage(codec.decode(new RawMessage(TestHelper.gzipCompress(GELF_JSON))));
+        assertEquals(longMessage.toString(), codec.decode(new RawMessage(TestHelper.zlibCompress(json))).getMessage());
+    }
+
+    @Test
+    public void testDecodeMalformedUtf8() throws Exception {
+        final byte[] prefix = "{\"host\":\"example.org\",\"short_message\":\"foo".getBytes(StandardCharsets.UTF_8);
+        final byte[] suffix = "\"}".getBytes(StandardCharsets.UTF_8);
+        final byte[] payload = new byte[prefix.length + 1 + suffix.length];
+        System.arraycopy(prefix, 0, payload, 0, prefix.length);
+        payload[prefix.length] = (byte) 0xff;
+        System.arraycopy(suffix, 0, payload, prefix.length + 1, suffix.length);
+
+        assertEquals("foo\uFFFD", codec.decode(new RawMessage(payload)).getMessage());
+    }
+
+    @Test
+    public void testDecodeUsesStringValuesOfStandardFields() throws Exception {
+        final Message message = codec.decode(new RawMessage(
+                "{\"host\":1234,\"short_message\":null,\"level\":true,\"timestamp\":\"1385053862.5\"}".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("1234", message.getSource());
+        assertEquals("null", message.getMessage());
+        assertEquals(1, message.getField("level"));
+        assertEquals(new DateTime(1385053862500L, DateTimeZone.UTC), message.getTimestamp());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDecodeInvalidJson() throws Exception {
+        codec.decode(new RawMessage("{\"host\":\"example.org\",".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDecodeCorruptCompressedPayload() throws Exception {
+        final byte[] payload = TestHelper.gzipCompress(GELF_JSON);
+        payload[payload.length - 5]++;
+
+        codec.decode(new RawMessage(payload));
+    }
+
+    private static void assertMessage(Message message) {
+        assertEquals("example.org", message.getSource());
+        assertEquals("A short message", message.getMessage());
+        assertEquals("Backtrace here\n\nmore stuff", message.getField("full_message"));
+        assertEquals(new DateTime(1385053862307L, DateTimeZone.UTC), message.getTimestamp());
+        assertEquals(3, message.getField("level"));
+        assertEquals(42L, message.getField("line"));
+        assertEquals("1.1", message.getField("version"));
+        assertEquals(9001L, message.getField("user_id"));
+        assertEquals(12.5d, message.getField("took_ms"));
+        assertEquals("foo \u00FC", message.getField("some_info"));
+        assertEquals("{\"a\":[1,2]}", message.getField("nested"));
+        assertEquals("underscore", message.getField("_"));
+        assertFalse(message.hasField("nothing"));
+        assertFalse(message.hasField("flag"));
+        assertEquals("reserved", message.getField("id"));
+    }
+}
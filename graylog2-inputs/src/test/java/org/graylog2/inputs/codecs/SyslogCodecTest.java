@@ -21,6 +21,7 @@ import com.codahale.metrics.Timer;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.dns.ReverseDnsResolver;
 import org.graylog2.plugin.inputs.codecs.Codec;
 import org.graylog2.plugin.journal.RawMessage;
 import org.joda.time.DateTime;
@@ -31,6 +32,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 
 import static org.junit.Assert.assertEquals;
@@ -56,6 +58,8 @@ public class SyslogCodecTest {
     private MetricRegistry metricRegistry;
     @Mock
     private Timer mockedTimer;
+    @Mock
+    private ReverseDnsResolver reverseDnsResolver;
 
     private Codec codec;
 
@@ -64,7 +68,7 @@ public class SyslogCodecTest {
         when(metricRegistry.timer(any(String.class))).thenReturn(mockedTimer);
         when(mockedTimer.time()).thenReturn(mock(Timer.Context.class));
 
-        codec = new SyslogCodec(configuration, metricRegistry);
+        codec = new SyslogCodec(configuration, metricRegistry, reverseDnsResolver);
     }
 
     @Test
@@ -105,7 +109,7 @@ public class SyslogCodecTest {
     public void testDecodeStructuredIssue845WithExpandStructuredData() throws Exception {
         when(configuration.getBoolean(SyslogCodec.CK_EXPAND_STRUCTURED_DATA)).thenReturn(true);
 
-        final SyslogCodec codec = new SyslogCodec(configuration, metricRegistry);
+        final SyslogCodec codec = new SyslogCodec(configuration, metricRegistry, reverseDnsResolver);
         final Message message = codec.decode(buildRawMessage(STRUCTURED_ISSUE_845));
 
         assertNotNull(message);
@@ -206,6 +210,17 @@ public class SyslogCodecTest {
         assertEquals(message.getField("full_message"), UNSTRUCTURED);
     }
 
+    @Test
+    public void testForceRdnsUsesResolver() throws Exception {
+        when(configuration.getBoolean(SyslogCodec.CK_FORCE_RDNS)).thenReturn(true);
+        when(reverseDnsResolver.resolve(any(InetAddress.class))).thenReturn("resolved.example.com");
+
+        final Message message = codec.decode(buildRawMessage(STRUCTURED));
+
+        assertNotNull(message);
+        assertEquals("resolved.example.com", message.getField("source"));
+    }
+
     private RawMessage buildRawMessage(String message) {
         return new RawMessage(message.getBytes(), new InetSocketAddress(5140));
     }
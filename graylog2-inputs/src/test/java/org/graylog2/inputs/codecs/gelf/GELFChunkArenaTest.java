@@ -0,0 +1,84 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.codecs.gelf;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class GELFChunkArenaTest {
+    @Test
+    public void testWriteAndRead() {
+        final GELFChunkArena arena = new GELFChunkArena(8 * GELFChunkArena.SLOT_SIZE);
+        final byte[] payload = randomBytes(2 * GELFChunkArena.SLOT_SIZE + 100);
+        final ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(new byte[]{1, 2, 3}, payload);
+
+        final int[] slots = arena.write(buffer, 3, payload.length);
+        assertNotNull(slots);
+        assertEquals(3, slots.length);
+        assertEquals(5, arena.getAvailableSlots());
+
+        final byte[] read = new byte[payload.length + 1];
+        arena.read(slots, payload.length, read, 1);
+        for (int i = 0; i < payload.length; i++) {
+            assertEquals(payload[i], read[i + 1]);
+        }
+    }
+
+    @Test
+    public void testMaximumSizeIsHard() {
+        final GELFChunkArena arena = new GELFChunkArena(2 * GELFChunkArena.SLOT_SIZE + 10);
+        final ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(randomBytes(GELFChunkArena.SLOT_SIZE + 1));
+
+        assertEquals(2, arena.getMaxSlots());
+        assertNotNull(arena.write(buffer, 0, 1));
+        assertNull(arena.write(buffer, 0, buffer.readableBytes()));
+        assertEquals(1, arena.getAvailableSlots());
+        assertEquals(2 * GELFChunkArena.SLOT_SIZE, arena.getAllocatedBytes());
+    }
+
+    @Test
+    public void testReleasedSlotsAreReused() {
+        final GELFChunkArena arena = new GELFChunkArena(2 * GELFChunkArena.SLOT_SIZE);
+        final byte[] first = randomBytes(2 * GELFChunkArena.SLOT_SIZE);
+        final byte[] second = randomBytes(2 * GELFChunkArena.SLOT_SIZE);
+
+        final int[] slots = arena.write(ChannelBuffers.wrappedBuffer(first), 0, first.length);
+        assertNull(arena.write(ChannelBuffers.wrappedBuffer(second), 0, 1));
+        arena.release(slots);
+        assertEquals(0, arena.getUsedBytes());
+
+        final int[] reused = arena.write(ChannelBuffers.wrappedBuffer(second), 0, second.length);
+        assertNotNull(reused);
+        final byte[] read = new byte[second.length];
+        arena.read(reused, second.length, read, 0);
+        assertArrayEquals(second, read);
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.codecs.gelf;
+
+import org.graylog2.inputs.TestHelper;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertEquals;
+
+public class GELFInflaterTest {
+    private final GELFInflater inflater = new GELFInflater();
+
+    @Test
+    public void testInflateZlib() throws Exception {
+        assertEquals(GELFMessageTest.GELF_JSON, inflate(TestHelper.zlibCompress(GELFMessageTest.GELF_JSON)));
+    }
+
+    @Test
+    public void testInflateGzip() throws Exception {
+        assertEquals(GELFMessageTest.GELF_JSON, inflate(TestHelper.gzipCompress(GELFMessageTest.GELF_JSON)));
+    }
+
+    @Test
+    public void testInflateGzipWithOptionalHeaderFields() throws Exception {
+        final byte[] compressed = TestHelper.gzipCompress(GELFMessageTest.GELF_JSON);
+        // FEXTRA with two bytes of data and FNAME "gelf"
+        final byte[] extraAndName = new byte[]{2, 0, 'x', 'y', 'g', 'e', 'l', 'f', 0};
+        final byte[] payload = new byte[compressed.length + extraAndName.length];
+        System.arraycopy(compressed, 0, payload, 0, 10);
+        System.arraycopy(extraAndName, 0, payload, 10, extraAndName.length);
+        System.arraycopy(compressed, 10, payload, 10 + extraAndName.length, compressed.length - 10);
+        payload[3] = 4 | 8;
+
+        assertEquals(GELFMessageTest.GELF_JSON, inflate(payload));
+    }
+
+    @Test
+    public void testInflateLargeMessages() throws Exception {
+        final char[] chars = new char[100000];
+        Arrays.fill(chars, 'x');
+        final String json = "{\"short_message\":\"" + new String(chars) + "\"}";
+
+        assertEquals(json, inflate(TestHelper.gzipCompress(json)));
+        assertEquals(GELFMessageTest.GELF_JSON, inflate(TestHelper.zlibCompress(GELFMessageTest.GELF_JSON)));
+        assertEquals(json, inflate(TestHelper.zlibCompress(json)));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testInflateTruncatedMessage() throws Exception {
+        final byte[] compressed = TestHelper.gzipCompress(GELFMessageTest.GELF_JSON);
+        inflate(Arrays.copyOf(compressed, compressed.length / 2));
+    }
+
+    @Test(expected = ZipException.class)
+    public void testInflateCorruptGzipTrailer() throws Exception {
+        final byte[] compressed = TestHelper.gzipCompress(GELFMessageTest.GELF_JSON);
+        compressed[compressed.length - 1]++;
+        inflate(compressed);
+    }
+
+    private String inflate(byte[] payload) throws IOException {
+        final int length = inflater.inflate(new GELFMessage(payload));
+        return new String(inflater.getBuffer(), 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -24,6 +24,7 @@ package org.graylog2.plugin;
 
 import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
 import com.github.joschi.jadconfig.validators.InetPortValidator;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
@@ -107,6 +108,9 @@ public abstract class BaseConfiguration {
     @Parameter(value = "udp_recvbuffer_sizes", required = true, validator = PositiveIntegerValidator.class)
     private int udpRecvBufferSizes = 1048576;
 
+    @Parameter(value = "gelf_chunk_aggregator_max_size")
+    private Size gelfChunkAggregatorMaxSize = Size.megabytes(64L);
+
     @Parameter("message_journal_enabled")
     private boolean messageJournalEnabled = true;
 
@@ -282,6 +286,10 @@ public abstract class BaseConfiguration {
         return udpRecvBufferSizes;
     }
 
+    public Size getGelfChunkAggregatorMaxSize() {
+        return gelfChunkAggregatorMaxSize;
+    }
+
     public boolean isMessageRecordingsEnabled() {
         return messageRecordingsEnable;
     }
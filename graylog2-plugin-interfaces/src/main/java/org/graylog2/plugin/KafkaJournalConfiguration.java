@@ -26,6 +26,7 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.util.Size;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import org.joda.time.Duration;
 
 import java.io.File;
@@ -63,6 +64,10 @@ public class KafkaJournalConfiguration {
     @JsonProperty("flush_age")
     private Duration messageJournalFlushAge = Duration.standardMinutes(1L);
 
+    @Parameter(value = "message_journal_partitions", validator = PositiveIntegerValidator.class)
+    @JsonProperty("partitions")
+    private int messageJournalPartitions = 1;
+
     public File getMessageJournalDir() {
         return messageJournalDir;
     }
@@ -90,4 +95,8 @@ public class KafkaJournalConfiguration {
     public Duration getMessageJournalFlushAge() {
         return messageJournalFlushAge;
     }
+
+    public int getMessageJournalPartitions() {
+        return messageJournalPartitions;
+    }
 }
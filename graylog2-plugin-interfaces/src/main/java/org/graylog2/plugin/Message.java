@@ -44,7 +44,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
 
 import static com.google.common.base.Predicates.equalTo;
 import static com.google.common.base.Predicates.not;
@@ -62,8 +61,6 @@ public class Message {
     public static final String FIELD_LEVEL = "level";
     public static final String FIELD_STREAMS = "streams";
 
-    private static final Pattern VALID_KEY_CHARS = Pattern.compile("^[\\w\\.\\-@]*$");
-
     public static final ImmutableSet<String> RESERVED_FIELDS = ImmutableSet.of(
             // ElasticSearch fields.
             FIELD_ID,
@@ -110,7 +107,7 @@ public class Message {
 
     public static final Function<Message, String> ID_FUNCTION = new MessageIdFunction();
 
-    private final Map<String, Object> fields = Maps.newHashMap();
+    private final MessageFields fields = new MessageFields();
     private List<Stream> streams = Lists.newArrayList();
     private String sourceInputId;
 
@@ -241,7 +238,9 @@ public class Message {
 
     public void addField(final String key, final Object value) {
         // Don't accept protected keys. (some are allowed though lol)
-        if (RESERVED_FIELDS.contains(key) && !RESERVED_SETTABLE_FIELDS.contains(key) || !validKey(key)) {
+        // valid keys can't contain whitespace, so the canonical symbol doesn't need to be trimmed
+        final String symbol = RESERVED_FIELDS.contains(key) && !RESERVED_SETTABLE_FIELDS.contains(key) ? null : MessageFields.symbol(key);
+        if (symbol == null) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Ignoring invalid or reserved key {} for message {}", key, getId());
             }
@@ -252,15 +251,15 @@ public class Message {
             final String str = ((String) value).trim();
 
             if(!str.isEmpty()) {
-                fields.put(key.trim(), str);
+                fields.put(symbol, str);
             }
         } else if(value != null) {
-            fields.put(key.trim(), value);
+            fields.put(symbol, value);
         }
     }
 
     public static boolean validKey(final String key) {
-        return VALID_KEY_CHARS.matcher(key).matches();
+        return MessageFields.symbol(key) != null;
     }
 
     public void addFields(final Map<String, Object> fields) {
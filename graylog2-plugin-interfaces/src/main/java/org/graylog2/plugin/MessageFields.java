@@ -0,0 +1,268 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 Graylog, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact field storage of a {@link Message}.
+ * <p>
+ * Keys and values are kept in two open addressing arrays instead of one map entry object per field.
+ * Field names are canonicalized through a shared symbol table which also remembers that they are valid, so most
+ * lookups compare keys by reference. {@code null} keys are not supported, {@code null} values are.
+ * </p>
+ * <p>
+ * Instances are not thread-safe. The map views are read-only.
+ * </p>
+ */
+final class MessageFields extends AbstractMap<String, Object> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // only bounds the symbol table if senders generate random field names, regular setups use a few hundred names
+    private static final int MAX_SYMBOLS = 16384;
+    private static final ConcurrentMap<String, String> SYMBOLS = new ConcurrentHashMap<>();
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private Set<Entry<String, Object>> entrySet;
+
+    /**
+     * Returns the canonical instance of a valid field name.
+     *
+     * @param key the field name
+     * @return the canonical instance of the field name, or {@code null} if it contains invalid characters
+     */
+    static String symbol(String key) {
+        final String symbol = SYMBOLS.get(key);
+        if (symbol != null) {
+            return symbol;
+        }
+        if (!isValid(key)) {
+            return null;
+        }
+        if (SYMBOLS.size() < MAX_SYMBOLS) {
+            final String existing = SYMBOLS.putIfAbsent(key, key);
+            return existing == null ? key : existing;
+        }
+        return key;
+    }
+
+    // equivalent to ^[\w\.\-@]*$
+    private static boolean isValid(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '_' || c == '.' || c == '-' || c == '@')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int i = indexOf((String) key);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (key == null) {
+            throw new NullPointerException("Field name must not be null");
+        }
+
+        final int mask = keys.length - 1;
+        int i = slot(key, mask);
+        String k;
+        while ((k = keys[i]) != null) {
+            if (k == key || k.equals(key)) {
+                final Object previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (2 * ++size > keys.length) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int i = indexOf((String) key);
+        if (i < 0) {
+            return null;
+        }
+        final Object previous = values[i];
+        deleteSlot(i);
+        return previous;
+    }
+
+    /**
+     * Removes all fields but keeps the allocated arrays.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private int indexOf(String key) {
+        final int mask = keys.length - 1;
+        String k;
+        for (int i = slot(key, mask); (k = keys[i]) != null; i = (i + 1) & mask) {
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void deleteSlot(int slot) {
+        final int mask = keys.length - 1;
+        size--;
+
+        // shift following keys of the probe sequence back, so lookups don't need tombstones
+        int gap = slot;
+        for (int j = (gap + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            final int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = null;
+        values[gap] = null;
+    }
+
+    private void resize(int capacity) {
+        final String[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new String[capacity];
+        values = new Object[capacity];
+
+        final int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int slot(String key, int mask) {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int next = advance(0);
+
+        private int advance(int from) {
+            int i = from;
+            while (i < keys.length && keys[i] == null) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry<String, Object> entry = new SimpleImmutableEntry<>(keys[next], values[next]);
+            next = advance(next + 1);
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -22,6 +22,9 @@
  */
 package org.graylog2.plugin;
 
+import com.google.common.net.InetAddresses;
+import org.graylog2.plugin.dns.ReverseDnsResolver;
+
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 
@@ -33,6 +36,7 @@ import java.net.InetSocketAddress;
 public class ResolvableInetSocketAddress {
     private final InetSocketAddress inetSocketAddress;
     private boolean reverseLookedUp = false;
+    private String hostName;
 
     public ResolvableInetSocketAddress(InetSocketAddress inetSocketAddress) {
         this.inetSocketAddress = inetSocketAddress;
@@ -43,12 +47,39 @@ public class ResolvableInetSocketAddress {
         return new ResolvableInetSocketAddress(socketAddress);
     }
 
+    /**
+     * @deprecated Use {@link #reverseLookup(ReverseDnsResolver)}, this blocks on the name service.
+     */
+    @Deprecated
     public String reverseLookup() {
-        final String hostName = inetSocketAddress.getHostName();
+        hostName = inetSocketAddress.getHostName();
         reverseLookedUp = true;
         return hostName;
     }
 
+    /**
+     * Looks up the host name through the shared resolver without blocking.
+     *
+     * @param resolver the shared reverse DNS resolver
+     * @return the cached host name, or the IP address if it isn't known (yet). The address is only marked as reverse
+     * looked up if a host name was found.
+     */
+    public String reverseLookup(ReverseDnsResolver resolver) {
+        final InetAddress address = getAddress();
+        if (address == null) {
+            return inetSocketAddress.getHostString();
+        }
+
+        final String cachedHostName = resolver.getHostName(address);
+        if (cachedHostName == null) {
+            return InetAddresses.toAddrString(address);
+        }
+
+        hostName = cachedHostName;
+        reverseLookedUp = true;
+        return cachedHostName;
+    }
+
     public boolean isReverseLookedUp() {
         return reverseLookedUp;
     }
@@ -71,7 +102,7 @@ public class ResolvableInetSocketAddress {
 
     public String getHostName() {
         if (isReverseLookedUp()) {
-            return inetSocketAddress.getHostName();
+            return hostName;
         }
         return null;
     }
@@ -0,0 +1,206 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 Graylog, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.dns;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.net.InetAddress;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Caching reverse DNS resolver which never blocks its callers.
+ * <p>
+ * Host names are looked up asynchronously by a small dedicated thread pool. Callers get the cached host name right
+ * away, while a lookup is in flight they get nothing and have to fall back to the address itself. Addresses
+ * without a host name are cached as well, but for a shorter time. Expired entries are still returned while they are
+ * being refreshed in the background.
+ * </p>
+ */
+@Singleton
+public class ReverseDnsResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(ReverseDnsResolver.class);
+
+    private static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(5L);
+    private static final long DEFAULT_NEGATIVE_TTL = TimeUnit.MINUTES.toMillis(1L);
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final int LOOKUP_THREADS = 2;
+    private static final int MAX_PENDING_LOOKUPS = 1000;
+    // entries which couldn't be refreshed for this many TTLs are dropped
+    private static final int MAX_STALENESS = 3;
+
+    private final ReverseDnsBackend backend;
+    private final Executor executor;
+    private final Ticker ticker;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Cache<InetAddress, Entry> cache;
+    private final Set<InetAddress> inFlight = Sets.newConcurrentHashSet();
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter failures;
+    private final Meter rejected;
+    private final Timer lookupTime;
+
+    @Inject
+    public ReverseDnsResolver(ReverseDnsBackend backend, MetricRegistry metricRegistry) {
+        this(backend, metricRegistry, newExecutor(), DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_SIZE, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ReverseDnsResolver(ReverseDnsBackend backend,
+                       MetricRegistry metricRegistry,
+                       Executor executor,
+                       long ttlMillis,
+                       long negativeTtlMillis,
+                       int maxSize,
+                       Ticker ticker) {
+        this.backend = backend;
+        this.executor = executor;
+        this.ticker = ticker;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(MAX_STALENESS * Math.max(ttlMillis, negativeTtlMillis), TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+
+        this.hits = metricRegistry.meter(name(ReverseDnsResolver.class, "hits"));
+        this.misses = metricRegistry.meter(name(ReverseDnsResolver.class, "misses"));
+        this.failures = metricRegistry.meter(name(ReverseDnsResolver.class, "failures"));
+        this.rejected = metricRegistry.meter(name(ReverseDnsResolver.class, "rejected"));
+        this.lookupTime = metricRegistry.timer(name(ReverseDnsResolver.class, "lookupTime"));
+    }
+
+    private static Executor newExecutor() {
+        return new ThreadPoolExecutor(LOOKUP_THREADS, LOOKUP_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING_LOOKUPS),
+                new ThreadFactoryBuilder().setNameFormat("reverse-dns-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Returns the cached host name of the given address and schedules a lookup if there is none or it is outdated.
+     *
+     * @param address the address to resolve
+     * @return the host name, or {@code null} if it isn't known (yet)
+     */
+    @Nullable
+    public String getHostName(InetAddress address) {
+        final Entry entry = cache.getIfPresent(address);
+        if (entry == null) {
+            misses.mark();
+            scheduleLookup(address);
+            return null;
+        }
+
+        hits.mark();
+        if (ticker.read() - entry.expiresAt > 0) {
+            scheduleLookup(address);
+        }
+        return entry.hostName;
+    }
+
+    /**
+     * Like {@link #getHostName(InetAddress)}, but falls back to the textual representation of the address.
+     *
+     * @param address the address to resolve
+     * @return the host name or the textual representation of the address
+     */
+    public String resolve(InetAddress address) {
+        final String hostName = getHostName(address);
+        return hostName == null ? InetAddresses.toAddrString(address) : hostName;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private void scheduleLookup(final InetAddress address) {
+        if (!inFlight.add(address)) {
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        lookup(address);
+                    } finally {
+                        inFlight.remove(address);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // too many pending lookups, we will try again with one of the next messages
+            inFlight.remove(address);
+            rejected.mark();
+        }
+    }
+
+    private void lookup(InetAddress address) {
+        String hostName = null;
+        try (Timer.Context ignored = lookupTime.time()) {
+            hostName = backend.reverseLookup(address);
+        } catch (Exception e) {
+            LOG.debug("Reverse DNS lookup of " + address + " failed.", e);
+            failures.mark();
+        }
+
+        final long ttl = hostName == null ? negativeTtlNanos : ttlNanos;
+        cache.put(address, new Entry(hostName, ticker.read() + ttl));
+    }
+
+    private static class Entry {
+        @Nullable
+        private final String hostName;
+        private final long expiresAt;
+
+        private Entry(@Nullable String hostName, long expiresAt) {
+            this.hostName = hostName;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
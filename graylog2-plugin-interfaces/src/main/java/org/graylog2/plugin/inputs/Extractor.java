@@ -25,8 +25,6 @@ package org.graylog2.plugin.inputs;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Predicate;
-import com.google.common.collect.ComparisonChain;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.graylog2.plugin.Message;
@@ -62,6 +60,14 @@ public abstract class Extractor implements EmbeddedPersistable {
     public static final String FIELD_CONVERTER_CONFIG = "config";
     public static final ResultPredicate VALUE_NULL_PREDICATE = new ResultPredicate();
 
+    private static final Comparator<Result> END_INDEX_DESCENDING = new Comparator<Result>() {
+        @Override
+        public int compare(Result left, Result right) {
+            // reversed!
+            return Integer.compare(right.endIndex, left.endIndex);
+        }
+    };
+
     public enum Type {
         SUBSTRING,
         REGEX,
@@ -116,6 +122,8 @@ public abstract class Extractor implements EmbeddedPersistable {
 
     private final String totalTimerName;
     private final String converterTimerName;
+    private final Timer totalTimer;
+    private final Timer converterTimer;
 
     protected abstract Result[] run(String field);
 
@@ -161,32 +169,58 @@ public abstract class Extractor implements EmbeddedPersistable {
 
         this.totalTimerName = name(getClass(), getType().toString().toLowerCase(), getId(), "executionTime");
         this.converterTimerName = name(getClass(), getType().toString().toLowerCase(), getId(), "converterExecutionTime");
+        // resolve the timers once, looking them up by name for every message is too expensive
+        this.totalTimer = metricRegistry.timer(totalTimerName);
+        this.converterTimer = metricRegistry.timer(converterTimerName);
     }
 
     public void runExtractor(Message msg) {
         // We can only work on Strings.
-        if (!(msg.getField(sourceField) instanceof String)) {
+        final Object value = msg.getField(sourceField);
+        if (!(value instanceof String)) {
             return;
         }
 
-        final String field = (String) msg.getField(sourceField);
+        final String field = (String) value;
 
         // Decide if to extract at all.
-        if (conditionType.equals(ConditionType.STRING)) {
-            if (!field.contains(conditionValue)) {
-                return;
-            }
-        } else if (conditionType.equals(ConditionType.REGEX)) {
-            if (!regexConditionPattern.matcher(field).find()) {
-                return;
-            }
+        if (!conditionMatches(field)) {
+            return;
         }
 
-        final Timer.Context timerContext = metricRegistry.timer(getTotalTimerName()).time();
+        runExtractor(msg, field);
+    }
+
+    /**
+     * Checks the condition of this extractor against the given value of the source field.
+     *
+     * @param field the current value of the source field
+     * @return {@code true} if the extractor should run on the value
+     */
+    public boolean conditionMatches(String field) {
+        switch (conditionType) {
+            case STRING:
+                return field.contains(conditionValue);
+            case REGEX:
+                return regexConditionPattern.matcher(field).find();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Runs the extractor on the given value of the source field without checking the condition again. Callers must
+     * have checked {@link #conditionMatches(String)} on the same value before.
+     *
+     * @param msg   the message to extract fields into
+     * @param field the current value of the source field
+     */
+    public void runExtractor(Message msg, String field) {
+        final Timer.Context timerContext = totalTimer.time();
 
         final Result[] results = run(field);
 
-        if (results == null || results.length == 0 || FluentIterable.of(results).anyMatch(VALUE_NULL_PREDICATE)) {
+        if (results == null || results.length == 0 || containsNullValue(results)) {
             timerContext.close();
             return;
         } else if (results.length == 1 && results[0].target == null) { // results[0].target is null if this extractor cannot produce multiple fields use targetField in that case
@@ -201,13 +235,13 @@ public abstract class Extractor implements EmbeddedPersistable {
         if (cursorStrategy.equals(CursorStrategy.CUT) && !targetField.equals(sourceField) && !Message.RESERVED_FIELDS.contains(sourceField) && results[0].beginIndex != -1) {
             final StringBuilder sb = new StringBuilder(field);
 
-            final ImmutableList<Result> reverseList = FluentIterable.from(Arrays.asList(results)).toSortedList(new Comparator<Result>() {
-                @Override
-                public int compare(Result left, Result right) {
-                    // reversed!
-                    return -1 * ComparisonChain.start().compare(left.endIndex, right.endIndex).result();
-                }
-            });
+            final Result[] reverseList;
+            if (results.length == 1) {
+                reverseList = results;
+            } else {
+                reverseList = results.clone();
+                Arrays.sort(reverseList, END_INDEX_DESCENDING);
+            }
             // remove all from reverse so that the indices still match
             for (final Result result : reverseList) {
                 sb.delete(result.getBeginIndex(), result.getEndIndex());
@@ -230,8 +264,17 @@ public abstract class Extractor implements EmbeddedPersistable {
         timerContext.stop();
     }
 
+    private static boolean containsNullValue(Result[] results) {
+        for (final Result result : results) {
+            if (result.getValue() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void runConverters(Message msg) {
-        final Timer.Context timerContext = metricRegistry.timer(getConverterTimerName()).time();
+        final Timer.Context timerContext = converterTimer.time();
 
         for (Converter converter : converters) {
             try {
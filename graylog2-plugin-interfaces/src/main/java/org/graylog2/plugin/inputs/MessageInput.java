@@ -337,7 +337,7 @@ public abstract class MessageInput implements Stoppable {
 
         incomingMessages.mark();
         globalIncomingMessages.inc();
-        rawSize.mark(rawMessage.getPayload().length);
+        rawSize.mark(rawMessage.getPayloadSize());
     }
 
     public String getType() {
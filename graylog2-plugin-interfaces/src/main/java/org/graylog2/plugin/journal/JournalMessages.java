@@ -37,10 +37,18 @@ public final class JournalMessages {
 
     /**
      * <code>optional uint32 version = 1;</code>
+     *
+     * <pre>
+     * the version of the message format (used for simplifying code when deserializing messages)
+     * </pre>
      */
     boolean hasVersion();
     /**
      * <code>optional uint32 version = 1;</code>
+     *
+     * <pre>
+     * the version of the message format (used for simplifying code when deserializing messages)
+     * </pre>
      */
     int getVersion();
 
@@ -89,14 +97,26 @@ public final class JournalMessages {
 
     /**
      * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+     *
+     * <pre>
+     * which format the payload is supposed to have
+     * </pre>
      */
     boolean hasCodec();
     /**
      * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+     *
+     * <pre>
+     * which format the payload is supposed to have
+     * </pre>
      */
     org.graylog2.plugin.journal.JournalMessages.CodecInfo getCodec();
     /**
      * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+     *
+     * <pre>
+     * which format the payload is supposed to have
+     * </pre>
      */
     org.graylog2.plugin.journal.JournalMessages.CodecInfoOrBuilder getCodecOrBuilder();
 
@@ -324,12 +344,20 @@ public final class JournalMessages {
     private int version_;
     /**
      * <code>optional uint32 version = 1;</code>
+     *
+     * <pre>
+     * the version of the message format (used for simplifying code when deserializing messages)
+     * </pre>
      */
     public boolean hasVersion() {
       return ((bitField0_ & 0x00000001) == 0x00000001);
     }
     /**
      * <code>optional uint32 version = 1;</code>
+     *
+     * <pre>
+     * the version of the message format (used for simplifying code when deserializing messages)
+     * </pre>
      */
     public int getVersion() {
       return version_;
@@ -400,18 +428,30 @@ public final class JournalMessages {
     private org.graylog2.plugin.journal.JournalMessages.CodecInfo codec_;
     /**
      * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+     *
+     * <pre>
+     * which format the payload is supposed to have
+     * </pre>
      */
     public boolean hasCodec() {
       return ((bitField0_ & 0x00000010) == 0x00000010);
     }
     /**
      * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+     *
+     * <pre>
+     * which format the payload is supposed to have
+     * </pre>
      */
     public org.graylog2.plugin.journal.JournalMessages.CodecInfo getCodec() {
       return codec_;
     }
     /**
      * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+     *
+     * <pre>
+     * which format the payload is supposed to have
+     * </pre>
      */
     public org.graylog2.plugin.journal.JournalMessages.CodecInfoOrBuilder getCodecOrBuilder() {
       return codec_;
@@ -910,18 +950,30 @@ public final class JournalMessages {
       private int version_ ;
       /**
        * <code>optional uint32 version = 1;</code>
+       *
+       * <pre>
+       * the version of the message format (used for simplifying code when deserializing messages)
+       * </pre>
        */
       public boolean hasVersion() {
         return ((bitField0_ & 0x00000001) == 0x00000001);
       }
       /**
        * <code>optional uint32 version = 1;</code>
+       *
+       * <pre>
+       * the version of the message format (used for simplifying code when deserializing messages)
+       * </pre>
        */
       public int getVersion() {
         return version_;
       }
       /**
        * <code>optional uint32 version = 1;</code>
+       *
+       * <pre>
+       * the version of the message format (used for simplifying code when deserializing messages)
+       * </pre>
        */
       public Builder setVersion(int value) {
         bitField0_ |= 0x00000001;
@@ -931,6 +983,10 @@ public final class JournalMessages {
       }
       /**
        * <code>optional uint32 version = 1;</code>
+       *
+       * <pre>
+       * the version of the message format (used for simplifying code when deserializing messages)
+       * </pre>
        */
       public Builder clearVersion() {
         bitField0_ = (bitField0_ & ~0x00000001);
@@ -1072,12 +1128,20 @@ public final class JournalMessages {
           org.graylog2.plugin.journal.JournalMessages.CodecInfo, org.graylog2.plugin.journal.JournalMessages.CodecInfo.Builder, org.graylog2.plugin.journal.JournalMessages.CodecInfoOrBuilder> codecBuilder_;
       /**
        * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+       *
+       * <pre>
+       * which format the payload is supposed to have
+       * </pre>
        */
       public boolean hasCodec() {
         return ((bitField0_ & 0x00000010) == 0x00000010);
       }
       /**
        * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+       *
+       * <pre>
+       * which format the payload is supposed to have
+       * </pre>
        */
       public org.graylog2.plugin.journal.JournalMessages.CodecInfo getCodec() {
         if (codecBuilder_ == null) {
@@ -1088,6 +1152,10 @@ public final class JournalMessages {
       }
       /**
        * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+       *
+       * <pre>
+       * which format the payload is supposed to have
+       * </pre>
        */
       public Builder setCodec(org.graylog2.plugin.journal.JournalMessages.CodecInfo value) {
         if (codecBuilder_ == null) {
@@ -1104,6 +1172,10 @@ public final class JournalMessages {
       }
       /**
        * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+       *
+       * <pre>
+       * which format the payload is supposed to have
+       * </pre>
        */
       public Builder setCodec(
           org.graylog2.plugin.journal.JournalMessages.CodecInfo.Builder builderForValue) {
@@ -1118,6 +1190,10 @@ public final class JournalMessages {
       }
       /**
        * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+       *
+       * <pre>
+       * which format the payload is supposed to have
+       * </pre>
        */
       public Builder mergeCodec(org.graylog2.plugin.journal.JournalMessages.CodecInfo value) {
         if (codecBuilder_ == null) {
@@ -1137,6 +1213,10 @@ public final class JournalMessages {
       }
       /**
        * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+       *
+       * <pre>
+       * which format the payload is supposed to have
+       * </pre>
        */
       public Builder clearCodec() {
         if (codecBuilder_ == null) {
@@ -1150,6 +1230,10 @@ public final class JournalMessages {
       }
       /**
        * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+       *
+       * <pre>
+       * which format the payload is supposed to have
+       * </pre>
        */
       public org.graylog2.plugin.journal.JournalMessages.CodecInfo.Builder getCodecBuilder() {
         bitField0_ |= 0x00000010;
@@ -1158,6 +1242,10 @@ public final class JournalMessages {
       }
       /**
        * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+       *
+       * <pre>
+       * which format the payload is supposed to have
+       * </pre>
        */
       public org.graylog2.plugin.journal.JournalMessages.CodecInfoOrBuilder getCodecOrBuilder() {
         if (codecBuilder_ != null) {
@@ -1168,6 +1256,10 @@ public final class JournalMessages {
       }
       /**
        * <code>optional .org.graylog2.plugin.journal.CodecInfo codec = 5;</code>
+       *
+       * <pre>
+       * which format the payload is supposed to have
+       * </pre>
        */
       private com.google.protobuf.SingleFieldBuilder<
           org.graylog2.plugin.journal.JournalMessages.CodecInfo, org.graylog2.plugin.journal.JournalMessages.CodecInfo.Builder, org.graylog2.plugin.journal.JournalMessages.CodecInfoOrBuilder> 
@@ -1665,7 +1757,7 @@ public final class JournalMessages {
      * <code>optional bytes address = 1;</code>
      *
      * <pre>
-     * the original remote (IP) address of the message sender, unresolved
+     * the original remote (IP) address of the message sender, unresolved,
      * </pre>
      */
     boolean hasAddress();
@@ -1673,7 +1765,7 @@ public final class JournalMessages {
      * <code>optional bytes address = 1;</code>
      *
      * <pre>
-     * the original remote (IP) address of the message sender, unresolved
+     * the original remote (IP) address of the message sender, unresolved,
      * </pre>
      */
     com.google.protobuf.ByteString getAddress();
@@ -1835,7 +1927,7 @@ public final class JournalMessages {
      * <code>optional bytes address = 1;</code>
      *
      * <pre>
-     * the original remote (IP) address of the message sender, unresolved
+     * the original remote (IP) address of the message sender, unresolved,
      * </pre>
      */
     public boolean hasAddress() {
@@ -1845,7 +1937,7 @@ public final class JournalMessages {
      * <code>optional bytes address = 1;</code>
      *
      * <pre>
-     * the original remote (IP) address of the message sender, unresolved
+     * the original remote (IP) address of the message sender, unresolved,
      * </pre>
      */
     public com.google.protobuf.ByteString getAddress() {
@@ -2199,7 +2291,7 @@ public final class JournalMessages {
        * <code>optional bytes address = 1;</code>
        *
        * <pre>
-       * the original remote (IP) address of the message sender, unresolved
+       * the original remote (IP) address of the message sender, unresolved,
        * </pre>
        */
       public boolean hasAddress() {
@@ -2209,7 +2301,7 @@ public final class JournalMessages {
        * <code>optional bytes address = 1;</code>
        *
        * <pre>
-       * the original remote (IP) address of the message sender, unresolved
+       * the original remote (IP) address of the message sender, unresolved,
        * </pre>
        */
       public com.google.protobuf.ByteString getAddress() {
@@ -2219,7 +2311,7 @@ public final class JournalMessages {
        * <code>optional bytes address = 1;</code>
        *
        * <pre>
-       * the original remote (IP) address of the message sender, unresolved
+       * the original remote (IP) address of the message sender, unresolved,
        * </pre>
        */
       public Builder setAddress(com.google.protobuf.ByteString value) {
@@ -2235,7 +2327,7 @@ public final class JournalMessages {
        * <code>optional bytes address = 1;</code>
        *
        * <pre>
-       * the original remote (IP) address of the message sender, unresolved
+       * the original remote (IP) address of the message sender, unresolved,
        * </pre>
        */
       public Builder clearAddress() {
@@ -2450,6 +2542,23 @@ public final class JournalMessages {
      */
     com.google.protobuf.ByteString
         getConfigBytes();
+
+    /**
+     * <code>optional uint32 config_id = 3;</code>
+     *
+     * <pre>
+     * id of the configuration in the journal's codec config dictionary, replaces the inline config if set
+     * </pre>
+     */
+    boolean hasConfigId();
+    /**
+     * <code>optional uint32 config_id = 3;</code>
+     *
+     * <pre>
+     * id of the configuration in the journal's codec config dictionary, replaces the inline config if set
+     * </pre>
+     */
+    int getConfigId();
   }
   /**
    * Protobuf type {@code org.graylog2.plugin.journal.CodecInfo}
@@ -2515,6 +2624,11 @@ public final class JournalMessages {
               config_ = bs;
               break;
             }
+            case 24: {
+              bitField0_ |= 0x00000004;
+              configId_ = input.readUInt32();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -2654,9 +2768,33 @@ public final class JournalMessages {
       }
     }
 
+    public static final int CONFIG_ID_FIELD_NUMBER = 3;
+    private int configId_;
+    /**
+     * <code>optional uint32 config_id = 3;</code>
+     *
+     * <pre>
+     * id of the configuration in the journal's codec config dictionary, replaces the inline config if set
+     * </pre>
+     */
+    public boolean hasConfigId() {
+      return ((bitField0_ & 0x00000004) == 0x00000004);
+    }
+    /**
+     * <code>optional uint32 config_id = 3;</code>
+     *
+     * <pre>
+     * id of the configuration in the journal's codec config dictionary, replaces the inline config if set
+     * </pre>
+     */
+    public int getConfigId() {
+      return configId_;
+    }
+
     private void initFields() {
       name_ = "";
       config_ = "";
+      configId_ = 0;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -2677,6 +2815,9 @@ public final class JournalMessages {
       if (((bitField0_ & 0x00000002) == 0x00000002)) {
         output.writeBytes(2, getConfigBytes());
       }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        output.writeUInt32(3, configId_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -2694,6 +2835,10 @@ public final class JournalMessages {
         size += com.google.protobuf.CodedOutputStream
           .computeBytesSize(2, getConfigBytes());
       }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeUInt32Size(3, configId_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -2815,6 +2960,8 @@ public final class JournalMessages {
         bitField0_ = (bitField0_ & ~0x00000001);
         config_ = "";
         bitField0_ = (bitField0_ & ~0x00000002);
+        configId_ = 0;
+        bitField0_ = (bitField0_ & ~0x00000004);
         return this;
       }
 
@@ -2851,6 +2998,10 @@ public final class JournalMessages {
           to_bitField0_ |= 0x00000002;
         }
         result.config_ = config_;
+        if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          to_bitField0_ |= 0x00000004;
+        }
+        result.configId_ = configId_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -2877,6 +3028,9 @@ public final class JournalMessages {
           config_ = other.config_;
           onChanged();
         }
+        if (other.hasConfigId()) {
+          setConfigId(other.getConfigId());
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -3086,6 +3240,54 @@ public final class JournalMessages {
         return this;
       }
 
+      private int configId_ ;
+      /**
+       * <code>optional uint32 config_id = 3;</code>
+       *
+       * <pre>
+       * id of the configuration in the journal's codec config dictionary, replaces the inline config if set
+       * </pre>
+       */
+      public boolean hasConfigId() {
+        return ((bitField0_ & 0x00000004) == 0x00000004);
+      }
+      /**
+       * <code>optional uint32 config_id = 3;</code>
+       *
+       * <pre>
+       * id of the configuration in the journal's codec config dictionary, replaces the inline config if set
+       * </pre>
+       */
+      public int getConfigId() {
+        return configId_;
+      }
+      /**
+       * <code>optional uint32 config_id = 3;</code>
+       *
+       * <pre>
+       * id of the configuration in the journal's codec config dictionary, replaces the inline config if set
+       * </pre>
+       */
+      public Builder setConfigId(int value) {
+        bitField0_ |= 0x00000004;
+        configId_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional uint32 config_id = 3;</code>
+       *
+       * <pre>
+       * id of the configuration in the journal's codec config dictionary, replaces the inline config if set
+       * </pre>
+       */
+      public Builder clearConfigId() {
+        bitField0_ = (bitField0_ & ~0x00000004);
+        configId_ = 0;
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:org.graylog2.plugin.journal.CodecInfo)
     }
 
@@ -3938,13 +4140,13 @@ public final class JournalMessages {
       "*.org.graylog2.plugin.journal.RemoteAddr" +
       "ess\022\017\n\007payload\030\010 \001(\014\"@\n\rRemoteAddress\022\017\n" +
       "\007address\030\001 \001(\014\022\014\n\004port\030\002 \001(\r\022\020\n\010resolved",
-      "\030\003 \001(\t\")\n\tCodecInfo\022\014\n\004name\030\001 \001(\t\022\016\n\006con" +
-      "fig\030\002 \001(\t\"\215\001\n\nSourceNode\022\n\n\002id\030\001 \001(\t\022B\n\004" +
-      "type\030\002 \001(\0162,.org.graylog2.plugin.journal" +
-      ".SourceNode.Type:\006SERVER\022\020\n\010input_id\030\003 \001" +
-      "(\t\"\035\n\004Type\022\n\n\006SERVER\020\000\022\t\n\005RADIO\020\001B.\n\033org" +
-      ".graylog2.plugin.journalB\017JournalMessage" +
-      "s"
+      "\030\003 \001(\t\"<\n\tCodecInfo\022\014\n\004name\030\001 \001(\t\022\016\n\006con" +
+      "fig\030\002 \001(\t\022\021\n\tconfig_id\030\003 \001(\r\"\215\001\n\nSourceN" +
+      "ode\022\n\n\002id\030\001 \001(\t\022B\n\004type\030\002 \001(\0162,.org.gray" +
+      "log2.plugin.journal.SourceNode.Type:\006SER" +
+      "VER\022\020\n\010input_id\030\003 \001(\t\"\035\n\004Type\022\n\n\006SERVER\020" +
+      "\000\022\t\n\005RADIO\020\001B.\n\033org.graylog2.plugin.jour" +
+      "nalB\017JournalMessages"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
         new com.google.protobuf.Descriptors.FileDescriptor.    InternalDescriptorAssigner() {
@@ -3975,7 +4177,7 @@ public final class JournalMessages {
     internal_static_org_graylog2_plugin_journal_CodecInfo_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_org_graylog2_plugin_journal_CodecInfo_descriptor,
-        new java.lang.String[] { "Name", "Config", });
+        new java.lang.String[] { "Name", "Config", "ConfigId", });
     internal_static_org_graylog2_plugin_journal_SourceNode_descriptor =
       getDescriptor().getMessageTypes().get(3);
     internal_static_org_graylog2_plugin_journal_SourceNode_fieldAccessorTable = new
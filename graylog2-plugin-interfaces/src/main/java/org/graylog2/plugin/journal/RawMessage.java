@@ -25,6 +25,7 @@ package org.graylog2.plugin.journal;
 import com.eaio.uuid.UUID;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.UninitializedMessageException;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.Tools;
@@ -71,6 +72,10 @@ public class RawMessage implements Serializable {
     private final UUID id;
     private final long journalOffset;
     private Configuration codecConfig;
+    private String codecConfigJson;
+    private int codecConfigId;
+    // the payload is immutable, decoders request it more than once though
+    private transient byte[] payload;
 
     public RawMessage(byte[] payload) {
         this(payload, (ResolvableInetSocketAddress)null);
@@ -122,13 +127,49 @@ public class RawMessage implements Serializable {
         this.journalOffset = journalOffset;
         id = new UUID(journalMessage.getUuidTime(), journalMessage.getUuidClockseq());
         msgBuilder = JournalMessage.newBuilder(journalMessage);
-        codecConfig = Configuration.deserializeFromJson(journalMessage.getCodec().getConfig());
+        final JournalMessages.CodecInfo codec = journalMessage.getCodec();
+        if (codec.hasConfigId()) {
+            // the configuration has to be resolved by the reader of the journal, see #setCodecConfig(Configuration)
+            codecConfigId = codec.getConfigId();
+        } else {
+            // the codec configuration is only deserialized on demand, decoders usually reuse a codec with the same config
+            codecConfigJson = codec.getConfig();
+        }
     }
 
     @Nullable
     public static RawMessage decode(final byte[] buffer, final long journalOffset) {
+        return decode(CodedInputStream.newInstance(buffer), journalOffset);
+    }
+
+    /**
+     * Decodes a raw message from the given buffer without copying it first.
+     * <p>
+     * The buffer is not retained, it may be reused once this method returns.
+     * </p>
+     *
+     * @param buffer        the encoded message, from its position to its limit
+     * @param journalOffset the journal offset of the message
+     * @return the decoded raw message, or {@code null} if it could not be decoded
+     */
+    @Nullable
+    public static RawMessage decode(final ByteBuffer buffer, final long journalOffset) {
+        if (buffer.hasArray()) {
+            return decode(CodedInputStream.newInstance(buffer.array(),
+                                                       buffer.arrayOffset() + buffer.position(),
+                                                       buffer.remaining()),
+                          journalOffset);
+        }
+
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return decode(bytes, journalOffset);
+    }
+
+    @Nullable
+    private static RawMessage decode(final CodedInputStream input, final long journalOffset) {
         try {
-            final JournalMessage journalMessage = JournalMessage.parseFrom(buffer);
+            final JournalMessage journalMessage = JournalMessage.parseFrom(input);
 
             // TODO validate message based on field contents and version number
 
@@ -144,9 +185,13 @@ public class RawMessage implements Serializable {
             final JournalMessages.CodecInfo codec = msgBuilder.getCodec();
             final JournalMessages.CodecInfo.Builder builder = JournalMessages.CodecInfo.newBuilder(codec);
 
-            final String codecConfigJson = codecConfig.serializeToJson();
-            if (codecConfigJson != null) {
-                builder.setConfig(codecConfigJson);
+            if (codecConfigId > 0) {
+                builder.setConfigId(codecConfigId).clearConfig();
+            } else {
+                final String configJson = codecConfigJson != null ? codecConfigJson : codecConfig.serializeToJson();
+                if (configJson != null) {
+                    builder.setConfig(configJson);
+                }
             }
             msgBuilder.setCodec(builder.build());
 
@@ -169,7 +214,14 @@ public class RawMessage implements Serializable {
     }
 
     public byte[] getPayload() {
-        return msgBuilder.getPayload().toByteArray(); // TODO PERFORMANCE array copy
+        if (payload == null) {
+            payload = msgBuilder.getPayload().toByteArray();
+        }
+        return payload;
+    }
+
+    public int getPayloadSize() {
+        return msgBuilder.getPayload().size();
     }
 
     public UUID getId() {
@@ -227,11 +279,50 @@ public class RawMessage implements Serializable {
     }
 
     public Configuration getCodecConfig() {
+        if (codecConfig == null && codecConfigJson != null) {
+            codecConfig = Configuration.deserializeFromJson(codecConfigJson);
+        }
         return codecConfig;
     }
 
     public void setCodecConfig(Configuration codecConfig) {
         this.codecConfig = codecConfig;
+        this.codecConfigJson = null;
+    }
+
+    /**
+     * Returns the id of the codec configuration in the journal's config dictionary.
+     *
+     * @return the config id, or {@code 0} if the codec configuration is stored inline
+     */
+    public int getCodecConfigId() {
+        return codecConfigId;
+    }
+
+    /**
+     * Sets the id of the codec configuration in the journal's config dictionary. If set, {@link #encode()} only writes
+     * the id instead of the serialized configuration.
+     *
+     * @param codecConfigId the config id, {@code 0} to store the configuration inline
+     */
+    public void setCodecConfigId(int codecConfigId) {
+        checkArgument(codecConfigId >= 0, "The codec config id must not be negative!");
+        this.codecConfigId = codecConfigId;
+    }
+
+    /**
+     * Returns an object identifying the codec configuration of this message without deserializing it.
+     * <p>
+     * Two raw messages with equal fingerprints share the same codec configuration, which allows decoders to reuse
+     * codec instances. Messages read from the journal use the serialized configuration, messages handed over directly
+     * by an input use the input's {@link Configuration} instance.
+     * </p>
+     *
+     * @return the codec configuration fingerprint, or {@code null} if no codec configuration has been set
+     */
+    @Nullable
+    public Object getCodecConfigFingerprint() {
+        return codecConfigJson != null ? codecConfigJson : codecConfig;
     }
 
     public List<SourceNode> getSourceNodes() {
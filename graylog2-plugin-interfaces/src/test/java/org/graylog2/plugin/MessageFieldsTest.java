@@ -0,0 +1,96 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 Graylog, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin;
+
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MessageFieldsTest {
+    @Test
+    public void testBehavesLikeHashMap() {
+        final MessageFields fields = new MessageFields();
+        final Map<String, Object> expected = Maps.newHashMap();
+        final Random random = new Random(42L);
+
+        for (int i = 0; i < 10000; i++) {
+            final String key = "field_" + random.nextInt(200);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), fields.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), fields.put(key, i));
+            }
+            assertEquals(expected.size(), fields.size());
+        }
+
+        assertEquals(expected, fields);
+        assertEquals(expected.keySet(), fields.keySet());
+        for (String key : expected.keySet()) {
+            assertTrue(fields.containsKey(key));
+            assertEquals(expected.get(key), fields.get(key));
+        }
+    }
+
+    @Test
+    public void testNullValues() {
+        final MessageFields fields = new MessageFields();
+        fields.put("foo", null);
+
+        assertTrue(fields.containsKey("foo"));
+        assertNull(fields.get("foo"));
+        assertFalse(fields.containsKey("bar"));
+        assertEquals(1, fields.size());
+    }
+
+    @Test
+    public void testClear() {
+        final MessageFields fields = new MessageFields();
+        for (int i = 0; i < 100; i++) {
+            fields.put("field_" + i, i);
+        }
+        fields.clear();
+
+        assertTrue(fields.isEmpty());
+        assertNull(fields.get("field_1"));
+        assertFalse(fields.entrySet().iterator().hasNext());
+    }
+
+    @Test
+    public void testSymbol() {
+        final String key = new String("symbol_test");
+
+        assertSame(MessageFields.symbol("symbol_test"), MessageFields.symbol(key));
+        assertEquals("foo.bar-baz@123_", MessageFields.symbol("foo.bar-baz@123_"));
+        assertNull(MessageFields.symbol("foo bar"));
+        assertNull(MessageFields.symbol("föö"));
+        assertNull(MessageFields.symbol("foo\n"));
+    }
+}
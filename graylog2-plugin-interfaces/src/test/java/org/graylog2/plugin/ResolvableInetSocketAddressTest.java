@@ -0,0 +1,76 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 Graylog, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin;
+
+import com.google.common.net.InetAddresses;
+import org.graylog2.plugin.dns.ReverseDnsResolver;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResolvableInetSocketAddressTest {
+    private static final InetAddress ADDRESS = InetAddresses.forString("192.0.2.1");
+
+    @Mock
+    private ReverseDnsResolver resolver;
+
+    @Test
+    public void testReverseLookupUsesCachedHostName() {
+        final ResolvableInetSocketAddress address = ResolvableInetSocketAddress.wrap(new InetSocketAddress(ADDRESS, 514));
+        when(resolver.getHostName(ADDRESS)).thenReturn("example.org");
+
+        assertEquals("example.org", address.reverseLookup(resolver));
+        assertTrue(address.isReverseLookedUp());
+        assertEquals("example.org", address.getHostName());
+    }
+
+    @Test
+    public void testReverseLookupFallsBackToAddressOnCacheMiss() {
+        final ResolvableInetSocketAddress address = ResolvableInetSocketAddress.wrap(new InetSocketAddress(ADDRESS, 514));
+        when(resolver.getHostName(ADDRESS)).thenReturn(null);
+
+        assertEquals("192.0.2.1", address.reverseLookup(resolver));
+        assertFalse(address.isReverseLookedUp());
+        assertNull(address.getHostName());
+    }
+
+    @Test
+    public void testReverseLookupOfUnresolvedAddress() {
+        final ResolvableInetSocketAddress address =
+                ResolvableInetSocketAddress.wrap(InetSocketAddress.createUnresolved("example.org", 514));
+
+        assertEquals("example.org", address.reverseLookup(resolver));
+        assertFalse(address.isReverseLookedUp());
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright (c) 2012 Graylog, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.graylog2.plugin.dns;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ReverseDnsResolverTest {
+    private static final InetAddress ADDRESS = InetAddresses.forString("192.0.2.1");
+
+    private FakeBackend backend;
+    private FakeTicker ticker;
+    private MetricRegistry metricRegistry;
+
+    @Before
+    public void setUp() {
+        backend = new FakeBackend();
+        ticker = new FakeTicker();
+        metricRegistry = new MetricRegistry();
+    }
+
+    @Test
+    public void testCachesHostName() {
+        final ReverseDnsResolver resolver = resolver(MoreExecutors.directExecutor());
+        backend.hostName = "example.org";
+
+        // the first call only triggers the lookup
+        assertNull(resolver.getHostName(ADDRESS));
+        assertEquals("example.org", resolver.getHostName(ADDRESS));
+        assertEquals("example.org", resolver.resolve(ADDRESS));
+
+        assertEquals(1, backend.lookups);
+        assertEquals(1, metricRegistry.meter("org.graylog2.plugin.dns.ReverseDnsResolver.misses").getCount());
+        assertEquals(2, metricRegistry.meter("org.graylog2.plugin.dns.ReverseDnsResolver.hits").getCount());
+        assertEquals(1, metricRegistry.timer("org.graylog2.plugin.dns.ReverseDnsResolver.lookupTime").getCount());
+    }
+
+    @Test
+    public void testReturnsAddressWhileLookupIsInFlight() {
+        final List<Runnable> pending = Lists.newArrayList();
+        final ReverseDnsResolver resolver = resolver(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending.add(command);
+            }
+        });
+        backend.hostName = "example.org";
+
+        assertEquals("192.0.2.1", resolver.resolve(ADDRESS));
+        assertEquals("192.0.2.1", resolver.resolve(ADDRESS));
+        // only one lookup per address at a time
+        assertEquals(1, pending.size());
+
+        pending.get(0).run();
+        assertEquals("example.org", resolver.resolve(ADDRESS));
+    }
+
+    @Test
+    public void testNegativeCaching() {
+        final ReverseDnsResolver resolver = resolver(MoreExecutors.directExecutor());
+        backend.hostName = null;
+
+        assertNull(resolver.getHostName(ADDRESS));
+        assertNull(resolver.getHostName(ADDRESS));
+        assertEquals(1, backend.lookups);
+
+        // negative entries expire earlier
+        ticker.advance(2, TimeUnit.SECONDS);
+        backend.hostName = "example.org";
+        assertNull(resolver.getHostName(ADDRESS));
+        assertEquals(2, backend.lookups);
+        assertEquals("example.org", resolver.getHostName(ADDRESS));
+    }
+
+    @Test
+    public void testFailedLookupsAreCachedAsNegative() {
+        final ReverseDnsResolver resolver = resolver(MoreExecutors.directExecutor());
+        backend.fail = true;
+
+        assertNull(resolver.getHostName(ADDRESS));
+        assertEquals("192.0.2.1", resolver.resolve(ADDRESS));
+        assertEquals(1, backend.lookups);
+        assertEquals(1, metricRegistry.meter("org.graylog2.plugin.dns.ReverseDnsResolver.failures").getCount());
+    }
+
+    @Test
+    public void testRefreshesExpiredEntriesInBackground() {
+        final ReverseDnsResolver resolver = resolver(MoreExecutors.directExecutor());
+        backend.hostName = "old.example.org";
+        resolver.getHostName(ADDRESS);
+
+        ticker.advance(11, TimeUnit.SECONDS);
+        backend.hostName = "new.example.org";
+
+        // the outdated host name is still returned while it is being refreshed
+        assertEquals("old.example.org", resolver.getHostName(ADDRESS));
+        assertEquals("new.example.org", resolver.getHostName(ADDRESS));
+        assertEquals(2, backend.lookups);
+    }
+
+    private ReverseDnsResolver resolver(Executor executor) {
+        return new ReverseDnsResolver(backend, metricRegistry, executor, 10000L, 1000L, 100, ticker);
+    }
+
+    private static class FakeBackend implements ReverseDnsBackend {
+        private String hostName;
+        private boolean fail = false;
+        private int lookups = 0;
+
+        @Nullable
+        @Override
+        public String reverseLookup(InetAddress address) throws IOException {
+            lookups++;
+            if (fail) {
+                throw new UnknownHostException("test");
+            }
+            return hostName;
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos = 0L;
+
+        private void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+}
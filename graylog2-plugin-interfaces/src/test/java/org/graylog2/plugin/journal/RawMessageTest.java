@@ -29,10 +29,14 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class RawMessageTest {
 
@@ -54,4 +58,60 @@ public class RawMessageTest {
 
     }
 
+    @Test
+    public void decodeFromBufferSlice() throws IOException {
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(Charsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+        final byte[] encoded = rawMessage.encode();
+
+        // surround the message with garbage to make sure only the slice is read
+        final ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 8);
+        buffer.putInt(0xdeadbeef).put(encoded).putInt(0xdeadbeef);
+        buffer.position(4);
+        buffer.limit(4 + encoded.length);
+
+        final RawMessage heapMsg = RawMessage.decode(buffer.slice(), 1);
+        assertNotNull(heapMsg);
+        assertArrayEquals("testmessage".getBytes(Charsets.UTF_8), heapMsg.getPayload());
+        assertEquals(11, heapMsg.getPayloadSize());
+        assertEquals("raw", heapMsg.getCodecName());
+
+        final ByteBuffer directBuffer = ByteBuffer.allocateDirect(encoded.length);
+        directBuffer.put(encoded).flip();
+        final RawMessage directMsg = RawMessage.decode(directBuffer, 2);
+        assertNotNull(directMsg);
+        assertArrayEquals("testmessage".getBytes(Charsets.UTF_8), directMsg.getPayload());
+        assertEquals(0, directBuffer.position());
+    }
+
+    @Test
+    public void encodeDecodeWithInlineCodecConfig() throws IOException {
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(Charsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(new Configuration(Collections.<String, Object>singletonMap("foo", "bar")));
+
+        final RawMessage decodedMsg = RawMessage.decode(rawMessage.encode(), 1);
+
+        assertNotNull(decodedMsg);
+        assertEquals(0, decodedMsg.getCodecConfigId());
+        assertEquals("bar", decodedMsg.getCodecConfig().getString("foo"));
+    }
+
+    @Test
+    public void encodeDecodeWithCodecConfigId() throws IOException {
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(Charsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(new Configuration(Collections.<String, Object>singletonMap("foo", "bar")));
+        rawMessage.setCodecConfigId(23);
+
+        final byte[] encoded = rawMessage.encode();
+        final RawMessage decodedMsg = RawMessage.decode(encoded, 1);
+
+        assertNotNull(decodedMsg);
+        assertEquals(23, decodedMsg.getCodecConfigId());
+        assertFalse(JournalMessages.JournalMessage.parseFrom(encoded).getCodec().hasConfig());
+        assertNull(decodedMsg.getCodecConfig());
+    }
+
 }
@@ -50,6 +50,9 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "output_flush_interval", required = true, validator = PositiveIntegerValidator.class)
     private int outputFlushInterval = 1;
 
+    @Parameter(value = "output_max_concurrent_batches", validator = PositiveIntegerValidator.class)
+    private int outputMaxConcurrentBatches = 2;
+
     @Parameter(value = "outputbuffer_processors", required = true, validator = PositiveIntegerValidator.class)
     private int outputBufferProcessors = 3;
 
@@ -89,6 +92,18 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "allow_highlighting")
     private boolean allowHighlighting = false;
 
+    @Parameter(value = "search_export_page_size", validator = PositiveIntegerValidator.class)
+    private int searchExportPageSize = 500;
+
+    @Parameter(value = "search_export_buffered_pages", validator = PositiveIntegerValidator.class)
+    private int searchExportBufferedPages = 8;
+
+    @Parameter(value = "search_export_concurrent_indices", validator = PositiveIntegerValidator.class)
+    private int searchExportConcurrentIndices = 4;
+
+    @Parameter(value = "stream_count_rollups_enabled")
+    private boolean streamCountRollupsEnabled = true;
+
     @Parameter(value = "enable_metrics_collection")
     private boolean metricsCollectionEnabled = false;
 
@@ -154,6 +169,10 @@ public class Configuration extends BaseConfiguration {
         return outputFlushInterval;
     }
 
+    public int getOutputMaxConcurrentBatches() {
+        return outputMaxConcurrentBatches;
+    }
+
     public int getOutputBufferProcessors() {
         return outputBufferProcessors;
     }
@@ -207,6 +226,22 @@ public class Configuration extends BaseConfiguration {
         return allowHighlighting;
     }
 
+    public int getSearchExportPageSize() {
+        return searchExportPageSize;
+    }
+
+    public int getSearchExportBufferedPages() {
+        return searchExportBufferedPages;
+    }
+
+    public int getSearchExportConcurrentIndices() {
+        return searchExportConcurrentIndices;
+    }
+
+    public boolean isStreamCountRollupsEnabled() {
+        return streamCountRollupsEnabled;
+    }
+
     public boolean isMetricsCollectionEnabled() {
         return metricsCollectionEnabled;
     }
@@ -16,7 +16,6 @@
  */
 package org.graylog2.bindings;
 
-import com.google.common.io.Resources;
 import com.google.inject.AbstractModule;
 import com.google.inject.multibindings.Multibinder;
 import org.graylog2.filters.ExtractorFilter;
@@ -26,7 +25,6 @@ import org.graylog2.filters.StreamMatcherFilter;
 import org.graylog2.plugin.filters.MessageFilter;
 
 import java.net.URI;
-import java.net.URISyntaxException;
 
 public class MessageFilterBindings extends AbstractModule {
     @Override
@@ -37,13 +35,7 @@ public class MessageFilterBindings extends AbstractModule {
         messageFilters.addBinding().to(RulesFilter.class);
         messageFilters.addBinding().to(StreamMatcherFilter.class);
 
-        // built it drools rules
-        final Multibinder<URI> rulesUrls = Multibinder.newSetBinder(binder(), URI.class);
-        try {
-            final URI blacklistRulesUri = Resources.getResource("blacklist.drl").toURI();
-            rulesUrls.addBinding().toInstance(blacklistRulesUri);
-        } catch (URISyntaxException e) {
-            // Ignore
-        }
+        // built in drools rules, the blacklist is evaluated by RulesFilter itself
+        Multibinder.newSetBinder(binder(), URI.class);
     }
 }
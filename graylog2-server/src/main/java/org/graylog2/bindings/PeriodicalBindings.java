@@ -32,6 +32,7 @@ import org.graylog2.periodical.IndexRotationThread;
 import org.graylog2.periodical.IndexerClusterCheckerThread;
 import org.graylog2.periodical.NodePingThread;
 import org.graylog2.periodical.PurgeExpiredCollectorsThread;
+import org.graylog2.periodical.StreamCountRollupFlushThread;
 import org.graylog2.periodical.StreamThroughputCounterManagerThread;
 import org.graylog2.periodical.ThrottleStateUpdaterThread;
 import org.graylog2.periodical.VersionCheckThread;
@@ -58,5 +59,6 @@ public class PeriodicalBindings extends AbstractModule {
         periodicalBinder.addBinding().to(ClusterEventCleanupPeriodical.class);
         periodicalBinder.addBinding().to(ClusterIdGeneratorPeriodical.class);
         periodicalBinder.addBinding().to(PurgeExpiredCollectorsThread.class);
+        periodicalBinder.addBinding().to(StreamCountRollupFlushThread.class);
     }
 }
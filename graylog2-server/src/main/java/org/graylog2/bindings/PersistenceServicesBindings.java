@@ -29,7 +29,7 @@ import org.graylog2.indexer.IndexFailureService;
 import org.graylog2.indexer.IndexFailureServiceImpl;
 import org.graylog2.indexer.PersistedDeadLetterService;
 import org.graylog2.indexer.PersistedDeadLetterServiceImpl;
-import org.graylog2.indexer.ranges.EsIndexRangeService;
+import org.graylog2.indexer.ranges.CachingIndexRangeService;
 import org.graylog2.indexer.ranges.IndexRangeService;
 import org.graylog2.inputs.InputService;
 import org.graylog2.inputs.InputServiceImpl;
@@ -62,7 +62,7 @@ public class PersistenceServicesBindings extends AbstractModule {
         bind(PersistedDeadLetterService.class).to(PersistedDeadLetterServiceImpl.class);
         bind(IndexFailureService.class).to(IndexFailureServiceImpl.class);
         bind(NodeService.class).to(NodeServiceImpl.class);
-        bind(IndexRangeService.class).to(EsIndexRangeService.class);
+        bind(IndexRangeService.class).to(CachingIndexRangeService.class);
         bind(InputService.class).to(InputServiceImpl.class);
         bind(StreamRuleService.class).to(StreamRuleServiceImpl.class);
         bind(UserService.class).to(UserServiceImpl.class);
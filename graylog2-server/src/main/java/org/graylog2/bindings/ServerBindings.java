@@ -42,6 +42,7 @@ import org.graylog2.bindings.providers.RotationStrategyProvider;
 import org.graylog2.bindings.providers.RulesEngineProvider;
 import org.graylog2.bindings.providers.SystemJobFactoryProvider;
 import org.graylog2.bindings.providers.SystemJobManagerProvider;
+import org.graylog2.buffers.processors.OutputBufferProcessor;
 import org.graylog2.buffers.processors.ServerProcessBufferProcessor;
 import org.graylog2.bundles.BundleService;
 import org.graylog2.cluster.ClusterConfigServiceImpl;
@@ -130,6 +131,7 @@ public class ServerBindings extends Graylog2Module {
         install(new FactoryModuleBuilder().build(MessageCountAlertCondition.Factory.class));
         install(new FactoryModuleBuilder().build(FieldContentValueAlertCondition.Factory.class));
         install(new FactoryModuleBuilder().build(WidgetCacheTime.Factory.class));
+        install(new FactoryModuleBuilder().build(OutputBufferProcessor.Factory.class));
     }
 
     private void bindSingletons() {
@@ -23,6 +23,7 @@ import org.graylog2.dashboards.widgets.DashboardWidgetCreator;
 import org.graylog2.grok.GrokPatternService;
 import org.graylog2.indexer.searches.Searches;
 import org.graylog2.inputs.InputService;
+import org.graylog2.inputs.converters.ConverterFactory;
 import org.graylog2.inputs.extractors.ExtractorFactory;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.shared.inputs.InputLauncher;
@@ -40,6 +41,7 @@ public class BundleImporterProvider implements Provider<BundleImporter> {
     private final InputService inputService;
     private final InputRegistry inputRegistry;
     private final ExtractorFactory extractorFactory;
+    private final ConverterFactory converterFactory;
     private final StreamService streamService;
     private final StreamRuleService streamRuleService;
     private final OutputService outputService;
@@ -56,6 +58,7 @@ public class BundleImporterProvider implements Provider<BundleImporter> {
     public BundleImporterProvider(final InputService inputService,
                                   final InputRegistry inputRegistry,
                                   final ExtractorFactory extractorFactory,
+                                  final ConverterFactory converterFactory,
                                   final StreamService streamService,
                                   final StreamRuleService streamRuleService,
                                   final OutputService outputService,
@@ -70,6 +73,7 @@ public class BundleImporterProvider implements Provider<BundleImporter> {
         this.inputService = inputService;
         this.inputRegistry = inputRegistry;
         this.extractorFactory = extractorFactory;
+        this.converterFactory = converterFactory;
         this.streamService = streamService;
         this.streamRuleService = streamRuleService;
         this.outputService = outputService;
@@ -85,7 +89,7 @@ public class BundleImporterProvider implements Provider<BundleImporter> {
 
     @Override
     public BundleImporter get() {
-        return new BundleImporter(inputService, inputRegistry, extractorFactory,
+        return new BundleImporter(inputService, inputRegistry, extractorFactory, converterFactory,
                 streamService, streamRuleService, outputService, dashboardService,
                 dashboardRegistry, dashboardWidgetCreator, serverStatus, searches,
                 messageInputFactory, inputLauncher, grokPatternService);
@@ -35,7 +35,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import javax.inject.Provider;
 import javax.inject.Singleton;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -53,7 +52,7 @@ public class OutputBuffer extends Buffer {
 
     @Inject
     public OutputBuffer(MetricRegistry metricRegistry,
-                        Provider<OutputBufferProcessor> processorProvider,
+                        OutputBufferProcessor.Factory processorFactory,
                         @Named("outputbuffer_processors") int processorCount,
                         @Named("ring_size") int ringSize,
                         @Named("processor_wait_strategy") String waitStrategyName) {
@@ -86,10 +85,11 @@ public class OutputBuffer extends Buffer {
         final OutputBufferProcessor[] processors = new OutputBufferProcessor[processorCount];
 
         for (int i = 0; i < processorCount; i++) {
-            processors[i] = processorProvider.get();
+            processors[i] = processorFactory.create(i, processorCount);
         }
 
-        disruptor.handleEventsWithWorkerPool(processors);
+        // every processor consumes whole ring buffer batches and only handles its share of the events
+        disruptor.handleEventsWith(processors);
 
         ringBuffer = disruptor.start();
     }
@@ -17,14 +17,17 @@
 package org.graylog2.buffers.processors;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.InstrumentedExecutorService;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import com.google.common.util.concurrent.Futures;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.google.common.util.concurrent.Uninterruptibles;
-import com.lmax.disruptor.WorkHandler;
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
+import com.lmax.disruptor.EventHandler;
 import org.graylog2.Configuration;
 import org.graylog2.outputs.DefaultMessageOutput;
 import org.graylog2.outputs.OutputRouter;
@@ -36,11 +39,11 @@ import org.graylog2.plugin.outputs.MessageOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.inject.Inject;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -48,12 +51,18 @@ import java.util.concurrent.TimeUnit;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
-public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
+public class OutputBufferProcessor implements EventHandler<MessageEvent> {
 
     private static final Logger LOG = LoggerFactory.getLogger(OutputBufferProcessor.class);
 
     private static final String INCOMING_MESSAGES_METRICNAME = name(OutputBufferProcessor.class, "incomingMessages");
     private static final String PROCESS_TIME_METRICNAME = name(OutputBufferProcessor.class, "processTime");
+    private static final String BATCH_SIZE_METRICNAME = name(OutputBufferProcessor.class, "batchSize");
+
+    public interface Factory {
+        OutputBufferProcessor create(@Assisted("ordinal") int ordinal,
+                                     @Assisted("numberOfConsumers") int numberOfConsumers);
+    }
 
     private final ExecutorService executor;
 
@@ -63,20 +72,35 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
     private final Meter incomingMessages;
     private final Counter outputThroughput;
     private final Timer processTime;
+    private final Histogram batchSize;
 
     private final OutputRouter outputRouter;
     private final MessageOutput defaultMessageOutput;
 
-    @Inject
+    private final long ordinal;
+    private final long numberOfConsumers;
+    private final int maxBatchSize;
+
+    // only accessed by the event processor thread of this handler
+    private List<Message> batch;
+    private Map<MessageOutput, List<Message>> streamOutputBatches = Maps.newHashMap();
+
+    @AssistedInject
     public OutputBufferProcessor(Configuration configuration,
                                  MetricRegistry metricRegistry,
                                  ServerStatus serverStatus,
                                  OutputRouter outputRouter,
-                                 @DefaultMessageOutput MessageOutput defaultMessageOutput) {
+                                 @DefaultMessageOutput MessageOutput defaultMessageOutput,
+                                 @Assisted("ordinal") int ordinal,
+                                 @Assisted("numberOfConsumers") int numberOfConsumers) {
         this.configuration = configuration;
         this.serverStatus = serverStatus;
         this.outputRouter = outputRouter;
         this.defaultMessageOutput = defaultMessageOutput;
+        this.ordinal = ordinal;
+        this.numberOfConsumers = numberOfConsumers;
+        this.maxBatchSize = configuration.getOutputBatchSize();
+        this.batch = Lists.newArrayListWithCapacity(maxBatchSize);
 
         final String nameFormat = "outputbuffer-processor-executor-%d";
         final int corePoolSize = configuration.getOutputBufferProcessorThreadsCorePoolSize();
@@ -87,6 +111,7 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
         this.incomingMessages = metricRegistry.meter(INCOMING_MESSAGES_METRICNAME);
         this.outputThroughput = metricRegistry.counter(GlobalMetricNames.OUTPUT_THROUGHPUT);
         this.processTime = metricRegistry.timer(PROCESS_TIME_METRICNAME);
+        this.batchSize = metricRegistry.histogram(BATCH_SIZE_METRICNAME);
     }
 
     private ExecutorService executorService(final MetricRegistry metricRegistry, final String nameFormat,
@@ -100,95 +125,145 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
     }
 
     /**
-     * Each message will be written to one or more outputs.
+     * Collects the messages of this processor's share of the ring buffer and writes them to the outputs once the
+     * batch made available by the ring buffer has been consumed, or the batch reached {@code output_batch_size}.
      * <p>
-     * The default output is always being used for every message, but optionally the message can be routed to additional
-     * outputs, currently based on the stream outputs that are configured in the system.
-     * </p>
-     * <p>
-     * The stream outputs are time limited so one bad output does not impact throughput too much. Essentially this means
-     * that the work of writing to the outputs is performed, but the writer threads will not wait forever for stream
-     * outputs to finish their work. <b>This might lead to increased memory usage!</b>
-     * </p>
-     * <p>
-     * The default output, however, is allowed to block and is not subject to time limiting. This is important because it
-     * can exert back pressure on the processing pipeline this way, making sure we don't run into excessive heap usage.
+     * Every processor sees every event, but only handles the events whose sequence modulo the number of processors
+     * matches its ordinal.
      * </p>
      *
-     * @param event the message to write to outputs
+     * @param event      the message to write to outputs
+     * @param sequence   the sequence of the event in the ring buffer
+     * @param endOfBatch {@code true} if this is the last event of the batch available in the ring buffer
      * @throws Exception
      */
     @Override
-    public void onEvent(MessageEvent event) throws Exception {
-        incomingMessages.mark();
+    public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if (sequence % numberOfConsumers == ordinal) {
+            incomingMessages.mark();
 
-        final Message msg = event.getMessage();
-        if (msg == null) {
-            LOG.debug("Skipping null message.");
-            return;
+            final Message msg = event.getMessage();
+            if (msg == null) {
+                LOG.debug("Skipping null message.");
+            } else {
+                addToBatch(msg);
+            }
         }
+
+        if (!batch.isEmpty() && (endOfBatch || batch.size() >= maxBatchSize)) {
+            writeBatch();
+        }
+    }
+
+    private void addToBatch(Message msg) {
         LOG.debug("Processing message <{}> from OutputBuffer.", msg.getId());
 
         final Set<MessageOutput> messageOutputs = outputRouter.getStreamOutputsForMessage(msg);
         msg.recordCounter(serverStatus, "matched-outputs", messageOutputs.size());
 
-        final Future<?> defaultOutputCompletion = processMessage(msg, defaultMessageOutput);
-
-        final CountDownLatch streamOutputsDoneSignal = new CountDownLatch(messageOutputs.size());
-        for (final MessageOutput output : messageOutputs) {
-            processMessage(msg, output, streamOutputsDoneSignal);
+        batch.add(msg);
+        for (MessageOutput output : messageOutputs) {
+            List<Message> outputBatch = streamOutputBatches.get(output);
+            if (outputBatch == null) {
+                outputBatch = Lists.newArrayList();
+                streamOutputBatches.put(output, outputBatch);
+            }
+            outputBatch.add(msg);
         }
+    }
 
-        // Wait until all writer threads for stream outputs have finished or timeout is reached.
-        if (!streamOutputsDoneSignal.await(configuration.getOutputModuleTimeout(), TimeUnit.MILLISECONDS)) {
-            LOG.warn("Timeout reached. Not waiting any longer for stream output writer threads to complete.");
+    /**
+     * Each message of the batch will be written to one or more outputs, every output gets a single call to
+     * {@link MessageOutput#write(List)} per batch.
+     * <p>
+     * The default output is always being used for every message, but optionally the message can be routed to additional
+     * outputs, currently based on the stream outputs that are configured in the system.
+     * </p>
+     * <p>
+     * The stream outputs are time limited so one bad output does not impact throughput too much. Essentially this means
+     * that the work of writing to the outputs is performed, but the writer threads will not wait forever for stream
+     * outputs to finish their work. <b>This might lead to increased memory usage!</b>
+     * </p>
+     * <p>
+     * The default output, however, is allowed to block and is not subject to time limiting. It is written to directly
+     * from the processor thread, which exerts back pressure on the processing pipeline, making sure we don't run into
+     * excessive heap usage.
+     * </p>
+     */
+    private void writeBatch() throws InterruptedException {
+        // the lists are handed over to the outputs, start with fresh ones for the next batch
+        final List<Message> messages = batch;
+        final Map<MessageOutput, List<Message>> streamBatches = streamOutputBatches;
+        batch = Lists.newArrayListWithCapacity(maxBatchSize);
+        streamOutputBatches = Maps.newHashMap();
+
+        batchSize.update(messages.size());
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(configuration.getOutputModuleTimeout());
+
+        final CountDownLatch streamOutputsDoneSignal = new CountDownLatch(streamBatches.size());
+        for (final Map.Entry<MessageOutput, List<Message>> entry : streamBatches.entrySet()) {
+            submitMessages(entry.getValue(), entry.getKey(), streamOutputsDoneSignal);
         }
 
-        // now block until the default output has finished. most batching outputs will already been done because their
+        // block until the default output has finished. most batching outputs will be done quickly because their
         // fast path is really fast (usually an insert into a queue), but the slow flush path might block for a long time
         // this exerts the back pressure to the system
-        if (defaultOutputCompletion != null) {
-            Uninterruptibles.getUninterruptibly(defaultOutputCompletion);
-        } else {
-            LOG.error("The default output future was null, this is a bug!");
+        writeMessages(messages, defaultMessageOutput);
+
+        // Wait until all writer threads for stream outputs have finished or timeout is reached.
+        final long remaining = Math.max(0L, deadline - System.nanoTime());
+        if (!streamOutputsDoneSignal.await(remaining, TimeUnit.NANOSECONDS)) {
+            LOG.warn("Timeout reached. Not waiting any longer for stream output writer threads to complete.");
         }
 
-        if (msg.hasRecordings()) {
-            LOG.debug("Message event trace: {}", msg.recordingsAsString());
+        for (Message msg : messages) {
+            if (msg.hasRecordings()) {
+                LOG.debug("Message event trace: {}", msg.recordingsAsString());
+            }
         }
 
-        outputThroughput.inc();
+        outputThroughput.inc(messages.size());
 
-        LOG.debug("Wrote message <{}> to all outputs. Finished handling.", msg.getId());
+        LOG.debug("Wrote batch of {} messages to all outputs. Finished handling.", messages.size());
     }
 
-    private Future<?> processMessage(final Message msg, final MessageOutput defaultMessageOutput) {
-        return processMessage(msg, defaultMessageOutput, new CountDownLatch(0));
-    }
-
-    private Future<?> processMessage(final Message msg, final MessageOutput output, final CountDownLatch doneSignal) {
+    private boolean isWritable(final MessageOutput output) {
         if (output == null) {
             LOG.error("Output was null!");
-            return Futures.immediateCancelledFuture();
+            return false;
         }
         if (!output.isRunning()) {
             LOG.debug("Skipping stopped output {}", output.getClass().getName());
-            return Futures.immediateCancelledFuture();
+            return false;
+        }
+        return true;
+    }
+
+    private void writeMessages(final List<Message> messages, final MessageOutput output) {
+        if (!isWritable(output)) {
+            return;
+        }
+
+        LOG.debug("Writing {} messages to [{}].", messages.size(), output.getClass());
+        try (Timer.Context ignored = processTime.time()) {
+            output.write(messages);
+        } catch (Exception e) {
+            LOG.error("Error in output [" + output.getClass() + "].", e);
+        }
+    }
+
+    private void submitMessages(final List<Message> messages, final MessageOutput output, final CountDownLatch doneSignal) {
+        if (!isWritable(output)) {
+            doneSignal.countDown();
+            return;
         }
 
-        Future<?> future = null;
         try {
-            LOG.debug("Writing message to [{}].", output.getClass());
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Message id for [{}]: <{}>", output.getClass(), msg.getId());
-            }
-            future = executor.submit(new Runnable() {
+            executor.submit(new Runnable() {
                 @Override
                 public void run() {
-                    try (Timer.Context ignored = processTime.time()) {
-                        output.write(msg);
-                    } catch (Exception e) {
-                        LOG.error("Error in output [" + output.getClass() + "].", e);
+                    try {
+                        writeMessages(messages, output);
                     } finally {
                         doneSignal.countDown();
                     }
@@ -198,6 +273,5 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
             LOG.error("Could not write message batch to output [" + output.getClass() + "].", e);
             doneSignal.countDown();
         }
-        return future;
     }
 }
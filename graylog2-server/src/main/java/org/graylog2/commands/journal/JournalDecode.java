@@ -27,8 +27,10 @@ import io.airlift.airline.Command;
 import org.graylog2.bindings.ServerObjectMapperModule;
 import org.graylog2.inputs.codecs.CodecsModule;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.inputs.codecs.Codec;
 import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.journal.CodecConfigDictionary;
 import org.graylog2.shared.journal.Journal;
 import org.slf4j.helpers.MessageFormatter;
 
@@ -83,18 +85,28 @@ public class JournalDecode extends AbstractJournalCommand {
         final Map<String, Codec.Factory<? extends Codec>> codecFactory =
                 injector.getInstance(Key.get(new TypeLiteral<Map<String, Codec.Factory<? extends Codec>>>() {
                 }));
+        final CodecConfigDictionary codecConfigDictionary = injector.getInstance(CodecConfigDictionary.class);
 
         final Long readOffset = range.lowerEndpoint();
         final long count = range.upperEndpoint() - range.lowerEndpoint() + 1;
         final List<Journal.JournalReadEntry> entries = journal.read(readOffset,
                                                                     count);
         for (final Journal.JournalReadEntry entry : entries) {
-            final RawMessage raw = RawMessage.decode(entry.getPayload(), entry.getOffset());
+            final RawMessage raw = RawMessage.decode(entry.getPayloadBuffer(), entry.getOffset());
             if (raw == null) {
                 System.err.println(MessageFormatter.format("Journal entry at offset {} failed to decode",
                                                            entry.getOffset()));
                 continue;
             }
+            if (raw.getCodecConfigId() > 0) {
+                final Configuration codecConfig = codecConfigDictionary.get(raw.getCodecConfigId());
+                if (codecConfig == null) {
+                    System.err.println(MessageFormatter.format("Unknown codec configuration id {} at offset {}",
+                                                               raw.getCodecConfigId(), entry.getOffset()));
+                    continue;
+                }
+                raw.setCodecConfig(codecConfig);
+            }
 
             final Codec codec = codecFactory.get(raw.getCodecName()).create(raw.getCodecConfig());
             final Message message = codec.decode(raw);
@@ -58,6 +58,14 @@ public class JournalShow extends AbstractJournalCommand {
         }
         sb.append("\n");
 
+        final int numberOfPartitions = journal.getNumberOfPartitions();
+        if (numberOfPartitions > 1) {
+            sb.append("\t").append("Number of partitions: ").append(numberOfPartitions).append("\n");
+            for (int partition = 1; partition < numberOfPartitions; partition++) {
+                appendPartitionDetails(journal, partition, sb);
+            }
+        }
+
         if (showSegmentDetails) {
             appendSegmentDetails(journal, sb);
         }
@@ -67,6 +75,24 @@ public class JournalShow extends AbstractJournalCommand {
         System.out.flush();
     }
 
+    private void appendPartitionDetails(KafkaJournal journal, int partition, StringBuffer sb) {
+        final long startOffset = journal.getLogStartOffset(partition);
+        final long lastOffset = journal.getLogEndOffset(partition) - 1;
+        final long committedReadOffset = journal.getCommittedOffset(partition);
+
+        sb.append("\t\t").append("Partition ").append(partition).append("\n");
+        sb.append("\t\t\t").append("Log start offset: ").append(startOffset).append("\n");
+        sb.append("\t\t\t").append("Log end offset: ").append(lastOffset).append("\n");
+        sb.append("\t\t\t").append("Number of messages: ").append(lastOffset - startOffset + 1).append("\n");
+        sb.append("\t\t\t").append("Committed read offset: ");
+        if (committedReadOffset == Long.MIN_VALUE) {
+            sb.append("nothing committed");
+        } else {
+            sb.append(committedReadOffset);
+        }
+        sb.append("\n");
+    }
+
     private void appendSegmentDetails(KafkaJournal journal, StringBuffer sb) {
         final Iterable<LogSegment> segments = journal.getSegments();
         int i = 1;
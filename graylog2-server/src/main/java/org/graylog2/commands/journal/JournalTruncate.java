@@ -25,18 +25,25 @@ public class JournalTruncate extends AbstractJournalCommand {
     @Option(name = {"-o", "--offset"}, description = "Truncate journal up to this offset, no remaining offset will be larger than the given offset.", required = true)
     private long offset = Long.MIN_VALUE;
 
+    @Option(name = {"-p", "--partition"}, description = "Journal partition to truncate, defaults to the first partition.")
+    private int partition = 0;
+
     public JournalTruncate() {
         super("truncate-journal");
     }
 
     @Override
     protected void runCommand() {
+        if (partition < 0 || partition >= journal.getNumberOfPartitions()) {
+            System.err.println("Illegal partition " + partition + ", the journal has " + journal.getNumberOfPartitions() + " partition(s).");
+            return;
+        }
         try {
-            final long logEndOffset = journal.getLogEndOffset();
+            final long logEndOffset = journal.getLogEndOffset(partition);
             if (offset > logEndOffset) {
                 System.err.println("Truncating journal to " + offset + " has no effect as the largest offset in the log is " + (logEndOffset - 1) + ".");
             } else {
-                journal.truncateTo(offset);
+                journal.truncateTo(partition, offset);
             }
         } catch (IllegalArgumentException e) {
             System.err.println("Illegal offset value " + offset);
@@ -19,11 +19,13 @@ package org.graylog2.configuration;
 import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.converters.StringListConverter;
 import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
 import com.github.joschi.jadconfig.validators.FileReadableValidator;
 import com.github.joschi.jadconfig.validators.InetPortValidator;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.github.joschi.jadconfig.validators.PositiveLongValidator;
+import com.github.joschi.jadconfig.validators.PositiveSizeValidator;
 import org.joda.time.Period;
 
 import java.io.File;
@@ -123,6 +125,12 @@ public class ElasticsearchConfiguration {
     @Parameter(value = "elasticsearch_request_timeout", validator = PositiveDurationValidator.class)
     private Duration requestTimeout = Duration.minutes(1L);
 
+    @Parameter(value = "elasticsearch_bulk_request_max_size", validator = PositiveSizeValidator.class)
+    private Size bulkRequestMaxSize = Size.megabytes(10L);
+
+    @Parameter(value = "elasticsearch_bulk_request_max_messages", validator = PositiveIntegerValidator.class)
+    private int bulkRequestMaxMessages = 5000;
+
     public String getClusterName() {
         return clusterName;
     }
@@ -254,4 +262,12 @@ public class ElasticsearchConfiguration {
     public Duration getRequestTimeout() {
         return requestTimeout;
     }
+
+    public Size getBulkRequestMaxSize() {
+        return bulkRequestMaxSize;
+    }
+
+    public int getBulkRequestMaxMessages() {
+        return bulkRequestMaxMessages;
+    }
 }
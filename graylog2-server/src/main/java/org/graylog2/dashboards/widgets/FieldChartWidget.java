@@ -19,6 +19,7 @@ package org.graylog2.dashboards.widgets;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableMap;
 import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.searches.IncrementalHistogram;
 import org.graylog2.indexer.searches.Searches;
 import org.graylog2.indexer.searches.timeranges.TimeRange;
 import org.slf4j.Logger;
@@ -40,9 +41,11 @@ public class FieldChartWidget extends ChartWidget {
     private final String interpolation;
     private final Searches searches;
 
+    // created lazily by compute(), exported widgets are built without searches
+    private IncrementalHistogram histogram;
+
     public FieldChartWidget(MetricRegistry metricRegistry, Searches searches, String id, String description, WidgetCacheTime cacheTime, Map<String, Object> config, String query, TimeRange timeRange, String creatorUserId) throws InvalidWidgetConfigurationException {
         super(metricRegistry, Type.FIELD_CHART, id, description, cacheTime, config, creatorUserId);
-        this.searches = searches;
 
         if (!checkConfig(config)) {
             throw new InvalidWidgetConfigurationException("Missing or invalid widget configuration. Provided config was: " + config.toString());
@@ -59,6 +62,8 @@ public class FieldChartWidget extends ChartWidget {
         this.statisticalFunction = (String) config.get("valuetype");
         this.renderer = (String) config.get("renderer");
         this.interpolation = (String) config.get("interpolation");
+
+        this.searches = searches;
     }
 
     @Override
@@ -77,19 +82,22 @@ public class FieldChartWidget extends ChartWidget {
 
     @Override
     protected ComputationResult compute() {
-        String filter = null;
-        if (!isNullOrEmpty(streamId)) {
-            filter = "streams:" + streamId;
-        }
-
-        try {
-            final HistogramResult histogramResult = searches.fieldHistogram(
+        if (histogram == null) {
+            String filter = null;
+            if (!isNullOrEmpty(streamId)) {
+                filter = "streams:" + streamId;
+            }
+            histogram = searches.incrementalFieldHistogram(
                     query,
                     field,
                     Searches.DateHistogramInterval.valueOf(interval.toString().toUpperCase()),
                     filter,
                     timeRange,
                     "cardinality".equalsIgnoreCase(statisticalFunction));
+        }
+
+        try {
+            final HistogramResult histogramResult = histogram.compute();
 
             return new ComputationResult(histogramResult.getResults(), histogramResult.took().millis(), histogramResult.getHistogramBoundaries());
         } catch (Searches.FieldTypeException e) {
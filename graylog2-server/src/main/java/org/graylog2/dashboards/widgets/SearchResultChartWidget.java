@@ -19,6 +19,7 @@ package org.graylog2.dashboards.widgets;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableMap;
 import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.searches.IncrementalHistogram;
 import org.graylog2.indexer.searches.Searches;
 import org.graylog2.indexer.searches.timeranges.TimeRange;
 
@@ -30,15 +31,17 @@ public class SearchResultChartWidget extends ChartWidget {
 
     private final String query;
     private final TimeRange timeRange;
-
     private final Searches searches;
 
+    // created on the first computation, widgets built without searches (e.g. for exports) never compute
+    private IncrementalHistogram histogram;
+
     public SearchResultChartWidget(MetricRegistry metricRegistry, Searches searches, String id, String description, WidgetCacheTime cacheTime, Map<String, Object> config, String query, TimeRange timeRange, String creatorUserId) {
         super(metricRegistry, Type.SEARCH_RESULT_CHART, id, description, cacheTime, config, creatorUserId);
-        this.searches = searches;
 
         this.query = getNonEmptyQuery(query);
         this.timeRange = timeRange;
+        this.searches = searches;
     }
 
     // We need to ensure query is not empty, or the histogram calculation will fail
@@ -69,12 +72,21 @@ public class SearchResultChartWidget extends ChartWidget {
 
     @Override
     protected ComputationResult compute() {
-        String filter = null;
-        if (!isNullOrEmpty(streamId)) {
-            filter = "streams:" + streamId;
+        if (this.histogram == null) {
+            String filter = null;
+            if (!isNullOrEmpty(streamId)) {
+                filter = "streams:" + streamId;
+            }
+            this.histogram = searches.incrementalHistogram(query, interval, filter, timeRange);
         }
 
-        HistogramResult histogram = searches.histogram(query, interval, filter, timeRange);
+        final HistogramResult histogram;
+        try {
+            histogram = this.histogram.compute();
+        } catch (Searches.FieldTypeException e) {
+            // only field histograms check the field type
+            throw new IllegalStateException(e);
+        }
         return new ComputationResult(histogram.getResults(), histogram.took().millis(), histogram.getHistogramBoundaries());
     }
 }
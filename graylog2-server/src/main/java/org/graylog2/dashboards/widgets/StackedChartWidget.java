@@ -21,6 +21,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.searches.IncrementalHistogram;
 import org.graylog2.indexer.searches.Searches;
 import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
 import org.graylog2.indexer.searches.timeranges.TimeRange;
@@ -44,9 +45,11 @@ public class StackedChartWidget extends ChartWidget {
     private final TimeRange timeRange;
     private final Searches searches;
 
+    // one per series, created on the first computation
+    private List<IncrementalHistogram> histograms;
+
     public StackedChartWidget(MetricRegistry metricRegistry, Searches searches, String id, String description, WidgetCacheTime cacheTime, Map<String, Object> config, TimeRange timeRange, String creatorUserId) throws InvalidWidgetConfigurationException {
         super(metricRegistry, Type.STACKED_CHART, id, description, cacheTime, config, creatorUserId);
-        this.searches = searches;
 
         if (!checkConfig(config)) {
             throw new InvalidWidgetConfigurationException("Missing or invalid widget configuration. Provided config was: " + config.toString());
@@ -68,6 +71,8 @@ public class StackedChartWidget extends ChartWidget {
         } else {
             throw new InvalidWidgetConfigurationException("Invalid widget configuration, 'series' should be a list: " + config.toString());
         }
+
+        this.searches = searches;
     }
 
     @Override
@@ -89,9 +94,8 @@ public class StackedChartWidget extends ChartWidget {
 
     @Override
     protected ComputationResult compute() {
-        String filter = null;
-        if (!isNullOrEmpty(streamId)) {
-            filter = "streams:" + streamId;
+        if (histograms == null) {
+            histograms = createHistograms();
         }
 
         final List<Map> results = new ArrayList<>(chartSeries.size());
@@ -99,15 +103,10 @@ public class StackedChartWidget extends ChartWidget {
         DateTime to = null;
         long tookMs = 0;
 
-        for (Series series : chartSeries) {
+        for (int i = 0; i < chartSeries.size(); i++) {
+            final Series series = chartSeries.get(i);
             try {
-                final HistogramResult histogramResult = searches.fieldHistogram(
-                        series.query,
-                        series.field,
-                        Searches.DateHistogramInterval.valueOf(interval.toString().toUpperCase()),
-                        filter,
-                        timeRange,
-                        "cardinality".equalsIgnoreCase(series.statisticalFunction));
+                final HistogramResult histogramResult = histograms.get(i).compute();
 
                 if (from == null) {
                     from = histogramResult.getHistogramBoundaries().getFrom();
@@ -129,6 +128,24 @@ public class StackedChartWidget extends ChartWidget {
         return new ComputationResult(results, tookMs, computationTimeRange);
     }
 
+    private List<IncrementalHistogram> createHistograms() {
+        String filter = null;
+        if (!isNullOrEmpty(streamId)) {
+            filter = "streams:" + streamId;
+        }
+        final List<IncrementalHistogram> histograms = new ArrayList<>(chartSeries.size());
+        for (Series series : chartSeries) {
+            histograms.add(searches.incrementalFieldHistogram(
+                    series.query,
+                    series.field,
+                    Searches.DateHistogramInterval.valueOf(interval.toString().toUpperCase()),
+                    filter,
+                    timeRange,
+                    "cardinality".equalsIgnoreCase(series.statisticalFunction)));
+        }
+        return histograms;
+    }
+
     private boolean checkConfig(Map<String, Object> config) {
         return config.containsKey("renderer")
                 && config.containsKey("interpolation")
@@ -22,6 +22,7 @@ import com.google.common.collect.Lists;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.inputs.Input;
 import org.graylog2.inputs.InputService;
+import org.graylog2.inputs.extractors.ExtractorPipeline;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.filters.MessageFilter;
 import org.graylog2.plugin.inputs.Extractor;
@@ -40,7 +41,8 @@ public class ExtractorFilter implements MessageFilter {
     private static final Logger LOG = LoggerFactory.getLogger(ExtractorFilter.class);
     private static final String NAME = "Extractor";
 
-    private Cache<String, List<Extractor>> cache = CacheBuilder.newBuilder()
+    // the pipelines are rebuilt with the extractors of the input, so changes are picked up after at most a second
+    private Cache<String, ExtractorPipeline> cache = CacheBuilder.newBuilder()
             .expireAfterWrite(1, TimeUnit.SECONDS)
             .build();
 
@@ -57,23 +59,16 @@ public class ExtractorFilter implements MessageFilter {
             return false;
         }
 
-        for (final Extractor extractor : loadExtractors(msg.getSourceInputId())) {
-            try {
-                extractor.runExtractor(msg);
-            } catch (Exception e) {
-                extractor.incrementExceptions();
-                LOG.error("Could not apply extractor " + extractor.getTitle() + " (id=" + extractor.getId() + ")", e);
-            }
-        }
+        loadPipeline(msg.getSourceInputId()).run(msg);
 
         return false;
     }
 
-    private List<Extractor> loadExtractors(final String inputId) {
+    private ExtractorPipeline loadPipeline(final String inputId) {
         try {
-            return cache.get(inputId, new Callable<List<Extractor>>() {
+            return cache.get(inputId, new Callable<ExtractorPipeline>() {
                 @Override
-                public List<Extractor> call() throws Exception {
+                public ExtractorPipeline call() throws Exception {
                     LOG.debug("Re-loading extractors for input <{}> into cache.", inputId);
 
                     try {
@@ -87,16 +82,16 @@ public class ExtractorFilter implements MessageFilter {
                             }
                         });
 
-                        return sorted;
+                        return new ExtractorPipeline(sorted);
                     } catch (NotFoundException e) {
                         LOG.warn("Unable to load input: {}", e.getMessage());
-                        return Collections.emptyList();
+                        return ExtractorPipeline.EMPTY;
                     }
                 }
             });
         } catch (ExecutionException e) {
-            LOG.error("Could not load extractors into cache. Returning empty list.", e);
-            return Collections.emptyList();
+            LOG.error("Could not load extractors into cache. Returning empty pipeline.", e);
+            return ExtractorPipeline.EMPTY;
         }
     }
 
@@ -19,6 +19,7 @@ package org.graylog2.filters;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
+import org.graylog2.filters.blacklist.BlacklistMatcher;
 import org.graylog2.filters.blacklist.FilterDescription;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.RulesEngine;
@@ -26,12 +27,16 @@ import org.graylog2.plugin.filters.MessageFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Strings.isNullOrEmpty;
+
 /**
  * @author Lennart Koopmann <lennart@socketfeed.com>
  */
@@ -39,28 +44,33 @@ public class RulesFilter implements MessageFilter {
     private static final Logger LOG = LoggerFactory.getLogger(RulesFilter.class);
 
     private final FilterService filterService;
+    // only used if there are custom rules, the blacklist filters are evaluated by the BlacklistMatcher
     private final RulesEngine.RulesSession privateSession;
-    private final Cache<String, Set<FilterDescription>> cache;
+    private final Cache<String, BlacklistMatcher> cache;
     private Set<FilterDescription> currentFilterSet;
+    private BlacklistMatcher currentMatcher;
 
     @Inject
-    public RulesFilter(RulesEngine rulesEngine, final FilterService filterService) {
+    public RulesFilter(RulesEngine rulesEngine,
+                       final FilterService filterService,
+                       @Named("rules_file") @Nullable String rulesFilePath) {
         this.filterService = filterService;
 
         currentFilterSet = Sets.newHashSet();
+        currentMatcher = BlacklistMatcher.EMPTY;
         cache = CacheBuilder.newBuilder()
                 .expireAfterWrite(1, TimeUnit.SECONDS)
                 .build();
-        privateSession = rulesEngine.createPrivateSession();
+        privateSession = isNullOrEmpty(rulesFilePath) ? null : rulesEngine.createPrivateSession();
     }
 
     @Override
     public boolean filter(Message msg) {
-        final Set<FilterDescription> filters;
+        final BlacklistMatcher blacklist;
         try {
-            filters = cache.get("filters", new Callable<Set<FilterDescription>>() {
+            blacklist = cache.get("filters", new Callable<BlacklistMatcher>() {
                 @Override
-                public Set<FilterDescription> call() throws Exception {
+                public BlacklistMatcher call() throws Exception {
                     // TODO this should be improved by computing the difference between the filter sets
                     // most of the time nothing changes at all.
                     final Set<FilterDescription> newFilters = filterService.loadAll();
@@ -68,33 +78,30 @@ public class RulesFilter implements MessageFilter {
                             Sets.symmetricDifference(currentFilterSet, newFilters);
                     if (difference.isEmpty()) {
                         // there wasn't any change, simply return the current filter set
-                        LOG.debug("Filter sets are identical, not updating rules engine.");
-                        return currentFilterSet;
+                        LOG.debug("Filter sets are identical, not updating blacklist.");
+                        return currentMatcher;
                     }
 
-                    // something changed, we simply update everything, not trying to do the minimal changes yet
-                    // should this become too expensive we need to do something smarter
-                    LOG.debug("Updating rules engine, filter sets differ: {}", difference);
-                    // retract all current filter facts
-                    for (FilterDescription filterDescription : currentFilterSet) {
-                        privateSession.deleteFact(filterDescription);
-                    }
-                    // state all new filter facts
-                    for (FilterDescription filterDescription : newFilters) {
-                        privateSession.insertFact(filterDescription);
-                    }
-                    currentFilterSet.clear();
-                    // remember currently stated facts
-                    currentFilterSet.addAll(newFilters);
-                    return currentFilterSet;
+                    // something changed, we simply rebuild the matcher from all filters
+                    LOG.debug("Updating blacklist, filter sets differ: {}", difference);
+                    currentFilterSet = newFilters;
+                    currentMatcher = new BlacklistMatcher(newFilters);
+                    return currentMatcher;
                 }
             });
         } catch (ExecutionException ignored) {
             return false;
         }
 
-        // Always run the rules engine to make sure rules from the external rules file will be run.
-        privateSession.evaluate(msg, true);
+        if (blacklist.matches(msg)) {
+            msg.setFilterOut(true);
+            return true;
+        }
+
+        // Run the rules engine to make sure rules from the external rules file will be run.
+        if (privateSession != null) {
+            privateSession.evaluate(msg, true);
+        }
 
         // false if not explicitly set to true in the rules.
         return msg.getFilterOut();
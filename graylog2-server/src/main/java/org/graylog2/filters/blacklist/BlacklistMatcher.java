@@ -0,0 +1,271 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.filters.blacklist;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.net.InetAddresses;
+import com.google.common.primitives.Ints;
+import org.graylog2.plugin.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Evaluates the blacklist {@link FilterDescription filters} against messages without going through the rules engine.
+ * <p>
+ * Field equality conditions are looked up in a hash set per field, the pattern conditions of a field are combined
+ * into a single regular expression and IP address conditions are stored in a binary prefix trie. Conditions which
+ * can't be compiled this way, like IP ranges given as host names or wildcards, are evaluated one by one.
+ * </p>
+ * <p>
+ * Instances are immutable and thread-safe.
+ * </p>
+ */
+public class BlacklistMatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(BlacklistMatcher.class);
+
+    // numbered and named back references refer to the wrong group once patterns are combined
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]|\\\\k<");
+
+    public static final BlacklistMatcher EMPTY = new BlacklistMatcher(ImmutableSet.<FilterDescription>of());
+
+    private final Map<String, Set<String>> equalityValues;
+    private final Map<String, List<Pattern>> patterns;
+    private final PrefixTrie ipv4Trie = new PrefixTrie();
+    private final PrefixTrie ipv6Trie = new PrefixTrie();
+    private final List<BlacklistIpMatcherCondition> ipConditions;
+    private final boolean empty;
+
+    public BlacklistMatcher(Collection<FilterDescription> filters) {
+        final Map<String, Set<String>> equalityValues = Maps.newHashMap();
+        final Map<String, List<BlacklistPatternCondition>> patternConditions = Maps.newHashMap();
+        final ImmutableList.Builder<BlacklistIpMatcherCondition> ipConditions = ImmutableList.builder();
+
+        for (FilterDescription filter : filters) {
+            if (filter instanceof BlacklistFieldEqualityCondition) {
+                Set<String> values = equalityValues.get(filter.fieldName);
+                if (values == null) {
+                    values = Sets.newHashSet();
+                    equalityValues.put(filter.fieldName, values);
+                }
+                values.add(foldCase(filter.pattern));
+            } else if (filter instanceof BlacklistPatternCondition) {
+                List<BlacklistPatternCondition> conditions = patternConditions.get(filter.fieldName);
+                if (conditions == null) {
+                    conditions = Lists.newArrayList();
+                    patternConditions.put(filter.fieldName, conditions);
+                }
+                conditions.add((BlacklistPatternCondition) filter);
+            } else if (filter instanceof BlacklistIpMatcherCondition) {
+                if (!addToTrie(filter.pattern)) {
+                    ipConditions.add((BlacklistIpMatcherCondition) filter);
+                }
+            } else {
+                LOG.warn("Ignoring unknown blacklist filter {}", filter);
+            }
+        }
+
+        final ImmutableMap.Builder<String, List<Pattern>> patterns = ImmutableMap.builder();
+        for (Map.Entry<String, List<BlacklistPatternCondition>> entry : patternConditions.entrySet()) {
+            patterns.put(entry.getKey(), combine(entry.getValue()));
+        }
+
+        this.equalityValues = ImmutableMap.copyOf(equalityValues);
+        this.patterns = patterns.build();
+        this.ipConditions = ipConditions.build();
+        this.empty = filters.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @param msg the message to check
+     * @return {@code true} if any of the blacklist filters matches the message
+     */
+    public boolean matches(Message msg) {
+        if (empty) {
+            return false;
+        }
+
+        for (Map.Entry<String, Set<String>> entry : equalityValues.entrySet()) {
+            final Object value = msg.getField(entry.getKey());
+            if (value != null && entry.getValue().contains(foldCase(String.valueOf(value)))) {
+                return true;
+            }
+        }
+
+        for (Map.Entry<String, List<Pattern>> entry : patterns.entrySet()) {
+            // like BlacklistPatternCondition, missing fields are matched as "null"
+            final String value = String.valueOf(msg.getField(entry.getKey()));
+            for (Pattern pattern : entry.getValue()) {
+                if (pattern.matcher(value).matches()) {
+                    return true;
+                }
+            }
+        }
+
+        if (msg.getIsSourceInetAddress()) {
+            final InetAddress address = msg.getInetAddress();
+            if (address != null) {
+                final byte[] bytes = address.getAddress();
+                if ((bytes.length == 4 ? ipv4Trie : ipv6Trie).containsPrefixOf(bytes)) {
+                    return true;
+                }
+                for (BlacklistIpMatcherCondition condition : ipConditions) {
+                    if (condition.matchesInetAddress(address)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean addToTrie(String pattern) {
+        if (pattern == null) {
+            return false;
+        }
+        final String trimmed = pattern.trim();
+        final int slash = trimmed.indexOf('/');
+        final String address = slash < 0 ? trimmed : trimmed.substring(0, slash);
+        if (!InetAddresses.isInetAddress(address)) {
+            return false;
+        }
+
+        final byte[] bytes = InetAddresses.forString(address).getAddress();
+        final int maxPrefixLength = bytes.length * 8;
+        final Integer prefixLength = slash < 0 ? Integer.valueOf(maxPrefixLength) : Ints.tryParse(trimmed.substring(slash + 1));
+        if (prefixLength == null || prefixLength < 0 || prefixLength > maxPrefixLength) {
+            return false;
+        }
+
+        (bytes.length == 4 ? ipv4Trie : ipv6Trie).add(bytes, prefixLength);
+        return true;
+    }
+
+    private static List<Pattern> combine(List<BlacklistPatternCondition> conditions) {
+        final ImmutableList.Builder<Pattern> separate = ImmutableList.builder();
+        final List<String> combinable = Lists.newArrayList();
+        for (BlacklistPatternCondition condition : conditions) {
+            if (BACK_REFERENCE.matcher(condition.pattern).find()) {
+                separate.add(Pattern.compile(condition.pattern));
+            } else {
+                combinable.add(condition.pattern);
+            }
+        }
+
+        if (combinable.size() == 1) {
+            separate.add(Pattern.compile(combinable.get(0)));
+        } else if (combinable.size() > 1) {
+            final StringBuilder sb = new StringBuilder();
+            for (String pattern : combinable) {
+                if (sb.length() > 0) {
+                    sb.append('|');
+                }
+                sb.append("(?:").append(pattern).append(')');
+            }
+            try {
+                separate.add(Pattern.compile(sb.toString()));
+            } catch (PatternSyntaxException e) {
+                // e. g. duplicate group names
+                LOG.debug("Unable to combine blacklist patterns, matching them separately.", e);
+                for (String pattern : combinable) {
+                    separate.add(Pattern.compile(pattern));
+                }
+            }
+        }
+        return separate.build();
+    }
+
+    // two strings are equal ignoring case if and only if their folded forms are equal, see String#equalsIgnoreCase
+    private static String foldCase(String s) {
+        final char[] chars = new char[s.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Binary trie of address prefixes, {@code children} holds the left and right child index of every node.
+     */
+    private static final class PrefixTrie {
+        private int[] children = new int[2];
+        private boolean[] terminal = new boolean[1];
+        private int size = 1;
+
+        private void add(byte[] address, int prefixLength) {
+            int node = 0;
+            for (int bit = 0; bit < prefixLength && !terminal[node]; bit++) {
+                final int child = 2 * node + bit(address, bit);
+                if (children[child] == 0) {
+                    // newNode() might replace the children array
+                    final int newNode = newNode();
+                    children[child] = newNode;
+                }
+                node = children[child];
+            }
+            // shorter prefixes cover all longer ones, their subtrees are never visited
+            terminal[node] = true;
+        }
+
+        private boolean containsPrefixOf(byte[] address) {
+            if (size == 1 && !terminal[0]) {
+                return false;
+            }
+            int node = 0;
+            for (int bit = 0; !terminal[node]; bit++) {
+                if (bit == address.length * 8) {
+                    return false;
+                }
+                node = children[2 * node + bit(address, bit)];
+                if (node == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int newNode() {
+            if (size == terminal.length) {
+                children = Arrays.copyOf(children, 4 * size);
+                terminal = Arrays.copyOf(terminal, 2 * size);
+            }
+            return size++;
+        }
+
+        private static int bit(byte[] address, int bit) {
+            return (address[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+        }
+    }
+}
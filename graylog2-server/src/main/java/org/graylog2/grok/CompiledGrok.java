@@ -0,0 +1,190 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.grok;
+
+import com.google.common.collect.Maps;
+import oi.thekraken.grok.api.Grok;
+import oi.thekraken.grok.api.Match;
+import org.graylog2.plugin.inputs.Extractor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A grok pattern which has been expanded and compiled once, safe to be shared between threads and extractors.
+ * <p>
+ * Patterns which only use untyped captures are matched with a thread-confined {@link Matcher}, and only the named,
+ * non-null captures are returned, without building the intermediate capture maps of {@link Match}. Patterns with
+ * typed captures, e. g. {@code %{NUMBER:num;int}}, fall back to the grok library to keep its conversion semantics.
+ * </p>
+ */
+public class CompiledGrok {
+    // removed from the captures by the grok library
+    private static final String UNWANTED = "UNWANTED";
+
+    private final Grok grok;
+    private final String pattern;
+    // capture names in the order the grok library returns them and the regex group providing their values,
+    // both null if the pattern has to be matched by the grok library
+    private final String[] names;
+    private final int[] groups;
+    private final ThreadLocal<Matcher> matchers;
+
+    public CompiledGrok(final Grok grok) {
+        this.grok = grok;
+        this.pattern = grok.getOriginalGrokPattern();
+
+        final com.google.code.regexp.Pattern namedPattern = com.google.code.regexp.Pattern.compile(grok.getNamedRegex());
+        final SortedMap<String, Integer> captures = captureGroups(grok, namedPattern);
+        if (captures == null) {
+            this.names = null;
+            this.groups = null;
+            this.matchers = null;
+        } else {
+            this.names = captures.keySet().toArray(new String[captures.size()]);
+            this.groups = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                groups[i] = captures.get(names[i]);
+            }
+
+            final Pattern regex = namedPattern.pattern();
+            this.matchers = new ThreadLocal<Matcher>() {
+                @Override
+                protected Matcher initialValue() {
+                    return regex.matcher("");
+                }
+            };
+        }
+    }
+
+    /**
+     * Maps the capture names to the regex group providing the value, just like {@link Match#captures()} would.
+     *
+     * @return the capture groups sorted by name, or {@code null} if the pattern contains typed captures
+     */
+    private static SortedMap<String, Integer> captureGroups(Grok grok, com.google.code.regexp.Pattern namedPattern) {
+        final SortedMap<String, Integer> captures = Maps.newTreeMap();
+        final List<String> groupNames = namedPattern.groupNames();
+        for (final String groupName : groupNames) {
+            final String id = grok.getNamedRegexCollectionById(groupName);
+            final String name;
+            if (id == null) {
+                name = groupName;
+            } else if (!id.isEmpty()) {
+                name = id;
+            } else {
+                return null;
+            }
+            if (name.indexOf(';') != -1) {
+                return null;
+            }
+
+            // later groups with the same name overwrite the value of earlier ones, even if they didn't match
+            captures.put(name, namedPattern.indexOf(groupName) + 1);
+        }
+        captures.remove(UNWANTED);
+
+        return captures;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public boolean isMatchedNatively() {
+        return names != null;
+    }
+
+    /**
+     * Matches the pattern against the given value.
+     *
+     * @param value the value to match
+     * @return the named, non-null captures as extractor results targeting the capture name, empty if the pattern
+     * didn't match
+     */
+    public Extractor.Result[] match(String value) {
+        if (names == null) {
+            return matchWithGrok(value);
+        }
+        if (isBlank(value)) {
+            return new Extractor.Result[0];
+        }
+
+        final Matcher matcher = matchers.get().reset(value);
+        try {
+            if (!matcher.find()) {
+                return new Extractor.Result[0];
+            }
+
+            final Extractor.Result[] captures = new Extractor.Result[names.length];
+            int count = 0;
+            for (int i = 0; i < names.length; i++) {
+                final String capture = matcher.group(groups[i]);
+                if (capture != null) {
+                    captures[count++] = new Extractor.Result(cleanString(capture), names[i], -1, -1);
+                }
+            }
+
+            return count == captures.length ? captures : Arrays.copyOf(captures, count);
+        } finally {
+            // don't keep the last message alive in the thread-local matcher
+            matcher.reset("");
+        }
+    }
+
+    private Extractor.Result[] matchWithGrok(String value) {
+        final Match match = grok.match(value);
+        match.captures();
+        final Map<String, Object> matches = match.toMap();
+        final Extractor.Result[] captures = new Extractor.Result[matches.size()];
+        int count = 0;
+
+        for (final Map.Entry<String, Object> entry : matches.entrySet()) {
+            if (entry.getValue() != null) {
+                captures[count++] = new Extractor.Result(entry.getValue(), entry.getKey(), -1, -1);
+            }
+        }
+
+        return count == captures.length ? captures : Arrays.copyOf(captures, count);
+    }
+
+    private static boolean isBlank(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isWhitespace(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // same as the grok library: strip matching double or single quotes around the value
+    private static String cleanString(String value) {
+        if (value.isEmpty()) {
+            return value;
+        }
+        final char first = value.charAt(0);
+        final char last = value.charAt(value.length() - 1);
+        if ((first == '"' && last == '"') || (first == '\'' && last == '\'')) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.grok;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import oi.thekraken.grok.api.Grok;
+import oi.thekraken.grok.api.exception.GrokException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles grok patterns once per distinct pattern string and set of pattern definitions.
+ * <p>
+ * Extractors are reloaded every second, which used to expand and compile their grok pattern again every time.
+ * The compiled patterns are immutable and shared by all extractors using the same pattern.
+ * </p>
+ */
+@Singleton
+public class CompiledGrokCache {
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledGrokCache.class);
+
+    private static final int MAX_SIZE = 1000;
+
+    private final Cache<Key, CompiledGrok> cache;
+
+    @Inject
+    public CompiledGrokCache() {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_SIZE)
+                // entries of changed pattern definitions are never used again
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+    }
+
+    public CompiledGrok get(final Collection<GrokPattern> grokPatterns, final String pattern) throws GrokException {
+        final Key key = new Key(definitions(grokPatterns), pattern);
+        try {
+            return cache.get(key, new Callable<CompiledGrok>() {
+                @Override
+                public CompiledGrok call() throws Exception {
+                    LOG.debug("Compiling grok pattern {}", pattern);
+                    final Grok grok = new Grok();
+                    for (Map.Entry<String, String> definition : key.definitions.entrySet()) {
+                        grok.addPattern(definition.getKey(), definition.getValue());
+                    }
+                    grok.compile(pattern);
+                    return new CompiledGrok(grok);
+                }
+            });
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), GrokException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private static Map<String, String> definitions(Collection<GrokPattern> grokPatterns) {
+        // later definitions of the same name win, just like when adding them to a grok instance one by one
+        final Map<String, String> definitions = Maps.newHashMapWithExpectedSize(grokPatterns.size());
+        for (final GrokPattern grokPattern : grokPatterns) {
+            definitions.put(grokPattern.name, grokPattern.pattern);
+        }
+        return Collections.unmodifiableMap(definitions);
+    }
+
+    private static class Key {
+        private final Map<String, String> definitions;
+        private final String pattern;
+        private final int hashCode;
+
+        private Key(Map<String, String> definitions, String pattern) {
+            this.definitions = definitions;
+            this.pattern = pattern;
+            this.hashCode = 31 * definitions.hashCode() + Objects.hashCode(pattern);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final Key that = (Key) o;
+            return Objects.equals(this.pattern, that.pattern) && this.definitions.equals(that.definitions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.graylog2.plugin.Tools;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Set;
 
@@ -88,6 +89,16 @@ public class IndexHelper {
     public static Set<String> determineAffectedIndices(IndexRangeService indexRangeService,
                                                        Deflector deflector,
                                                        TimeRange range) {
+        return determineAffectedIndices(indexRangeService, deflector.getCurrentActualTargetIndex(), range);
+    }
+
+    /**
+     * Same as {@link #determineAffectedIndices(IndexRangeService, Deflector, TimeRange)} for callers which already
+     * looked up the current deflector target.
+     */
+    public static Set<String> determineAffectedIndices(IndexRangeService indexRangeService,
+                                                       @Nullable String targetIndex,
+                                                       TimeRange range) {
         Set<String> indices = Sets.newHashSet();
 
         for (IndexRange indexRange : indexRangeService.find(range.getFrom(), range.getTo())) {
@@ -95,7 +106,6 @@ public class IndexHelper {
         }
 
         // Always include the most recent index in some cases.
-        final String targetIndex = deflector.getCurrentActualTargetIndex();
         if (targetIndex != null && (indices.isEmpty() || range instanceof RelativeRange)) {
             indices.add(targetIndex);
         }
@@ -26,6 +26,7 @@ import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.hppc.cursors.ObjectObjectCursor;
 import org.elasticsearch.common.settings.Settings;
 import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.indices.MessageFieldCatalog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +42,7 @@ public class ClusterStateMonitor extends org.elasticsearch.common.component.Abst
 
     // Yes, this sucks, but ES and Graylog use different injectors and it's not obvious how to bridge them, so I'm using a static. Shoot me.
     private static Cluster cluster;
+    private static MessageFieldCatalog messageFieldCatalog;
 
     @org.elasticsearch.common.inject.Inject
     public ClusterStateMonitor(Settings settings, ClusterService clusterService) {
@@ -52,6 +54,10 @@ public class ClusterStateMonitor extends org.elasticsearch.common.component.Abst
         ClusterStateMonitor.cluster = cluster;
     }
 
+    public static void setMessageFieldCatalog(MessageFieldCatalog messageFieldCatalog) {
+        ClusterStateMonitor.messageFieldCatalog = messageFieldCatalog;
+    }
+
 
     @Override
     public void clusterChanged(ClusterChangedEvent event) {
@@ -63,6 +69,14 @@ public class ClusterStateMonitor extends org.elasticsearch.common.component.Abst
         if (event.state().getNodes().masterAndDataNodes().isEmpty()) {
             log.warn("No Elasticsearch data nodes in cluster, cluster is completely offline.");
         }
+        if (messageFieldCatalog != null && event.metaDataChanged()) {
+            try {
+                messageFieldCatalog.update(event.state().getMetaData());
+            } catch (Exception e) {
+                log.error("Unable to update message fields, they will be read again on the next request.", e);
+                messageFieldCatalog.invalidate();
+            }
+        }
         if (!event.nodesChanged()) {
             // ignore events that don't contain node changes, we don't need to track this now
             return;
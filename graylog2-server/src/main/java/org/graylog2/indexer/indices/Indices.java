@@ -54,9 +54,8 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.client.IndicesAdminClient;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
-import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.common.collect.UnmodifiableIterator;
-import org.elasticsearch.common.hppc.cursors.ObjectObjectCursor;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
@@ -209,29 +208,17 @@ public class Indices implements IndexManagement {
         return messageMappingResponse.isAcknowledged() && metaMappingResponse.isAcknowledged();
     }
 
-    public Set<String> getAllMessageFields() {
-        Set<String> fields = Sets.newHashSet();
-
-        ClusterStateRequest csr = new ClusterStateRequest().blocks(true).nodes(true).indices(allIndicesAlias());
-        ClusterState cs = c.admin().cluster().state(csr).actionGet().getState();
-
-        for (ObjectObjectCursor<String, IndexMetaData> m : cs.getMetaData().indices()) {
-            try {
-                MappingMetaData mmd = m.value.mapping(IndexMapping.TYPE_MESSAGE);
-                if (mmd == null) {
-                    // There is no mapping if there are no messages in the index.
-                    continue;
-                }
-                @SuppressWarnings("unchecked")
-                Map<String, Object> mapping = (Map<String, Object>) mmd.getSourceAsMap().get("properties");
-
-                fields.addAll(mapping.keySet());
-            } catch (Exception e) {
-                LOG.error("Error while trying to get fields of <" + m.index + ">", e);
-            }
-        }
-
-        return fields;
+    /**
+     * Reads the meta data of all Graylog indices from the cluster state known to this node, without asking the
+     * master node.
+     */
+    public MetaData getLocalMetaData() {
+        final ClusterStateRequest csr = new ClusterStateRequest()
+                .clear()
+                .metaData(true)
+                .local(true)
+                .indices(allIndicesAlias());
+        return c.admin().cluster().state(csr).actionGet().getState().getMetaData();
     }
 
     private IndexRequestBuilder manualIndexRequest(String index, Map<String, Object> doc, String id) {
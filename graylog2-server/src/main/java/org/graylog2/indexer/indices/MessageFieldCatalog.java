@@ -0,0 +1,172 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.indices;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.hppc.cursors.ObjectObjectCursor;
+import org.graylog2.configuration.ElasticsearchConfiguration;
+import org.graylog2.indexer.IndexMapping;
+import org.graylog2.indexer.esplugin.ClusterStateMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the names of all message fields which exist in the Graylog indices in memory.
+ * <p>
+ * The fields are read from the index mappings of the cluster state once and then updated whenever the Elasticsearch
+ * client node applies a new cluster state, see {@link ClusterStateMonitor}. Only the fields of indices with a changed
+ * message mapping are read again, e. g. of the deflector target after a rotation or after new fields were added to it.
+ * </p>
+ */
+@Singleton
+public class MessageFieldCatalog {
+    private static final Logger LOG = LoggerFactory.getLogger(MessageFieldCatalog.class);
+
+    private final Indices indices;
+    private final String indexPrefix;
+
+    // guarded by this
+    private final Map<String, IndexFields> fieldsByIndex = Maps.newHashMap();
+    private volatile Set<String> allFields = null;
+
+    @Inject
+    public MessageFieldCatalog(Indices indices, ElasticsearchConfiguration configuration) {
+        this.indices = indices;
+        this.indexPrefix = configuration.getIndexPrefix() + "_";
+        // elasticsearch and graylog2 use different injectors, see Cluster
+        ClusterStateMonitor.setMessageFieldCatalog(this);
+    }
+
+    /**
+     * @return the names of all message fields in the Graylog indices
+     */
+    public Set<String> getAllMessageFields() {
+        final Set<String> fields = allFields;
+        if (fields != null) {
+            return fields;
+        }
+
+        return load();
+    }
+
+    private synchronized Set<String> load() {
+        if (allFields == null) {
+            refresh(indices.getLocalMetaData());
+        }
+        return allFields;
+    }
+
+    /**
+     * Updates the fields of all indices whose message mapping changed in the given cluster meta data. Nothing is
+     * done until the fields have been requested for the first time, reading all mappings is up to the request then.
+     */
+    public synchronized void update(MetaData metaData) {
+        if (allFields != null) {
+            refresh(metaData);
+        }
+    }
+
+    private void refresh(MetaData metaData) {
+        boolean changed = allFields == null;
+
+        final Set<String> indexNames = Sets.newHashSetWithExpectedSize(metaData.indices().size());
+        for (ObjectObjectCursor<String, IndexMetaData> index : metaData.indices()) {
+            if (!index.key.startsWith(indexPrefix)) {
+                continue;
+            }
+            indexNames.add(index.key);
+
+            final MappingMetaData mapping = index.value.mapping(IndexMapping.TYPE_MESSAGE);
+            final IndexFields known = fieldsByIndex.get(index.key);
+            // unchanged mappings are the very same instance in the new cluster state
+            if (known != null && known.mapping == mapping) {
+                continue;
+            }
+
+            final Set<String> fields = readFields(index.key, mapping);
+            if (fields != null) {
+                fieldsByIndex.put(index.key, new IndexFields(mapping, fields));
+                changed = true;
+            }
+        }
+
+        final Iterator<String> it = fieldsByIndex.keySet().iterator();
+        while (it.hasNext()) {
+            if (!indexNames.contains(it.next())) {
+                it.remove();
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            final ImmutableSet.Builder<String> fields = ImmutableSet.builder();
+            for (IndexFields indexFields : fieldsByIndex.values()) {
+                fields.addAll(indexFields.fields);
+            }
+            allFields = fields.build();
+            LOG.debug("Updated message fields of {} indices, {} fields in total.", fieldsByIndex.size(), allFields.size());
+        }
+    }
+
+    /**
+     * Forgets all fields, they are read from the cluster state again on the next request.
+     */
+    public synchronized void invalidate() {
+        fieldsByIndex.clear();
+        allFields = null;
+    }
+
+    @Nullable
+    private static Set<String> readFields(String index, MappingMetaData mapping) {
+        if (mapping == null) {
+            // There is no mapping if there are no messages in the index.
+            return Collections.emptySet();
+        }
+
+        try {
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> properties = (Map<String, Object>) mapping.getSourceAsMap().get("properties");
+            return properties == null ? Collections.<String>emptySet() : ImmutableSet.copyOf(properties.keySet());
+        } catch (Exception e) {
+            LOG.error("Error while trying to get fields of <" + index + ">", e);
+            return null;
+        }
+    }
+
+    private static class IndexFields {
+        private final MappingMetaData mapping;
+        private final Set<String> fields;
+
+        private IndexFields(MappingMetaData mapping, Set<String> fields) {
+            this.mapping = mapping;
+            this.fields = fields;
+        }
+    }
+}
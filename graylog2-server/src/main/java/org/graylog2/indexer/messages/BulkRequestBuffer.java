@@ -0,0 +1,145 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.messages;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentGenerator;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.graylog2.indexer.IndexMapping;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.streams.Stream;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Serializes messages straight into the Elasticsearch bulk format.
+ * <p>
+ * The produced document sources are equivalent to {@link Message#toElasticSearchObject()}, but no intermediate map,
+ * timestamp string or stream id list is created. Instances are reused for many bulk requests and must only be used
+ * by a single thread at a time.
+ * </p>
+ */
+class BulkRequestBuffer {
+    private static final byte NEWLINE = '\n';
+
+    private final BytesStreamOutput output;
+    private final XContentBuilder builder;
+    private final XContentGenerator generator;
+    private final StringBuilder dateBuffer = new StringBuilder(Tools.ES_DATE_FORMAT.length());
+    private char[] dateChars = new char[Tools.ES_DATE_FORMAT.length()];
+    private int count = 0;
+
+    BulkRequestBuffer(int expectedSize) {
+        this.output = new BytesStreamOutput(expectedSize);
+        try {
+            this.builder = new XContentBuilder(JsonXContent.jsonXContent, output);
+        } catch (IOException e) {
+            // cannot happen, the builder writes to memory
+            throw new IllegalStateException(e);
+        }
+        this.generator = builder.generator();
+    }
+
+    /**
+     * Appends the index action and the document source of the given message.
+     */
+    void add(String index, Message message) throws IOException {
+        builder.startObject()
+                .startObject("index")
+                .field("_index", index)
+                .field("_type", IndexMapping.TYPE_MESSAGE)
+                .field("_id", message.getId())
+                .endObject()
+                .endObject();
+        endLine();
+
+        builder.startObject();
+        for (Map.Entry<String, Object> field : message.getFieldsEntries()) {
+            final String key = field.getKey();
+            final Object value = field.getValue();
+            if (Message.FIELD_STREAMS.equals(key)) {
+                continue;
+            }
+            if (Message.FIELD_TIMESTAMP.equals(key) && value instanceof DateTime) {
+                writeTimestamp(key, (DateTime) value);
+            } else {
+                builder.field(key, value);
+            }
+        }
+
+        // Manually converting stream ID to string - caused strange problems without it.
+        builder.startArray(Message.FIELD_STREAMS);
+        for (Stream stream : message.getStreams()) {
+            builder.value(stream.getId());
+        }
+        builder.endArray();
+        builder.endObject();
+        endLine();
+
+        count++;
+    }
+
+    private void writeTimestamp(String key, DateTime timestamp) throws IOException {
+        dateBuffer.setLength(0);
+        Tools.ES_DATE_FORMAT_FORMATTER.printTo(dateBuffer, timestamp);
+
+        final int length = dateBuffer.length();
+        if (dateChars.length < length) {
+            dateChars = new char[length];
+        }
+        dateBuffer.getChars(0, length, dateChars, 0);
+
+        generator.writeFieldName(key);
+        generator.writeString(dateChars, 0, length);
+    }
+
+    private void endLine() throws IOException {
+        builder.flush();
+        output.writeByte(NEWLINE);
+    }
+
+    /**
+     * @return the number of messages in the buffer
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return the number of bytes in the buffer
+     */
+    int size() {
+        return output.size();
+    }
+
+    /**
+     * Returns the contents of the buffer. The bytes are only valid until the buffer is {@link #reset() reset}.
+     */
+    BytesReference bytes() {
+        return output.bytes();
+    }
+
+    void reset() {
+        output.reset();
+        count = 0;
+    }
+}
@@ -17,49 +17,62 @@
 package org.graylog2.indexer.messages;
 
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.WriteConsistencyLevel;
 import org.elasticsearch.action.admin.indices.analyze.AnalyzeRequestBuilder;
 import org.elasticsearch.action.admin.indices.analyze.AnalyzeResponse;
 import org.elasticsearch.action.admin.indices.analyze.AnalyzeResponse.AnalyzeToken;
 import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
-import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.support.replication.ReplicationType;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.indices.IndexMissingException;
 import org.graylog2.configuration.ElasticsearchConfiguration;
 import org.graylog2.indexer.DeadLetter;
 import org.graylog2.indexer.Deflector;
-import org.graylog2.indexer.IndexMapping;
 import org.graylog2.indexer.results.ResultMessage;
 import org.graylog2.plugin.Message;
+import org.graylog2.streams.rollups.StreamCountRollups;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 
 @Singleton
 public class Messages {
     private static final Logger log = LoggerFactory.getLogger(Messages.class);
+    private static final int INITIAL_BULK_BUFFER_SIZE = 1024 * 1024;
 
     private final Client c;
     private final ElasticsearchConfiguration configuration;
+    private final StreamCountRollups streamCountRollups;
+    private final int bulkMaxMessages;
+    private final int bulkMaxBytes;
+    private final ThreadLocal<BulkRequestBuffer> bulkRequestBuffer;
     private LinkedBlockingQueue<List<DeadLetter>> deadLetterQueue;
 
     @Inject
-	public Messages(Client client, ElasticsearchConfiguration configuration) {
+	public Messages(Client client, ElasticsearchConfiguration configuration, StreamCountRollups streamCountRollups) {
         this.configuration = configuration;
+        this.streamCountRollups = streamCountRollups;
         this.c = client;
         this.deadLetterQueue = new LinkedBlockingQueue<>(1000);
+        this.bulkMaxMessages = configuration.getBulkRequestMaxMessages();
+        this.bulkMaxBytes = Ints.saturatedCast(configuration.getBulkRequestMaxSize().toBytes());
+        this.bulkRequestBuffer = new ThreadLocal<BulkRequestBuffer>() {
+            @Override
+            protected BulkRequestBuffer initialValue() {
+                return new BulkRequestBuffer(Math.min(bulkMaxBytes, INITIAL_BULK_BUFFER_SIZE));
+            }
+        };
     }
 
     public LinkedBlockingQueue<List<DeadLetter>> getDeadLetterQueue() {
@@ -96,24 +109,70 @@ public class Messages {
             return true;
         }
 
-        final BulkRequestBuilder request = c.prepareBulk();
-        for (Message msg : messages) {
-            request.add(buildIndexRequest(Deflector.buildName(configuration.getIndexPrefix()),
-                                          msg.toElasticSearchObject(),
-                                          msg.getId())); // Main index.
+        final String index = Deflector.buildName(configuration.getIndexPrefix());
+        final BulkRequestBuffer buffer = bulkRequestBuffer.get();
+        final List<Message> indexed = Lists.newArrayListWithCapacity(messages.size());
+        boolean success = true;
+        int from = 0;
+        try {
+            while (from < messages.size()) {
+                buffer.reset();
+                int to = from;
+                // always add at least one message, even if it exceeds the size limit on its own
+                while (to < messages.size() && buffer.count() < bulkMaxMessages
+                        && (to == from || buffer.size() < bulkMaxBytes)) {
+                    buffer.add(index, messages.get(to++));
+                }
+
+                success &= bulkIndex(buffer, messages.subList(from, to), indexed);
+                from = to;
+            }
+        } catch (IOException e) {
+            // only thrown if a message cannot be serialized
+            throw new ElasticsearchException("Unable to serialize bulk request", e);
+        } finally {
+            if (buffer.size() > 2 * bulkMaxBytes) {
+                // don't keep the memory of exceptionally large messages around
+                bulkRequestBuffer.remove();
+            }
+            buffer.reset();
+        }
+
+        // count the messages only once all bulk requests succeeded, callers retry the complete list otherwise and
+        // commit the journal offsets right after this
+        for (Message message : indexed) {
+            streamCountRollups.record(message);
         }
 
-        request.setConsistencyLevel(WriteConsistencyLevel.ONE);
+        return success;
+    }
+
+    private boolean bulkIndex(final BulkRequestBuffer buffer, final List<Message> messages, final List<Message> indexed)
+            throws IOException {
+        final BulkRequest request = new BulkRequest();
+        try {
+            request.add(buffer.bytes(), null, null);
+        } catch (Exception e) {
+            throw new IOException("Invalid bulk request", e);
+        }
+        request.consistencyLevel(WriteConsistencyLevel.ONE);
 
-        final BulkResponse response = c.bulk(request.request()).actionGet();
+        final BulkResponse response = c.bulk(request).actionGet();
 
-        log.debug("Deflector index: Bulk indexed {} messages, took {} ms, failures: {}",
-                  response.getItems().length, response.getTookInMillis(), response.hasFailures());
+        log.debug("Deflector index: Bulk indexed {} messages ({} bytes), took {} ms, failures: {}",
+                  response.getItems().length, buffer.size(), response.getTookInMillis(), response.hasFailures());
 
         if (response.hasFailures()) {
             propagateFailure(response.getItems(), messages, response.buildFailureMessage());
         }
 
+        // only count what is searchable, so the rollups match the messages in the indices
+        for (BulkItemResponse item : response.getItems()) {
+            if (!item.isFailed()) {
+                indexed.add(messages.get(item.getItemId()));
+            }
+        }
+
         return !response.hasFailures();
     }
 
@@ -137,18 +196,4 @@ public class Messages {
             log.debug("Could not propagate failure to failure queue. Queue is full.");
         }
     }
-
-    private IndexRequestBuilder buildIndexRequest(String index, Map<String, Object> source, String id) {
-        final IndexRequestBuilder b = new IndexRequestBuilder(c);
-
-        b.setId(id);
-        b.setSource(source);
-        b.setIndex(index);
-        b.setContentType(XContentType.JSON);
-        b.setOpType(IndexRequest.OpType.INDEX);
-        b.setType(IndexMapping.TYPE_MESSAGE);
-        b.setConsistencyLevel(WriteConsistencyLevel.ONE);
-
-        return b;
-    }
 }
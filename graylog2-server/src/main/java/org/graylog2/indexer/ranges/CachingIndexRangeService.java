@@ -0,0 +1,229 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.graylog2.database.NotFoundException;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * {@link IndexRangeService} keeping all index ranges in memory so the index selection of searches doesn't have to
+ * query Elasticsearch every time.
+ * <p>
+ * The ranges are loaded on first use and reloaded whenever an {@link IndexRangesUpdatedEvent} is received. These
+ * events are posted on the local and the cluster event bus by {@link RebuildIndexRangesJob} and
+ * {@link CreateNewSingleIndexRangeJob} which run after every rotation, retention run and index deletion, closing or
+ * reopening, so the ranges stay coherent across all nodes. As a safety net the ranges are reloaded after
+ * {@link #MAX_AGE_MILLIS} as well.
+ * </p>
+ */
+@Singleton
+public class CachingIndexRangeService implements IndexRangeService {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingIndexRangeService.class);
+
+    static final long MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Comparator<IndexRange> BEGIN_ASCENDING = new Comparator<IndexRange>() {
+        @Override
+        public int compare(IndexRange o1, IndexRange o2) {
+            return o1.begin().compareTo(o2.begin());
+        }
+    };
+
+    private final EsIndexRangeService delegate;
+    private final Meter hits;
+    private final Meter misses;
+
+    private volatile Snapshot snapshot = null;
+
+    @Inject
+    public CachingIndexRangeService(EsIndexRangeService delegate,
+                                    EventBus serverEventBus,
+                                    MetricRegistry metricRegistry) {
+        this.delegate = delegate;
+        this.hits = metricRegistry.meter(name(CachingIndexRangeService.class, "hits"));
+        this.misses = metricRegistry.meter(name(CachingIndexRangeService.class, "misses"));
+        metricRegistry.register(name(CachingIndexRangeService.class, "hitRate"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+            }
+        });
+
+        serverEventBus.register(this);
+    }
+
+    @Override
+    public IndexRange get(String index) throws NotFoundException {
+        final Snapshot current = snapshot();
+        final IndexRange indexRange = current.byName.get(index);
+        if (indexRange != null) {
+            hits.mark();
+            return indexRange;
+        }
+        if (current.missing.contains(index)) {
+            hits.mark();
+            throw new NotFoundException("Index [" + index + "] not found.");
+        }
+
+        misses.mark();
+        try {
+            return delegate.get(index);
+        } catch (NotFoundException e) {
+            // usually the new deflector target before its range has been calculated
+            current.missing.add(index);
+            throw e;
+        }
+    }
+
+    @Override
+    public SortedSet<IndexRange> find(DateTime begin, DateTime end) {
+        final IndexRange[] sortedByBegin = snapshot().sortedByBegin;
+        final ImmutableSortedSet.Builder<IndexRange> indexRanges = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
+        for (int i = firstBeginningAtOrAfter(sortedByBegin, begin); i < sortedByBegin.length; i++) {
+            final IndexRange indexRange = sortedByBegin[i];
+            if (indexRange.begin().isAfter(end)) {
+                break;
+            }
+            if (!indexRange.end().isAfter(end)) {
+                indexRanges.add(indexRange);
+            }
+        }
+        hits.mark();
+
+        return indexRanges.build();
+    }
+
+    private static int firstBeginningAtOrAfter(IndexRange[] sortedByBegin, DateTime begin) {
+        int low = 0;
+        int high = sortedByBegin.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sortedByBegin[mid].begin().isBefore(begin)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public SortedSet<IndexRange> findAll() {
+        final SortedSet<IndexRange> all = snapshot().all;
+        hits.mark();
+        return all;
+    }
+
+    @Override
+    public void save(IndexRange indexRange) {
+        delegate.save(indexRange);
+
+        synchronized (this) {
+            final Snapshot current = snapshot;
+            if (current != null) {
+                final Map<String, IndexRange> byName = Maps.newHashMap(current.byName);
+                byName.put(indexRange.indexName(), indexRange);
+                snapshot = new Snapshot(byName.values(), current.loadedAt);
+            }
+        }
+    }
+
+    @Override
+    public IndexRange calculateRange(String index) {
+        return delegate.calculateRange(index);
+    }
+
+    @Subscribe
+    public void handleIndexRangesUpdated(IndexRangesUpdatedEvent event) {
+        LOG.debug("Index ranges of {} have been updated, invalidating cached index ranges.", event.indices());
+        invalidate();
+    }
+
+    public synchronized void invalidate() {
+        snapshot = null;
+    }
+
+    private Snapshot snapshot() {
+        final Snapshot current = snapshot;
+        if (current != null && !current.isExpired()) {
+            return current;
+        }
+
+        return load();
+    }
+
+    private synchronized Snapshot load() {
+        final Snapshot current = snapshot;
+        if (current != null && !current.isExpired()) {
+            return current;
+        }
+
+        misses.mark();
+        final Snapshot loaded = new Snapshot(delegate.findAll(), System.currentTimeMillis());
+        LOG.debug("Loaded {} index ranges.", loaded.sortedByBegin.length);
+        snapshot = loaded;
+
+        return loaded;
+    }
+
+    private static class Snapshot {
+        private final SortedSet<IndexRange> all;
+        private final IndexRange[] sortedByBegin;
+        private final Map<String, IndexRange> byName;
+        private final Set<String> missing = Sets.newConcurrentHashSet();
+        private final long loadedAt;
+
+        private Snapshot(Collection<IndexRange> indexRanges, long loadedAt) {
+            this.all = ImmutableSortedSet.copyOf(IndexRange.COMPARATOR, indexRanges);
+            this.sortedByBegin = indexRanges.toArray(new IndexRange[indexRanges.size()]);
+            Arrays.sort(this.sortedByBegin, BEGIN_ASCENDING);
+            final ImmutableMap.Builder<String, IndexRange> byName = ImmutableMap.builder();
+            for (IndexRange indexRange : indexRanges) {
+                byName.put(indexRange.indexName(), indexRange);
+            }
+            this.byName = byName.build();
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - loadedAt > MAX_AGE_MILLIS;
+        }
+    }
+}
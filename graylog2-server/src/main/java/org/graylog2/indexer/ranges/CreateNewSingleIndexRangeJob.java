@@ -16,8 +16,11 @@
  */
 package org.graylog2.indexer.ranges;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.indexer.Deflector;
 import org.graylog2.shared.system.activities.ActivityWriter;
 import org.slf4j.Logger;
@@ -37,8 +40,10 @@ public class CreateNewSingleIndexRangeJob extends RebuildIndexRangesJob {
     public CreateNewSingleIndexRangeJob(@Assisted Deflector deflector,
                                         @Assisted String indexName,
                                         ActivityWriter activityWriter,
-                                        IndexRangeService indexRangeService) {
-        super(deflector, activityWriter, indexRangeService);
+                                        IndexRangeService indexRangeService,
+                                        EventBus serverEventBus,
+                                        @ClusterEventBus EventBus clusterEventBus) {
+        super(deflector, activityWriter, indexRangeService, serverEventBus, clusterEventBus);
         this.indexName = checkNotNull(indexName);
     }
 
@@ -59,6 +64,7 @@ public class CreateNewSingleIndexRangeJob extends RebuildIndexRangesJob {
             final IndexRange indexRange = indexRangeService.calculateRange(indexName);
             indexRangeService.save(indexRange);
             LOG.info("Created ranges for index {}.", indexName);
+            publishUpdatedRanges(ImmutableSet.of(indexName));
         } catch (Exception e) {
             LOG.error("Exception during index range calculation for index " + indexName, e);
         }
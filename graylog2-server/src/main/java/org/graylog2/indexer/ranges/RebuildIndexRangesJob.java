@@ -17,8 +17,11 @@
 package org.graylog2.indexer.ranges;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.indexer.Deflector;
 import org.graylog2.shared.system.activities.Activity;
 import org.graylog2.shared.system.activities.ActivityWriter;
@@ -26,6 +29,7 @@ import org.graylog2.system.jobs.SystemJob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 public class RebuildIndexRangesJob extends SystemJob {
@@ -43,14 +47,20 @@ public class RebuildIndexRangesJob extends SystemJob {
     protected final Deflector deflector;
     private final ActivityWriter activityWriter;
     protected final IndexRangeService indexRangeService;
+    private final EventBus serverEventBus;
+    private final EventBus clusterEventBus;
 
     @AssistedInject
     public RebuildIndexRangesJob(@Assisted Deflector deflector,
                                  ActivityWriter activityWriter,
-                                 IndexRangeService indexRangeService) {
+                                 IndexRangeService indexRangeService,
+                                 EventBus serverEventBus,
+                                 @ClusterEventBus EventBus clusterEventBus) {
         this.deflector = deflector;
         this.activityWriter = activityWriter;
         this.indexRangeService = indexRangeService;
+        this.serverEventBus = serverEventBus;
+        this.clusterEventBus = clusterEventBus;
     }
 
     @Override
@@ -77,6 +87,16 @@ public class RebuildIndexRangesJob extends SystemJob {
     public void execute() {
         info("Re-calculating index ranges.");
 
+        final Set<String> updatedIndices = Sets.newHashSet();
+        try {
+            calculateRanges(updatedIndices);
+        } finally {
+            // ranges of deleted or closed indices are gone as well, so notify even if nothing has been calculated
+            publishUpdatedRanges(updatedIndices);
+        }
+    }
+
+    private void calculateRanges(Set<String> updatedIndices) {
         String[] indices = deflector.getAllDeflectorIndexNames();
         if (indices == null || indices.length == 0) {
             info("No indices, nothing to calculate.");
@@ -95,6 +115,7 @@ public class RebuildIndexRangesJob extends SystemJob {
             try {
                 final IndexRange indexRange = indexRangeService.calculateRange(index);
                 indexRangeService.save(indexRange);
+                updatedIndices.add(index);
                 LOG.debug("Created ranges for index {}: {}", index, indexRange);
             } catch (Exception e) {
                 LOG.info("Could not calculate range of index [" + index + "]. Skipping.", e);
@@ -106,6 +127,17 @@ public class RebuildIndexRangesJob extends SystemJob {
         info("Done calculating index ranges for " + indices.length + " indices. Took " + sw.stop().elapsed(TimeUnit.MILLISECONDS) + "ms.");
     }
 
+    /**
+     * Notifies this and all other nodes about changed index ranges, e. g. to refresh their cached index ranges.
+     *
+     * @param indices the names of the indices whose ranges have been calculated
+     */
+    protected void publishUpdatedRanges(Set<String> indices) {
+        final IndexRangesUpdatedEvent event = IndexRangesUpdatedEvent.create(indices);
+        serverEventBus.post(event);
+        clusterEventBus.post(event);
+    }
+
     protected void info(String what) {
         LOG.info(what);
         activityWriter.write(new Activity(what, RebuildIndexRangesJob.class));
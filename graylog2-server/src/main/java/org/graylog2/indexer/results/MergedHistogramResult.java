@@ -0,0 +1,62 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.results;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.TimeValue;
+import org.graylog2.indexer.searches.Searches;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Histogram assembled from the buckets of several searches, see
+ * {@link org.graylog2.indexer.searches.IncrementalHistogram}.
+ */
+public class MergedHistogramResult extends HistogramResult {
+    private final Map<Long, Object> results;
+    private final Searches.DateHistogramInterval interval;
+    private final AbsoluteRange boundaries;
+
+    public MergedHistogramResult(Map<Long, Object> results,
+                                 Searches.DateHistogramInterval interval,
+                                 AbsoluteRange boundaries,
+                                 String originalQuery,
+                                 BytesReference builtQuery,
+                                 TimeValue took) {
+        super(originalQuery, builtQuery, took);
+        this.results = Collections.unmodifiableMap(results);
+        this.interval = interval;
+        this.boundaries = boundaries;
+    }
+
+    @Override
+    public Searches.DateHistogramInterval getInterval() {
+        return interval;
+    }
+
+    @Override
+    public Map<Long, Object> getResults() {
+        return results;
+    }
+
+    @Override
+    public AbsoluteRange getHistogramBoundaries() {
+        return boundaries;
+    }
+}
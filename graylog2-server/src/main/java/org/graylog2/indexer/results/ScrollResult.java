@@ -16,8 +16,11 @@
  */
 package org.graylog2.indexer.results;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import org.apache.shiro.crypto.hash.Md5Hash;
 import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -26,51 +29,101 @@ import org.elasticsearch.search.SearchHits;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Scrolls through the results of a search, reading several indices concurrently.
+ * <p>
+ * Every affected index is scrolled separately, up to {@code concurrentSlices} of them at the same time. The pages
+ * read from Elasticsearch are handed to the consumer of {@link #nextChunk()} through a queue holding at most
+ * {@code bufferedPages} pages, so the next pages are already being fetched while the current one is written to the
+ * client, but a slow client doesn't make the whole result pile up in memory.
+ * </p>
+ */
 public class ScrollResult extends IndexQueryResult {
     private static final Logger LOG = LoggerFactory.getLogger(ScrollResult.class);
 
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(5);
+    private static final Page END_OF_SLICE = new Page(Collections.<ResultMessage>emptyList(), null);
+
     private final Client client;
     private final List<String> fields;
     private final String queryHash; // used in log output only
     private final long totalHits;
 
-    private String scrollId;
+    private final int sliceCount;
+    private final Queue<SearchRequest> pendingSlices;
+    private final BlockingQueue<Page> pages;
+    private final List<String> openScrollIds = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled = false;
+
+    // only accessed by the consumer
+    private int finishedSlices = 0;
     private int chunkId = 0;
 
     public ScrollResult(Client client,
                         String originalQuery,
                         BytesReference builtQuery,
-                        SearchResponse response, List<String> fields) {
-        super(originalQuery, builtQuery, response.getTook());
+                        TimeValue took,
+                        long totalHits,
+                        List<SearchRequest> sliceRequests,
+                        List<String> fields,
+                        int bufferedPages,
+                        int concurrentSlices,
+                        Executor executor) {
+        super(originalQuery, builtQuery, took);
         this.client = client;
         this.fields = fields;
-        totalHits = response.getHits().totalHits();
-        scrollId = response.getScrollId();
+        this.totalHits = totalHits;
+        this.sliceCount = sliceRequests.size();
+        this.pendingSlices = new ConcurrentLinkedQueue<>(sliceRequests);
+        // fair, so no slice is starved while the consumer is slow
+        this.pages = new ArrayBlockingQueue<>(bufferedPages, true);
 
         final Md5Hash md5Hash = new Md5Hash(getOriginalQuery());
         queryHash = md5Hash.toHex();
 
-        LOG.debug("[{}] Starting scroll request for query {}", queryHash, getOriginalQuery());
+        LOG.debug("[{}] Starting scroll request for query {} on {} indices", queryHash, getOriginalQuery(), sliceCount);
+        for (int i = 0; i < Math.min(concurrentSlices, sliceCount); i++) {
+            executor.execute(new SliceReader());
+        }
     }
 
+    /**
+     * @return the next chunk of messages, or {@code null} if all messages have been read
+     */
     public ScrollChunk nextChunk() {
-        final SearchResponse search = client.prepareSearchScroll(scrollId)
-                .setScroll(TimeValue.timeValueMinutes(1))
-                .execute()
-                .actionGet();
-
-        final SearchHits hits = search.getHits();
-        if (hits.getHits().length == 0) {
-            // scroll exhausted
-            LOG.debug("[{}] Reached end of scroll results.", queryHash, getOriginalQuery());
-            return null;
+        while (finishedSlices < sliceCount && !cancelled) {
+            final Page page;
+            try {
+                page = pages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                return null;
+            }
+
+            if (page == END_OF_SLICE) {
+                finishedSlices++;
+            } else if (page.failure != null) {
+                cancel();
+                throw Throwables.propagate(page.failure);
+            } else {
+                return new ScrollChunk(page.messages, fields, chunkId++);
+            }
         }
-        LOG.debug("[{}] New scroll id {}", queryHash, search.getScrollId());
-        scrollId = search.getScrollId(); // save the id for the next request.
 
-        return new ScrollChunk(hits, fields, chunkId++);
+        // scroll exhausted
+        LOG.debug("[{}] Reached end of scroll results.", queryHash);
+        return null;
     }
 
     public String getQueryHash() {
@@ -82,8 +135,114 @@ public class ScrollResult extends IndexQueryResult {
     }
 
     public void cancel() {
-        final ClearScrollResponse clearScrollResponse = client.prepareClearScroll().addScrollId(scrollId).execute().actionGet();
-        LOG.debug("[{}] clearScroll for query successful: {}", queryHash, clearScrollResponse.isSucceeded());
+        cancelled = true;
+        pendingSlices.clear();
+        pages.clear();
+
+        final List<String> scrollIds = Lists.newArrayList(openScrollIds);
+        if (!scrollIds.isEmpty()) {
+            final ClearScrollResponse clearScrollResponse = client.prepareClearScroll().setScrollIds(scrollIds).execute().actionGet();
+            LOG.debug("[{}] clearScroll for query successful: {}", queryHash, clearScrollResponse.isSucceeded());
+        }
+    }
+
+    /**
+     * Reads one slice after the other until there are no more pending slices. The scroll of a slice is only opened
+     * once it is actually read, so it cannot time out while waiting for the other slices.
+     */
+    private class SliceReader implements Runnable {
+        @Override
+        public void run() {
+            SearchRequest sliceRequest;
+            while (!cancelled && (sliceRequest = pendingSlices.poll()) != null) {
+                try {
+                    readSlice(sliceRequest);
+                    put(END_OF_SLICE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    LOG.debug("[" + queryHash + "] Error while scrolling index", e);
+                    try {
+                        put(new Page(Collections.<ResultMessage>emptyList(), e));
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void readSlice(SearchRequest sliceRequest) throws InterruptedException {
+            final SearchResponse initialResponse = client.search(sliceRequest).actionGet();
+            String scrollId = initialResponse.getScrollId();
+            openScrollIds.add(scrollId);
+            boolean exhausted = false;
+            try {
+                while (!cancelled) {
+                    final SearchResponse response = client.prepareSearchScroll(scrollId)
+                            .setScroll(SCROLL_KEEP_ALIVE)
+                            .execute()
+                            .actionGet();
+                    openScrollIds.remove(scrollId);
+                    scrollId = response.getScrollId();
+                    openScrollIds.add(scrollId);
+
+                    final SearchHits hits = response.getHits();
+                    if (hits.getHits().length == 0) {
+                        exhausted = true;
+                        return;
+                    }
+                    // parse the messages here instead of the writing thread
+                    put(new Page(buildResults(hits), null));
+                }
+            } finally {
+                openScrollIds.remove(scrollId);
+                if (!exhausted) {
+                    // cancel() only clears the scrolls which were open when it was called, not the one this
+                    // reader received afterwards
+                    clearScroll(scrollId);
+                }
+            }
+        }
+
+        private void clearScroll(String scrollId) {
+            try {
+                final ClearScrollResponse clearScrollResponse = client.prepareClearScroll()
+                        .setScrollIds(Collections.singletonList(scrollId))
+                        .execute()
+                        .actionGet();
+                LOG.debug("[{}] clearScroll for slice successful: {}", queryHash, clearScrollResponse.isSucceeded());
+            } catch (Exception e) {
+                // the scroll times out eventually, don't hide why the slice stopped
+                LOG.debug("[" + queryHash + "] Couldn't clear scroll of slice", e);
+            }
+        }
+
+        private void put(Page page) throws InterruptedException {
+            final long deadline = System.nanoTime() + SCROLL_KEEP_ALIVE.nanos();
+            while (!cancelled) {
+                if (pages.offer(page, 1, TimeUnit.SECONDS)) {
+                    return;
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    // nobody consumed a page for longer than the scroll keepalive, the consumer is gone
+                    LOG.warn("[{}] Scroll result has not been read for {}, cancelling it.", queryHash, SCROLL_KEEP_ALIVE);
+                    cancel();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class Page {
+        private final List<ResultMessage> messages;
+        private final Exception failure;
+
+        private Page(List<ResultMessage> messages, Exception failure) {
+            this.messages = messages;
+            this.failure = failure;
+        }
     }
 
     public class ScrollChunk {
@@ -93,9 +252,13 @@ public class ScrollResult extends IndexQueryResult {
         private int chunkNumber;
 
         public ScrollChunk(SearchHits hits, List<String> fields, int chunkId) {
+            this(buildResults(hits), fields, chunkId);
+        }
+
+        private ScrollChunk(List<ResultMessage> resultMessages, List<String> fields, int chunkId) {
             this.fields = fields;
             this.chunkNumber = chunkId;
-            resultMessages = buildResults(hits);
+            this.resultMessages = resultMessages;
         }
 
         public List<String> getFields() {
@@ -0,0 +1,211 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.searches;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.unit.TimeValue;
+import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.results.MergedHistogramResult;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogram over a relative time range which is updated incrementally when it is computed repeatedly, e. g. by a
+ * dashboard widget.
+ * <p>
+ * Buckets which have been closed for at least {@link #SETTLE_MILLIS} are kept between computations, so only the
+ * partial first bucket of the time range and the still open buckets at its end have to be searched again. Buckets
+ * which slid out of the time range are dropped. All kept buckets are discarded once the index ranges change, e. g.
+ * after a rotation or when the retention deleted indices.
+ * </p>
+ * <p>
+ * Only relative time ranges and intervals of a fixed length (minutes, hours and days) are computed incrementally,
+ * all other histograms are searched completely every time.
+ * </p>
+ */
+public class IncrementalHistogram {
+    // late messages might still end up in recently closed buckets
+    static final long SETTLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Searches searches;
+    private final String query;
+    @Nullable
+    private final String field;
+    private final Searches.DateHistogramInterval interval;
+    @Nullable
+    private final String filter;
+    private final TimeRange range;
+    private final boolean includeCardinality;
+    private final long intervalMillis;
+
+    // closed buckets keyed by their start in seconds, all buckets before coveredTo have been searched
+    private final NavigableMap<Long, Object> closedBuckets = Maps.newTreeMap();
+    private long coveredTo = -1L;
+    private long generation = -1L;
+
+    IncrementalHistogram(Searches searches,
+                         String query,
+                         @Nullable String field,
+                         Searches.DateHistogramInterval interval,
+                         @Nullable String filter,
+                         TimeRange range,
+                         boolean includeCardinality) {
+        this.searches = searches;
+        this.query = query;
+        this.field = field;
+        this.interval = interval;
+        this.filter = filter;
+        this.range = range;
+        this.includeCardinality = includeCardinality;
+        this.intervalMillis = fixedIntervalMillis(interval);
+    }
+
+    private static long fixedIntervalMillis(Searches.DateHistogramInterval interval) {
+        switch (interval) {
+            case MINUTE:
+                return TimeUnit.MINUTES.toMillis(1);
+            case HOUR:
+                return TimeUnit.HOURS.toMillis(1);
+            case DAY:
+                return TimeUnit.DAYS.toMillis(1);
+            default:
+                return -1L;
+        }
+    }
+
+    public boolean isIncremental() {
+        return intervalMillis > 0 && range instanceof RelativeRange && ((RelativeRange) range).getRange() > 0;
+    }
+
+    /**
+     * @return the histogram of the time range as of now
+     * @throws Searches.FieldTypeException if the field of a field histogram is not numeric
+     */
+    public HistogramResult compute() throws Searches.FieldTypeException {
+        if (!isIncremental()) {
+            return search();
+        }
+
+        return compute(Tools.iso8601());
+    }
+
+    @VisibleForTesting
+    synchronized HistogramResult compute(DateTime now) throws Searches.FieldTypeException {
+        final long to = now.getMillis();
+        final long from = to - TimeUnit.SECONDS.toMillis(((RelativeRange) range).getRange());
+        final long firstFullBucket = ceil(from);
+        final long tailFrom = floor(to - SETTLE_MILLIS);
+        if (tailFrom <= firstFullBucket) {
+            // the time range doesn't contain any closed buckets
+            return search();
+        }
+
+        final long currentGeneration = searches.indexRangesGeneration();
+        if (generation != currentGeneration || coveredTo < firstFullBucket || coveredTo > tailFrom) {
+            closedBuckets.clear();
+            coveredTo = firstFullBucket;
+            generation = currentGeneration;
+        }
+        // slide out buckets which are no longer part of the time range
+        closedBuckets.headMap(seconds(firstFullBucket), false).clear();
+
+        // use the indices of the whole time range, the partial time ranges might not include the deflector target
+        final Set<String> indices = searches.determineAffectedIndices(range);
+        final Map<Long, Object> results = Maps.newTreeMap();
+        long tookMillis = 0L;
+
+        if (from < firstFullBucket) {
+            final HistogramResult head = search(indices, from, firstFullBucket - 1L);
+            putAll(results, head.getResults());
+            tookMillis += head.took().millis();
+        }
+
+        final HistogramResult tail = search(indices, coveredTo, to);
+        tookMillis += tail.took().millis();
+        for (Map.Entry<?, ?> bucket : ((Map<?, ?>) tail.getResults()).entrySet()) {
+            final Long key = (Long) bucket.getKey();
+            if (TimeUnit.SECONDS.toMillis(key) < tailFrom) {
+                closedBuckets.put(key, bucket.getValue());
+            } else {
+                results.put(key, bucket.getValue());
+            }
+        }
+        coveredTo = tailFrom;
+
+        results.putAll(closedBuckets);
+
+        return new MergedHistogramResult(
+                results,
+                interval,
+                new AbsoluteRange(new DateTime(from, DateTimeZone.UTC), new DateTime(to, DateTimeZone.UTC)),
+                query,
+                new BytesArray(tail.getBuiltQuery()),
+                new TimeValue(tookMillis));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putAll(Map<Long, Object> target, Map source) {
+        target.putAll((Map<Long, Object>) source);
+    }
+
+    private HistogramResult search() throws Searches.FieldTypeException {
+        if (field == null) {
+            return searches.histogram(query, interval, filter, range);
+        } else {
+            return searches.fieldHistogram(query, field, interval, filter, range, includeCardinality);
+        }
+    }
+
+    private HistogramResult search(Set<String> indices, long from, long to) throws Searches.FieldTypeException {
+        final AbsoluteRange partialRange = new AbsoluteRange(new DateTime(from, DateTimeZone.UTC), new DateTime(to, DateTimeZone.UTC));
+        if (field == null) {
+            return searches.histogram(indices, query, interval, filter, partialRange);
+        } else {
+            return searches.fieldHistogram(indices, query, field, interval, filter, partialRange, includeCardinality);
+        }
+    }
+
+    private long floor(long millis) {
+        return millis - (millis % intervalMillis);
+    }
+
+    private long ceil(long millis) {
+        final long floor = floor(millis);
+        return floor == millis ? millis : floor + intervalMillis;
+    }
+
+    private static long seconds(long millis) {
+        return TimeUnit.MILLISECONDS.toSeconds(millis);
+    }
+
+    @VisibleForTesting
+    int getClosedBucketCount() {
+        return closedBuckets.size();
+    }
+}
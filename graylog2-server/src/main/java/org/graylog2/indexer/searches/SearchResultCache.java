@@ -0,0 +1,270 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.searches;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.graylog2.indexer.ranges.IndexRangesUpdatedEvent;
+import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.results.TermsResult;
+import org.graylog2.indexer.results.TermsStatsResult;
+import org.graylog2.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Node-wide cache for the results of aggregating searches like counts, terms, statistics and histograms.
+ * <p>
+ * Results of relative time ranges and of time ranges which include the current deflector target are still changing
+ * and only kept for {@link #LIVE_TTL_SECONDS}, all other results are kept until the index ranges change, e. g. after a rotation or
+ * after indices have been deleted or closed on any node, or until they are evicted because the cache is full.
+ * Concurrent requests for the same result are coalesced into a single request to Elasticsearch.
+ * </p>
+ */
+@Singleton
+public class SearchResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SearchResultCache.class);
+
+    static final long LIVE_TTL_SECONDS = 5;
+    static final long HISTORIC_TTL_MINUTES = 30;
+    // roughly the number of terms or histogram buckets kept in each cache
+    static final long MAX_WEIGHT = 100_000;
+
+    private static final Weigher<Key, Object> RESULT_WEIGHER = new Weigher<Key, Object>() {
+        @Override
+        public int weigh(Key key, Object result) {
+            if (result instanceof TermsResult) {
+                return 1 + ((TermsResult) result).getTerms().size();
+            } else if (result instanceof TermsStatsResult) {
+                return 1 + ((TermsStatsResult) result).getResults().size();
+            } else if (result instanceof HistogramResult) {
+                return 1 + ((HistogramResult) result).getResults().size();
+            }
+            return 1;
+        }
+    };
+
+    private final Cache<Key, Object> liveResults;
+    private final Cache<Key, Object> historicResults;
+    private final Meter hits;
+    private final Meter misses;
+    private final AtomicLong generation = new AtomicLong();
+
+    @Inject
+    public SearchResultCache(EventBus serverEventBus, MetricRegistry metricRegistry) {
+        this.liveResults = CacheBuilder.newBuilder()
+                .maximumWeight(MAX_WEIGHT)
+                .weigher(RESULT_WEIGHER)
+                .expireAfterWrite(LIVE_TTL_SECONDS, TimeUnit.SECONDS)
+                .build();
+        this.historicResults = CacheBuilder.newBuilder()
+                .maximumWeight(MAX_WEIGHT)
+                .weigher(RESULT_WEIGHER)
+                .expireAfterAccess(HISTORIC_TTL_MINUTES, TimeUnit.MINUTES)
+                .build();
+        this.hits = metricRegistry.meter(name(SearchResultCache.class, "hits"));
+        this.misses = metricRegistry.meter(name(SearchResultCache.class, "misses"));
+
+        serverEventBus.register(this);
+    }
+
+    /**
+     * Returns the cached result for the given key.
+     *
+     * @param key the key of the search
+     * @return the cached result or {@code null} if there is none
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T getIfPresent(Key key) {
+        Object result = liveResults.getIfPresent(key);
+        if (result == null) {
+            result = historicResults.getIfPresent(key);
+        }
+        if (result != null) {
+            hits.mark();
+        }
+
+        return (T) result;
+    }
+
+    /**
+     * Returns the cached result for the given key, running the search if necessary. Concurrent calls for the same
+     * key wait for the search of the first caller instead of running it again.
+     *
+     * @param key           the key of the search
+     * @param live          whether the result of the search is still changing, e. g. because it includes the current deflector
+     *                      target or uses a relative time range
+     * @param search        the actual search
+     * @param exceptionType the checked exception thrown by the search, {@link RuntimeException} if there is none
+     * @return the result of the search
+     * @throws E if the search failed
+     */
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T get(Key key,
+                                                  boolean live,
+                                                  final Callable<T> search,
+                                                  Class<E> exceptionType) throws E {
+        final Cache<Key, Object> cache = live ? liveResults : historicResults;
+        try {
+            return (T) cache.get(key, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    misses.mark();
+                    return search.call();
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            final Throwable cause = e.getCause();
+            Throwables.propagateIfPossible(cause, exceptionType);
+            throw Throwables.propagate(cause);
+        }
+    }
+
+    @Subscribe
+    public void handleIndexRangesUpdated(IndexRangesUpdatedEvent event) {
+        LOG.debug("Index ranges of {} have been updated, invalidating cached search results.", event.indices());
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        liveResults.invalidateAll();
+        historicResults.invalidateAll();
+    }
+
+    /**
+     * @return a counter which changes whenever the cached results have been invalidated
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public long size() {
+        return liveResults.size() + historicResults.size();
+    }
+
+    /**
+     * Identifies a search by its type, its normalized parameters and its time range.
+     */
+    public static class Key {
+        private final String type;
+        private final List<Object> range;
+        private final List<Object> parameters;
+        private final int hashCode;
+
+        private Key(String type, List<Object> range, List<Object> parameters) {
+            this.type = type;
+            this.range = range;
+            this.parameters = parameters;
+            this.hashCode = Objects.hash(type, range, parameters);
+        }
+
+        /**
+         * Builds the key of a search.
+         * <p>
+         * Relative time ranges are identified by their length, so searches for e. g. the last five minutes share
+         * their (live) result. All other time ranges are identified by their actual bounds at the time of the search.
+         * </p>
+         *
+         * @param type       the type of the search, e. g. {@code "count"}
+         * @param range      the time range of the search
+         * @param parameters all other parameters influencing the result of the search
+         * @return the key of the search
+         */
+        public static Key of(String type, @Nullable TimeRange range, Object... parameters) {
+            final List<Object> rangeKey;
+            if (range == null) {
+                rangeKey = null;
+            } else if (range instanceof RelativeRange) {
+                rangeKey = Arrays.<Object>asList(range.getType(), ((RelativeRange) range).getRange());
+            } else {
+                rangeKey = Arrays.<Object>asList(range.getType(), millis(range.getFrom()), millis(range.getTo()));
+            }
+            return new Key(type, rangeKey, Arrays.asList(parameters.clone()));
+        }
+
+        private static Long millis(@Nullable DateTime dateTime) {
+            return dateTime == null ? null : dateTime.getMillis();
+        }
+
+        /**
+         * @return the query string as it is being searched for, {@code "*"} for empty queries
+         */
+        public static String normalizeQuery(@Nullable String query) {
+            if (query == null || query.trim().isEmpty()) {
+                return "*";
+            }
+            return query.trim();
+        }
+
+        /**
+         * @return the filter as it is being applied, {@code null} for filters which match everything
+         */
+        @Nullable
+        public static String normalizeFilter(@Nullable String filter) {
+            if (filter == null || filter.isEmpty() || filter.equals("*")) {
+                return null;
+            }
+            return filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final Key that = (Key) o;
+            return Objects.equals(this.type, that.type)
+                    && Objects.equals(this.range, that.range)
+                    && Objects.equals(this.parameters, that.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return type + range + parameters;
+        }
+    }
+}
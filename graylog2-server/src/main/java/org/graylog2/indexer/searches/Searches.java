@@ -19,12 +19,16 @@ package org.graylog2.indexer.searches;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.index.query.BoolFilterBuilder;
@@ -53,25 +57,42 @@ import org.graylog2.indexer.results.DateHistogramResult;
 import org.graylog2.indexer.results.FieldHistogramResult;
 import org.graylog2.indexer.results.FieldStatsResult;
 import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.results.MergedHistogramResult;
 import org.graylog2.indexer.results.ScrollResult;
 import org.graylog2.indexer.results.SearchResult;
 import org.graylog2.indexer.results.TermsResult;
 import org.graylog2.indexer.results.TermsStatsResult;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.RelativeRange;
 import org.graylog2.indexer.searches.timeranges.TimeRange;
 import org.graylog2.indexer.searches.timeranges.TimeRanges;
+import org.graylog2.streams.rollups.Granularity;
+import org.graylog2.streams.rollups.StreamCountRollups;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.Period;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.graylog2.indexer.searches.SearchResultCache.Key.normalizeFilter;
+import static org.graylog2.indexer.searches.SearchResultCache.Key.normalizeQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
 import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
 
@@ -87,6 +108,8 @@ public class Searches {
     public static final String AGG_EXTENDED_STATS = "gl2_extended_stats";
     public static final String AGG_CARDINALITY = "gl2_field_cardinality";
 
+    private static final Pattern STREAM_FILTER = Pattern.compile("^streams:([0-9a-f]{24})$");
+
     public enum TermsStatsOrder {
         TERM,
         REVERSE_TERM,
@@ -149,18 +172,26 @@ public class Searches {
     private final MetricRegistry metricRegistry;
     private final Timer esRequestTimer;
     private final Histogram esTimeRangeHistogram;
+    private final SearchResultCache resultCache;
+    private final StreamCountRollups streamCountRollups;
+    private final ExecutorService scrollExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("scroll-reader-%d").build());
 
     @Inject
     public Searches(Configuration configuration,
                     Deflector deflector,
                     IndexRangeService indexRangeService,
                     Client client,
-                    MetricRegistry metricRegistry) {
+                    MetricRegistry metricRegistry,
+                    SearchResultCache resultCache,
+                    StreamCountRollups streamCountRollups) {
         this.configuration = checkNotNull(configuration);
         this.deflector = checkNotNull(deflector);
         this.indexRangeService = checkNotNull(indexRangeService);
         this.c = checkNotNull(client);
         this.metricRegistry = checkNotNull(metricRegistry);
+        this.resultCache = checkNotNull(resultCache);
+        this.streamCountRollups = checkNotNull(streamCountRollups);
 
         this.esRequestTimer = metricRegistry.timer(name(Searches.class, "elasticsearch", "requests"));
         this.esTimeRangeHistogram = metricRegistry.histogram(name(Searches.class, "elasticsearch", "ranges"));
@@ -170,9 +201,53 @@ public class Searches {
         return count(query, range, null);
     }
 
-    public CountResult count(String query, TimeRange range, String filter) {
-        Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, deflector, range);
+    public CountResult count(final String query, final TimeRange range, final String filter) {
+        final SearchResultCache.Key key = SearchResultCache.Key.of("count", range, normalizeQuery(query), normalizeFilter(filter));
+        return cachedSearch(key, range, new CachedSearch<CountResult, RuntimeException>() {
+            @Override
+            public CountResult search(Set<String> indices) {
+                return count(indices, query, range, filter);
+            }
+        }, RuntimeException.class);
+    }
+
+    private CountResult count(Set<String> indices, String query, TimeRange range, String filter) {
+        final String streamId = rolledUpStreamId(query, filter);
+        if (streamId != null) {
+            final CountResult result = rolledUpCount(indices, streamId, query, range, filter);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        return searchCount(indices, query, range, filter);
+    }
+
+    @Nullable
+    private CountResult rolledUpCount(Set<String> indices, String streamId, String query, TimeRange range, String filter) {
+        final long from = range.getFrom().getMillis();
+        final long to = range.getTo().getMillis();
+        final StreamCountRollups.RolledUpCount rolledUp = streamCountRollups.count(streamId, from, to);
+        if (rolledUp == null) {
+            return null;
+        }
+
+        // search the parts of the time range which are not covered by the rollups
+        long count = rolledUp.getCount();
+        long tookMs = 0L;
+        if (from < rolledUp.getFrom()) {
+            final CountResult head = searchCount(indices, query, absoluteRange(from, rolledUp.getFrom() - 1L), filter);
+            count += head.getCount();
+            tookMs += head.getTookMs();
+        }
+        final CountResult tail = searchCount(indices, query, absoluteRange(rolledUp.getTo(), to), filter);
+        count += tail.getCount();
+        tookMs += tail.getTookMs();
+
+        return new CountResult(count, tookMs);
+    }
 
+    CountResult searchCount(Set<String> indices, String query, TimeRange range, String filter) {
         SearchRequest request;
         if (filter == null) {
             request = standardSearchRequest(query, indices, range).request();
@@ -188,6 +263,28 @@ public class Searches {
 
     public ScrollResult scroll(String query, TimeRange range, int limit, int offset, List<String> fields, String filter) {
         final Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, deflector, range);
+
+        // one scroll per index, so the indices can be read concurrently
+        final List<SearchRequest> sliceRequests = Lists.newArrayListWithCapacity(indices.size());
+        for (String index : indices) {
+            sliceRequests.add(scrollRequest(query, Collections.singleton(index), range, limit, offset, fields, filter));
+        }
+
+        final SearchRequest request = scrollRequest(query, indices, range, limit, offset, fields, filter);
+        if (LOG.isDebugEnabled()) {
+            try {
+                LOG.debug("ElasticSearch scroll query: {}", XContentHelper.convertToJson(request.source(), false));
+            } catch (IOException ignored) {
+            }
+        }
+        final CountResult countResult = count(indices, query, range, filter);
+
+        return new ScrollResult(c, query, request.source(), new TimeValue(countResult.getTookMs()), countResult.getCount(),
+                sliceRequests, fields, configuration.getSearchExportBufferedPages(),
+                configuration.getSearchExportConcurrentIndices(), scrollExecutor);
+    }
+
+    private SearchRequest scrollRequest(String query, Set<String> indices, TimeRange range, int limit, int offset, List<String> fields, String filter) {
         final SearchRequestBuilder srb = standardSearchRequest(query, indices, limit, offset, range, null, false);
         if (range != null && filter != null) {
             srb.setPostFilter(standardFilters(range, filter));
@@ -203,19 +300,11 @@ public class Searches {
         srb.addFields(fields.toArray(new String[fields.size()]));
         srb.addField("_source"); // always request the _source field because otherwise we can't access non-stored values
 
-        final SearchRequest request = srb.setSearchType(SearchType.SCAN)
+        // the page size of scan requests applies to every shard
+        return srb.setSearchType(SearchType.SCAN)
                 .setScroll(new TimeValue(1, TimeUnit.MINUTES))
-                .setSize(500).request(); // TODO magic numbers
-        if (LOG.isDebugEnabled()) {
-            try {
-                LOG.debug("ElasticSearch scroll query: {}", XContentHelper.convertToJson(request.source(), false));
-            } catch (IOException ignored) {
-            }
-        }
-        final SearchResponse r = c.search(request).actionGet();
-        esRequestTimer.update(r.getTookInMillis(), TimeUnit.MILLISECONDS);
-
-        return new ScrollResult(c, query, request.source(), r, fields);
+                .setSize(configuration.getSearchExportPageSize())
+                .request();
     }
 
     public SearchResult search(String query, TimeRange range, int limit, int offset, Sorting sorting) {
@@ -253,16 +342,24 @@ public class Searches {
         return new SearchResult(r.getHits(), indices, config.query(), request.source(), r.getTook());
     }
 
-    public TermsResult terms(String field, int size, String query, String filter, TimeRange range) {
-        if (size == 0) {
-            size = 50;
-        }
+    public TermsResult terms(final String field, int size, final String query, final String filter, final TimeRange range) {
+        final int termsSize = size == 0 ? 50 : size;
+        final SearchResultCache.Key key = SearchResultCache.Key.of("terms", range,
+                field, termsSize, normalizeQuery(query), normalizeFilter(filter));
+        return cachedSearch(key, range, new CachedSearch<TermsResult, RuntimeException>() {
+            @Override
+            public TermsResult search(Set<String> indices) {
+                return terms(indices, field, termsSize, query, filter, range);
+            }
+        }, RuntimeException.class);
+    }
 
+    private TermsResult terms(Set<String> indices, String field, int size, String query, String filter, TimeRange range) {
         SearchRequestBuilder srb;
         if (filter == null) {
-            srb = standardSearchRequest(query, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = standardSearchRequest(query, indices, range);
         } else {
-            srb = filteredSearchRequest(query, filter, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = filteredSearchRequest(query, filter, indices, range);
         }
 
         FilterAggregationBuilder builder = AggregationBuilders.filter(AGG_FILTER)
@@ -296,16 +393,30 @@ public class Searches {
         return terms(field, size, query, null, range);
     }
 
-    public TermsStatsResult termsStats(String keyField, String valueField, TermsStatsOrder order, int size, String query, String filter, TimeRange range) {
-        if (size == 0) {
-            size = 50;
-        }
+    public TermsStatsResult termsStats(final String keyField,
+                                       final String valueField,
+                                       final TermsStatsOrder order,
+                                       int size,
+                                       final String query,
+                                       final String filter,
+                                       final TimeRange range) {
+        final int termsSize = size == 0 ? 50 : size;
+        final SearchResultCache.Key key = SearchResultCache.Key.of("termsStats", range,
+                keyField, valueField, order, termsSize, normalizeQuery(query), normalizeFilter(filter));
+        return cachedSearch(key, range, new CachedSearch<TermsStatsResult, RuntimeException>() {
+            @Override
+            public TermsStatsResult search(Set<String> indices) {
+                return termsStats(indices, keyField, valueField, order, termsSize, query, filter, range);
+            }
+        }, RuntimeException.class);
+    }
 
+    private TermsStatsResult termsStats(Set<String> indices, String keyField, String valueField, TermsStatsOrder order, int size, String query, String filter, TimeRange range) {
         SearchRequestBuilder srb;
         if (filter == null) {
-            srb = standardSearchRequest(query, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = standardSearchRequest(query, indices, range);
         } else {
-            srb = filteredSearchRequest(query, filter, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = filteredSearchRequest(query, filter, indices, range);
         }
 
 
@@ -388,14 +499,30 @@ public class Searches {
         return fieldStats(field, query, filter, range, true, false);
     }
 
-    public FieldStatsResult fieldStats(String field, String query, String filter, TimeRange range, boolean includeCardinality, boolean onlyCardinality)
+    public FieldStatsResult fieldStats(final String field,
+                                       final String query,
+                                       final String filter,
+                                       final TimeRange range,
+                                       final boolean includeCardinality,
+                                       final boolean onlyCardinality) throws FieldTypeException {
+        final SearchResultCache.Key key = SearchResultCache.Key.of("fieldStats", range,
+                field, includeCardinality, onlyCardinality, normalizeQuery(query), normalizeFilter(filter));
+        return cachedSearch(key, range, new CachedSearch<FieldStatsResult, FieldTypeException>() {
+            @Override
+            public FieldStatsResult search(Set<String> indices) throws FieldTypeException {
+                return fieldStats(indices, field, query, filter, range, includeCardinality, onlyCardinality);
+            }
+        }, FieldTypeException.class);
+    }
+
+    private FieldStatsResult fieldStats(Set<String> indices, String field, String query, String filter, TimeRange range, boolean includeCardinality, boolean onlyCardinality)
             throws FieldTypeException {
         SearchRequestBuilder srb;
 
         if (filter == null) {
-            srb = standardSearchRequest(query, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = standardSearchRequest(query, indices, range);
         } else {
-            srb = filteredSearchRequest(query, filter, IndexHelper.determineAffectedIndices(indexRangeService, deflector, range), range);
+            srb = filteredSearchRequest(query, filter, indices, range);
         }
 
         FilterAggregationBuilder builder = AggregationBuilders.filter(AGG_FILTER)
@@ -434,7 +561,72 @@ public class Searches {
         return histogram(query, interval, null, range);
     }
 
-    public HistogramResult histogram(String query, DateHistogramInterval interval, String filter, TimeRange range) {
+    public HistogramResult histogram(final String query, final DateHistogramInterval interval, final String filter, final TimeRange range) {
+        final SearchResultCache.Key key = SearchResultCache.Key.of("histogram", range,
+                interval, normalizeQuery(query), normalizeFilter(filter));
+        return cachedSearch(key, range, new CachedSearch<HistogramResult, RuntimeException>() {
+            @Override
+            public HistogramResult search(Set<String> indices) {
+                return histogram(indices, query, interval, filter, range);
+            }
+        }, RuntimeException.class);
+    }
+
+    HistogramResult histogram(Set<String> affectedIndices, String query, DateHistogramInterval interval, String filter, TimeRange range) {
+        final String streamId = rolledUpStreamId(query, filter);
+        final Granularity granularity = rollupGranularity(interval);
+        if (streamId != null && granularity != null) {
+            final HistogramResult result = rolledUpHistogram(affectedIndices, streamId, granularity, query, interval, filter, range);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        return searchHistogram(affectedIndices, query, interval, filter, range);
+    }
+
+    @Nullable
+    private HistogramResult rolledUpHistogram(Set<String> affectedIndices,
+                                              String streamId,
+                                              Granularity granularity,
+                                              String query,
+                                              DateHistogramInterval interval,
+                                              String filter,
+                                              TimeRange range) {
+        final long from = range.getFrom().getMillis();
+        final long to = range.getTo().getMillis();
+        final StreamCountRollups.RolledUpHistogram rolledUp = streamCountRollups.histogram(streamId, granularity, from, to);
+        if (rolledUp == null) {
+            return null;
+        }
+
+        // search the partial buckets at both ends of the time range
+        final Map<Long, Object> results = Maps.newTreeMap();
+        long tookMillis = 0L;
+        if (from < rolledUp.getFrom()) {
+            final HistogramResult head = searchHistogram(affectedIndices, query, interval, filter,
+                    absoluteRange(from, rolledUp.getFrom() - 1L));
+            putAll(results, head.getResults());
+            tookMillis += head.took().millis();
+        }
+        for (Map.Entry<Long, Long> bucket : rolledUp.getCounts().entrySet()) {
+            results.put(TimeUnit.MILLISECONDS.toSeconds(bucket.getKey()), bucket.getValue());
+        }
+        final HistogramResult tail = searchHistogram(affectedIndices, query, interval, filter,
+                absoluteRange(rolledUp.getTo(), to));
+        putAll(results, tail.getResults());
+        tookMillis += tail.took().millis();
+
+        return new MergedHistogramResult(
+                results,
+                interval,
+                absoluteRange(from, to),
+                query,
+                new BytesArray(tail.getBuiltQuery()),
+                new TimeValue(tookMillis));
+    }
+
+    HistogramResult searchHistogram(Set<String> affectedIndices, String query, DateHistogramInterval interval, String filter, TimeRange range) {
         FilterAggregationBuilder builder = AggregationBuilders.filter(AGG_FILTER)
                 .subAggregation(
                         AggregationBuilders.dateHistogram(AGG_HISTOGRAM)
@@ -446,7 +638,6 @@ public class Searches {
         qs.allowLeadingWildcard(configuration.isAllowLeadingWildcardSearches());
 
         SearchRequestBuilder srb = c.prepareSearch();
-        final Set<String> affectedIndices = IndexHelper.determineAffectedIndices(indexRangeService, deflector, range);
         srb.setIndices(affectedIndices.toArray(new String[affectedIndices.size()]));
         srb.setQuery(qs);
         srb.addAggregation(builder);
@@ -464,12 +655,29 @@ public class Searches {
                 r.getTook());
     }
 
-    public HistogramResult fieldHistogram(String query,
-                                          String field,
-                                          DateHistogramInterval interval,
-                                          String filter,
-                                          TimeRange range,
-                                          boolean includeCardinality) throws FieldTypeException {
+    public HistogramResult fieldHistogram(final String query,
+                                          final String field,
+                                          final DateHistogramInterval interval,
+                                          final String filter,
+                                          final TimeRange range,
+                                          final boolean includeCardinality) throws FieldTypeException {
+        final SearchResultCache.Key key = SearchResultCache.Key.of("fieldHistogram", range,
+                field, interval, includeCardinality, normalizeQuery(query), normalizeFilter(filter));
+        return cachedSearch(key, range, new CachedSearch<HistogramResult, FieldTypeException>() {
+            @Override
+            public HistogramResult search(Set<String> indices) throws FieldTypeException {
+                return fieldHistogram(indices, query, field, interval, filter, range, includeCardinality);
+            }
+        }, FieldTypeException.class);
+    }
+
+    HistogramResult fieldHistogram(Set<String> affectedIndices,
+                                   String query,
+                                   String field,
+                                   DateHistogramInterval interval,
+                                   String filter,
+                                   TimeRange range,
+                                   boolean includeCardinality) throws FieldTypeException {
         final DateHistogramBuilder dateHistogramBuilder = AggregationBuilders.dateHistogram(AGG_HISTOGRAM)
                 .field("timestamp")
                 .subAggregation(AggregationBuilders.stats(AGG_STATS).field(field))
@@ -487,7 +695,6 @@ public class Searches {
         qs.allowLeadingWildcard(configuration.isAllowLeadingWildcardSearches());
 
         SearchRequestBuilder srb = c.prepareSearch();
-        final Set<String> affectedIndices = IndexHelper.determineAffectedIndices(indexRangeService, deflector, range);
         srb.setIndices(affectedIndices.toArray(new String[affectedIndices.size()]));
         srb.setQuery(qs);
         srb.addAggregation(builder);
@@ -510,6 +717,95 @@ public class Searches {
                 r.getTook());
     }
 
+    /**
+     * Returns a histogram which is only updated incrementally if it is computed repeatedly.
+     *
+     * @see IncrementalHistogram
+     */
+    public IncrementalHistogram incrementalHistogram(String query, DateHistogramInterval interval, String filter, TimeRange range) {
+        return new IncrementalHistogram(this, query, null, interval, filter, range, false);
+    }
+
+    /**
+     * Returns a field histogram which is only updated incrementally if it is computed repeatedly.
+     *
+     * @see IncrementalHistogram
+     */
+    public IncrementalHistogram incrementalFieldHistogram(String query,
+                                                          String field,
+                                                          DateHistogramInterval interval,
+                                                          String filter,
+                                                          TimeRange range,
+                                                          boolean includeCardinality) {
+        return new IncrementalHistogram(this, query, checkNotNull(field), interval, filter, range, includeCardinality);
+    }
+
+    /**
+     * @return the id of the stream if the search only filters by a single stream and can use the stream count rollups
+     */
+    @Nullable
+    private String rolledUpStreamId(String query, String filter) {
+        if (filter == null || !streamCountRollups.isEnabled() || !"*".equals(normalizeQuery(query))) {
+            return null;
+        }
+
+        final Matcher matcher = STREAM_FILTER.matcher(filter.trim());
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    @Nullable
+    private static Granularity rollupGranularity(DateHistogramInterval interval) {
+        switch (interval) {
+            case MINUTE:
+                return Granularity.MINUTE;
+            case HOUR:
+                return Granularity.HOUR;
+            case DAY:
+                return Granularity.DAY;
+            default:
+                return null;
+        }
+    }
+
+    private static AbsoluteRange absoluteRange(long from, long to) {
+        return new AbsoluteRange(new DateTime(from, DateTimeZone.UTC), new DateTime(to, DateTimeZone.UTC));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putAll(Map<Long, Object> target, Map source) {
+        target.putAll((Map<Long, Object>) source);
+    }
+
+    Set<String> determineAffectedIndices(TimeRange range) {
+        return IndexHelper.determineAffectedIndices(indexRangeService, deflector, range);
+    }
+
+    long indexRangesGeneration() {
+        return resultCache.getGeneration();
+    }
+
+    private <T, E extends Exception> T cachedSearch(SearchResultCache.Key key,
+                                                    TimeRange range,
+                                                    final CachedSearch<T, E> search,
+                                                    Class<E> exceptionType) throws E {
+        final T cachedResult = resultCache.getIfPresent(key);
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+
+        final String targetIndex = deflector.getCurrentActualTargetIndex();
+        final Set<String> indices = IndexHelper.determineAffectedIndices(indexRangeService, targetIndex, range);
+        // relative ranges are cached by their length only, so their result moves with the time
+        final boolean live = range instanceof RelativeRange || (targetIndex != null && indices.contains(targetIndex));
+
+        return resultCache.get(key, live, new Callable<T>() {
+            @Override
+            public T call() throws E {
+                return search.search(indices);
+            }
+        }, exceptionType);
+    }
+
     private SearchRequestBuilder searchRequest(SearchesConfig config, Set<String> indices) {
         final SearchRequestBuilder request;
 
@@ -647,6 +943,10 @@ public class Searches {
         return bfb;
     }
 
+    private interface CachedSearch<T, E extends Exception> {
+        T search(Set<String> indices) throws E;
+    }
+
     public static class FieldTypeException extends Exception {
         public FieldTypeException(Throwable e) {
             super(e);
@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.graylog2.Configuration;
 import org.graylog2.buffers.Buffers;
 import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.streams.rollups.StreamCountRollups;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,16 +44,19 @@ public class BufferSynchronizerService extends AbstractIdleService {
     private final Cluster cluster;
     private final Configuration configuration;
     private final MetricRegistry metricRegistry;
+    private final StreamCountRollups streamCountRollups;
 
     @Inject
     public BufferSynchronizerService(final Buffers buffers,
                                      final Cluster cluster,
                                      final Configuration configuration,
-                                     final MetricRegistry metricRegistry) {
+                                     final MetricRegistry metricRegistry,
+                                     final StreamCountRollups streamCountRollups) {
         this.bufferSynchronizer = buffers;
         this.cluster = cluster;
         this.configuration = configuration;
         this.metricRegistry = metricRegistry;
+        this.streamCountRollups = streamCountRollups;
     }
 
     @Override
@@ -74,6 +78,12 @@ public class BufferSynchronizerService extends AbstractIdleService {
 
             executorService.shutdown();
             executorService.awaitTermination(configuration.getShutdownTimeout(), TimeUnit.MILLISECONDS);
+
+            try {
+                streamCountRollups.flushAll();
+            } catch (Exception e) {
+                LOG.warn("Unable to flush stream count rollups, message counts of the last seconds are lost.", e);
+            }
         } else {
             LOG.warn("Elasticsearch is unavailable. Not waiting to clear buffers and caches, as we have no healthy cluster.");
         }
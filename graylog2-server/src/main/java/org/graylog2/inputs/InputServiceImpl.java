@@ -56,14 +56,17 @@ public class InputServiceImpl extends PersistedServiceImpl implements InputServi
     private static final Logger LOG = LoggerFactory.getLogger(InputServiceImpl.class);
 
     private final ExtractorFactory extractorFactory;
+    private final ConverterFactory converterFactory;
     private final MessageInputFactory messageInputFactory;
 
     @Inject
     public InputServiceImpl(MongoConnection mongoConnection,
                             ExtractorFactory extractorFactory,
+                            ConverterFactory converterFactory,
                             MessageInputFactory messageInputFactory) {
         super(mongoConnection);
         this.extractorFactory = extractorFactory;
+        this.converterFactory = converterFactory;
         this.messageInputFactory = messageInputFactory;
     }
 
@@ -298,7 +301,7 @@ public class InputServiceImpl extends PersistedServiceImpl implements InputServi
             final DBObject c = (BasicDBObject) element;
 
             try {
-                listBuilder.add(ConverterFactory.factory(
+                listBuilder.add(converterFactory.factory(
                         Converter.Type.valueOf(((String) c.get(Extractor.FIELD_CONVERTER_TYPE)).toUpperCase()),
                         (Map<String, Object>) c.get(Extractor.FIELD_CONVERTER_CONFIG)
                 ));
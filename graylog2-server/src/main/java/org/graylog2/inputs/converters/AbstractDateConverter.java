@@ -17,6 +17,7 @@
 package org.graylog2.inputs.converters;
 
 import org.graylog2.plugin.inputs.Converter;
+import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import java.util.Map;
@@ -49,6 +50,16 @@ public abstract class AbstractDateConverter extends Converter {
         }
     }
 
+    /**
+     * Formatters which default to the current year have to be rebuilt once this instant has passed.
+     *
+     * @param now the current time in milliseconds
+     * @return the start of the year following {@code now} in the time zone of the converter
+     */
+    protected long startOfNextYear(long now) {
+        return new DateTime(now, timeZone).withDayOfYear(1).withTimeAtStartOfDay().plusYears(1).getMillis();
+    }
+
     @Override
     public boolean buildsMultipleFields() {
         return false;
@@ -19,11 +19,18 @@ package org.graylog2.inputs.converters;
 import org.graylog2.ConfigurationException;
 import org.graylog2.plugin.inputs.Converter;
 
+import javax.inject.Inject;
 import java.util.Map;
 
 public class ConverterFactory {
+    private final LearnedDateFormats learnedDateFormats;
 
-    public static Converter factory(Converter.Type type, Map<String, Object> config) throws NoSuchConverterException, ConfigurationException {
+    @Inject
+    public ConverterFactory(LearnedDateFormats learnedDateFormats) {
+        this.learnedDateFormats = learnedDateFormats;
+    }
+
+    public Converter factory(Converter.Type type, Map<String, Object> config) throws NoSuchConverterException, ConfigurationException {
         switch (type) {
             case NUMERIC:
                 return new NumericConverter(config);
@@ -48,7 +55,7 @@ public class ConverterFactory {
             case UPPERCASE:
                 return new UppercaseConverter(config);
             case FLEXDATE:
-                return new FlexibleDateConverter(config);
+                return new FlexibleDateConverter(config, learnedDateFormats);
             default:
                 throw new NoSuchConverterException();
         }
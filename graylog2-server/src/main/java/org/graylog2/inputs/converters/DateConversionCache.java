@@ -0,0 +1,64 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.converters;
+
+import org.joda.time.DateTime;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Small cache of converted date values, timestamps with second granularity tend to repeat within a burst of messages.
+ * <p>
+ * The cache is direct-mapped: every value can only be stored in the slot selected by its hash code and replaces
+ * whatever has been stored there before. This keeps lookups lock-free and the memory bounded.
+ * </p>
+ */
+class DateConversionCache {
+    private static final int SIZE = 256;
+
+    private final AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<>(SIZE);
+
+    DateTime get(String value) {
+        final Entry entry = entries.get(index(value));
+        return entry != null && entry.value.equals(value) ? entry.dateTime : null;
+    }
+
+    void put(String value, DateTime dateTime) {
+        entries.set(index(value), new Entry(value, dateTime));
+    }
+
+    void clear() {
+        for (int i = 0; i < SIZE; i++) {
+            entries.set(i, null);
+        }
+    }
+
+    private static int index(String value) {
+        final int hash = value.hashCode();
+        return (hash ^ (hash >>> 16)) & (SIZE - 1);
+    }
+
+    private static class Entry {
+        private final String value;
+        private final DateTime dateTime;
+
+        private Entry(String value, DateTime dateTime) {
+            this.value = value;
+            this.dateTime = dateTime;
+        }
+    }
+}
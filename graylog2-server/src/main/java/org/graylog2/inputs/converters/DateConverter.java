@@ -18,7 +18,6 @@ package org.graylog2.inputs.converters;
 
 import org.graylog2.ConfigurationException;
 import org.joda.time.DateTime;
-import org.joda.time.YearMonth;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
@@ -33,6 +32,8 @@ public class DateConverter extends AbstractDateConverter {
     private static final Logger LOG = LoggerFactory.getLogger(DateConverter.class);
 
     private final String dateFormat;
+    private final DateConversionCache cache = new DateConversionCache();
+    private volatile Formatter formatter;
 
     public DateConverter(Map<String, Object> config) throws ConfigurationException {
         super(Type.DATE, config);
@@ -51,11 +52,40 @@ public class DateConverter extends AbstractDateConverter {
             return null;
         }
 
+        final DateTimeFormatter formatter = formatter();
+        final DateTime cached = cache.get(value);
+        if (cached != null) {
+            return cached;
+        }
+
         LOG.debug("Trying to parse date <{}> with pattern <{}> and timezone <{}>.", value, dateFormat, timeZone);
-        final DateTimeFormatter formatter = DateTimeFormat
-                .forPattern(dateFormat)
-                .withDefaultYear(YearMonth.now(timeZone).getYear())
-                .withZone(timeZone);
-        return DateTime.parse(value, formatter);
+        final DateTime dateTime = DateTime.parse(value, formatter);
+        cache.put(value, dateTime);
+        return dateTime;
+    }
+
+    private DateTimeFormatter formatter() {
+        final long now = System.currentTimeMillis();
+        Formatter current = formatter;
+        if (current == null || now >= current.validUntil) {
+            // the default year changed, values parsed with the old one must not be served from the cache anymore
+            current = new Formatter(DateTimeFormat
+                    .forPattern(dateFormat)
+                    .withDefaultYear(new DateTime(now, timeZone).getYear())
+                    .withZone(timeZone), startOfNextYear(now));
+            cache.clear();
+            formatter = current;
+        }
+        return current.formatter;
+    }
+
+    private static class Formatter {
+        private final DateTimeFormatter formatter;
+        private final long validUntil;
+
+        private Formatter(DateTimeFormatter formatter, long validUntil) {
+            this.formatter = formatter;
+            this.validUntil = validUntil;
+        }
     }
 }
@@ -16,17 +16,55 @@
  */
 package org.graylog2.inputs.converters;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
 import com.joestelmach.natty.DateGroup;
 import com.joestelmach.natty.Parser;
 import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
 
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
+/**
+ * Parses dates with the natty natural language parser.
+ * <p>
+ * Most inputs emit a single timestamp format, natty is only used until the converter learned it: after every
+ * successful natty parse, the converter looks for a well-known format which parses the complete value to the same
+ * instant and uses that format for subsequent values. Values the learned formats can't parse fall back to natty.
+ * Results of the learned formats are cached, natty results are not as they may depend on the current time. The learned
+ * formats outlive the converter, see {@link LearnedDateFormats}.
+ * </p>
+ */
 public class FlexibleDateConverter extends AbstractDateConverter {
+    // formats which could be learned, natty parses all of them to the second
+    private static final List<String> KNOWN_FORMATS = ImmutableList.of(
+            "yyyy-MM-dd HH:mm:ss",
+            "yyyy-MM-dd HH:mm:ss.SSS",
+            "yyyy-MM-dd HH:mm:ss,SSS",
+            "yyyy-MM-dd HH:mm",
+            "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd'T'HH:mm:ss.SSS",
+            "yyyy-MM-dd'T'HH:mm:ssZZ",
+            "yyyy-MM-dd'T'HH:mm:ss.SSSZZ",
+            "yyyy/MM/dd HH:mm:ss",
+            "MM/dd/yyyy HH:mm:ss",
+            "EEE, dd MMM yyyy HH:mm:ss Z",
+            "MMM dd HH:mm:ss",
+            "MMM dd yyyy HH:mm:ss"
+    );
+
+    private final LearnedDateFormats.Formats formats;
+
     public FlexibleDateConverter(Map<String, Object> config) {
+        this(config, new LearnedDateFormats(new MetricRegistry()));
+    }
+
+    public FlexibleDateConverter(Map<String, Object> config, LearnedDateFormats learnedDateFormats) {
         super(Type.FLEXDATE, config);
+        this.formats = learnedDateFormats.get(timeZone);
     }
 
     @Override
@@ -36,6 +74,14 @@ public class FlexibleDateConverter extends AbstractDateConverter {
             return null;
         }
 
+        final long now = System.currentTimeMillis();
+        final DateTime learned = convertWithLearnedFormats(value, now);
+        if (learned != null) {
+            formats.markFastPathHit();
+            return learned;
+        }
+
+        formats.markNattyParse();
         final Parser parser = new Parser(timeZone.toTimeZone());
         final List<DateGroup> r = parser.parse(value);
 
@@ -43,6 +89,50 @@ public class FlexibleDateConverter extends AbstractDateConverter {
             return null;
         }
 
-        return new DateTime(r.get(0).getDates().get(0), timeZone);
+        final DateTime dateTime = new DateTime(r.get(0).getDates().get(0), timeZone);
+        learn(value, dateTime, now);
+
+        return dateTime;
+    }
+
+    @Nullable
+    private DateTime convertWithLearnedFormats(String value, long now) {
+        boolean cacheChecked = false;
+        for (LearnedDateFormats.Format format : formats.formats()) {
+            // the learned formats may default to the current year, forget them when it is over
+            if (!format.isValid(now)) {
+                continue;
+            }
+            if (!cacheChecked) {
+                final DateTime cached = formats.values().get(value);
+                if (cached != null) {
+                    return cached;
+                }
+                cacheChecked = true;
+            }
+
+            final DateTime dateTime = format.parse(value);
+            if (dateTime != null) {
+                formats.values().put(value, dateTime);
+                return dateTime;
+            }
+        }
+        return null;
+    }
+
+    private void learn(String value, DateTime expected, long now) {
+        final int year = new DateTime(now, timeZone).getYear();
+        for (String pattern : KNOWN_FORMATS) {
+            final LearnedDateFormats.Format candidate = new LearnedDateFormats.Format(pattern,
+                    DateTimeFormat.forPattern(pattern)
+                            .withLocale(Locale.ENGLISH)
+                            .withDefaultYear(year)
+                            .withZone(timeZone),
+                    startOfNextYear(now));
+            if (expected.equals(candidate.parse(value))) {
+                formats.learn(candidate, now);
+                return;
+            }
+        }
     }
 }
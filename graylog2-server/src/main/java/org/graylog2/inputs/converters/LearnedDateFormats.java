@@ -0,0 +1,154 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.converters;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Timestamp formats learned by {@link FlexibleDateConverter flexible date converters}, shared by all converters with
+ * the same configuration.
+ * <p>
+ * Extractors and their converters are rebuilt every time the extractors are reloaded, which used to throw away the
+ * learned formats and send the next values through natty again. The time zone is the only setting of the converter,
+ * so the formats are kept per time zone. A few formats are kept, so extractors of differently formatted values don't
+ * replace each other's formats all the time.
+ * </p>
+ */
+@Singleton
+public class LearnedDateFormats {
+    private static final int MAX_SIZE = 1000;
+    private static final int MAX_FORMATS = 4;
+
+    private final Cache<DateTimeZone, Formats> cache;
+    private final Meter fastPathHits;
+    private final Meter nattyParses;
+
+    @Inject
+    public LearnedDateFormats(MetricRegistry metricRegistry) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_SIZE)
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+        this.fastPathHits = metricRegistry.meter(name(FlexibleDateConverter.class, "fastPathHits"));
+        this.nattyParses = metricRegistry.meter(name(FlexibleDateConverter.class, "nattyParses"));
+    }
+
+    public Formats get(DateTimeZone timeZone) {
+        try {
+            return cache.get(timeZone, new Callable<Formats>() {
+                @Override
+                public Formats call() {
+                    return new Formats();
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // creating the formats can't fail
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public class Formats {
+        private final DateConversionCache values = new DateConversionCache();
+        private volatile List<Format> formats = ImmutableList.of();
+
+        private Formats() {
+        }
+
+        /**
+         * @return the most recently learned formats first
+         */
+        List<Format> formats() {
+            return formats;
+        }
+
+        DateConversionCache values() {
+            return values;
+        }
+
+        synchronized void learn(Format format, long now) {
+            final ImmutableList.Builder<Format> learned = ImmutableList.builder();
+            learned.add(format);
+            int count = 1;
+            boolean expired = false;
+            for (Format previous : formats) {
+                if (previous.validUntil <= now) {
+                    expired = true;
+                } else if (!previous.pattern.equals(format.pattern) && count < MAX_FORMATS) {
+                    learned.add(previous);
+                    count++;
+                }
+            }
+            if (expired) {
+                // the cached values might have been converted with the default year of an expired format
+                values.clear();
+            }
+            formats = learned.build();
+        }
+
+        void markFastPathHit() {
+            fastPathHits.mark();
+        }
+
+        void markNattyParse() {
+            nattyParses.mark();
+        }
+    }
+
+    static class Format {
+        private final String pattern;
+        private final DateTimeFormatter formatter;
+        private final long validUntil;
+
+        Format(String pattern, DateTimeFormatter formatter, long validUntil) {
+            this.pattern = pattern;
+            this.formatter = formatter;
+            this.validUntil = validUntil;
+        }
+
+        boolean isValid(long now) {
+            return now < validUntil;
+        }
+
+        @Nullable
+        DateTime parse(String value) {
+            try {
+                // natty ignores fractions of a second
+                return formatter.parseDateTime(value).withMillisOfSecond(0);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
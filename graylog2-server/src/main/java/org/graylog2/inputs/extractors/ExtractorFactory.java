@@ -18,6 +18,7 @@ package org.graylog2.inputs.extractors;
 
 import com.codahale.metrics.MetricRegistry;
 import org.graylog2.ConfigurationException;
+import org.graylog2.grok.CompiledGrokCache;
 import org.graylog2.grok.GrokPatternService;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
@@ -32,11 +33,15 @@ import java.util.Map;
 public class ExtractorFactory {
     private final MetricRegistry metricRegistry;
     private final GrokPatternService grokPatternService;
+    private final CompiledGrokCache compiledGrokCache;
 
     @Inject
-    public ExtractorFactory(MetricRegistry metricRegistry, GrokPatternService grokPatternService) {
+    public ExtractorFactory(MetricRegistry metricRegistry,
+                            GrokPatternService grokPatternService,
+                            CompiledGrokCache compiledGrokCache) {
         this.metricRegistry = metricRegistry;
         this.grokPatternService = grokPatternService;
+        this.compiledGrokCache = compiledGrokCache;
     }
 
     public Extractor factory(String id,
@@ -63,7 +68,7 @@ public class ExtractorFactory {
             case COPY_INPUT:
                 return new CopyInputExtractor(metricRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
             case GROK:
-                return new GrokExtractor(metricRegistry, grokPatternService.loadAll(), id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
+                return new GrokExtractor(metricRegistry, grokPatternService.loadAll(), compiledGrokCache, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
             default:
                 throw new NoSuchExtractorException();
         }
@@ -0,0 +1,155 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.extractors;
+
+import com.google.common.collect.Maps;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.inputs.Extractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The extractors of a single input, compiled into a pipeline which runs them in order on a message.
+ * <p>
+ * Extractors with the same condition share its evaluation: the pipeline remembers the source field value a condition
+ * was checked against and only evaluates it again if that value changed, e. g. because a previous extractor cut it.
+ * Extractors whose source field doesn't hold a string are skipped without checking their condition at all.
+ * </p>
+ * <p>
+ * A pipeline is immutable and safe to be used by multiple threads, it has to be rebuilt whenever the extractors of
+ * the input change.
+ * </p>
+ */
+public class ExtractorPipeline {
+    private static final Logger LOG = LoggerFactory.getLogger(ExtractorPipeline.class);
+
+    public static final ExtractorPipeline EMPTY = new ExtractorPipeline(Collections.<Extractor>emptyList());
+
+    private static final int NO_CONDITION = -1;
+
+    private final Extractor[] extractors;
+    // index into conditions for every extractor, or NO_CONDITION
+    private final int[] conditionSlots;
+    // one extractor per distinct condition, used to evaluate it
+    private final Extractor[] conditions;
+
+    /**
+     * @param extractors the extractors of the input, in the order they have to run
+     */
+    public ExtractorPipeline(List<Extractor> extractors) {
+        final int size = extractors.size();
+        final Map<ConditionKey, Integer> conditionIndex = Maps.newHashMap();
+        final Extractor[] distinctConditions = new Extractor[size];
+
+        this.extractors = extractors.toArray(new Extractor[size]);
+        this.conditionSlots = new int[size];
+        for (int i = 0; i < size; i++) {
+            final Extractor extractor = this.extractors[i];
+            if (extractor.getConditionType() == null || extractor.getConditionType() == Extractor.ConditionType.NONE) {
+                conditionSlots[i] = NO_CONDITION;
+                continue;
+            }
+
+            // the result of a condition only depends on the checked value, not on the field it was taken from
+            final ConditionKey key = new ConditionKey(extractor.getConditionType(), extractor.getConditionValue());
+            Integer slot = conditionIndex.get(key);
+            if (slot == null) {
+                slot = conditionIndex.size();
+                conditionIndex.put(key, slot);
+                distinctConditions[slot] = extractor;
+            }
+            conditionSlots[i] = slot;
+        }
+
+        this.conditions = new Extractor[conditionIndex.size()];
+        System.arraycopy(distinctConditions, 0, conditions, 0, conditions.length);
+    }
+
+    public void run(Message msg) {
+        if (extractors.length == 0) {
+            return;
+        }
+
+        // the value each condition has last been evaluated against, compared by identity as strings are immutable
+        final Object[] checkedValues = new Object[conditions.length];
+        final boolean[] results = new boolean[conditions.length];
+
+        for (int i = 0; i < extractors.length; i++) {
+            final Extractor extractor = extractors[i];
+            try {
+                // We can only work on Strings.
+                final Object value = msg.getField(extractor.getSourceField());
+                if (!(value instanceof String)) {
+                    continue;
+                }
+                final String field = (String) value;
+
+                final int slot = conditionSlots[i];
+                if (slot != NO_CONDITION) {
+                    if (checkedValues[slot] != field) {
+                        results[slot] = conditions[slot].conditionMatches(field);
+                        checkedValues[slot] = field;
+                    }
+                    if (!results[slot]) {
+                        continue;
+                    }
+                }
+
+                extractor.runExtractor(msg, field);
+            } catch (Exception e) {
+                extractor.incrementExceptions();
+                LOG.error("Could not apply extractor " + extractor.getTitle() + " (id=" + extractor.getId() + ")", e);
+            }
+        }
+    }
+
+    public int size() {
+        return extractors.length;
+    }
+
+    public int getConditionCount() {
+        return conditions.length;
+    }
+
+    private static class ConditionKey {
+        private final Extractor.ConditionType type;
+        private final String value;
+
+        private ConditionKey(Extractor.ConditionType type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final ConditionKey that = (ConditionKey) o;
+            return type == that.type && (value == null ? that.value == null : value.equals(that.value));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + (value == null ? 0 : value.hashCode());
+        }
+    }
+}
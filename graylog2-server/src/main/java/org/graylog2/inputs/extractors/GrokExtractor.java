@@ -18,11 +18,10 @@ package org.graylog2.inputs.extractors;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
-import oi.thekraken.grok.api.Grok;
-import oi.thekraken.grok.api.Match;
 import oi.thekraken.grok.api.exception.GrokException;
 import org.graylog2.ConfigurationException;
+import org.graylog2.grok.CompiledGrok;
+import org.graylog2.grok.CompiledGrokCache;
 import org.graylog2.grok.GrokPattern;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
@@ -36,10 +35,11 @@ import java.util.Set;
 public class GrokExtractor extends Extractor {
     private static final Logger log = LoggerFactory.getLogger(GrokExtractor.class);
 
-    private final Grok grok = new Grok();
+    private final CompiledGrok grok;
 
     public GrokExtractor(MetricRegistry metricRegistry,
                          Set<GrokPattern> grokPatterns,
+                         CompiledGrokCache compiledGrokCache,
                          String id,
                          String title,
                          long order,
@@ -69,12 +69,8 @@ public class GrokExtractor extends Extractor {
         }
 
         try {
-            // TODO we should really share this somehow, but unfortunately the extractors are reloaded every second.
-            for (final GrokPattern grokPattern : grokPatterns) {
-                grok.addPattern(grokPattern.name, grokPattern.pattern);
-            }
-
-            grok.compile((String) extractorConfig.get("grok_pattern"));
+            // the extractors are reloaded every second, so the compiled pattern is shared
+            grok = compiledGrokCache.get(grokPatterns, (String) extractorConfig.get("grok_pattern"));
         } catch (GrokException e) {
             log.error("Unable to parse grok patterns", e);
             throw new ConfigurationException("Unable to parse grok patterns");
@@ -83,20 +79,6 @@ public class GrokExtractor extends Extractor {
 
     @Override
     protected Result[] run(String value) {
-
-        // the extractor instance is rebuilt every second anyway
-        final Match match = grok.match(value);
-        match.captures();
-        final Map<String, Object> matches = match.toMap();
-        final List<Result> results = Lists.newArrayListWithCapacity(matches.size());
-
-        for (final Map.Entry<String, Object> entry : matches.entrySet()) {
-            // never add null values to the results, those don't make sense for us
-            if (entry.getValue() != null) {
-                results.add(new Result(entry.getValue(), entry.getKey(), -1, -1));
-            }
-        }
-
-        return results.toArray(new Result[results.size()]);
+        return grok.match(value);
     }
 }
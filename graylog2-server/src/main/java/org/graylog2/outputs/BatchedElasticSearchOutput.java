@@ -16,13 +16,13 @@
  */
 package org.graylog2.outputs;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.InstrumentedExecutorService;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
@@ -37,23 +37,62 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.codahale.metrics.MetricRegistry.name;
-
+/**
+ * Elasticsearch output which collects messages into batches of {@code output_batch_size} messages.
+ * <p>
+ * Every writing thread fills its own buffer, so writers never contend on a shared lock. Buffers are handed over by
+ * swapping their reference, either by the writing thread once the buffer is full or by the periodic flush.
+ * </p>
+ * <p>
+ * At most {@code output_max_concurrent_batches} bulk requests are in flight at any time. Writers block when all of
+ * them are taken, which exerts back pressure on the output buffer. Batches are not discarded while the Elasticsearch
+ * cluster is unavailable, they are kept until it becomes healthy again, and failed bulk requests are retried with an
+ * exponential back-off until they succeed or the output is stopped. The journal offsets of the messages are committed
+ * only after Elasticsearch acknowledged the bulk request.
+ * </p>
+ */
 public class BatchedElasticSearchOutput extends ElasticSearchOutput {
     private static final Logger LOG = LoggerFactory.getLogger(BatchedElasticSearchOutput.class);
 
-    private final List<Message> buffer;
+    private static final long MIN_RETRY_WAIT_MILLIS = 250L;
+    private static final long MAX_RETRY_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(1L);
+
     private final int maxBufferSize;
-    private final ExecutorService flushThread;
+    private final ExecutorService flushThreads;
+    private final int maxInFlightBatches;
+    private final Semaphore inFlightBatches;
+    private final Queue<ThreadBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ThreadBuffer> threadBuffer = new ThreadLocal<ThreadBuffer>() {
+        @Override
+        protected ThreadBuffer initialValue() {
+            final ThreadBuffer buffer = new ThreadBuffer();
+            buffers.add(buffer);
+            return buffer;
+        }
+    };
     private final Timer processTime;
+    private final Timer batchLatency;
     private final Histogram batchSize;
     private final Meter bufferFlushes;
     private final Meter bufferFlushesRequested;
+    private final Meter failedBatches;
+    private final Counter inFlightBytes;
+    private final Counter inFlightBatchCount;
     private final Cluster cluster;
 
     @AssistedInject
@@ -76,90 +115,207 @@ public class BatchedElasticSearchOutput extends ElasticSearchOutput {
         super(metricRegistry, messages, journal);
         this.cluster = cluster;
         this.maxBufferSize = serverConfiguration.getOutputBatchSize();
-        this.buffer = Lists.newArrayListWithCapacity(maxBufferSize);
+        this.maxInFlightBatches = serverConfiguration.getOutputMaxConcurrentBatches();
+        this.inFlightBatches = new Semaphore(maxInFlightBatches);
         this.processTime = metricRegistry.timer(name(this.getClass(), "processTime"));
+        this.batchLatency = metricRegistry.timer(name(this.getClass(), "batchLatency"));
         this.batchSize = metricRegistry.histogram(name(this.getClass(), "batchSize"));
         this.bufferFlushes = metricRegistry.meter(name(this.getClass(), "bufferFlushes"));
         this.bufferFlushesRequested = metricRegistry.meter(name(this.getClass(), "bufferFlushesRequested"));
-        this.flushThread = executorService(metricRegistry);
+        this.failedBatches = metricRegistry.meter(name(this.getClass(), "failedBatches"));
+        this.inFlightBytes = metricRegistry.counter(name(this.getClass(), "inFlightBytes"));
+        this.inFlightBatchCount = metricRegistry.counter(name(this.getClass(), "inFlightBatches"));
+        this.flushThreads = executorService(metricRegistry, maxInFlightBatches);
     }
 
-    private ExecutorService executorService(final MetricRegistry metricRegistry) {
+    private ExecutorService executorService(final MetricRegistry metricRegistry, int threads) {
         final ThreadFactory threadFactory = new ThreadFactoryBuilder()
                 .setNameFormat("batched-elasticsearch-output-%d")
                 .build();
         return new InstrumentedExecutorService(
-                Executors.newSingleThreadExecutor(threadFactory),
+                Executors.newFixedThreadPool(threads, threadFactory),
                 metricRegistry,
                 name(this.getClass(), "executor-service"));
     }
 
     @Override
     public void write(Message message) throws Exception {
-        synchronized (this.buffer) {
-            this.buffer.add(message);
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Buffering message id to [{}]: <{}>", getClass(), message.getId());
-            }
-            if (this.buffer.size() >= maxBufferSize) {
-                flush();
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Buffering message id to [{}]: <{}>", getClass(), message.getId());
+        }
+        write(Collections.singletonList(message));
+    }
+
+    @Override
+    public void write(List<Message> messageList) throws Exception {
+        final ThreadBuffer buffer = threadBuffer.get();
+
+        // take the buffer so the periodic flush cannot hand it over while we are appending to it
+        List<Message> messages = buffer.messages.getAndSet(null);
+        if (messages == null) {
+            messages = Lists.newArrayListWithCapacity(maxBufferSize);
+        }
+        messages.addAll(messageList);
+
+        if (messages.size() >= maxBufferSize) {
+            // blocks until a bulk request slot is free, this is the back pressure into the output buffer
+            inFlightBatches.acquireUninterruptibly();
+            submit(messages, true);
+        } else {
+            buffer.messages.set(messages);
+        }
+    }
+
+    /**
+     * Writes a batch while holding a bulk request slot, the slot is released once the batch has been written.
+     */
+    private void submit(final List<Message> messages, boolean async) {
+        final long bytes = approximateSize(messages);
+        inFlightBytes.inc(bytes);
+        inFlightBatchCount.inc();
+        final Timer.Context latency = batchLatency.time();
+
+        final Runnable flush = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronousFlush(messages);
+                } finally {
+                    latency.stop();
+                    inFlightBytes.dec(bytes);
+                    inFlightBatchCount.dec();
+                    inFlightBatches.release();
+                }
             }
+        };
+
+        if (async) {
+            LOG.debug("Submitting new flush thread");
+            flushThreads.execute(flush);
+        } else {
+            flush.run();
         }
     }
 
     private void synchronousFlush(List<Message> messageBuffer) {
         LOG.debug("[{}] Starting flushing {} messages", Thread.currentThread(), messageBuffer.size());
 
-        try (Timer.Context context = this.processTime.time()) {
-            write(messageBuffer);
-            this.batchSize.update(messageBuffer.size());
-            this.bufferFlushes.mark();
-        } catch (Exception e) {
-            LOG.error("Unable to flush message buffer", e);
+        int attempt = 0;
+        while (true) {
+            if (!cluster.isConnected() || !cluster.isHealthy()) {
+                try {
+                    cluster.waitForConnectedAndHealthy();
+                } catch (TimeoutException e) {
+                    LOG.warn("Elasticsearch cluster is still unavailable, holding back {} messages.", messageBuffer.size());
+                    continue;
+                } catch (InterruptedException e) {
+                    LOG.warn("Interrupted while waiting for a healthy Elasticsearch cluster. Not flushing {} messages, " +
+                            "they will be read from the journal again after a restart.", messageBuffer.size());
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            try (Timer.Context context = this.processTime.time()) {
+                // commits the journal offsets of the messages after the bulk request has been acknowledged
+                super.write(messageBuffer);
+                this.batchSize.update(messageBuffer.size());
+                this.bufferFlushes.mark();
+                break;
+            } catch (Exception e) {
+                // the batch is never given up, its messages are not read from the journal again until a restart
+                failedBatches.mark();
+                final long waitMillis = retryWaitMillis(++attempt);
+                LOG.warn("Unable to flush message buffer of " + messageBuffer.size() + " messages (attempt " + attempt +
+                        "), retrying in " + waitMillis + "ms.", e);
+                try {
+                    Thread.sleep(waitMillis);
+                } catch (InterruptedException ie) {
+                    LOG.warn("Interrupted while retrying to flush message buffer. Not committing the journal offsets " +
+                            "of {} messages, they will be read from the journal again after a restart.", messageBuffer.size());
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
         }
         LOG.debug("[{}] Flushing {} messages completed", Thread.currentThread(), messageBuffer.size());
     }
 
-    private void asynchronousFlush(final List<Message> mybuffer) {
-        LOG.debug("Submitting new flush thread");
-        flushThread.submit(new Runnable() {
-            @Override
-            public void run() {
-                synchronousFlush(mybuffer);
-            }
-        });
+    @VisibleForTesting
+    static long retryWaitMillis(int attempt) {
+        // exponential back-off, capped to avoid waiting for ages once Elasticsearch accepts writes again
+        final int exponent = Math.min(attempt - 1, 16);
+        return Math.min(MIN_RETRY_WAIT_MILLIS << exponent, MAX_RETRY_WAIT_MILLIS);
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        // ends the retries of batches which could not be written yet
+        flushThreads.shutdownNow();
     }
 
     public void flush() {
         flush(true);
     }
 
+    /**
+     * Hands over the buffers of all writing threads. Buffers currently being appended to are flushed by their writing
+     * thread once they are full or during the next periodic flush.
+     */
     @VisibleForTesting
     void flush(boolean async) {
         bufferFlushesRequested.mark();
 
-        if (!buffer.isEmpty()) {
-            if (cluster.isConnected() && cluster.isHealthy()) {
-                final List<Message> temporaryBuffer;
-                synchronized (this.buffer) {
-                    temporaryBuffer = ImmutableList.copyOf(buffer);
-                    buffer.clear();
-                }
+        if (!cluster.isConnected() || !cluster.isHealthy()) {
+            LOG.debug("Elasticsearch cluster unavailable, keeping buffered messages until it is healthy again.");
+            return;
+        }
 
-                if (async) {
-                    asynchronousFlush(temporaryBuffer);
-                } else {
-                    synchronousFlush(temporaryBuffer);
+        final Iterator<ThreadBuffer> iterator = buffers.iterator();
+        while (iterator.hasNext()) {
+            final ThreadBuffer buffer = iterator.next();
+            if (async) {
+                // the periodic flush must not block, the remaining buffers are flushed next time
+                if (!inFlightBatches.tryAcquire()) {
+                    LOG.debug("All bulk requests are in flight, not flushing remaining buffers.");
+                    return;
                 }
             } else {
-                LOG.warn("Clearing buffer ({} messages) because the Elasticsearch cluster is down.", buffer.size());
-                buffer.clear();
+                inFlightBatches.acquireUninterruptibly();
             }
-        } else {
-            LOG.debug("Not flushing empty buffer");
+
+            final List<Message> messages = buffer.messages.getAndSet(null);
+            if (messages == null || messages.isEmpty()) {
+                LOG.debug("Not flushing empty buffer");
+                inFlightBatches.release();
+                if (!buffer.owner.isAlive()) {
+                    iterator.remove();
+                }
+                continue;
+            }
+
+            submit(messages, async);
         }
     }
 
+    private static long approximateSize(List<Message> messages) {
+        long size = 0;
+        for (Message message : messages) {
+            for (Map.Entry<String, Object> field : message.getFieldsEntries()) {
+                size += field.getKey().length();
+                final Object value = field.getValue();
+                size += value instanceof String ? ((String) value).length() : 8;
+            }
+        }
+        return size;
+    }
+
+    private static class ThreadBuffer {
+        private final Thread owner = Thread.currentThread();
+        private final AtomicReference<List<Message>> messages = new AtomicReference<>();
+    }
+
     public interface Factory extends ElasticSearchOutput.Factory {
         @Override
         BatchedElasticSearchOutput create(Stream stream, Configuration configuration);
@@ -93,14 +93,11 @@ public class BenchmarkOutput implements MessageOutput {
 
     @Override
     public void write(List<Message> messages) throws Exception {
-        long maxOffset = Long.MIN_VALUE;
-
+        // the messages might come from different journal partitions, their offsets are committed separately
         for (final Message message : messages) {
-            maxOffset = Math.max(message.getJournalOffset(), maxOffset);
+            journal.markJournalOffsetCommitted(message.getJournalOffset());
         }
 
-        journal.markJournalOffsetCommitted(maxOffset);
-
         messagesWritten.mark(messages.size());
     }
 
@@ -33,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -89,9 +90,14 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
 
     @Override
     public void write(Message message) throws Exception {
+        write(Collections.singletonList(message));
+    }
+
+    @Override
+    public void write(List<Message> messageList) throws Exception {
         List<Message> flushBatch = null;
         synchronized (this) {
-            buffer.add(message);
+            buffer.addAll(messageList);
 
             if (buffer.size() >= maxBufferSize) {
                 flushBatch = buffer;
@@ -100,7 +106,6 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
         }
         // if the current thread found it had to flush any messages, it does so but blocks.
         // this ensures we don't flush more than 'processorCount' in parallel.
-        // TODO this will still be time limited by the OutputBufferProcessor and thus be called more often than it should
         if (flushBatch != null) {
             flush(flushBatch);
         }
@@ -125,7 +130,7 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
 
         try (Timer.Context ignored = processTime.time()) {
             lastFlushTime.set(System.nanoTime());
-            write(messages);
+            super.write(messages);
             batchSize.update(messages.size());
             bufferFlushes.mark();
         } catch (Exception e) {
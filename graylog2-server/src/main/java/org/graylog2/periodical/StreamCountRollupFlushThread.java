@@ -0,0 +1,89 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import org.graylog2.plugin.periodical.Periodical;
+import org.graylog2.streams.rollups.StreamCountRollups;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+
+public class StreamCountRollupFlushThread extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamCountRollupFlushThread.class);
+
+    private final StreamCountRollups streamCountRollups;
+
+    @Inject
+    public StreamCountRollupFlushThread(StreamCountRollups streamCountRollups) {
+        this.streamCountRollups = streamCountRollups;
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean masterOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return streamCountRollups.isEnabled();
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 0;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return 5;
+    }
+
+    @Override
+    public void doRun() {
+        try {
+            streamCountRollups.flush();
+        } catch (Exception e) {
+            LOG.error("Unable to flush stream count rollups.", e);
+        }
+        try {
+            streamCountRollups.updateCoverage();
+        } catch (Exception e) {
+            LOG.error("Unable to update the coverage of the stream count rollups.", e);
+        }
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+}
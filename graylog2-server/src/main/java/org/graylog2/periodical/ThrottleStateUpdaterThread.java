@@ -193,7 +193,6 @@ public class ThrottleStateUpdaterThread extends Periodical {
     @Override
     public void doRun() {
         throttleState = new ThrottleState(throttleState);
-        final long committedOffset = journal.getCommittedOffset();
 
         // TODO there's a lot of duplication around this class. Probably should be refactored a bit.
         // also update metrics for each of the values, so clients can get to it cheaply
@@ -203,9 +202,13 @@ public class ThrottleStateUpdaterThread extends Periodical {
 
         long previousLogEndOffset = logEndOffset;
         long previousReadOffset = currentReadOffset;
-        long logStartOffset = journal.getLogStartOffset();
-        logEndOffset = journal.getLogEndOffset() - 1; // -1 because getLogEndOffset is the next offset that gets assigned
-        currentReadOffset = journal.getNextReadOffset() - 1; // just to make it clear which field we read
+        // the offsets are summed up over all journal partitions, only their rate of change is of interest
+        logEndOffset = 0;
+        currentReadOffset = 0;
+        for (int partition = 0; partition < journal.getNumberOfPartitions(); partition++) {
+            logEndOffset += journal.getLogEndOffset(partition) - 1; // -1 because getLogEndOffset is the next offset that gets assigned
+            currentReadOffset += journal.getNextReadOffset(partition) - 1; // just to make it clear which field we read
+        }
 
         // for the first run, don't send an update, there's no previous data available to calc rates
         if (firstRun) {
@@ -221,12 +224,7 @@ public class ThrottleStateUpdaterThread extends Periodical {
 
         throttleState.processBufferCapacity = processBuffer.getRemainingCapacity();
 
-        if (committedOffset == KafkaJournal.DEFAULT_COMMITTED_OFFSET) {
-            // nothing committed at all, the entire log is uncommitted, or completely empty.
-            throttleState.uncommittedJournalEntries = journal.size() == 0 ? 0 : logEndOffset - logStartOffset;
-        } else {
-            throttleState.uncommittedJournalEntries = logEndOffset - committedOffset;
-        }
+        throttleState.uncommittedJournalEntries = journal.getUncommittedEntries();
         log.debug("ThrottleState: {}", throttleState);
 
         // the journal needs this to provide information to rest clients
@@ -17,6 +17,8 @@
 package org.graylog2.rest;
 
 import au.com.bytecode.opencsv.CSVWriter;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.graylog2.indexer.results.ResultMessage;
 import org.graylog2.indexer.results.ScrollResult;
 import org.graylog2.shared.rest.AdditionalMediaType;
@@ -31,22 +33,39 @@ import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 
 @Provider
-@Produces(AdditionalMediaType.TEXT_CSV)
+@Produces({AdditionalMediaType.TEXT_CSV, AdditionalMediaType.APPLICATION_NDJSON})
 public class ScrollChunkWriter implements MessageBodyWriter<ScrollResult.ScrollChunk> {
     private static final Logger LOG = LoggerFactory.getLogger(ScrollChunkWriter.class);
 
     public static final MediaType TEXT_CSV = new MediaType("text", "csv");
 
+    // one object per line, without the default separator between root level values
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().setRootValueSeparator(null);
+
+    // chunks are written one after another by the same threads, so their buffers are reused
+    private static final ThreadLocal<ChunkEncoder> ENCODERS = new ThreadLocal<ChunkEncoder>() {
+        @Override
+        protected ChunkEncoder initialValue() {
+            return new ChunkEncoder();
+        }
+    };
+
     @Override
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
-        return ScrollResult.ScrollChunk.class.equals(type) && TEXT_CSV.isCompatible(mediaType);
+        return ScrollResult.ScrollChunk.class.equals(type)
+                && (TEXT_CSV.isCompatible(mediaType) || AdditionalMediaType.APPLICATION_NDJSON_TYPE.isCompatible(mediaType));
 
     }
 
@@ -70,39 +89,119 @@ public class ScrollChunkWriter implements MessageBodyWriter<ScrollResult.ScrollC
         if (LOG.isDebugEnabled()) {
             LOG.debug("[{}] Writing chunk {}", Thread.currentThread().getId(), scrollChunk.getChunkNumber());
         }
-        final CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(entityStream, StandardCharsets.UTF_8));
+        final ChunkEncoder encoder = ENCODERS.get();
+        encoder.reset();
+
+        if (AdditionalMediaType.APPLICATION_NDJSON_TYPE.isCompatible(mediaType)) {
+            encoder.writeJson(scrollChunk);
+        } else {
+            encoder.writeCsv(scrollChunk);
+        }
+
+        encoder.writeTo(entityStream);
+    }
+
+    private static String escapeLineBreaks(String value) {
+        if (value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
 
-        final List<String> fields = scrollChunk.getFields();
-        final int numberOfFields = fields.size();
+        final StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static class ChunkEncoder {
+        private final StringWriter text = new StringWriter(64 * 1024);
+        private final CSVWriter csvWriter = new CSVWriter(text);
+        private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+        private String[] fieldValues = new String[0];
 
-        if (scrollChunk.isFirstChunk()) {
-            // write field headers only on first chunk
-            csvWriter.writeNext(fields.toArray(new String[numberOfFields]));
+        private void reset() {
+            text.getBuffer().setLength(0);
         }
-        // write result set in same order as the header row
-        final String[] fieldValues = new String[numberOfFields];
-        for (ResultMessage message : scrollChunk.getMessages()) {
-            int idx = 0;
-            // first collect all values from the current message
-            for (String fieldName : fields) {
-                final Object val = message.getMessage().get(fieldName);
-                if (val == null) {
-                    fieldValues[idx] = null;
-                } else {
-                    String stringVal = val.toString();
-                    fieldValues[idx] = stringVal
-                            .replaceAll("\n", "\\\\n")
-                            .replaceAll("\r", "\\\\r");
+
+        private void writeCsv(ScrollResult.ScrollChunk scrollChunk) {
+            final List<String> fields = scrollChunk.getFields();
+            final int numberOfFields = fields.size();
+
+            if (scrollChunk.isFirstChunk()) {
+                // write field headers only on first chunk
+                csvWriter.writeNext(fields.toArray(new String[numberOfFields]));
+            }
+            // write result set in same order as the header row
+            if (fieldValues.length != numberOfFields) {
+                fieldValues = new String[numberOfFields];
+            }
+            for (ResultMessage message : scrollChunk.getMessages()) {
+                int idx = 0;
+                // first collect all values from the current message
+                for (String fieldName : fields) {
+                    final Object val = message.getMessage().get(fieldName);
+                    fieldValues[idx++] = val == null ? null : escapeLineBreaks(val.toString());
                 }
-                idx++;
+
+                // write the complete line, some fields might not be present in the message, so there might be null values
+                csvWriter.writeNext(fieldValues);
             }
+            if (csvWriter.checkError()) {
+                LOG.error("Encountered unspecified error when writing message result as CSV, result is likely malformed.");
+            }
+        }
 
-            // write the complete line, some fields might not be present in the message, so there might be null values
-            csvWriter.writeNext(fieldValues);
+        private void writeJson(ScrollResult.ScrollChunk scrollChunk) throws IOException {
+            final List<String> fields = scrollChunk.getFields();
+            try (final JsonGenerator generator = JSON_FACTORY.createGenerator(text)) {
+                for (ResultMessage resultMessage : scrollChunk.getMessages()) {
+                    final Map<String, Object> message = resultMessage.getMessage();
+                    generator.writeStartObject();
+                    for (String fieldName : fields) {
+                        final Object val = message.get(fieldName);
+                        if (val == null) {
+                            continue;
+                        }
+                        generator.writeFieldName(fieldName);
+                        if (val instanceof Number || val instanceof Boolean || val instanceof String) {
+                            generator.writeObject(val);
+                        } else {
+                            generator.writeString(val.toString());
+                        }
+                    }
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                }
+            }
+        }
+
+        private void writeTo(OutputStream out) throws IOException {
+            final CharBuffer chars = CharBuffer.wrap(text.getBuffer());
+            utf8.reset();
+            while (utf8.encode(chars, bytes, true).isOverflow()) {
+                drain(out);
+            }
+            while (utf8.flush(bytes).isOverflow()) {
+                drain(out);
+            }
+            drain(out);
+            out.flush();
         }
-        if (csvWriter.checkError()) {
-            LOG.error("Encountered unspecified error when writing message result as CSV, result is likely malformed.");
+
+        private void drain(OutputStream out) throws IOException {
+            bytes.flip();
+            out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            bytes.clear();
         }
-        csvWriter.close();
     }
 }
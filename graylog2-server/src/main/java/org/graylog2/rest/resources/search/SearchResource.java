@@ -320,6 +320,7 @@ public abstract class SearchResource extends RestResource {
                     output.close();
                 } catch (IOException e) {
                     LOG.warn("[{}] Could not close chunked output stream for query scroll.", scroll.getQueryHash());
+                    scroll.cancel();
                 }
             }
         };
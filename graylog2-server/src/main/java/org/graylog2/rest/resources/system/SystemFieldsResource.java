@@ -24,7 +24,7 @@ import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiParam;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
-import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.indices.MessageFieldCatalog;
 import org.graylog2.shared.rest.resources.RestResource;
 import org.graylog2.shared.security.RestPermissions;
 
@@ -42,17 +42,17 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 @Api(value = "System/Fields", description = "Get list of message fields that exist.")
 @Path("/system/fields")
 public class SystemFieldsResource extends RestResource {
-    private final Indices indices;
+    private final MessageFieldCatalog messageFieldCatalog;
 
     @Inject
-    public SystemFieldsResource(Indices indices) {
-        this.indices = indices;
+    public SystemFieldsResource(MessageFieldCatalog messageFieldCatalog) {
+        this.messageFieldCatalog = messageFieldCatalog;
     }
 
     @GET
     @Timed
     @ApiOperation(value = "Get list of message fields that exist",
-            notes = "This operation is comparably fast because it reads directly from the indexer mapping.")
+            notes = "This operation is fast because the fields of the indexer mappings are kept in memory.")
     @RequiresPermissions(RestPermissions.FIELDNAMES_READ)
     @Produces(APPLICATION_JSON)
     public Map<String, Set<String>> fields(@ApiParam(name = "limit", value = "Maximum number of fields to return. Set to 0 for all fields.", required = false)
@@ -61,12 +61,12 @@ public class SystemFieldsResource extends RestResource {
 
         final Set<String> fields;
         if (unlimited) {
-            fields = indices.getAllMessageFields();
+            fields = messageFieldCatalog.getAllMessageFields();
         } else {
             fields = Sets.newHashSet();
             addStandardFields(fields);
             int i = 0;
-            for (String field : indices.getAllMessageFields()) {
+            for (String field : messageFieldCatalog.getAllMessageFields()) {
                 if (i == limit) {
                     break;
                 }
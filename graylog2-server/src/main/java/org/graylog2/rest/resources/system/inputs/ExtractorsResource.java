@@ -70,6 +70,7 @@ public class ExtractorsResource extends RestResource {
     private final InputRegistry inputs;
     private final MetricRegistry metricRegistry;
     private final ExtractorFactory extractorFactory;
+    private final ConverterFactory converterFactory;
     private final PersistedInputs persistedInputs;
 
     @Inject
@@ -78,12 +79,14 @@ public class ExtractorsResource extends RestResource {
                               final InputRegistry inputs,
                               final MetricRegistry metricRegistry,
                               final ExtractorFactory extractorFactory,
+                              final ConverterFactory converterFactory,
                               final PersistedInputs persistedInputs) {
         this.inputService = inputService;
         this.activityWriter = activityWriter;
         this.inputs = inputs;
         this.metricRegistry = metricRegistry;
         this.extractorFactory = extractorFactory;
+        this.converterFactory = converterFactory;
         this.persistedInputs = persistedInputs;
     }
 
@@ -314,7 +317,7 @@ public class ExtractorsResource extends RestResource {
 
         for (Map.Entry<String, Map<String, Object>> c : requestConverters.entrySet()) {
             try {
-                converters.add(ConverterFactory.factory(Converter.Type.valueOf(c.getKey().toUpperCase()), c.getValue()));
+                converters.add(converterFactory.factory(Converter.Type.valueOf(c.getKey().toUpperCase()), c.getValue()));
             } catch (ConverterFactory.NoSuchConverterException e) {
                 LOG.warn("No such converter [" + c.getKey() + "]. Skipping.", e);
             } catch (ConfigurationException e) {
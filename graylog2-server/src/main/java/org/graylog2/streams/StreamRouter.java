@@ -94,14 +94,16 @@ public class StreamRouter {
         @Override
         public void run() {
             try {
-                final StreamRouterEngine engine = getNewEngine();
+                final List<Stream> streams = streamService.loadAllEnabled();
+                // compiling the engine is not free, only do it if the streams have changed
+                final String fingerprint = new StreamListFingerprint(streams).getFingerprint();
 
-                if (engine.getFingerprint().equals(routerEngine.get().getFingerprint())) {
-                    LOG.debug("Not updating router engine, streams did not change (fingerprint={})", engine.getFingerprint());
+                if (fingerprint.equals(routerEngine.get().getFingerprint())) {
+                    LOG.debug("Not updating router engine, streams did not change (fingerprint={})", fingerprint);
                 } else {
                     LOG.debug("Updating to new stream router engine. (old-fingerprint={} new-fingerprint={}",
-                            routerEngine.get().getFingerprint(), engine.getFingerprint());
-                    routerEngine.set(engine);
+                            routerEngine.get().getFingerprint(), fingerprint);
+                    routerEngine.set(engineFactory.create(streams, executorService));
                 }
             } catch (Exception e) {
                 LOG.error("Stream router engine update failed!", e);
@@ -18,10 +18,11 @@
 package org.graylog2.streams;
 
 import com.codahale.metrics.Timer;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.SimpleTimeLimiter;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.common.util.concurrent.UncheckedTimeoutException;
@@ -31,22 +32,39 @@ import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.plugin.streams.StreamRuleType;
 import org.graylog2.streams.matchers.StreamRuleMatcher;
+import org.graylog2.utilities.BudgetedCharSequence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.graylog2.plugin.Tools.getDouble;
+
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Stream routing engine to select matching streams for a message.
- *
- * This class is NOT thread-safe! Use one instance per thread.
+ * <p>
+ * The stream rules are compiled into an index keyed by field name when the engine is created, so that only the rules
+ * of fields contained in a message are looked at. Exact rules are resolved with a hash lookup, greater and smaller
+ * rules with a binary search over their sorted thresholds.
+ * </p>
+ * <p>
+ * The regex rules of a field are combined into a single alternation, which is used to rule out all of them with a
+ * single pass over the field value. Regex rules are evaluated on the calling thread, their time limit is enforced by
+ * a {@link BudgetedCharSequence}. Only patterns which can't be compiled fall back to the thread based time limiter.
+ * </p>
+ * <p>
+ * The engine is immutable and can be shared by multiple threads.
+ * </p>
  */
 public class StreamRouterEngine {
     private static final Logger LOG = LoggerFactory.getLogger(StreamRouterEngine.class);
@@ -58,7 +76,16 @@ public class StreamRouterEngine {
     private final long streamProcessingTimeout;
     private final String fingerprint;
 
-    private final List<Rule> rulesList;
+    // indexed by the position of a stream in the streams list
+    private final Stream[] streamsByIndex;
+    private final boolean[] andMatching;
+    // number of presence rules of each stream, presence rules are evaluated regardless of the message fields
+    private final int[] presenceRuleCounts;
+
+    private final PresenceRule[] presenceRules;
+    private final Map<String, FieldRules> fieldRules;
+    private final Map<String, RegexRules> regexRules;
+    private final ThreadLocal<MatchState> matchState;
 
     public interface Factory {
         StreamRouterEngine create(List<Stream> streams, ExecutorService executorService);
@@ -76,48 +103,65 @@ public class StreamRouterEngine {
         this.streamProcessingTimeout = streamFaultManager.getStreamProcessingTimeout();
         this.fingerprint = new StreamListFingerprint(streams).getFingerprint();
 
-        final List<Rule> presenceRules = Lists.newArrayList();
-        final List<Rule> exactRules = Lists.newArrayList();
-        final List<Rule> greaterRules = Lists.newArrayList();
-        final List<Rule> smallerRules = Lists.newArrayList();
-        final List<Rule> regexRules = Lists.newArrayList();
+        final int numberOfStreams = streams.size();
+        this.streamsByIndex = streams.toArray(new Stream[numberOfStreams]);
+        this.andMatching = new boolean[numberOfStreams];
+        this.presenceRuleCounts = new int[numberOfStreams];
+
+        final List<PresenceRule> presenceRuleList = Lists.newArrayList();
+        final Map<String, FieldRules.Builder> fieldRuleBuilders = Maps.newHashMap();
+        final Map<String, List<Rule>> regexRuleLists = Maps.newLinkedHashMap();
+
+        for (int streamIndex = 0; streamIndex < numberOfStreams; streamIndex++) {
+            final Stream stream = streamsByIndex[streamIndex];
+            andMatching[streamIndex] = stream.getMatchingType() == Stream.MatchingType.AND;
 
-        for (Stream stream : streams) {
             for (StreamRule streamRule : stream.getStreamRules()) {
                 final Rule rule;
                 try {
-                    rule = new Rule(stream, streamRule, stream.getMatchingType());
+                    rule = new Rule(stream, streamIndex, streamRule, stream.getMatchingType());
                 } catch (InvalidStreamRuleTypeException e) {
                     LOG.warn("Invalid stream rule type. Skipping matching for this rule. " + e.getMessage(), e);
                     continue;
                 }
-                switch (streamRule.getType()) {
-                    case PRESENCE:
-                        presenceRules.add(rule);
-                        break;
-                    case EXACT:
-                        exactRules.add(rule);
-                        break;
-                    case GREATER:
-                        greaterRules.add(rule);
-                        break;
-                    case SMALLER:
-                        smallerRules.add(rule);
-                        break;
-                    case REGEX:
-                        regexRules.add(rule);
-                        break;
+
+                final StreamRuleType type = streamRule.getType();
+                if (type == StreamRuleType.PRESENCE) {
+                    presenceRuleList.add(new PresenceRule(streamIndex, streamRule));
+                    presenceRuleCounts[streamIndex]++;
+                } else if (type == StreamRuleType.REGEX) {
+                    List<Rule> rules = regexRuleLists.get(streamRule.getField());
+                    if (rules == null) {
+                        rules = Lists.newArrayList();
+                        regexRuleLists.put(streamRule.getField(), rules);
+                    }
+                    rules.add(rule);
+                } else {
+                    FieldRules.Builder builder = fieldRuleBuilders.get(streamRule.getField());
+                    if (builder == null) {
+                        builder = new FieldRules.Builder(numberOfStreams);
+                        fieldRuleBuilders.put(streamRule.getField(), builder);
+                    }
+                    builder.add(streamIndex, andMatching[streamIndex], streamRule);
                 }
             }
         }
 
-        final int size = presenceRules.size() + exactRules.size() + greaterRules.size() + smallerRules.size() + regexRules.size();
-        this.rulesList = Lists.newArrayListWithCapacity(size);
-        this.rulesList.addAll(presenceRules);
-        this.rulesList.addAll(exactRules);
-        this.rulesList.addAll(greaterRules);
-        this.rulesList.addAll(smallerRules);
-        this.rulesList.addAll(regexRules);
+        this.presenceRules = presenceRuleList.toArray(new PresenceRule[presenceRuleList.size()]);
+        this.fieldRules = Maps.newHashMapWithExpectedSize(fieldRuleBuilders.size());
+        for (Map.Entry<String, FieldRules.Builder> entry : fieldRuleBuilders.entrySet()) {
+            fieldRules.put(entry.getKey(), entry.getValue().build());
+        }
+        this.regexRules = Maps.newLinkedHashMap();
+        for (Map.Entry<String, List<Rule>> entry : regexRuleLists.entrySet()) {
+            regexRules.put(entry.getKey(), new RegexRules(entry.getKey(), entry.getValue()));
+        }
+        this.matchState = new ThreadLocal<MatchState>() {
+            @Override
+            protected MatchState initialValue() {
+                return new MatchState(numberOfStreams);
+            }
+        };
     }
 
     /**
@@ -140,53 +184,125 @@ public class StreamRouterEngine {
 
     /**
      * Returns a list of matching streams for the given message.
+     * <p>
+     * A stream with the OR matching type matches if any of its rules matches. A stream with the AND matching type
+     * matches if at least one of its rules matches and none of the evaluated rules fail. Rules other than presence
+     * rules are only evaluated if the message contains their field.
+     * </p>
      *
      * @param message the message
      * @return the list of matching streams
      */
     public List<Stream> match(Message message) {
-        final Set<Stream> result = Sets.newHashSet();
-        final Set<Stream> blackList = Sets.newHashSet();
+        final MatchState state = matchState.get();
+        try {
+            for (final PresenceRule rule : presenceRules) {
+                if (rule.matches(message.getField(rule.field))) {
+                    state.match(rule.streamIndex);
+                }
+            }
 
-        for (final Rule rule : rulesList) {
-            if (blackList.contains(rule.getStream())) {
-                continue;
+            if (!fieldRules.isEmpty()) {
+                for (final String field : message.getFieldNames()) {
+                    final FieldRules rules = fieldRules.get(field);
+                    if (rules != null) {
+                        rules.match(message.getField(field), state);
+                    }
+                }
+            }
+
+            for (final RegexRules rules : regexRules.values()) {
+                if (message.hasField(rules.field)) {
+                    matchRegex(rules, message, state);
+                }
+            }
+
+            final ImmutableList.Builder<Stream> result = ImmutableList.builder();
+            for (int i = 0; i < state.touchedCount; i++) {
+                final int streamIndex = state.touched[i];
+                if (state.matched[streamIndex] > 0 && !(andMatching[streamIndex] && hasFailed(state, streamIndex))) {
+                    final Stream stream = streamsByIndex[streamIndex];
+                    streamMetrics.markIncomingMeter(stream.getId());
+                    result.add(stream);
+                }
             }
 
-            final StreamRule streamRule = rule.getStreamRule();
-            final StreamRuleType streamRuleType = streamRule.getType();
-            if (streamRuleType != StreamRuleType.PRESENCE && !message.hasField(streamRule.getField())) {
+            return result.build();
+        } finally {
+            state.reset();
+        }
+    }
+
+    private boolean hasFailed(MatchState state, int streamIndex) {
+        return state.evaluated[streamIndex] + presenceRuleCounts[streamIndex] > state.matched[streamIndex];
+    }
+
+    // streams which can't match anymore or are already matched don't need to evaluate any further rules
+    private boolean isDecided(MatchState state, int streamIndex) {
+        return andMatching[streamIndex] ? hasFailed(state, streamIndex) : state.matched[streamIndex] > 0;
+    }
+
+    private void matchRegex(RegexRules rules, Message message, MatchState state) {
+        for (final Rule rule : rules.fallbackRules) {
+            final int streamIndex = rule.getStreamIndex();
+            if (isDecided(state, streamIndex)) {
                 continue;
             }
+            state.evaluate(streamIndex, 1);
+            if (rule.matchWithTimeOut(message, streamProcessingTimeout, TimeUnit.MILLISECONDS) != null) {
+                state.match(streamIndex);
+            }
+        }
+        if (rules.rules.length == 0) {
+            return;
+        }
 
-            final Stream stream;
-            if (streamRuleType != StreamRuleType.REGEX) {
-                stream = rule.match(message);
-            } else {
-                stream = rule.matchWithTimeOut(message, streamProcessingTimeout, TimeUnit.MILLISECONDS);
+        final Object value = message.getField(rules.field);
+        // same semantics as RegexMatcher, a null value doesn't match any rule, not even inverted ones
+        final String string = value == null ? null : value.toString();
+
+        // a single pass rules out all patterns of the field in the common case that none of them matches
+        boolean anyMatch = string != null;
+        if (anyMatch && rules.combinedPattern != null) {
+            try {
+                anyMatch = find(rules.combinedPattern, string);
+            } catch (BudgetedCharSequence.BudgetExceededException e) {
+                // let the individual patterns figure out which rule is responsible
+                LOG.debug("Combined regex of field <{}> exceeded the time limit, evaluating rules one by one.", rules.field);
             }
+        }
 
-            final Stream.MatchingType matchingType = rule.getMatchingType();
-            if (stream == null) {
-                if (matchingType == Stream.MatchingType.AND) {
-                    result.remove(rule.getStream());
-                    // blacklist stream because it can't match anymore
-                    blackList.add(rule.getStream());
-                }
-            } else {
-                result.add(stream);
-                if (matchingType == Stream.MatchingType.OR) {
-                    // blacklist stream because it is already matched
-                    blackList.add(rule.getStream());
+        for (int i = 0; i < rules.rules.length; i++) {
+            final Rule rule = rules.rules[i];
+            final int streamIndex = rule.getStreamIndex();
+            if (isDecided(state, streamIndex)) {
+                continue;
+            }
+            state.evaluate(streamIndex, 1);
+            if (string == null) {
+                continue;
+            }
+
+            if (!anyMatch) {
+                if (rule.getStreamRule().getInverted()) {
+                    state.match(streamIndex);
                 }
+                continue;
             }
-        }
 
-        for (Stream stream : result) {
-            streamMetrics.markIncomingMeter(stream.getId());
+            try (final Timer.Context ignored = rule.executionTimer.time()) {
+                if (rule.getStreamRule().getInverted() ^ find(rules.patterns[i], string)) {
+                    state.match(streamIndex);
+                }
+            } catch (BudgetedCharSequence.BudgetExceededException e) {
+                streamFaultManager.registerFailure(rule.getStream());
+            }
         }
+    }
 
-        return ImmutableList.copyOf(result);
+    private boolean find(Pattern pattern, String value) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(streamProcessingTimeout);
+        return pattern.matcher(new BudgetedCharSequence(value, deadline)).find();
     }
 
     /**
@@ -198,12 +314,13 @@ public class StreamRouterEngine {
     public List<StreamTestMatch> testMatch(Message message) {
         final List<StreamTestMatch> matches = Lists.newArrayList();
 
-        for (final Stream stream : streams) {
+        for (int streamIndex = 0; streamIndex < streams.size(); streamIndex++) {
+            final Stream stream = streams.get(streamIndex);
             final StreamTestMatch match = new StreamTestMatch(stream);
 
             for (final StreamRule streamRule : stream.getStreamRules()) {
                 try {
-                    final Rule rule = new Rule(stream, streamRule, stream.getMatchingType());
+                    final Rule rule = new Rule(stream, streamIndex, streamRule, stream.getMatchingType());
                     match.addRule(rule);
                 } catch (InvalidStreamRuleTypeException e) {
                     LOG.warn("Invalid stream rule type. Skipping matching for this rule. " + e.getMessage(), e);
@@ -223,12 +340,20 @@ public class StreamRouterEngine {
         private final StreamRule rule;
         private final StreamRuleMatcher matcher;
         private final Stream.MatchingType matchingType;
+        private final int streamIndex;
+        private final Timer executionTimer;
 
-        public Rule(Stream stream, StreamRule rule, Stream.MatchingType matchingType) throws InvalidStreamRuleTypeException {
+        public Rule(Stream stream, int streamIndex, StreamRule rule, Stream.MatchingType matchingType) throws InvalidStreamRuleTypeException {
             this.stream = stream;
+            this.streamIndex = streamIndex;
             this.rule = rule;
             this.matchingType = matchingType;
             this.matcher = StreamRuleMatcherFactory.build(rule.getType());
+            this.executionTimer = streamMetrics.getExecutionTimer(rule.getId());
+        }
+
+        public int getStreamIndex() {
+            return streamIndex;
         }
 
         public Stream.MatchingType getMatchingType() {
@@ -238,7 +363,7 @@ public class StreamRouterEngine {
         @Nullable
         public Stream match(Message message) {
             // TODO Add missing message recordings!
-            try (final Timer.Context ignored = streamMetrics.getExecutionTimer(rule.getId()).time()) {
+            try (final Timer.Context ignored = executionTimer.time()) {
                 if (matcher.match(message, rule)) {
                     return stream;
                 } else {
@@ -256,7 +381,7 @@ public class StreamRouterEngine {
         @Nullable
         private Stream matchWithTimeOut(final Message message, long timeout, TimeUnit unit) {
             Stream matchedStream = null;
-            try (final Timer.Context ignored = streamMetrics.getExecutionTimer(rule.getId()).time()) {
+            try (final Timer.Context ignored = executionTimer.time()) {
                 matchedStream = timeLimiter.callWithTimeout(new Callable<Stream>() {
                     @Override
                     @Nullable
@@ -283,6 +408,409 @@ public class StreamRouterEngine {
         }
     }
 
+    /**
+     * The regex rules of a single field.
+     */
+    private static class RegexRules {
+        private final String field;
+        // rules evaluated on the calling thread, patterns[i] belongs to rules[i]
+        private final Rule[] rules;
+        private final Pattern[] patterns;
+        // alternation of all patterns of the field, null if there is nothing to combine
+        @Nullable
+        private final Pattern combinedPattern;
+        // rules with patterns which don't compile, evaluated by the RegexMatcher on the time limiter thread
+        private final Rule[] fallbackRules;
+
+        private RegexRules(String field, List<Rule> fieldRules) {
+            this.field = field;
+
+            final List<Rule> compiledRules = Lists.newArrayList();
+            final List<Pattern> compiledPatterns = Lists.newArrayList();
+            final List<Rule> uncompiledRules = Lists.newArrayList();
+            final List<String> combinable = Lists.newArrayList();
+            for (Rule rule : fieldRules) {
+                final String regex = rule.getStreamRule().getValue();
+                final Pattern pattern;
+                try {
+                    pattern = Pattern.compile(regex, Pattern.DOTALL);
+                } catch (PatternSyntaxException | NullPointerException e) {
+                    uncompiledRules.add(rule);
+                    continue;
+                }
+                compiledRules.add(rule);
+                compiledPatterns.add(pattern);
+                if (isCombinable(regex)) {
+                    combinable.add("(?:" + regex + ")");
+                }
+            }
+
+            this.rules = compiledRules.toArray(new Rule[compiledRules.size()]);
+            this.patterns = compiledPatterns.toArray(new Pattern[compiledPatterns.size()]);
+            this.fallbackRules = uncompiledRules.toArray(new Rule[uncompiledRules.size()]);
+            // the combined pattern can only rule out all patterns if it contains each of them
+            this.combinedPattern = combinable.size() > 1 && combinable.size() == rules.length
+                    ? compileCombined(field, combinable) : null;
+        }
+
+        // group numbers change in the combined pattern, so back references would point to the wrong groups
+        private static boolean isCombinable(String regex) {
+            return !regex.matches("(?s).*\\\\(?:[1-9]|k<).*");
+        }
+
+        @Nullable
+        private static Pattern compileCombined(String field, List<String> patterns) {
+            try {
+                return Pattern.compile(Joiner.on('|').join(patterns), Pattern.DOTALL);
+            } catch (PatternSyntaxException e) {
+                // e. g. duplicate named groups
+                LOG.debug("Unable to combine regex rules of field <{}>: {}", field, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Per-thread evaluation state of a single {@link #match(Message)} call. Only the counters of the streams touched
+     * by a message are reset afterwards.
+     */
+    private static class MatchState {
+        // number of evaluated rules (excluding presence rules), only maintained for streams with AND matching type
+        private final int[] evaluated;
+        private final int[] matched;
+        private final boolean[] isTouched;
+        private final int[] touched;
+        private int touchedCount = 0;
+
+        private MatchState(int numberOfStreams) {
+            this.evaluated = new int[numberOfStreams];
+            this.matched = new int[numberOfStreams];
+            this.isTouched = new boolean[numberOfStreams];
+            this.touched = new int[numberOfStreams];
+        }
+
+        private void evaluate(int streamIndex, int count) {
+            touch(streamIndex);
+            evaluated[streamIndex] += count;
+        }
+
+        private void match(int streamIndex) {
+            touch(streamIndex);
+            matched[streamIndex]++;
+        }
+
+        private void touch(int streamIndex) {
+            if (!isTouched[streamIndex]) {
+                isTouched[streamIndex] = true;
+                touched[touchedCount++] = streamIndex;
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                final int streamIndex = touched[i];
+                evaluated[streamIndex] = 0;
+                matched[streamIndex] = 0;
+                isTouched[streamIndex] = false;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    private static class PresenceRule {
+        private final int streamIndex;
+        private final String field;
+        private final boolean inverted;
+
+        private PresenceRule(int streamIndex, StreamRule rule) {
+            this.streamIndex = streamIndex;
+            this.field = rule.getField();
+            this.inverted = rule.getInverted();
+        }
+
+        // same semantics as FieldPresenceMatcher
+        private boolean matches(@Nullable Object value) {
+            if (value == null) {
+                return inverted;
+            }
+            if (value instanceof String) {
+                return inverted ^ !((String) value).trim().isEmpty();
+            }
+            return !inverted;
+        }
+    }
+
+    /**
+     * The exact, greater and smaller rules of a single field.
+     */
+    private static class FieldRules {
+        // AND streams with rules on this field and their number of rules, all of them are evaluated if the field exists
+        private final int[] andStreams;
+        private final int[] andRuleCounts;
+
+        // rule value -> streams of the non-inverted exact rules with that value, one entry per rule
+        private final Map<String, int[]> exactRules;
+        private final String[] invertedExactValues;
+        private final int[] invertedExactStreams;
+
+        private final Thresholds greaterRules;
+        private final Thresholds invertedGreaterRules;
+        private final Thresholds smallerRules;
+        private final Thresholds invertedSmallerRules;
+        private final boolean hasNumericRules;
+
+        private FieldRules(Builder builder) {
+            final List<Integer> streams = Lists.newArrayList();
+            final List<Integer> counts = Lists.newArrayList();
+            for (int streamIndex = 0; streamIndex < builder.andRuleCounts.length; streamIndex++) {
+                if (builder.andRuleCounts[streamIndex] > 0) {
+                    streams.add(streamIndex);
+                    counts.add(builder.andRuleCounts[streamIndex]);
+                }
+            }
+            this.andStreams = Ints.toArray(streams);
+            this.andRuleCounts = Ints.toArray(counts);
+
+            this.exactRules = Maps.newHashMapWithExpectedSize(builder.exactRules.size());
+            for (Map.Entry<String, List<Integer>> entry : builder.exactRules.entrySet()) {
+                exactRules.put(entry.getKey(), Ints.toArray(entry.getValue()));
+            }
+            this.invertedExactValues = builder.invertedExactValues.toArray(new String[builder.invertedExactValues.size()]);
+            this.invertedExactStreams = Ints.toArray(builder.invertedExactStreams);
+
+            this.greaterRules = new Thresholds(builder.greaterRules);
+            this.invertedGreaterRules = new Thresholds(builder.invertedGreaterRules);
+            this.smallerRules = new Thresholds(builder.smallerRules);
+            this.invertedSmallerRules = new Thresholds(builder.invertedSmallerRules);
+            this.hasNumericRules = !(greaterRules.isEmpty() && invertedGreaterRules.isEmpty()
+                    && smallerRules.isEmpty() && invertedSmallerRules.isEmpty());
+        }
+
+        private void match(@Nullable Object value, MatchState state) {
+            for (int i = 0; i < andStreams.length; i++) {
+                state.evaluate(andStreams[i], andRuleCounts[i]);
+            }
+            if (value == null) {
+                // none of the matchers accepts a null value, not even for inverted rules
+                return;
+            }
+
+            matchExact(value, state);
+
+            if (hasNumericRules) {
+                final Double number = getDouble(value);
+                if (number != null) {
+                    matchNumeric(number, state);
+                }
+            }
+        }
+
+        // same semantics as ExactMatcher
+        private void matchExact(Object value, MatchState state) {
+            if (exactRules.isEmpty() && invertedExactValues.length == 0) {
+                return;
+            }
+
+            final String stringValue = value.toString().trim();
+            final int[] matchingStreams = exactRules.get(stringValue);
+            if (matchingStreams != null) {
+                for (int streamIndex : matchingStreams) {
+                    state.match(streamIndex);
+                }
+            }
+            for (int i = 0; i < invertedExactValues.length; i++) {
+                if (!stringValue.equals(invertedExactValues[i])) {
+                    state.match(invertedExactStreams[i]);
+                }
+            }
+        }
+
+        // same semantics as GreaterMatcher and SmallerMatcher, including NaN handling
+        private void matchNumeric(double value, MatchState state) {
+            if (Double.isNaN(value)) {
+                // every comparison with NaN is false, thus only inverted rules match
+                invertedGreaterRules.matchAll(state);
+                invertedSmallerRules.matchAll(state);
+                return;
+            }
+
+            // value > threshold
+            greaterRules.match(0, greaterRules.countBelow(value), state);
+            // !(value > threshold)
+            invertedGreaterRules.match(invertedGreaterRules.countBelow(value), invertedGreaterRules.size(), state);
+            invertedGreaterRules.matchNaN(state);
+            // value < threshold
+            smallerRules.match(smallerRules.countAtMost(value), smallerRules.size(), state);
+            // !(value < threshold)
+            invertedSmallerRules.match(0, invertedSmallerRules.countAtMost(value), state);
+            invertedSmallerRules.matchNaN(state);
+        }
+
+        private static class Builder {
+            private final int[] andRuleCounts;
+            private final Map<String, List<Integer>> exactRules = Maps.newHashMap();
+            private final List<String> invertedExactValues = Lists.newArrayList();
+            private final List<Integer> invertedExactStreams = Lists.newArrayList();
+            private final List<Threshold> greaterRules = Lists.newArrayList();
+            private final List<Threshold> invertedGreaterRules = Lists.newArrayList();
+            private final List<Threshold> smallerRules = Lists.newArrayList();
+            private final List<Threshold> invertedSmallerRules = Lists.newArrayList();
+
+            private Builder(int numberOfStreams) {
+                this.andRuleCounts = new int[numberOfStreams];
+            }
+
+            private void add(int streamIndex, boolean andMatching, StreamRule rule) {
+                if (andMatching) {
+                    andRuleCounts[streamIndex]++;
+                }
+
+                final boolean inverted = rule.getInverted();
+                switch (rule.getType()) {
+                    case EXACT:
+                        if (inverted) {
+                            // a null value is never equal to the field value, so the rule matches every value
+                            invertedExactValues.add(rule.getValue());
+                            invertedExactStreams.add(streamIndex);
+                        } else if (rule.getValue() == null) {
+                            // can never match, but has been counted as evaluated
+                            break;
+                        } else {
+                            List<Integer> streams = exactRules.get(rule.getValue());
+                            if (streams == null) {
+                                streams = Lists.newArrayList();
+                                exactRules.put(rule.getValue(), streams);
+                            }
+                            streams.add(streamIndex);
+                        }
+                        break;
+                    case GREATER:
+                        addThreshold(inverted ? invertedGreaterRules : greaterRules, streamIndex, rule);
+                        break;
+                    case SMALLER:
+                        addThreshold(inverted ? invertedSmallerRules : smallerRules, streamIndex, rule);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported stream rule type " + rule.getType());
+                }
+            }
+
+            private void addThreshold(List<Threshold> thresholds, int streamIndex, StreamRule rule) {
+                final Double value = getDouble(rule.getValue());
+                // rules with a non-numeric value never match, but have been counted as evaluated
+                if (value != null) {
+                    thresholds.add(new Threshold(value, streamIndex));
+                }
+            }
+
+            private FieldRules build() {
+                return new FieldRules(this);
+            }
+        }
+    }
+
+    private static class Threshold {
+        private final double value;
+        private final int streamIndex;
+
+        private Threshold(double value, int streamIndex) {
+            this.value = value;
+            this.streamIndex = streamIndex;
+        }
+    }
+
+    /**
+     * Rule thresholds sorted in ascending order, rules with a NaN threshold are kept separately.
+     */
+    private static class Thresholds {
+        private static final Comparator<Threshold> COMPARATOR = new Comparator<Threshold>() {
+            @Override
+            public int compare(Threshold t1, Threshold t2) {
+                return Double.compare(t1.value, t2.value);
+            }
+        };
+
+        private final double[] values;
+        private final int[] streams;
+        private final int[] nanStreams;
+
+        private Thresholds(List<Threshold> thresholds) {
+            final List<Threshold> sorted = Lists.newArrayList();
+            final List<Integer> nan = Lists.newArrayList();
+            for (Threshold threshold : thresholds) {
+                if (Double.isNaN(threshold.value)) {
+                    nan.add(threshold.streamIndex);
+                } else {
+                    sorted.add(threshold);
+                }
+            }
+            Collections.sort(sorted, COMPARATOR);
+
+            this.values = new double[sorted.size()];
+            this.streams = new int[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                values[i] = sorted.get(i).value;
+                streams[i] = sorted.get(i).streamIndex;
+            }
+            this.nanStreams = Ints.toArray(nan);
+        }
+
+        private boolean isEmpty() {
+            return values.length == 0 && nanStreams.length == 0;
+        }
+
+        private int size() {
+            return values.length;
+        }
+
+        // number of thresholds smaller than the value
+        private int countBelow(double value) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (values[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // number of thresholds smaller than or equal to the value
+        private int countAtMost(double value) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (values[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void match(int from, int to, MatchState state) {
+            for (int i = from; i < to; i++) {
+                state.match(streams[i]);
+            }
+        }
+
+        private void matchNaN(MatchState state) {
+            for (int streamIndex : nanStreams) {
+                state.match(streamIndex);
+            }
+        }
+
+        private void matchAll(MatchState state) {
+            match(0, values.length, state);
+            matchNaN(state);
+        }
+    }
+
     /**
      * Contains matching results for a stream. This is useful for testing to see if a stream matches and which
      * rules matched.
@@ -0,0 +1,67 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams.rollups;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bucket sizes of the stream count rollups. Finer granularities are only kept for a limited time, older time ranges
+ * are answered from the coarser buckets.
+ */
+public enum Granularity {
+    MINUTE("m", TimeUnit.MINUTES.toMillis(1), TimeUnit.DAYS.toMillis(2)),
+    HOUR("h", TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(62)),
+    DAY("d", TimeUnit.DAYS.toMillis(1), -1L);
+
+    private final String key;
+    private final long millis;
+    private final long retentionMillis;
+
+    Granularity(String key, long millis, long retentionMillis) {
+        this.key = key;
+        this.millis = millis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * @return the short name used in the persisted buckets
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return how long the buckets are kept after they have been started, or {@code -1} if they are kept until the
+     * retention deletes the corresponding indices
+     */
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    public long floor(long timestamp) {
+        return timestamp - (timestamp % millis);
+    }
+
+    public long ceil(long timestamp) {
+        final long floor = floor(timestamp);
+        return floor == timestamp ? timestamp : floor + millis;
+    }
+}
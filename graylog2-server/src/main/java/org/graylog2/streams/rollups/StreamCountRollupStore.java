@@ -0,0 +1,274 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams.rollups;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import org.graylog2.database.MongoConnection;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the stream count rollups in MongoDB.
+ * <p>
+ * Every bucket is a small document holding the stream id, the granularity, the start of the bucket and the count.
+ * Buckets are only ever incremented, so all nodes can add their counts concurrently. Minute and hour buckets carry an
+ * expiry date and are removed by a TTL index, day buckets are removed once the retention deleted the indices they
+ * refer to.
+ * </p>
+ */
+@Singleton
+public class StreamCountRollupStore {
+    public static final String COLLECTION_NAME = "stream_count_rollups";
+    public static final String STATE_COLLECTION_NAME = "stream_count_rollups_state";
+
+    private static final String FIELD_STREAM = "s";
+    private static final String FIELD_GRANULARITY = "g";
+    private static final String FIELD_TIMESTAMP = "t";
+    private static final String FIELD_COUNT = "c";
+    private static final String FIELD_EXPIRES_AT = "e";
+
+    private static final String COVERAGE_ID = "coverage";
+    private static final String UNFLUSHED_ID_PREFIX = "unflushed-";
+    private static final String FIELD_SINCE = "since";
+    private static final String FIELD_HOLES = "holes";
+    private static final String FIELD_HOLE_FROM = "from";
+    private static final String FIELD_HOLE_TO = "to";
+
+    private final DBCollection collection;
+    private final DBCollection stateCollection;
+
+    @Inject
+    public StreamCountRollupStore(MongoConnection mongoConnection) {
+        this.collection = mongoConnection.getDatabase().getCollection(COLLECTION_NAME);
+        this.stateCollection = mongoConnection.getDatabase().getCollection(STATE_COLLECTION_NAME);
+
+        collection.createIndex(new BasicDBObject(FIELD_STREAM, 1).append(FIELD_GRANULARITY, 1).append(FIELD_TIMESTAMP, 1),
+                new BasicDBObject("unique", true));
+        collection.createIndex(new BasicDBObject(FIELD_EXPIRES_AT, 1), new BasicDBObject("expireAfterSeconds", 0));
+    }
+
+    /**
+     * Adds the given per minute counts to the buckets of all granularities.
+     *
+     * @param minuteCounts counts keyed by stream id and the start of the minute
+     */
+    public void increment(Map<String, Map<Long, Long>> minuteCounts) {
+        final BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+        boolean empty = true;
+        for (Map.Entry<String, Map<Long, Long>> stream : minuteCounts.entrySet()) {
+            for (Granularity granularity : Granularity.values()) {
+                for (Map.Entry<Long, Long> bucket : rollUp(stream.getValue(), granularity).entrySet()) {
+                    final long timestamp = bucket.getKey();
+                    final DBObject query = new BasicDBObject(FIELD_STREAM, stream.getKey())
+                            .append(FIELD_GRANULARITY, granularity.getKey())
+                            .append(FIELD_TIMESTAMP, new Date(timestamp));
+                    final BasicDBObject update = new BasicDBObject("$inc", new BasicDBObject(FIELD_COUNT, bucket.getValue()));
+                    if (granularity.getRetentionMillis() > 0) {
+                        update.append("$setOnInsert",
+                                new BasicDBObject(FIELD_EXPIRES_AT, new Date(timestamp + granularity.getRetentionMillis())));
+                    }
+                    bulk.find(query).upsert().updateOne(update);
+                    empty = false;
+                }
+            }
+        }
+
+        if (!empty) {
+            bulk.execute(WriteConcern.ACKNOWLEDGED);
+        }
+    }
+
+    private static Map<Long, Long> rollUp(Map<Long, Long> minuteCounts, Granularity granularity) {
+        if (granularity == Granularity.MINUTE) {
+            return minuteCounts;
+        }
+
+        final Map<Long, Long> counts = Maps.newHashMap();
+        for (Map.Entry<Long, Long> minute : minuteCounts.entrySet()) {
+            final long bucket = granularity.floor(minute.getKey());
+            final Long count = counts.get(bucket);
+            counts.put(bucket, count == null ? minute.getValue() : count + minute.getValue());
+        }
+        return counts;
+    }
+
+    /**
+     * @return the counts of the buckets in {@code [from, to)} keyed by the start of the bucket, empty buckets are
+     * missing
+     */
+    public Map<Long, Long> find(String streamId, Granularity granularity, long from, long to) {
+        final DBObject query = new BasicDBObject(FIELD_STREAM, streamId)
+                .append(FIELD_GRANULARITY, granularity.getKey())
+                .append(FIELD_TIMESTAMP, new BasicDBObject("$gte", new Date(from)).append("$lt", new Date(to)));
+        final DBObject fields = new BasicDBObject(FIELD_TIMESTAMP, 1).append(FIELD_COUNT, 1);
+
+        final Map<Long, Long> counts = Maps.newTreeMap();
+        try (DBCursor cursor = collection.find(query, fields)) {
+            for (DBObject bucket : cursor) {
+                counts.put(((Date) bucket.get(FIELD_TIMESTAMP)).getTime(), ((Number) bucket.get(FIELD_COUNT)).longValue());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the persisted coverage, starting it at the given time if the rollups have never been recorded before.
+     */
+    public Coverage loadCoverage(long start) {
+        final DBObject query = new BasicDBObject("_id", COVERAGE_ID);
+        final DBObject update = new BasicDBObject("$setOnInsert", new BasicDBObject(FIELD_SINCE, new Date(start)));
+        final DBObject state = stateCollection.findAndModify(query, null, null, false, update, true, true);
+
+        final ImmutableList.Builder<Hole> holes = ImmutableList.builder();
+        final Object persistedHoles = state.get(FIELD_HOLES);
+        if (persistedHoles instanceof List) {
+            for (Object hole : (List<?>) persistedHoles) {
+                final DBObject dbHole = (DBObject) hole;
+                holes.add(new Hole(((Date) dbHole.get(FIELD_HOLE_FROM)).getTime(), ((Date) dbHole.get(FIELD_HOLE_TO)).getTime()));
+            }
+        }
+
+        return new Coverage(((Date) state.get(FIELD_SINCE)).getTime(), holes.build());
+    }
+
+    /**
+     * Marks time ranges whose messages are no longer completely searchable.
+     */
+    public void addHoles(List<Hole> holes) {
+        final BasicDBList dbHoles = new BasicDBList();
+        for (Hole hole : holes) {
+            dbHoles.add(new BasicDBObject(FIELD_HOLE_FROM, new Date(hole.getFrom())).append(FIELD_HOLE_TO, new Date(hole.getTo())));
+        }
+
+        stateCollection.update(new BasicDBObject("_id", COVERAGE_ID),
+                new BasicDBObject("$addToSet", new BasicDBObject(FIELD_HOLES, new BasicDBObject("$each", dbHoles))));
+    }
+
+    /**
+     * Remembers the time range of the counts a node holds in memory, so they can be excluded if the node crashes.
+     */
+    public void markUnflushed(String nodeId, Hole range) {
+        stateCollection.update(new BasicDBObject("_id", UNFLUSHED_ID_PREFIX + nodeId),
+                new BasicDBObject(FIELD_HOLE_FROM, new Date(range.getFrom())).append(FIELD_HOLE_TO, new Date(range.getTo())),
+                true, false);
+    }
+
+    /**
+     * @return the time range of the counts the node held in memory when it stopped, or {@code null} if all of them
+     * have been flushed
+     */
+    @Nullable
+    public Hole findUnflushed(String nodeId) {
+        final DBObject range = stateCollection.findOne(new BasicDBObject("_id", UNFLUSHED_ID_PREFIX + nodeId));
+        if (range == null) {
+            return null;
+        }
+        return new Hole(((Date) range.get(FIELD_HOLE_FROM)).getTime(), ((Date) range.get(FIELD_HOLE_TO)).getTime());
+    }
+
+    /**
+     * Forgets the time range of the counts of a node once all of them have been flushed.
+     */
+    public void clearUnflushed(String nodeId) {
+        stateCollection.remove(new BasicDBObject("_id", UNFLUSHED_ID_PREFIX + nodeId));
+    }
+
+    /**
+     * Moves the start of the coverage forward and removes all buckets and holes before it.
+     */
+    public void advanceCoverage(long since) {
+        final DBObject query = new BasicDBObject("_id", COVERAGE_ID)
+                .append(FIELD_SINCE, new BasicDBObject("$lt", new Date(since)));
+        final DBObject update = new BasicDBObject("$set", new BasicDBObject(FIELD_SINCE, new Date(since)))
+                .append("$pull", new BasicDBObject(FIELD_HOLES,
+                        new BasicDBObject(FIELD_HOLE_TO, new BasicDBObject("$lt", new Date(since)))));
+        stateCollection.update(query, update);
+
+        collection.remove(new BasicDBObject(FIELD_TIMESTAMP, new BasicDBObject("$lt", new Date(since))));
+    }
+
+    /**
+     * The time range the rollups can be used for.
+     */
+    public static class Coverage {
+        private final long since;
+        private final List<Hole> holes;
+
+        public Coverage(long since, List<Hole> holes) {
+            this.since = since;
+            this.holes = holes;
+        }
+
+        public long getSince() {
+            return since;
+        }
+
+        public List<Hole> getHoles() {
+            return holes;
+        }
+
+        /**
+         * @return {@code true} if the buckets of {@code [from, to)} match the searchable messages
+         */
+        public boolean covers(long from, long to) {
+            if (from < since) {
+                return false;
+            }
+            for (Hole hole : holes) {
+                if (hole.getFrom() < to && hole.getTo() >= from) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Time range whose buckets don't match the searchable messages, e. g. because the messages have been removed
+     * from the searchable indices or their counts are unknown, both ends inclusive.
+     */
+    public static class Hole {
+        private final long from;
+        private final long to;
+
+        public Hole(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+    }
+}
@@ -0,0 +1,641 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams.rollups;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.graylog2.Configuration;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.indexer.ranges.IndexRangeService;
+import org.graylog2.indexer.ranges.IndexRangesUpdatedEvent;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pre-aggregated message counts per stream, used to answer count and histogram searches which only filter by a
+ * stream without scanning the messages in Elasticsearch.
+ * <p>
+ * Every node counts the messages it successfully indexed by stream and minute of their timestamp and periodically adds
+ * the counts to the persisted rollups, see {@link StreamCountRollupStore}. The counts are only used for time ranges
+ * they completely cover: starting after the rollups have been recorded for the first time, after the oldest message
+ * still searchable and outside of the time ranges of indices which have been deleted or closed.
+ * </p>
+ * <p>
+ * A message is counted once all bulk requests of its batch succeeded, retrying a batch therefore does not count its
+ * messages again. Messages read from the journal again after a restart might have been counted before already, their
+ * minutes are marked as holes instead of being counted, so searches over them scan the messages.
+ * </p>
+ * <p>
+ * Counts which could not be written are not written again, the unordered bulk write might have been applied
+ * partially. Their minutes are marked as holes as well, once the store is available again. Until then, and until the
+ * holes are part of the loaded coverage, this node doesn't use the rollups for these minutes.
+ * </p>
+ * <p>
+ * Before every flush, a node persists the time range of the counts it holds in memory, extended by
+ * {@link #UNFLUSHED_MARGIN_MILLIS} before the flush. If the node crashes, this range up to its next start is marked as
+ * a hole. Only the counts of messages with older timestamps which were indexed after the last flush are lost then.
+ * </p>
+ */
+@Singleton
+public class StreamCountRollups {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamCountRollups.class);
+
+    // counts of the last minutes might not have been flushed by all nodes yet
+    @VisibleForTesting
+    static final long SETTLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // searching the messages themselves is faster for shorter time ranges
+    @VisibleForTesting
+    static final long MIN_ROLLED_UP_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long COVERAGE_MAX_AGE = TimeUnit.MINUTES.toMillis(1);
+    // buckets close to their expiry might be removed by the TTL monitor any time
+    private static final long EXPIRY_MARGIN = TimeUnit.HOURS.toMillis(1);
+    // messages indexed after a flush are expected to be younger than this
+    @VisibleForTesting
+    static final long UNFLUSHED_MARGIN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final StreamCountRollupStore store;
+    private final IndexRangeService indexRangeService;
+    private final ServerStatus serverStatus;
+    private final Journal journal;
+    private final boolean enabled;
+
+    private final AtomicReference<Counts> counts = new AtomicReference<>(new Counts());
+    // swapped out during the last flush, writers might still have been adding to it at that time
+    private Counts retiredCounts = new Counts();
+    // minutes whose counts are unknown, because messages have been read again or their counts couldn't be written
+    private final Set<Long> uncountedMinutes = Sets.newConcurrentHashSet();
+    // holes recorded by this node which might not be part of the loaded coverage yet
+    private final List<StreamCountRollupStore.Hole> unloadedHoles = new CopyOnWriteArrayList<>();
+    private volatile boolean unflushedCountsRecovered = false;
+
+    private volatile StreamCountRollupStore.Coverage coverage;
+    private volatile long coverageLoadedAt = Long.MIN_VALUE;
+    private volatile boolean indexRangesChanged = true;
+    private Map<String, IndexRange> knownIndexRanges = null;
+
+    @Inject
+    public StreamCountRollups(StreamCountRollupStore store,
+                              IndexRangeService indexRangeService,
+                              ServerStatus serverStatus,
+                              Journal journal,
+                              EventBus serverEventBus,
+                              Configuration configuration) {
+        this.store = store;
+        this.indexRangeService = indexRangeService;
+        this.serverStatus = serverStatus;
+        this.journal = journal;
+        this.enabled = configuration.isStreamCountRollupsEnabled();
+
+        if (enabled) {
+            serverEventBus.register(this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts an indexed message for all of its streams.
+     */
+    public void record(Message message) {
+        if (!enabled) {
+            return;
+        }
+        final List<Stream> streams = message.getStreams();
+        if (streams.isEmpty()) {
+            return;
+        }
+
+        final long minute = Granularity.MINUTE.floor(message.getTimestamp().getMillis());
+        if (journal instanceof KafkaJournal && ((KafkaJournal) journal).isFromPreviousRun(message.getJournalOffset())) {
+            uncountedMinutes.add(minute);
+            return;
+        }
+
+        final Counts currentCounts = counts.get();
+        currentCounts.extendRange(minute);
+        for (Stream stream : streams) {
+            currentCounts.increment(new BucketKey(stream.getId(), minute));
+        }
+    }
+
+    /**
+     * Persists the counts recorded until the previous flush, the latest counts are kept until all writers are done
+     * with them.
+     */
+    public synchronized void flush() {
+        if (!enabled) {
+            return;
+        }
+        recoverUnflushedCounts();
+
+        final Counts toWrite = retiredCounts;
+        markUnflushed(toWrite, counts.get());
+        retiredCounts = counts.getAndSet(new Counts());
+        write(toWrite);
+        writeUncountedMinutes();
+    }
+
+    /**
+     * Persists all recorded counts, only to be used once no more messages are being indexed.
+     */
+    public synchronized void flushAll() {
+        if (!enabled) {
+            return;
+        }
+        recoverUnflushedCounts();
+
+        final Counts toWrite = retiredCounts;
+        markUnflushed(toWrite, counts.get());
+        toWrite.addAll(counts.getAndSet(new Counts()));
+        retiredCounts = new Counts();
+        write(toWrite);
+        writeUncountedMinutes();
+
+        // all counts have either been written or excluded
+        store.clearUnflushed(nodeId());
+    }
+
+    /**
+     * Marks the counts this node might have held in memory when it crashed during its last run as a hole.
+     */
+    private void recoverUnflushedCounts() {
+        if (unflushedCountsRecovered) {
+            return;
+        }
+
+        final StreamCountRollupStore.Hole unflushed = store.findUnflushed(nodeId());
+        if (unflushed != null) {
+            final long now = Tools.iso8601().getMillis();
+            final StreamCountRollupStore.Hole hole = new StreamCountRollupStore.Hole(unflushed.getFrom(),
+                    Math.max(unflushed.getTo(), now));
+            LOG.warn("Stream message counts have not been flushed during the last shutdown, excluding {} to {} from the stream count rollups.",
+                    new DateTime(hole.getFrom(), DateTimeZone.UTC), new DateTime(hole.getTo(), DateTimeZone.UTC));
+            store.addHoles(Collections.singletonList(hole));
+            unloadedHoles.add(hole);
+        }
+        unflushedCountsRecovered = true;
+    }
+
+    private void markUnflushed(Counts retired, Counts current) {
+        final long now = Tools.iso8601().getMillis();
+        long from = Granularity.MINUTE.floor(now - UNFLUSHED_MARGIN_MILLIS);
+        long to = Granularity.MINUTE.ceil(now) - 1;
+        for (Counts held : ImmutableList.of(retired, current)) {
+            if (!held.isEmpty()) {
+                from = Math.min(from, held.oldestMinute.get());
+                to = Math.max(to, held.newestMinute.get() + Granularity.MINUTE.getMillis() - 1);
+            }
+        }
+        for (long minute : uncountedMinutes) {
+            from = Math.min(from, minute);
+            to = Math.max(to, minute + Granularity.MINUTE.getMillis() - 1);
+        }
+        store.markUnflushed(nodeId(), new StreamCountRollupStore.Hole(from, to));
+    }
+
+    private void write(Counts counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        final Map<String, Map<Long, Long>> minuteCounts = Maps.newHashMap();
+        for (Map.Entry<BucketKey, AtomicLong> entry : counts.buckets.entrySet()) {
+            final BucketKey key = entry.getKey();
+            Map<Long, Long> streamCounts = minuteCounts.get(key.streamId);
+            if (streamCounts == null) {
+                streamCounts = Maps.newHashMap();
+                minuteCounts.put(key.streamId, streamCounts);
+            }
+            streamCounts.put(key.minute, entry.getValue().get());
+        }
+
+        LOG.debug("Flushing message counts of {} streams.", minuteCounts.size());
+        try {
+            store.increment(minuteCounts);
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to write stream message counts, excluding their minutes from the stream count rollups.", e);
+            for (BucketKey key : counts.buckets.keySet()) {
+                uncountedMinutes.add(key.minute);
+            }
+        }
+    }
+
+    private void writeUncountedMinutes() {
+        // the minutes are kept until the holes are known locally, so searches never use the rollups for them
+        final List<Long> minutes = Lists.newArrayList(uncountedMinutes);
+        if (minutes.isEmpty()) {
+            return;
+        }
+        Collections.sort(minutes);
+
+        // consecutive minutes are merged into a single hole
+        final List<StreamCountRollupStore.Hole> holes = Lists.newArrayList();
+        long from = minutes.get(0);
+        long to = from;
+        for (long minute : minutes.subList(1, minutes.size())) {
+            if (minute > to + Granularity.MINUTE.getMillis()) {
+                holes.add(new StreamCountRollupStore.Hole(from, to + Granularity.MINUTE.getMillis() - 1));
+                from = minute;
+            }
+            to = minute;
+        }
+        holes.add(new StreamCountRollupStore.Hole(from, to + Granularity.MINUTE.getMillis() - 1));
+
+        LOG.debug("Excluding {} minutes without reliable message counts from the stream count rollups.", minutes.size());
+        // throws if the store is unavailable, the minutes are written during the next flush then
+        store.addHoles(holes);
+        unloadedHoles.addAll(holes);
+        uncountedMinutes.removeAll(minutes);
+    }
+
+    private String nodeId() {
+        return serverStatus.getNodeId().toString();
+    }
+
+    @Subscribe
+    public void handleIndexRangesUpdated(IndexRangesUpdatedEvent event) {
+        // handled during the next maintenance run, the index range service might not have seen the update yet
+        indexRangesChanged = true;
+    }
+
+    /**
+     * Keeps the coverage of the rollups in line with the searchable indices.
+     * <p>
+     * Time ranges of indices which disappeared are marked as holes, and the master node moves the start of the
+     * coverage to the oldest searchable message, dropping all older buckets.
+     * </p>
+     */
+    public synchronized void updateCoverage() {
+        if (!enabled) {
+            return;
+        }
+
+        recoverUnflushedCounts();
+
+        final long now = Tools.iso8601().getMillis();
+        if (coverage == null) {
+            loadCoverage(now);
+        }
+
+        if (indexRangesChanged) {
+            indexRangesChanged = false;
+            updateIndexRanges();
+            loadCoverage(now);
+        } else if (now - coverageLoadedAt > COVERAGE_MAX_AGE) {
+            // other nodes might have recorded holes in the meantime
+            loadCoverage(now);
+        }
+    }
+
+    private void loadCoverage(long now) {
+        coverage = store.loadCoverage(Granularity.MINUTE.ceil(now));
+        coverageLoadedAt = now;
+        // all holes have been written before
+        unloadedHoles.clear();
+    }
+
+    private void updateIndexRanges() {
+        final Map<String, IndexRange> indexRanges = Maps.newHashMap();
+        long oldestMessage = Long.MAX_VALUE;
+        for (IndexRange indexRange : indexRangeService.findAll()) {
+            indexRanges.put(indexRange.indexName(), indexRange);
+            oldestMessage = Math.min(oldestMessage, indexRange.begin().getMillis());
+        }
+
+        if (knownIndexRanges != null) {
+            final List<StreamCountRollupStore.Hole> holes = Lists.newArrayList();
+            for (IndexRange indexRange : knownIndexRanges.values()) {
+                if (!indexRanges.containsKey(indexRange.indexName())) {
+                    holes.add(new StreamCountRollupStore.Hole(indexRange.begin().getMillis(), indexRange.end().getMillis()));
+                }
+            }
+            if (!holes.isEmpty()) {
+                LOG.debug("Excluding the time ranges of {} removed indices from the stream count rollups.", holes.size());
+                store.addHoles(holes);
+            }
+        }
+        knownIndexRanges = indexRanges;
+
+        if (serverStatus.hasCapability(ServerStatus.Capability.MASTER)
+                && oldestMessage != Long.MAX_VALUE && oldestMessage > coverage.getSince()) {
+            LOG.debug("Dropping stream count rollups before {}.", oldestMessage);
+            store.advanceCoverage(oldestMessage);
+        }
+    }
+
+    /**
+     * Returns the number of messages of a stream within the largest part of {@code [from, to]} which can be answered
+     * from the rollups. The remaining parts at the beginning and the end of the time range have to be searched.
+     *
+     * @return the count, or {@code null} if the rollups don't cover a large enough part of the time range
+     */
+    @Nullable
+    public RolledUpCount count(String streamId, long from, long to) {
+        final StreamCountRollupStore.Coverage currentCoverage = coverage;
+        if (!enabled || currentCoverage == null || !unflushedCountsRecovered) {
+            return null;
+        }
+
+        final long now = Tools.iso8601().getMillis();
+        long rolledFrom = Granularity.MINUTE.ceil(from);
+        if (!isKept(Granularity.MINUTE, rolledFrom, now)) {
+            rolledFrom = Granularity.HOUR.ceil(rolledFrom);
+        }
+        if (!isKept(Granularity.HOUR, rolledFrom, now)) {
+            rolledFrom = Granularity.DAY.ceil(rolledFrom);
+        }
+        // the end of the time range is inclusive
+        long rolledTo = Granularity.MINUTE.floor(Math.min(to, now - SETTLE_MILLIS));
+        if (!isKept(Granularity.MINUTE, Granularity.HOUR.floor(rolledTo), now)) {
+            rolledTo = Granularity.HOUR.floor(rolledTo);
+        }
+        if (!isKept(Granularity.HOUR, Granularity.DAY.floor(rolledTo), now)) {
+            rolledTo = Granularity.DAY.floor(rolledTo);
+        }
+
+        if (rolledTo - rolledFrom < MIN_ROLLED_UP_MILLIS || !covers(currentCoverage, rolledFrom, rolledTo)) {
+            return null;
+        }
+
+        final List<Segment> segments = segments(rolledFrom, rolledTo);
+        for (Segment segment : segments) {
+            if (!isKept(segment.granularity, segment.from, now)) {
+                return null;
+            }
+        }
+
+        long count = 0L;
+        for (Segment segment : segments) {
+            for (long bucketCount : store.find(streamId, segment.granularity, segment.from, segment.to).values()) {
+                count += bucketCount;
+            }
+        }
+
+        return new RolledUpCount(rolledFrom, rolledTo, count);
+    }
+
+    /**
+     * Returns the message counts of a stream in the buckets of the given granularity which are completely contained in
+     * {@code [from, to]}. The partial buckets at the beginning and the end of the time range have to be searched.
+     *
+     * @return the counts keyed by the start of the buckets, or {@code null} if the rollups don't cover the time range
+     */
+    @Nullable
+    public RolledUpHistogram histogram(String streamId, Granularity granularity, long from, long to) {
+        final StreamCountRollupStore.Coverage currentCoverage = coverage;
+        if (!enabled || currentCoverage == null || !unflushedCountsRecovered) {
+            return null;
+        }
+
+        final long now = Tools.iso8601().getMillis();
+        final long rolledFrom = granularity.ceil(from);
+        final long rolledTo = granularity.floor(Math.min(to, now - SETTLE_MILLIS));
+        if (rolledTo - rolledFrom < MIN_ROLLED_UP_MILLIS
+                || !isKept(granularity, rolledFrom, now)
+                || !covers(currentCoverage, rolledFrom, rolledTo)) {
+            return null;
+        }
+
+        return new RolledUpHistogram(rolledFrom, rolledTo, store.find(streamId, granularity, rolledFrom, rolledTo));
+    }
+
+    /**
+     * @return {@code true} if the buckets of {@code [from, to)} are covered, including the holes this node knows of
+     */
+    private boolean covers(StreamCountRollupStore.Coverage currentCoverage, long from, long to) {
+        if (!currentCoverage.covers(from, to)) {
+            return false;
+        }
+        for (StreamCountRollupStore.Hole hole : unloadedHoles) {
+            if (hole.getFrom() < to && hole.getTo() >= from) {
+                return false;
+            }
+        }
+        for (long minute : uncountedMinutes) {
+            if (minute < to && minute + Granularity.MINUTE.getMillis() > from) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isKept(Granularity granularity, long bucket, long now) {
+        return granularity.getRetentionMillis() < 0 || bucket >= now - granularity.getRetentionMillis() + EXPIRY_MARGIN;
+    }
+
+    /**
+     * Splits {@code [from, to)} into as few buckets as possible, both ends have to be aligned to full minutes.
+     */
+    @VisibleForTesting
+    static List<Segment> segments(long from, long to) {
+        final long firstHour = Granularity.HOUR.ceil(from);
+        final long lastHour = Granularity.HOUR.floor(to);
+        if (firstHour >= lastHour) {
+            return Collections.singletonList(new Segment(Granularity.MINUTE, from, to));
+        }
+
+        final ImmutableList.Builder<Segment> segments = ImmutableList.builder();
+        addSegment(segments, Granularity.MINUTE, from, firstHour);
+        final long firstDay = Granularity.DAY.ceil(from);
+        final long lastDay = Granularity.DAY.floor(to);
+        if (firstDay >= lastDay) {
+            addSegment(segments, Granularity.HOUR, firstHour, lastHour);
+        } else {
+            addSegment(segments, Granularity.HOUR, firstHour, firstDay);
+            addSegment(segments, Granularity.DAY, firstDay, lastDay);
+            addSegment(segments, Granularity.HOUR, lastDay, lastHour);
+        }
+        addSegment(segments, Granularity.MINUTE, lastHour, to);
+
+        return segments.build();
+    }
+
+    private static void addSegment(ImmutableList.Builder<Segment> segments, Granularity granularity, long from, long to) {
+        if (from < to) {
+            segments.add(new Segment(granularity, from, to));
+        }
+    }
+
+    @VisibleForTesting
+    static class Segment {
+        final Granularity granularity;
+        final long from;
+        final long to;
+
+        Segment(Granularity granularity, long from, long to) {
+            this.granularity = granularity;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Number of messages within {@code [from, to)}.
+     */
+    public static class RolledUpCount {
+        private final long from;
+        private final long to;
+        private final long count;
+
+        public RolledUpCount(long from, long to, long count) {
+            this.from = from;
+            this.to = to;
+            this.count = count;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Number of messages per bucket within {@code [from, to)}, empty buckets are missing.
+     */
+    public static class RolledUpHistogram {
+        private final long from;
+        private final long to;
+        private final Map<Long, Long> counts;
+
+        public RolledUpHistogram(long from, long to, Map<Long, Long> counts) {
+            this.from = from;
+            this.to = to;
+            this.counts = counts;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        public Map<Long, Long> getCounts() {
+            return counts;
+        }
+    }
+
+    /**
+     * Message counts held in memory and the range of their minutes.
+     */
+    private static class Counts {
+        private final ConcurrentMap<BucketKey, AtomicLong> buckets = Maps.newConcurrentMap();
+        private final AtomicLong oldestMinute = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong newestMinute = new AtomicLong(Long.MIN_VALUE);
+
+        private boolean isEmpty() {
+            return buckets.isEmpty();
+        }
+
+        private void increment(BucketKey key) {
+            add(key, 1L);
+        }
+
+        private void add(BucketKey key, long delta) {
+            AtomicLong count = buckets.get(key);
+            if (count == null) {
+                final AtomicLong newCount = new AtomicLong();
+                count = buckets.putIfAbsent(key, newCount);
+                if (count == null) {
+                    count = newCount;
+                }
+            }
+            count.addAndGet(delta);
+        }
+
+        private void addAll(Counts other) {
+            for (Map.Entry<BucketKey, AtomicLong> entry : other.buckets.entrySet()) {
+                add(entry.getKey(), entry.getValue().get());
+            }
+            if (!other.isEmpty()) {
+                extendRange(other.oldestMinute.get());
+                extendRange(other.newestMinute.get());
+            }
+        }
+
+        private void extendRange(long minute) {
+            long oldest;
+            while (minute < (oldest = oldestMinute.get()) && !oldestMinute.compareAndSet(oldest, minute)) {
+                // retry
+            }
+            long newest;
+            while (minute > (newest = newestMinute.get()) && !newestMinute.compareAndSet(newest, minute)) {
+                // retry
+            }
+        }
+    }
+
+    private static class BucketKey {
+        private final String streamId;
+        private final long minute;
+
+        private BucketKey(String streamId, long minute) {
+            this.streamId = streamId;
+            this.minute = minute;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final BucketKey that = (BucketKey) o;
+            return minute == that.minute && streamId.equals(that.streamId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * streamId.hashCode() + (int) (minute ^ (minute >>> 32));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.utilities;
+
+/**
+ * A {@link CharSequence} which aborts regular expression matching once it ran out of time.
+ * <p>
+ * Unlike {@link InterruptibleCharSequence} this doesn't need a second thread to interrupt the matching thread, the
+ * deadline is checked every {@value #CHECK_INTERVAL} character accesses.
+ * </p>
+ */
+public class BudgetedCharSequence implements CharSequence {
+    public static final int CHECK_INTERVAL = 1024;
+
+    private final CharSequence inner;
+    private final long deadlineNanos;
+    private int steps = 0;
+
+    /**
+     * @param inner         the wrapped character sequence
+     * @param deadlineNanos deadline as returned by {@link System#nanoTime()}
+     */
+    public BudgetedCharSequence(CharSequence inner, long deadlineNanos) {
+        this.inner = inner;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (++steps == CHECK_INTERVAL) {
+            steps = 0;
+            if (System.nanoTime() - deadlineNanos > 0) {
+                throw new BudgetExceededException();
+            }
+        }
+        return inner.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return inner.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new BudgetedCharSequence(inner.subSequence(start, end), deadlineNanos);
+    }
+
+    @Override
+    public String toString() {
+        return inner.toString();
+    }
+
+    public static class BudgetExceededException extends RuntimeException {
+        public BudgetExceededException() {
+            // no stack trace, this is thrown from deep inside the regex engine and expected to happen
+            super("Time budget exceeded", null, false, false);
+        }
+    }
+}
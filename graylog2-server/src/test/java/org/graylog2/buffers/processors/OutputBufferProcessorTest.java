@@ -20,11 +20,133 @@
  */
 package org.graylog2.buffers.processors;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.graylog2.Configuration;
+import org.graylog2.outputs.OutputRouter;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 public class OutputBufferProcessorTest {
-    
+    private MessageOutput defaultOutput;
+    private MessageOutput streamOutput;
+    private OutputRouter outputRouter;
+    private ServerStatus serverStatus;
+
+    @Before
+    public void setUp() {
+        defaultOutput = mock(MessageOutput.class);
+        when(defaultOutput.isRunning()).thenReturn(true);
+        streamOutput = mock(MessageOutput.class);
+        when(streamOutput.isRunning()).thenReturn(true);
+        outputRouter = mock(OutputRouter.class);
+        when(outputRouter.getStreamOutputsForMessage(any(Message.class)))
+                .thenReturn(Collections.<MessageOutput>emptySet());
+        serverStatus = mock(ServerStatus.class);
+        when(serverStatus.getDetailedMessageRecordingStrategy()).thenReturn(ServerStatus.MessageDetailRecordingStrategy.NEVER);
+    }
+
+    @Test
+    public void testWritesBatchOncePerOutput() throws Exception {
+        final OutputBufferProcessor processor = processor(0, 1, 500);
+        final Message msg1 = message();
+        final Message msg2 = message();
+        final Message msg3 = message();
+        when(outputRouter.getStreamOutputsForMessage(msg1)).thenReturn(Sets.newHashSet(streamOutput));
+        when(outputRouter.getStreamOutputsForMessage(msg3)).thenReturn(Sets.newHashSet(streamOutput));
+
+        processor.onEvent(event(msg1), 0, false);
+        processor.onEvent(event(msg2), 1, false);
+        verify(defaultOutput, never()).write(anyListOf(Message.class));
+
+        processor.onEvent(event(msg3), 2, true);
+
+        verify(defaultOutput, times(1)).write(ImmutableList.of(msg1, msg2, msg3));
+        verify(streamOutput, times(1)).write(ImmutableList.of(msg1, msg3));
+        verify(defaultOutput, never()).write(any(Message.class));
+        verify(streamOutput, never()).write(any(Message.class));
+    }
+
+    @Test
+    public void testOnlyHandlesOwnShareOfEvents() throws Exception {
+        final OutputBufferProcessor processor = processor(1, 2, 500);
+        final List<Message> messages = ImmutableList.of(message(), message(), message(), message());
+
+        for (int i = 0; i < messages.size(); i++) {
+            processor.onEvent(event(messages.get(i)), i, i == messages.size() - 1);
+        }
+
+        verify(defaultOutput, times(1)).write(ImmutableList.of(messages.get(1), messages.get(3)));
+    }
+
+    @Test
+    public void testFlushesWhenBatchIsFull() throws Exception {
+        final OutputBufferProcessor processor = processor(0, 1, 2);
+        final Message msg1 = message();
+        final Message msg2 = message();
+        final Message msg3 = message();
+
+        processor.onEvent(event(msg1), 0, false);
+        processor.onEvent(event(msg2), 1, false);
+        processor.onEvent(event(msg3), 2, true);
+
+        verify(defaultOutput, times(1)).write(ImmutableList.of(msg1, msg2));
+        verify(defaultOutput, times(1)).write(ImmutableList.of(msg3));
+    }
+
+    @Test
+    public void testSkipsStoppedOutputs() throws Exception {
+        final OutputBufferProcessor processor = processor(0, 1, 500);
+        final Message msg = message();
+        when(streamOutput.isRunning()).thenReturn(false);
+        when(outputRouter.getStreamOutputsForMessage(msg)).thenReturn(ImmutableSet.of(streamOutput));
+
+        processor.onEvent(event(msg), 0, true);
+
+        verify(defaultOutput, times(1)).write(ImmutableList.of(msg));
+        verify(streamOutput, never()).write(anyListOf(Message.class));
+    }
+
+    private OutputBufferProcessor processor(int ordinal, int numberOfConsumers, final int batchSize) {
+        final Configuration configuration = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return batchSize;
+            }
+        };
+        return new OutputBufferProcessor(configuration, new MetricRegistry(), serverStatus, outputRouter,
+                defaultOutput, ordinal, numberOfConsumers);
+    }
+
+    private static Message message() {
+        return new Message("message", "source", Tools.iso8601());
+    }
+
+    private static MessageEvent event(Message message) {
+        final MessageEvent event = new MessageEvent();
+        event.setMessage(message);
+        return event;
+    }
+
     @Test
     @Ignore("Ignored until FakeStream class has been restored")
     public void testOnEventWritesToAllOutputsWhenGettingBatches() throws Exception {
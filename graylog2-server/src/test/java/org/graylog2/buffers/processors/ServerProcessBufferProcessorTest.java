@@ -35,12 +35,14 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.same;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -149,6 +151,24 @@ public class ServerProcessBufferProcessorTest {
         assertFalse(unfilteredMessage.getFilterOut());
     }
 
+    @Test
+    public void testFilterTimersAreResolvedOnce() {
+        final MetricRegistry metricRegistry = spy(new MetricRegistry());
+        final ServerProcessBufferProcessor processor = new ServerProcessBufferProcessor(metricRegistry,
+                Sets.<MessageFilter>newHashSet(new DummyFilter(10)),
+                mock(Configuration.class),
+                serverStatus,
+                mock(OutputBuffer.class),
+                mock(Journal.class));
+
+        processor.handleMessage(new Message("message 1", "source", Tools.iso8601()));
+        processor.handleMessage(new Message("message 2", "source", Tools.iso8601()));
+
+        final String timerName = name(DummyFilter.class, "executionTime");
+        verify(metricRegistry, times(1)).timer(timerName);
+        assertEquals(2, metricRegistry.timer(timerName).getCount());
+    }
+
     private class DummyFilter implements MessageFilter {
         private final int prio;
 
@@ -0,0 +1,130 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.bundles;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.mongodb.BasicDBObject;
+import org.graylog2.dashboards.DashboardImpl;
+import org.graylog2.dashboards.DashboardService;
+import org.graylog2.dashboards.widgets.DashboardWidgetCreator;
+import org.graylog2.dashboards.widgets.WidgetCacheTime;
+import org.graylog2.grok.GrokPatternService;
+import org.graylog2.inputs.InputService;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.OutputService;
+import org.graylog2.streams.StreamService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BundleExporterTest {
+    @Mock
+    private InputService inputService;
+    @Mock
+    private StreamService streamService;
+    @Mock
+    private OutputService outputService;
+    @Mock
+    private DashboardService dashboardService;
+    @Mock
+    private GrokPatternService grokPatternService;
+    @Mock
+    private WidgetCacheTime.Factory cacheTimeFactory;
+
+    private BundleExporter bundleExporter;
+
+    @Before
+    public void setUp() throws Exception {
+        when(cacheTimeFactory.create(anyInt())).thenReturn(new WidgetCacheTime(Duration.seconds(10), 0));
+        final DashboardWidgetCreator dashboardWidgetCreator = new DashboardWidgetCreator(new MetricRegistry(), cacheTimeFactory);
+        bundleExporter = new BundleExporter(inputService, streamService, outputService, dashboardService,
+                dashboardWidgetCreator, grokPatternService);
+    }
+
+    @Test
+    public void exportsChartWidgetsOfDashboards() throws Exception {
+        final BasicDBObject searchResultChart = widget("widget-1", "SEARCH_RESULT_CHART", new BasicDBObject()
+                .append("query", "source:example")
+                .append("interval", "hour")
+                .append("stream_id", "stream-1"));
+        final BasicDBObject fieldChart = widget("widget-2", "FIELD_CHART", new BasicDBObject()
+                .append("query", "*")
+                .append("interval", "minute")
+                .append("field", "took_ms")
+                .append("valuetype", "mean")
+                .append("renderer", "line")
+                .append("interpolation", "linear"));
+
+        final org.graylog2.dashboards.Dashboard dashboard = mock(org.graylog2.dashboards.Dashboard.class);
+        when(dashboard.getTitle()).thenReturn("Dashboard");
+        when(dashboard.getFields()).thenReturn(ImmutableMap.<String, Object>of(
+                DashboardImpl.EMBEDDED_WIDGETS, Arrays.asList(searchResultChart, fieldChart)));
+        when(dashboard.asMap()).thenReturn(ImmutableMap.<String, Object>of(
+                "positions", ImmutableMap.of("widget-1", ImmutableMap.of("row", 1, "col", 2, "height", 3, "width", 4))));
+        when(dashboardService.load("dashboard-1")).thenReturn(dashboard);
+        final Stream stream = mock(Stream.class);
+        when(stream.getStreamRules()).thenReturn(Collections.<org.graylog2.plugin.streams.StreamRule>emptyList());
+        when(stream.getOutputs()).thenReturn(Collections.<org.graylog2.plugin.streams.Output>emptySet());
+        when(streamService.load("stream-1")).thenReturn(stream);
+
+        final ExportBundle exportBundle = new ExportBundle();
+        exportBundle.setDashboards(ImmutableSet.of("dashboard-1"));
+        final ConfigurationBundle bundle = bundleExporter.export(exportBundle);
+
+        assertEquals(1, bundle.getDashboards().size());
+        final List<DashboardWidget> widgets = bundle.getDashboards().iterator().next().getDashboardWidgets();
+        assertEquals(2, widgets.size());
+
+        final DashboardWidget exportedSearchResultChart = widgets.get(0);
+        assertEquals(org.graylog2.dashboards.widgets.DashboardWidget.Type.SEARCH_RESULT_CHART, exportedSearchResultChart.getType());
+        assertEquals("source:example", exportedSearchResultChart.getConfiguration().get("query"));
+        assertEquals(1, exportedSearchResultChart.getRow());
+        assertEquals(2, exportedSearchResultChart.getCol());
+
+        final DashboardWidget exportedFieldChart = widgets.get(1);
+        assertEquals(org.graylog2.dashboards.widgets.DashboardWidget.Type.FIELD_CHART, exportedFieldChart.getType());
+        assertEquals("took_ms", exportedFieldChart.getConfiguration().get("field"));
+
+        // the stream of the chart is exported along with the dashboard
+        assertEquals(1, bundle.getStreams().size());
+    }
+
+    private static BasicDBObject widget(String id, String type, BasicDBObject config) {
+        config.append("timerange", new BasicDBObject("type", "relative").append("range", 300));
+        return new BasicDBObject()
+                .append("id", id)
+                .append("type", type)
+                .append("description", "Chart " + id)
+                .append("creator_user_id", "admin")
+                .append("config", config);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.filters.blacklist;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlacklistMatcherTest {
+    @Test
+    public void testFieldEquality() {
+        final BlacklistMatcher matcher = new BlacklistMatcher(ImmutableList.<FilterDescription>of(
+                equality("source", "Foo.Example.org"),
+                equality("facility", "kernel")));
+
+        assertTrue(matcher.matches(message("foo.example.ORG")));
+        assertFalse(matcher.matches(message("bar.example.org")));
+
+        final Message msg = message("bar.example.org");
+        msg.addField("facility", "KERNEL");
+        assertTrue(matcher.matches(msg));
+    }
+
+    @Test
+    public void testPatterns() {
+        final BlacklistMatcher matcher = new BlacklistMatcher(ImmutableList.<FilterDescription>of(
+                pattern("message", "(?i)debug.*"),
+                pattern("message", ".*(\\d)\\1.*"),
+                pattern("message", "trace")));
+
+        assertTrue(matcher.matches(message("test", "DEBUG something")));
+        assertTrue(matcher.matches(message("test", "count 11")));
+        assertTrue(matcher.matches(message("test", "trace")));
+        assertFalse(matcher.matches(message("test", "traces 12")));
+    }
+
+    @Test
+    public void testPatternOnMissingField() {
+        final BlacklistMatcher matcher = new BlacklistMatcher(ImmutableList.<FilterDescription>of(
+                pattern("missing", "null")));
+
+        final Message msg = message("test");
+        msg.addField("missing", "something");
+        assertFalse(matcher.matches(msg));
+        // like BlacklistPatternCondition, missing fields are matched as the string "null"
+        assertTrue(matcher.matches(message("test")));
+    }
+
+    @Test
+    public void testIpRanges() {
+        final BlacklistMatcher matcher = new BlacklistMatcher(ImmutableList.<FilterDescription>of(
+                ipRange("10.0.0.0/8"),
+                ipRange("192.168.1.1"),
+                ipRange("2001:db8::/32")));
+
+        assertTrue(matcher.matches(messageFrom("10.1.2.3")));
+        assertTrue(matcher.matches(messageFrom("192.168.1.1")));
+        assertTrue(matcher.matches(messageFrom("2001:db8::1")));
+        assertFalse(matcher.matches(messageFrom("11.0.0.1")));
+        assertFalse(matcher.matches(messageFrom("192.168.1.2")));
+        assertFalse(matcher.matches(messageFrom("2001:db9::1")));
+        assertFalse(matcher.matches(message("10.1.2.3")));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertTrue(BlacklistMatcher.EMPTY.isEmpty());
+        assertFalse(BlacklistMatcher.EMPTY.matches(messageFrom("10.1.2.3")));
+    }
+
+    private static Message message(String source) {
+        return message(source, "test");
+    }
+
+    private static Message message(String source, String message) {
+        return new Message(message, source, Tools.iso8601());
+    }
+
+    private static Message messageFrom(String remoteIp) {
+        final Message msg = message("test");
+        msg.addField("gl2_remote_ip", remoteIp);
+        return msg;
+    }
+
+    private static FilterDescription equality(String field, String value) {
+        final BlacklistFieldEqualityCondition condition = new BlacklistFieldEqualityCondition();
+        condition.fieldName = field;
+        condition.pattern = value;
+        return condition;
+    }
+
+    private static FilterDescription pattern(String field, String regex) {
+        final BlacklistPatternCondition condition = new BlacklistPatternCondition();
+        condition.fieldName = field;
+        condition.setPattern(regex);
+        return condition;
+    }
+
+    private static FilterDescription ipRange(String range) {
+        final BlacklistIpMatcherCondition condition = new BlacklistIpMatcherCondition();
+        condition.fieldName = "gl2_remote_ip";
+        condition.setPattern(range);
+        return condition;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.indices;
+
+import com.google.common.collect.ImmutableSet;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.graylog2.configuration.ElasticsearchConfiguration;
+import org.graylog2.indexer.IndexMapping;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MessageFieldCatalogTest {
+    private Indices indices;
+    private MessageFieldCatalog catalog;
+
+    @Before
+    public void setUp() {
+        indices = mock(Indices.class);
+        final ElasticsearchConfiguration configuration = mock(ElasticsearchConfiguration.class);
+        when(configuration.getIndexPrefix()).thenReturn("graylog");
+
+        catalog = new MessageFieldCatalog(indices, configuration);
+    }
+
+    @Test
+    public void testReadsFieldsOfAllGraylogIndicesOnce() throws IOException {
+        final IndexMetaData index0 = indexMetaData("graylog_0", "source", "message", "foo");
+        final IndexMetaData index1 = indexMetaData("graylog_1", "source", "message", "bar");
+        final IndexMetaData other = indexMetaData("other_0", "baz");
+        when(indices.getLocalMetaData()).thenReturn(metaData(index0, index1, other));
+
+        assertEquals(ImmutableSet.of("source", "message", "foo", "bar"), catalog.getAllMessageFields());
+        assertEquals(ImmutableSet.of("source", "message", "foo", "bar"), catalog.getAllMessageFields());
+        verify(indices, times(1)).getLocalMetaData();
+    }
+
+    @Test
+    public void testUpdatesChangedAndDeletedIndices() throws IOException {
+        final IndexMetaData index0 = indexMetaData("graylog_0", "source", "foo");
+        final IndexMetaData index1 = indexMetaData("graylog_1", "source", "bar");
+        when(indices.getLocalMetaData()).thenReturn(metaData(index0, index1));
+        assertEquals(ImmutableSet.of("source", "foo", "bar"), catalog.getAllMessageFields());
+
+        catalog.update(metaData(index1, indexMetaData("graylog_2", "source", "baz")));
+        assertEquals(ImmutableSet.of("source", "bar", "baz"), catalog.getAllMessageFields());
+
+        catalog.update(metaData(indexMetaData("graylog_1", "source", "bar", "qux"), indexMetaData("graylog_2")));
+        assertEquals(ImmutableSet.of("source", "bar", "qux"), catalog.getAllMessageFields());
+        verify(indices, times(1)).getLocalMetaData();
+    }
+
+    @Test
+    public void testKeepsFieldsIfNothingChanged() throws IOException {
+        final MetaData metaData = metaData(indexMetaData("graylog_0", "source", "foo"));
+        when(indices.getLocalMetaData()).thenReturn(metaData);
+        final Object fields = catalog.getAllMessageFields();
+
+        catalog.update(metaData);
+
+        assertSame(fields, catalog.getAllMessageFields());
+    }
+
+    @Test
+    public void testIgnoresUpdatesBeforeFirstRequest() throws IOException {
+        catalog.update(metaData(indexMetaData("graylog_0", "source", "foo")));
+        when(indices.getLocalMetaData()).thenReturn(metaData(indexMetaData("graylog_1", "source", "bar")));
+
+        assertEquals(ImmutableSet.of("source", "bar"), catalog.getAllMessageFields());
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        when(indices.getLocalMetaData()).thenReturn(metaData(indexMetaData("graylog_0", "source", "foo")));
+        catalog.getAllMessageFields();
+
+        catalog.invalidate();
+        when(indices.getLocalMetaData()).thenReturn(metaData(indexMetaData("graylog_0", "source", "bar")));
+
+        assertEquals(ImmutableSet.of("source", "bar"), catalog.getAllMessageFields());
+    }
+
+    private static MetaData metaData(IndexMetaData... indices) {
+        final MetaData.Builder builder = MetaData.builder();
+        for (IndexMetaData index : indices) {
+            builder.put(index, false);
+        }
+        return builder.build();
+    }
+
+    private static IndexMetaData indexMetaData(String name, String... fields) throws IOException {
+        final IndexMetaData.Builder builder = IndexMetaData.builder(name)
+                .settings(ImmutableSettings.settingsBuilder()
+                        .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                        .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+                        .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0));
+        if (fields.length > 0) {
+            final StringBuilder properties = new StringBuilder();
+            for (String field : fields) {
+                if (properties.length() > 0) {
+                    properties.append(',');
+                }
+                properties.append('"').append(field).append("\":{\"type\":\"string\"}");
+            }
+            builder.putMapping(IndexMapping.TYPE_MESSAGE,
+                    "{\"" + IndexMapping.TYPE_MESSAGE + "\":{\"properties\":{" + properties + "}}}");
+        }
+        return builder.build();
+    }
+}
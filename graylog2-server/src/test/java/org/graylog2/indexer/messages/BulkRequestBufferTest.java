@@ -0,0 +1,90 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.messages;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.graylog2.indexer.IndexMapping;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Stream;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BulkRequestBufferTest {
+    @Test
+    public void testSerializesMessagesLikeElasticsearchObject() throws Exception {
+        final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
+        final Message message1 = new Message("message1", "source1", new DateTime(2015, 8, 1, 12, 34, 56, 789, DateTimeZone.forOffsetHours(2)));
+        message1.addField("number", 42);
+        message1.addField("text", "with \"quotes\"\nand newline");
+        message1.addField("list", Arrays.asList("a", "b"));
+        message1.setStreams(Arrays.asList(stream));
+        final Message message2 = new Message("message2", "source2", new DateTime(2015, 8, 2, 0, 0, DateTimeZone.UTC));
+
+        final BulkRequestBuffer buffer = new BulkRequestBuffer(1024);
+        buffer.add("graylog_0", message1);
+        buffer.add("graylog_0", message2);
+
+        assertEquals(2, buffer.count());
+        final List<ActionRequest> requests = new BulkRequest().add(buffer.bytes(), null, null).requests();
+        assertEquals(2, requests.size());
+        assertIndexRequest(message1, (IndexRequest) requests.get(0));
+        assertIndexRequest(message2, (IndexRequest) requests.get(1));
+        assertEquals("2015-08-01 10:34:56.789", ((IndexRequest) requests.get(0)).sourceAsMap().get("timestamp"));
+    }
+
+    @Test
+    public void testResetClearsBuffer() throws Exception {
+        final BulkRequestBuffer buffer = new BulkRequestBuffer(1024);
+        buffer.add("graylog_0", new Message("message1", "source1", DateTime.now(DateTimeZone.UTC)));
+        buffer.reset();
+
+        assertEquals(0, buffer.count());
+        assertEquals(0, buffer.size());
+
+        final Message message = new Message("message2", "source2", DateTime.now(DateTimeZone.UTC));
+        buffer.add("graylog_0", message);
+
+        final List<ActionRequest> requests = new BulkRequest().add(buffer.bytes(), null, null).requests();
+        assertEquals(1, requests.size());
+        assertIndexRequest(message, (IndexRequest) requests.get(0));
+    }
+
+    private static void assertIndexRequest(Message message, IndexRequest request) throws Exception {
+        assertEquals("graylog_0", request.index());
+        assertEquals(IndexMapping.TYPE_MESSAGE, request.type());
+        assertEquals(message.getId(), request.id());
+        assertEquals(IndexRequest.OpType.INDEX, request.opType());
+
+        final Map<String, Object> expected = XContentHelper.convertToMap(
+                jsonBuilder().map(message.toElasticSearchObject()).bytes(), false).v2();
+        assertEquals(expected, request.sourceAsMap());
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.messages;
+
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.collect.Lists;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.graylog2.configuration.ElasticsearchConfiguration;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.streams.rollups.StreamCountRollups;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MessagesTest {
+    private Client client;
+    private StreamCountRollups streamCountRollups;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        client = mock(Client.class);
+        final ActionFuture<BulkResponse> future = mock(ActionFuture.class);
+        when(future.actionGet()).thenReturn(new BulkResponse(new BulkItemResponse[0], 1L));
+        when(client.bulk(any(BulkRequest.class))).thenReturn(future);
+        streamCountRollups = mock(StreamCountRollups.class);
+    }
+
+    @Test
+    public void testBulkIndexSplitsByMessageCount() throws Exception {
+        final Messages messages = new Messages(client, configuration(Size.megabytes(1L), 2), streamCountRollups);
+
+        assertTrue(messages.bulkIndex(buildMessages(5, 10)));
+
+        assertEquals(Lists.newArrayList(2, 2, 1), capturedRequestSizes(3));
+    }
+
+    @Test
+    public void testBulkIndexSplitsBySize() throws Exception {
+        final Messages messages = new Messages(client, configuration(Size.kilobytes(1L), 1000), streamCountRollups);
+
+        // every message exceeds the limit on its own, but is still indexed
+        assertTrue(messages.bulkIndex(buildMessages(3, 2048)));
+
+        assertEquals(Lists.newArrayList(1, 1, 1), capturedRequestSizes(3));
+    }
+
+    @Test
+    public void testBulkIndexSingleRequest() throws Exception {
+        final Messages messages = new Messages(client, configuration(Size.megabytes(1L), 1000), streamCountRollups);
+
+        assertTrue(messages.bulkIndex(buildMessages(10, 10)));
+
+        assertEquals(Lists.newArrayList(10), capturedRequestSizes(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBulkIndexCountsMessagesOnlyOnceWhenRetried() throws Exception {
+        final ActionFuture<BulkResponse> future = mock(ActionFuture.class);
+        when(client.bulk(any(BulkRequest.class))).thenReturn(future);
+        when(future.actionGet())
+                .thenReturn(successfulResponse(2))
+                .thenThrow(new ElasticsearchException("unavailable"))
+                .thenReturn(successfulResponse(2))
+                .thenReturn(successfulResponse(1));
+        final Messages messages = new Messages(client, configuration(Size.megabytes(1L), 2), streamCountRollups);
+        final List<Message> messageList = buildMessages(3, 10);
+
+        try {
+            messages.bulkIndex(messageList);
+            fail("The second bulk request should have failed");
+        } catch (ElasticsearchException e) {
+            // the first bulk request succeeded, but its messages must not be counted yet
+            verify(streamCountRollups, never()).record(any(Message.class));
+        }
+
+        // the caller retries the complete list
+        assertTrue(messages.bulkIndex(messageList));
+        for (Message message : messageList) {
+            verify(streamCountRollups).record(message);
+        }
+    }
+
+    private static BulkResponse successfulResponse(int items) {
+        final BulkItemResponse[] responses = new BulkItemResponse[items];
+        for (int i = 0; i < items; i++) {
+            responses[i] = new BulkItemResponse(i, "index", new IndexResponse("graylog_0", "message", "id" + i, 1L, true));
+        }
+        return new BulkResponse(responses, 1L);
+    }
+
+    private List<Integer> capturedRequestSizes(int requests) {
+        final ArgumentCaptor<BulkRequest> captor = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(client, times(requests)).bulk(captor.capture());
+
+        final List<Integer> sizes = Lists.newArrayList();
+        for (BulkRequest request : captor.getAllValues()) {
+            sizes.add(request.numberOfActions());
+        }
+        return sizes;
+    }
+
+    private static ElasticsearchConfiguration configuration(final Size maxSize, final int maxMessages) {
+        return new ElasticsearchConfiguration() {
+            @Override
+            public Size getBulkRequestMaxSize() {
+                return maxSize;
+            }
+
+            @Override
+            public int getBulkRequestMaxMessages() {
+                return maxMessages;
+            }
+        };
+    }
+
+    private static List<Message> buildMessages(int count, int messageSize) {
+        final StringBuilder sb = new StringBuilder(messageSize);
+        for (int i = 0; i < messageSize; i++) {
+            sb.append('x');
+        }
+
+        final List<Message> messages = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            messages.add(new Message(sb.toString(), "source", Tools.iso8601()));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.database.NotFoundException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.SortedSet;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingIndexRangeServiceTest {
+    private static final DateTime NOW = new DateTime(2015, 6, 1, 0, 0, DateTimeZone.UTC);
+
+    private final IndexRange range1 = IndexRange.create("graylog_1", NOW.minusDays(3), NOW.minusDays(2), NOW, 1);
+    private final IndexRange range2 = IndexRange.create("graylog_2", NOW.minusDays(2), NOW.minusDays(1), NOW, 1);
+    private final IndexRange range3 = IndexRange.create("graylog_3", NOW.minusDays(1), NOW, NOW, 1);
+
+    private EsIndexRangeService delegate;
+    private EventBus eventBus;
+    private MetricRegistry metricRegistry;
+    private CachingIndexRangeService indexRangeService;
+
+    @Before
+    public void setUp() {
+        delegate = mock(EsIndexRangeService.class);
+        when(delegate.findAll()).thenReturn(ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR)
+                .add(range1, range2, range3)
+                .build());
+        eventBus = new EventBus("test");
+        metricRegistry = new MetricRegistry();
+        indexRangeService = new CachingIndexRangeService(delegate, eventBus, metricRegistry);
+    }
+
+    @Test
+    public void testFindMatchesContainedRanges() {
+        assertThat(indexRangeService.find(NOW.minusDays(10), NOW.plusDays(1))).containsExactly(range3, range2, range1);
+        assertThat(indexRangeService.find(NOW.minusDays(2), NOW)).containsExactly(range3, range2);
+        assertThat(indexRangeService.find(NOW.minusDays(3), NOW.minusDays(1))).containsExactly(range2, range1);
+        assertThat(indexRangeService.find(NOW.minusDays(2).plusMillis(1), NOW.minusHours(1))).isEmpty();
+        assertThat(indexRangeService.find(NOW.plusDays(1), NOW.plusDays(2))).isEmpty();
+
+        verify(delegate, times(1)).findAll();
+    }
+
+    @Test
+    public void testFindIsOrderedByEnd() {
+        final SortedSet<IndexRange> indexRanges = indexRangeService.find(NOW.minusDays(10), NOW);
+
+        assertThat(indexRanges.comparator()).isSameAs(IndexRange.COMPARATOR);
+        assertThat(indexRanges.first()).isEqualTo(range3);
+    }
+
+    @Test
+    public void testGetIsServedFromMemory() throws NotFoundException {
+        assertThat(indexRangeService.get("graylog_2")).isEqualTo(range2);
+        assertThat(indexRangeService.findAll()).containsExactly(range3, range2, range1);
+
+        verify(delegate, times(1)).findAll();
+        verify(delegate, times(0)).get("graylog_2");
+    }
+
+    @Test
+    public void testGetRemembersMissingIndices() throws NotFoundException {
+        when(delegate.get("graylog_4")).thenThrow(new NotFoundException());
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                indexRangeService.get("graylog_4");
+                fail("Expected NotFoundException");
+            } catch (NotFoundException e) {
+                // expected
+            }
+        }
+
+        verify(delegate, times(1)).get("graylog_4");
+    }
+
+    @Test
+    public void testSaveUpdatesCachedRanges() throws NotFoundException {
+        indexRangeService.findAll();
+        final IndexRange range4 = IndexRange.create("graylog_4", NOW, NOW.plusDays(1), NOW, 1);
+
+        indexRangeService.save(range4);
+
+        verify(delegate).save(range4);
+        assertThat(indexRangeService.get("graylog_4")).isEqualTo(range4);
+        assertThat(indexRangeService.find(NOW, NOW.plusDays(1))).containsExactly(range4);
+        verify(delegate, times(1)).findAll();
+    }
+
+    @Test
+    public void testUpdatedEventReloadsRanges() {
+        assertThat(indexRangeService.findAll()).hasSize(3);
+        when(delegate.findAll()).thenReturn(ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR).add(range3).build());
+
+        eventBus.post(IndexRangesUpdatedEvent.create(ImmutableSet.of("graylog_3")));
+
+        assertThat(indexRangeService.findAll()).containsExactly(range3);
+        assertThat(indexRangeService.find(NOW.minusDays(10), NOW)).containsExactly(range3);
+        verify(delegate, times(2)).findAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHitRate() {
+        indexRangeService.find(NOW.minusDays(1), NOW);
+        indexRangeService.find(NOW.minusDays(1), NOW);
+        indexRangeService.find(NOW.minusDays(1), NOW);
+
+        final Gauge<Double> hitRate = metricRegistry.getGauges().get(name(CachingIndexRangeService.class, "hitRate"));
+        assertThat(hitRate.getValue()).isEqualTo(0.75d);
+    }
+}
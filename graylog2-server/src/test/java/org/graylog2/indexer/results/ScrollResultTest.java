@@ -0,0 +1,320 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.results;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jayway.awaitility.Duration;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.search.ClearScrollRequestBuilder;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequestBuilder;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.StringText;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.highlight.HighlightField;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScrollResultTest {
+    private static final List<String> FIELDS = ImmutableList.of("message");
+    private static final int HITS_PER_PAGE = 2;
+
+    @Mock
+    private Client client;
+    @Mock
+    private ActionFuture<SearchResponse> searchFuture;
+    @Mock
+    private SearchScrollRequestBuilder scrollRequestBuilder;
+    @Mock
+    private ListenableActionFuture<SearchResponse> scrollFuture;
+    @Mock
+    private ClearScrollRequestBuilder clearScrollRequestBuilder;
+    @Mock
+    private ListenableActionFuture<ClearScrollResponse> clearScrollFuture;
+    @Mock
+    private ClearScrollResponse clearScrollResponse;
+
+    // the fake cluster: number of pages of every index, every scroll id is "<index>/<page>"
+    private final Map<String, Integer> pagesOfIndex = Maps.newHashMap();
+    private final Set<String> failingIndices = Sets.newConcurrentHashSet();
+    private final List<String> clearedScrollIds = Lists.newCopyOnWriteArrayList();
+    private final AtomicInteger scrollRequests = new AtomicInteger();
+    private final ThreadLocal<String> searchedIndex = new ThreadLocal<>();
+    private final ThreadLocal<String> requestedScrollId = new ThreadLocal<>();
+    private volatile CountDownLatch scrollStarted = null;
+    private volatile CountDownLatch scrollGate = null;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+
+        when(client.search(any(SearchRequest.class))).thenAnswer(new Answer<ActionFuture<SearchResponse>>() {
+            @Override
+            public ActionFuture<SearchResponse> answer(InvocationOnMock invocation) throws Throwable {
+                final SearchRequest request = (SearchRequest) invocation.getArguments()[0];
+                searchedIndex.set(request.indices()[0]);
+                return searchFuture;
+            }
+        });
+        when(searchFuture.actionGet()).thenAnswer(new Answer<SearchResponse>() {
+            @Override
+            public SearchResponse answer(InvocationOnMock invocation) throws Throwable {
+                // scan requests don't return any hits, only the scroll id
+                return response(searchedIndex.get() + "/0", 0);
+            }
+        });
+
+        when(client.prepareSearchScroll(anyString())).thenAnswer(new Answer<SearchScrollRequestBuilder>() {
+            @Override
+            public SearchScrollRequestBuilder answer(InvocationOnMock invocation) throws Throwable {
+                requestedScrollId.set((String) invocation.getArguments()[0]);
+                return scrollRequestBuilder;
+            }
+        });
+        when(scrollRequestBuilder.setScroll(any(TimeValue.class))).thenReturn(scrollRequestBuilder);
+        when(scrollRequestBuilder.execute()).thenReturn(scrollFuture);
+        when(scrollFuture.actionGet()).thenAnswer(new Answer<SearchResponse>() {
+            @Override
+            public SearchResponse answer(InvocationOnMock invocation) throws Throwable {
+                return scroll(requestedScrollId.get());
+            }
+        });
+
+        when(client.prepareClearScroll()).thenReturn(clearScrollRequestBuilder);
+        when(clearScrollRequestBuilder.setScrollIds(anyListOf(String.class))).thenAnswer(new Answer<ClearScrollRequestBuilder>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public ClearScrollRequestBuilder answer(InvocationOnMock invocation) throws Throwable {
+                clearedScrollIds.addAll((List<String>) invocation.getArguments()[0]);
+                return clearScrollRequestBuilder;
+            }
+        });
+        when(clearScrollRequestBuilder.execute()).thenReturn(clearScrollFuture);
+        when(clearScrollFuture.actionGet()).thenReturn(clearScrollResponse);
+        when(clearScrollResponse.isSucceeded()).thenReturn(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (scrollGate != null) {
+            scrollGate.countDown();
+        }
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void nextChunkReturnsThePagesOfAllSlicesUntilTheyAreExhausted() throws Exception {
+        pagesOfIndex.put("graylog_0", 2);
+        pagesOfIndex.put("graylog_1", 1);
+        pagesOfIndex.put("graylog_2", 0);
+        pagesOfIndex.put("graylog_3", 3);
+
+        final ScrollResult scrollResult = scrollResult(8, 2, "graylog_0", "graylog_1", "graylog_2", "graylog_3");
+
+        final List<ScrollResult.ScrollChunk> chunks = Lists.newArrayList();
+        ScrollResult.ScrollChunk chunk;
+        while ((chunk = scrollResult.nextChunk()) != null) {
+            chunks.add(chunk);
+        }
+
+        assertThat(chunks).hasSize(6);
+        final Set<String> messages = Sets.newHashSet();
+        for (int i = 0; i < chunks.size(); i++) {
+            final ScrollResult.ScrollChunk c = chunks.get(i);
+            assertThat(c.getChunkNumber()).isEqualTo(i);
+            assertThat(c.isFirstChunk()).isEqualTo(i == 0);
+            assertThat(c.getFields()).isEqualTo(FIELDS);
+            assertThat(c.getMessages()).hasSize(HITS_PER_PAGE);
+            for (ResultMessage message : c.getMessages()) {
+                messages.add((String) message.getMessage().get("message"));
+            }
+        }
+        assertThat(messages).hasSize(6 * HITS_PER_PAGE);
+        assertThat(scrollResult.nextChunk()).isNull();
+        // exhausted scrolls are released by Elasticsearch
+        assertThat(clearedScrollIds).isEmpty();
+    }
+
+    @Test
+    public void nextChunkReturnsNullWithoutSlices() throws Exception {
+        final ScrollResult scrollResult = scrollResult(8, 2);
+
+        assertThat(scrollResult.nextChunk()).isNull();
+    }
+
+    @Test
+    public void nextChunkThrowsTheFailureOfASlice() throws Exception {
+        pagesOfIndex.put("graylog_0", 1);
+        pagesOfIndex.put("graylog_1", 1);
+        failingIndices.add("graylog_1");
+
+        final ScrollResult scrollResult = scrollResult(8, 1, "graylog_0", "graylog_1");
+
+        try {
+            while (scrollResult.nextChunk() != null) {
+                // read until the failure of the second slice
+            }
+            fail("The failure of the slice should have been thrown.");
+        } catch (ElasticsearchException e) {
+            assertThat(e).hasMessage("Scrolling graylog_1 failed");
+        }
+        // the failed slice released its scroll
+        assertThat(clearedScrollIds).contains("graylog_1/0");
+        assertThat(scrollResult.nextChunk()).isNull();
+    }
+
+    @Test
+    public void cancelClearsScrollWhichIsReceivedAfterwards() throws Exception {
+        pagesOfIndex.put("graylog_0", 5);
+        scrollStarted = new CountDownLatch(1);
+        scrollGate = new CountDownLatch(1);
+
+        final ScrollResult scrollResult = scrollResult(8, 1, "graylog_0");
+        assertThat(scrollStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        scrollResult.cancel();
+        assertThat(clearedScrollIds).containsExactly("graylog_0/0");
+
+        // the running scroll request returns the id of a new scroll after the cancellation
+        scrollGate.countDown();
+        await().atMost(Duration.FIVE_SECONDS).until(new Runnable() {
+            @Override
+            public void run() {
+                assertThat(clearedScrollIds).containsExactly("graylog_0/0", "graylog_0/1");
+            }
+        });
+        assertThat(scrollResult.nextChunk()).isNull();
+        assertThat(scrollRequests.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void slicesReadAtMostBufferedPagesAhead() throws Exception {
+        pagesOfIndex.put("graylog_0", 20);
+
+        final ScrollResult scrollResult = scrollResult(2, 1, "graylog_0");
+
+        // two pages in the buffer and one waiting to be put into it
+        await().atMost(Duration.FIVE_SECONDS).until(new Runnable() {
+            @Override
+            public void run() {
+                assertThat(scrollRequests.get()).isEqualTo(3);
+            }
+        });
+        Thread.sleep(100L);
+        assertThat(scrollRequests.get()).isEqualTo(3);
+
+        assertThat(scrollResult.nextChunk()).isNotNull();
+        await().atMost(Duration.FIVE_SECONDS).until(new Runnable() {
+            @Override
+            public void run() {
+                assertThat(scrollRequests.get()).isEqualTo(4);
+            }
+        });
+
+        int chunks = 1;
+        while (scrollResult.nextChunk() != null) {
+            chunks++;
+        }
+        assertThat(chunks).isEqualTo(20);
+    }
+
+    private ScrollResult scrollResult(int bufferedPages, int concurrentSlices, String... indices) {
+        final List<SearchRequest> sliceRequests = Lists.newArrayList();
+        for (String index : indices) {
+            sliceRequests.add(new SearchRequest(index));
+        }
+        return new ScrollResult(client, "*", BytesArray.EMPTY, TimeValue.timeValueMillis(1L), 42L,
+                sliceRequests, FIELDS, bufferedPages, concurrentSlices, executor);
+    }
+
+    private SearchResponse scroll(String scrollId) throws InterruptedException {
+        scrollRequests.incrementAndGet();
+        final String index = scrollId.substring(0, scrollId.indexOf('/'));
+        final int page = Integer.parseInt(scrollId.substring(scrollId.indexOf('/') + 1));
+
+        if (scrollStarted != null) {
+            scrollStarted.countDown();
+        }
+        if (scrollGate != null) {
+            scrollGate.await();
+        }
+        if (failingIndices.contains(index)) {
+            throw new ElasticsearchException("Scrolling " + index + " failed");
+        }
+
+        final int hits = page < pagesOfIndex.get(index) ? HITS_PER_PAGE : 0;
+        return response(index + "/" + (page + 1), hits);
+    }
+
+    private static SearchResponse response(String scrollId, int numberOfHits) {
+        final String index = scrollId.substring(0, scrollId.indexOf('/'));
+        final InternalSearchHit[] hits = new InternalSearchHit[numberOfHits];
+        for (int i = 0; i < numberOfHits; i++) {
+            final String id = scrollId + "#" + i;
+            final InternalSearchHit hit = new InternalSearchHit(i, id, new StringText("message"),
+                    Collections.<String, SearchHitField>emptyMap());
+            hit.sourceRef(new BytesArray("{\"message\":\"" + id + "\"}"));
+            hit.shard(new SearchShardTarget("node", index, 0));
+            hit.highlightFields(Collections.<String, HighlightField>emptyMap());
+            hits[i] = hit;
+        }
+        final InternalSearchResponse internalResponse = new InternalSearchResponse(
+                new InternalSearchHits(hits, numberOfHits, 1.0f), null, null, null, false, null);
+        return new SearchResponse(internalResponse, scrollId, 1, 1, 1L, ShardSearchFailure.EMPTY_ARRAY);
+    }
+}
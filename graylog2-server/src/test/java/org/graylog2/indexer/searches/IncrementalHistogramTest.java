@@ -0,0 +1,151 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.searches;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.unit.TimeValue;
+import org.graylog2.indexer.results.HistogramResult;
+import org.graylog2.indexer.results.MergedHistogramResult;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IncrementalHistogramTest {
+    private static final DateTime NOW = new DateTime(2015, 6, 1, 12, 30, 15, 500, DateTimeZone.UTC);
+    private static final Set<String> INDICES = ImmutableSet.of("graylog_0", "graylog_1");
+
+    private Searches searches;
+    private List<AbsoluteRange> searchedRanges;
+
+    @Before
+    public void setUp() throws Exception {
+        searches = mock(Searches.class);
+        searchedRanges = Lists.newArrayList();
+        when(searches.determineAffectedIndices(any(TimeRange.class))).thenReturn(INDICES);
+        when(searches.histogram(eq(INDICES), anyString(), any(Searches.DateHistogramInterval.class), anyString(), any(TimeRange.class)))
+                .thenAnswer(new Answer<HistogramResult>() {
+                    @Override
+                    public HistogramResult answer(InvocationOnMock invocation) throws Throwable {
+                        final AbsoluteRange range = (AbsoluteRange) invocation.getArguments()[4];
+                        searchedRanges.add(range);
+                        return histogram(range.getFrom().getMillis(), range.getTo().getMillis());
+                    }
+                });
+    }
+
+    @Test
+    public void testComputeMatchesFullHistogram() throws Exception {
+        final IncrementalHistogram histogram = newHistogram(new RelativeRange(3600));
+
+        for (int i = 0; i < 10; i++) {
+            final DateTime now = NOW.plusSeconds(i * 47);
+            final HistogramResult result = histogram.compute(now);
+
+            assertThat(result.getResults()).isEqualTo(histogram(now.minusHours(1).getMillis(), now.getMillis()).getResults());
+            assertThat(result.getHistogramBoundaries()).isEqualTo(new AbsoluteRange(now.minusHours(1), now));
+        }
+    }
+
+    @Test
+    public void testOnlyPartialBucketsAreSearchedAgain() throws Exception {
+        final IncrementalHistogram histogram = newHistogram(new RelativeRange(3600));
+        histogram.compute(NOW);
+        assertThat(histogram.getClosedBucketCount()).isEqualTo(58);
+        searchedRanges.clear();
+
+        histogram.compute(NOW.plusSeconds(90));
+
+        // the partial first bucket and everything after the last closed bucket
+        assertThat(searchedRanges).hasSize(2);
+        assertThat(searchedRanges.get(0).getFrom()).isEqualTo(NOW.plusSeconds(90).minusHours(1));
+        assertThat(searchedRanges.get(1).getFrom()).isEqualTo(new DateTime(2015, 6, 1, 12, 29, DateTimeZone.UTC));
+        assertThat(histogram.getClosedBucketCount()).isEqualTo(58);
+    }
+
+    @Test
+    public void testIndexRangeChangesDiscardClosedBuckets() throws Exception {
+        final IncrementalHistogram histogram = newHistogram(new RelativeRange(3600));
+        histogram.compute(NOW);
+        searchedRanges.clear();
+
+        when(searches.indexRangesGeneration()).thenReturn(1L);
+        histogram.compute(NOW.plusSeconds(10));
+
+        assertThat(searchedRanges.get(1).getFrom()).isEqualTo(new DateTime(2015, 6, 1, 11, 31, DateTimeZone.UTC));
+    }
+
+    @Test
+    public void testOtherTimeRangesAreSearchedCompletely() throws Exception {
+        final AbsoluteRange range = new AbsoluteRange(NOW.minusHours(1), NOW);
+        final IncrementalHistogram histogram = newHistogram(range);
+
+        assertThat(histogram.isIncremental()).isFalse();
+        histogram.compute();
+
+        verify(searches).histogram("*", Searches.DateHistogramInterval.MINUTE, "streams:1", range);
+        assertThat(searchedRanges).isEmpty();
+    }
+
+    @Test
+    public void testCalendarIntervalsAreSearchedCompletely() throws Exception {
+        final IncrementalHistogram histogram = new IncrementalHistogram(searches, "*", null,
+                Searches.DateHistogramInterval.MONTH, null, new RelativeRange(3600), false);
+
+        assertThat(histogram.isIncremental()).isFalse();
+    }
+
+    private IncrementalHistogram newHistogram(TimeRange range) {
+        return new IncrementalHistogram(searches, "*", null, Searches.DateHistogramInterval.MINUTE, "streams:1", range, false);
+    }
+
+    /**
+     * Histogram of one message per second in the given time range.
+     */
+    private static HistogramResult histogram(long from, long to) {
+        final Map<Long, Object> buckets = Maps.newTreeMap();
+        for (long second = (from + 999L) / 1000L; second * 1000L <= to; second++) {
+            final long bucket = second - second % 60L;
+            final Long count = (Long) buckets.get(bucket);
+            buckets.put(bucket, count == null ? 1L : count + 1L);
+        }
+
+        final AbsoluteRange range = new AbsoluteRange(new DateTime(from, DateTimeZone.UTC), new DateTime(to, DateTimeZone.UTC));
+        return new MergedHistogramResult(buckets, Searches.DateHistogramInterval.MINUTE, range, "*",
+                new BytesArray("{}"), new TimeValue(1L));
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.searches;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.indexer.ranges.IndexRangesUpdatedEvent;
+import org.graylog2.indexer.results.CountResult;
+import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.RelativeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class SearchResultCacheTest {
+    private static final DateTime FROM = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final DateTime TO = new DateTime(2015, 1, 2, 0, 0, DateTimeZone.UTC);
+
+    private EventBus eventBus;
+    private SearchResultCache cache;
+    private AtomicInteger searchCount;
+
+    @Before
+    public void setUp() {
+        eventBus = new EventBus("test");
+        cache = new SearchResultCache(eventBus, new MetricRegistry());
+        searchCount = new AtomicInteger();
+    }
+
+    @Test
+    public void testKeyNormalizesQueryAndFilter() throws Exception {
+        final AbsoluteRange range = new AbsoluteRange(FROM, TO);
+        final SearchResultCache.Key key1 = SearchResultCache.Key.of("count", range,
+                SearchResultCache.Key.normalizeQuery(" "), SearchResultCache.Key.normalizeFilter("*"));
+        final SearchResultCache.Key key2 = SearchResultCache.Key.of("count", new AbsoluteRange(FROM, TO),
+                SearchResultCache.Key.normalizeQuery(null), SearchResultCache.Key.normalizeFilter(null));
+
+        assertThat(key1).isEqualTo(key2);
+        assertThat(key1.hashCode()).isEqualTo(key2.hashCode());
+        assertThat(key1).isNotEqualTo(SearchResultCache.Key.of("count", range, "foo", null));
+        assertThat(key1).isNotEqualTo(SearchResultCache.Key.of("count", new AbsoluteRange(FROM, TO.plusMillis(1)), "*", null));
+        assertThat(key1).isNotEqualTo(SearchResultCache.Key.of("terms", range, "*", null));
+    }
+
+    @Test
+    public void testRelativeRangesAreKeyedByLength() throws Exception {
+        assertThat(SearchResultCache.Key.of("count", new RelativeRange(300), "*"))
+                .isEqualTo(SearchResultCache.Key.of("count", new RelativeRange(300), "*"))
+                .isNotEqualTo(SearchResultCache.Key.of("count", new RelativeRange(600), "*"));
+    }
+
+    @Test
+    public void testResultIsCached() throws Exception {
+        final SearchResultCache.Key key = SearchResultCache.Key.of("count", new AbsoluteRange(FROM, TO), "*", null);
+
+        final CountResult result1 = cache.get(key, false, countSearch(42L), RuntimeException.class);
+        final CountResult result2 = cache.get(key, false, countSearch(23L), RuntimeException.class);
+
+        assertThat(result1.getCount()).isEqualTo(42L);
+        assertThat(result2).isSameAs(result1);
+        assertThat(cache.<CountResult>getIfPresent(key)).isSameAs(result1);
+        assertThat(searchCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testIndexRangeUpdatesInvalidateResults() throws Exception {
+        final SearchResultCache.Key key = SearchResultCache.Key.of("count", new AbsoluteRange(FROM, TO), "*", null);
+        cache.get(key, false, countSearch(42L), RuntimeException.class);
+
+        eventBus.post(IndexRangesUpdatedEvent.create(ImmutableSet.of("graylog_1")));
+
+        assertThat(cache.getIfPresent(key)).isNull();
+        assertThat(cache.size()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testConcurrentSearchesAreCoalesced() throws Exception {
+        final SearchResultCache.Key key = SearchResultCache.Key.of("count", new RelativeRange(300), "*", null);
+        final CountDownLatch searchStarted = new CountDownLatch(1);
+        final CountDownLatch releaseSearch = new CountDownLatch(1);
+        final Callable<CountResult> slowSearch = new Callable<CountResult>() {
+            @Override
+            public CountResult call() throws Exception {
+                searchCount.incrementAndGet();
+                searchStarted.countDown();
+                releaseSearch.await();
+                return new CountResult(42L, 1L);
+            }
+        };
+        final Callable<CountResult> cachedSearch = new Callable<CountResult>() {
+            @Override
+            public CountResult call() throws Exception {
+                return cache.get(key, true, slowSearch, RuntimeException.class);
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<CountResult> first = executor.submit(cachedSearch);
+            assertThat(searchStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            final Future<CountResult> second = executor.submit(cachedSearch);
+            Thread.sleep(50L);
+            releaseSearch.countDown();
+
+            assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+            assertThat(searchCount.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCheckedExceptionsArePropagated() throws Exception {
+        final SearchResultCache.Key key = SearchResultCache.Key.of("fieldStats", new AbsoluteRange(FROM, TO), "field");
+        final Searches.FieldTypeException exception = new Searches.FieldTypeException(new IllegalStateException());
+
+        try {
+            cache.get(key, false, new Callable<CountResult>() {
+                @Override
+                public CountResult call() throws Exception {
+                    throw exception;
+                }
+            }, Searches.FieldTypeException.class);
+            fail("Expected FieldTypeException");
+        } catch (Searches.FieldTypeException e) {
+            assertThat(e).isSameAs(exception);
+        }
+        assertThat(cache.size()).isEqualTo(0L);
+    }
+
+    private Callable<CountResult> countSearch(final long count) {
+        return new Callable<CountResult>() {
+            @Override
+            public CountResult call() {
+                searchCount.incrementAndGet();
+                return new CountResult(count, 1L);
+            }
+        };
+    }
+}
@@ -19,7 +19,9 @@ package org.graylog2.indexer.searches;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.EventBus;
 import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
 import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
 import com.lordofthejars.nosqlunit.elasticsearch.ElasticsearchRule;
@@ -37,6 +39,9 @@ import org.graylog2.indexer.results.HistogramResult;
 import org.graylog2.indexer.results.TermsResult;
 import org.graylog2.indexer.results.TermsStatsResult;
 import org.graylog2.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.indexer.searches.timeranges.TimeRange;
+import org.graylog2.streams.rollups.Granularity;
+import org.graylog2.streams.rollups.StreamCountRollups;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Before;
@@ -56,6 +61,12 @@ import static com.lordofthejars.nosqlunit.elasticsearch.ElasticsearchRule.Elasti
 import static com.lordofthejars.nosqlunit.elasticsearch.EmbeddedElasticsearch.EmbeddedElasticsearchRuleBuilder.newEmbeddedElasticsearchRule;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -69,6 +80,8 @@ public class SearchesTest {
     public ElasticsearchRule elasticsearchRule;
 
     private static final String INDEX_NAME = "graylog";
+    private static final String STREAM_ID = "000000000000000000000001";
+    private static final String STREAM_FILTER = "streams:" + STREAM_ID;
     private static final SortedSet<IndexRange> INDEX_RANGES = ImmutableSortedSet
             .orderedBy(new IndexRangeComparator())
             .add(new IndexRange() {
@@ -102,6 +115,8 @@ public class SearchesTest {
     private Deflector deflector;
     @Mock
     private IndexRangeService indexRangeService;
+    @Mock
+    private StreamCountRollups streamCountRollups;
 
     private MetricRegistry metricRegistry;
     private Searches searches;
@@ -118,7 +133,8 @@ public class SearchesTest {
     public void setUp() throws Exception {
         when(indexRangeService.find(any(DateTime.class), any(DateTime.class))).thenReturn(INDEX_RANGES);
         metricRegistry = new MetricRegistry();
-        searches = new Searches(new Configuration(), deflector, indexRangeService, client, metricRegistry);
+        searches = new Searches(new Configuration(), deflector, indexRangeService, client, metricRegistry,
+                new SearchResultCache(new EventBus(), metricRegistry), streamCountRollups);
     }
 
     @Test
@@ -323,4 +339,104 @@ public class SearchesTest {
         assertThat(histogram.getCount()).isEqualTo(1L);
         assertThat(histogram.getSnapshot().getValues()).containsExactly(86400L);
     }
+
+    @Test
+    @UsingDataSet(locations = "SearchesTest-streams.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void countSearchesTheRangesNotCoveredByRollups() throws Exception {
+        final DateTime from = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime to = new DateTime(2015, 1, 2, 0, 0, DateTimeZone.UTC);
+        final DateTime rolledUpFrom = new DateTime(2015, 1, 1, 2, 0, DateTimeZone.UTC);
+        final DateTime rolledUpTo = new DateTime(2015, 1, 1, 4, 0, DateTimeZone.UTC);
+        when(streamCountRollups.isEnabled()).thenReturn(true);
+        when(streamCountRollups.count(STREAM_ID, from.getMillis(), to.getMillis()))
+                .thenReturn(new StreamCountRollups.RolledUpCount(rolledUpFrom.getMillis(), rolledUpTo.getMillis(), 7L));
+        final Searches searches = spy(this.searches);
+
+        final CountResult result = searches.count("*", new AbsoluteRange(from, to), STREAM_FILTER);
+
+        // 7 rolled up messages, one message before 02:00 and two messages from 04:00 on
+        assertThat(result.getCount()).isEqualTo(10L);
+        verify(searches).searchCount(anySetOf(String.class), eq("*"),
+                eq(new AbsoluteRange(from, rolledUpFrom.minusMillis(1))), eq(STREAM_FILTER));
+        verify(searches).searchCount(anySetOf(String.class), eq("*"),
+                eq(new AbsoluteRange(rolledUpTo, to)), eq(STREAM_FILTER));
+        verify(searches, times(2)).searchCount(anySetOf(String.class), anyString(), any(TimeRange.class), anyString());
+    }
+
+    @Test
+    @UsingDataSet(locations = "SearchesTest-streams.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void countWithoutRollupsSearchesTheWholeRange() throws Exception {
+        final AbsoluteRange range = new AbsoluteRange(
+                new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC),
+                new DateTime(2015, 1, 2, 0, 0, DateTimeZone.UTC));
+        when(streamCountRollups.isEnabled()).thenReturn(true);
+        final Searches searches = spy(this.searches);
+
+        final CountResult result = searches.count("*", range, STREAM_FILTER);
+
+        assertThat(result.getCount()).isEqualTo(5L);
+        verify(searches).searchCount(anySetOf(String.class), eq("*"), eq(range), eq(STREAM_FILTER));
+    }
+
+    @Test
+    @UsingDataSet(locations = "SearchesTest-streams.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    @SuppressWarnings("unchecked")
+    public void histogramMergesRolledUpBuckets() throws Exception {
+        final DateTime from = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime to = new DateTime(2015, 1, 2, 0, 0, DateTimeZone.UTC);
+        final DateTime rolledUpFrom = new DateTime(2015, 1, 1, 2, 0, DateTimeZone.UTC);
+        final DateTime rolledUpTo = new DateTime(2015, 1, 1, 4, 0, DateTimeZone.UTC);
+        final Map<Long, Long> rolledUpCounts = ImmutableMap.of(
+                rolledUpFrom.getMillis(), 3L,
+                rolledUpFrom.plusHours(1).getMillis(), 4L);
+        when(streamCountRollups.isEnabled()).thenReturn(true);
+        when(streamCountRollups.histogram(STREAM_ID, Granularity.HOUR, from.getMillis(), to.getMillis()))
+                .thenReturn(new StreamCountRollups.RolledUpHistogram(rolledUpFrom.getMillis(), rolledUpTo.getMillis(), rolledUpCounts));
+        final Searches searches = spy(this.searches);
+        final AbsoluteRange range = new AbsoluteRange(from, to);
+
+        final HistogramResult h = searches.histogram("*", Searches.DateHistogramInterval.HOUR, STREAM_FILTER, range);
+
+        assertThat(h.getInterval()).isEqualTo(Searches.DateHistogramInterval.HOUR);
+        assertThat(h.getHistogramBoundaries()).isEqualTo(range);
+        assertThat(h.getResults())
+                .hasSize(5)
+                .containsEntry(new DateTime(2015, 1, 1, 1, 0, DateTimeZone.UTC).getMillis() / 1000L, 1L)
+                .containsEntry(new DateTime(2015, 1, 1, 2, 0, DateTimeZone.UTC).getMillis() / 1000L, 3L)
+                .containsEntry(new DateTime(2015, 1, 1, 3, 0, DateTimeZone.UTC).getMillis() / 1000L, 4L)
+                .containsEntry(new DateTime(2015, 1, 1, 4, 0, DateTimeZone.UTC).getMillis() / 1000L, 1L)
+                .containsEntry(new DateTime(2015, 1, 1, 5, 0, DateTimeZone.UTC).getMillis() / 1000L, 1L);
+        verify(searches).searchHistogram(anySetOf(String.class), eq("*"), eq(Searches.DateHistogramInterval.HOUR),
+                eq(STREAM_FILTER), eq(new AbsoluteRange(from, rolledUpFrom.minusMillis(1))));
+        verify(searches).searchHistogram(anySetOf(String.class), eq("*"), eq(Searches.DateHistogramInterval.HOUR),
+                eq(STREAM_FILTER), eq(new AbsoluteRange(rolledUpTo, to)));
+        verify(searches, times(2)).searchHistogram(anySetOf(String.class), anyString(),
+                any(Searches.DateHistogramInterval.class), anyString(), any(TimeRange.class));
+    }
+
+    @Test
+    @UsingDataSet(locations = "SearchesTest-streams.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void histogramDoesNotSearchHeadIfRollupsCoverTheStart() throws Exception {
+        final DateTime from = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime to = new DateTime(2015, 1, 2, 0, 0, DateTimeZone.UTC);
+        final DateTime rolledUpTo = new DateTime(2015, 1, 1, 4, 0, DateTimeZone.UTC);
+        final Map<Long, Long> rolledUpCounts = ImmutableMap.of(new DateTime(2015, 1, 1, 1, 0, DateTimeZone.UTC).getMillis(), 2L);
+        when(streamCountRollups.isEnabled()).thenReturn(true);
+        when(streamCountRollups.histogram(STREAM_ID, Granularity.HOUR, from.getMillis(), to.getMillis()))
+                .thenReturn(new StreamCountRollups.RolledUpHistogram(from.getMillis(), rolledUpTo.getMillis(), rolledUpCounts));
+        final Searches searches = spy(this.searches);
+
+        final HistogramResult h = searches.histogram("*", Searches.DateHistogramInterval.HOUR, STREAM_FILTER,
+                new AbsoluteRange(from, to));
+
+        assertThat(h.getResults())
+                .hasSize(3)
+                .containsEntry(new DateTime(2015, 1, 1, 1, 0, DateTimeZone.UTC).getMillis() / 1000L, 2L)
+                .containsEntry(new DateTime(2015, 1, 1, 4, 0, DateTimeZone.UTC).getMillis() / 1000L, 1L)
+                .containsEntry(new DateTime(2015, 1, 1, 5, 0, DateTimeZone.UTC).getMillis() / 1000L, 1L);
+        verify(searches).searchHistogram(anySetOf(String.class), eq("*"), eq(Searches.DateHistogramInterval.HOUR),
+                eq(STREAM_FILTER), eq(new AbsoluteRange(rolledUpTo, to)));
+        verify(searches, times(1)).searchHistogram(anySetOf(String.class), anyString(),
+                any(Searches.DateHistogramInterval.class), anyString(), any(TimeRange.class));
+    }
 }
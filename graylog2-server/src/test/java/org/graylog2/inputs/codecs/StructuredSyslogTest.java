@@ -20,6 +20,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableMap;
 import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.dns.ReverseDnsResolver;
 import org.graylog2.syslog4j.server.impl.event.structured.StructuredSyslogServerEvent;
 import org.junit.Before;
 import org.junit.Test;
@@ -60,13 +61,15 @@ public class StructuredSyslogTest {
     private MetricRegistry metricRegistry;
     @Mock
     private Timer mockedTimer;
+    @Mock
+    private ReverseDnsResolver reverseDnsResolver;
 
     @Before
     public void setUp() {
         when(metricRegistry.timer(any(String.class))).thenReturn(mockedTimer);
         when(mockedTimer.time()).thenReturn(mock(Timer.Context.class));
 
-        syslogCodec = new SyslogCodec(configuration, metricRegistry);
+        syslogCodec = new SyslogCodec(configuration, metricRegistry, reverseDnsResolver);
     }
 
     private StructuredSyslogServerEvent newEvent(String message) {
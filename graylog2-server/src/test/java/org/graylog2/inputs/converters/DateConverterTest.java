@@ -57,6 +57,18 @@ public class DateConverterTest {
         Assertions.assertThat(date).isEqualTo(new DateTime(year, 5, 19, 10, 20, 30, DateTimeZone.UTC));
     }
 
+    @Test
+    public void testRepeatedConvert() throws Exception {
+        final DateConverter converter = new DateConverter(config("yyyy-MM-dd HH:mm:ss", "Etc/UTC"));
+        final DateTime first = (DateTime) converter.convert("2014-05-19 00:30:43");
+        final DateTime second = (DateTime) converter.convert("2014-05-19 00:30:43");
+
+        Assertions.assertThat(first).isEqualTo(new DateTime(2014, 5, 19, 0, 30, 43, DateTimeZone.UTC));
+        assertThat(second).isSameAs(first);
+        Assertions.assertThat((DateTime) converter.convert("2014-05-19 00:30:44"))
+                .isEqualTo(new DateTime(2014, 5, 19, 0, 30, 44, DateTimeZone.UTC));
+    }
+
     @Test(expected = ConfigurationException.class)
     public void testWithEmptyDateFormat() throws Exception {
         assertThat(new DateConverter(config("", null)).convert("foo")).isNull();
@@ -16,6 +16,8 @@
  */
 package org.graylog2.inputs.converters;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableMap;
 import org.assertj.jodatime.api.Assertions;
 import org.graylog2.plugin.inputs.Converter;
@@ -24,6 +26,7 @@ import org.joda.time.DateTimeZone;
 import org.junit.Test;
 
 import java.util.Collections;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
@@ -100,4 +103,86 @@ public class FlexibleDateConverterTest {
         final DateTime dateOnly = (DateTime) c.convert("2014-3-12");
         assertThat(dateOnly.getZone()).isEqualTo(DateTimeZone.forID("Etc/UTC"));
     }
+
+    @Test
+    public void convertLearnsTimestampFormat() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final FlexibleDateConverter c = new FlexibleDateConverter(ImmutableMap.<String, Object>of("time_zone", "+02:00"),
+                new LearnedDateFormats(metricRegistry));
+        final Meter fastPathHits = metricRegistry.meter(MetricRegistry.name(FlexibleDateConverter.class, "fastPathHits"));
+        final Meter nattyParses = metricRegistry.meter(MetricRegistry.name(FlexibleDateConverter.class, "nattyParses"));
+        final DateTimeZone timeZone = DateTimeZone.forOffsetHours(2);
+
+        assertEquals(new DateTime(2015, 1, 1, 10, 0, 0, timeZone), c.convert("2015-01-01 10:00:00"));
+        assertEquals(0, fastPathHits.getCount());
+        assertEquals(1, nattyParses.getCount());
+
+        assertEquals(new DateTime(2015, 1, 2, 11, 30, 15, timeZone), c.convert("2015-01-02 11:30:15"));
+        assertEquals(new DateTime(2015, 1, 2, 11, 30, 15, timeZone), c.convert("2015-01-02 11:30:15"));
+        assertEquals(2, fastPathHits.getCount());
+        assertEquals(1, nattyParses.getCount());
+
+        // different format, falls back to natty
+        assertEquals(new DateTime(2014, 3, 12, 14, 0, timeZone), c.convert("Mar 12, 2014 2pm"));
+        assertEquals(2, nattyParses.getCount());
+    }
+
+    @Test
+    public void learnedFormatsSurviveRebuildingTheConverter() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final LearnedDateFormats learnedDateFormats = new LearnedDateFormats(metricRegistry);
+        final Map<String, Object> config = ImmutableMap.<String, Object>of("time_zone", "Europe/Berlin");
+        final Meter fastPathHits = metricRegistry.meter(MetricRegistry.name(FlexibleDateConverter.class, "fastPathHits"));
+
+        new FlexibleDateConverter(config, learnedDateFormats).convert("2015-03-04 10:01:02");
+        assertEquals(0, fastPathHits.getCount());
+
+        // extractors are reloaded with new converter instances
+        new FlexibleDateConverter(config, learnedDateFormats).convert("2015-03-04 10:01:03");
+        assertEquals(1, fastPathHits.getCount());
+
+        // other time zones learn their own formats
+        new FlexibleDateConverter(ImmutableMap.<String, Object>of("time_zone", "UTC"), learnedDateFormats).convert("2015-03-04 10:01:03");
+        assertEquals(1, fastPathHits.getCount());
+    }
+
+    @Test
+    public void convertKeepsFormatsOfDifferentExtractors() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final LearnedDateFormats learnedDateFormats = new LearnedDateFormats(metricRegistry);
+        final FlexibleDateConverter first = new FlexibleDateConverter(Collections.<String, Object>emptyMap(), learnedDateFormats);
+        final FlexibleDateConverter second = new FlexibleDateConverter(Collections.<String, Object>emptyMap(), learnedDateFormats);
+        final Meter nattyParses = metricRegistry.meter(MetricRegistry.name(FlexibleDateConverter.class, "nattyParses"));
+
+        first.convert("2015-03-04 10:01:02");
+        second.convert("Thu, 15 Jan 2015 10:01:02 +0000");
+        assertEquals(2, nattyParses.getCount());
+
+        assertEquals(new DateTime(2015, 3, 4, 10, 1, 3, DateTimeZone.UTC).getMillis(),
+                ((DateTime) first.convert("2015-03-04 10:01:03")).getMillis());
+        assertEquals(new DateTime(2015, 1, 15, 10, 1, 3, DateTimeZone.UTC).getMillis(),
+                ((DateTime) second.convert("Thu, 15 Jan 2015 10:01:03 +0000")).getMillis());
+        assertEquals(2, nattyParses.getCount());
+    }
+
+    @Test
+    public void convertWithLearnedFormatMatchesNatty() throws Exception {
+        final String[][] samples = {
+                {"2015-03-04 10:01:02,123", "2014-12-31 23:59:59,999"},
+                {"2015-01-01T10:00:00+02:00", "2015-06-01T00:00:01-05:00"},
+                {"Thu, 15 Jan 2015 10:01:02 +0000", "Fri, 16 Jan 2015 00:00:00 +0100"},
+                {"Mar 12 14:45:38", "Mar 2 13:48:18"}
+        };
+
+        for (String[] sample : samples) {
+            final MetricRegistry metricRegistry = new MetricRegistry();
+            final FlexibleDateConverter c = new FlexibleDateConverter(ImmutableMap.<String, Object>of("time_zone", "Europe/Berlin"),
+                    new LearnedDateFormats(metricRegistry));
+            c.convert(sample[0]);
+            final Object learned = c.convert(sample[1]);
+
+            assertEquals(sample[1], 1, metricRegistry.meter(MetricRegistry.name(FlexibleDateConverter.class, "fastPathHits")).getCount());
+            assertEquals(sample[1], new FlexibleDateConverter(ImmutableMap.<String, Object>of("time_zone", "Europe/Berlin")).convert(sample[1]), learned);
+        }
+    }
 }
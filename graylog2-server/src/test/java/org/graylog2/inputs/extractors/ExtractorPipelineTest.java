@@ -0,0 +1,112 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.inputs.extractors;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.inputs.Converter;
+import org.graylog2.plugin.inputs.Extractor;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExtractorPipelineTest extends AbstractExtractorTest {
+    @Test
+    public void testSharedConditionIsEvaluatedOnce() throws Exception {
+        final Extractor first = conditionalExtractor("foo");
+        final Extractor second = conditionalExtractor("foo");
+        final Extractor third = conditionalExtractor("bar");
+        final ExtractorPipeline pipeline = new ExtractorPipeline(ImmutableList.of(first, second, third));
+        final Message msg = new Message("foo bar", "source", Tools.iso8601());
+
+        pipeline.run(msg);
+
+        assertEquals(2, pipeline.getConditionCount());
+        verify(first, times(1)).conditionMatches("foo bar");
+        verify(second, never()).conditionMatches(anyString());
+        verify(third, times(1)).conditionMatches("foo bar");
+        verify(first).runExtractor(msg, "foo bar");
+        verify(second).runExtractor(msg, "foo bar");
+        verify(third).runExtractor(msg, "foo bar");
+    }
+
+    @Test
+    public void testConditionIsEvaluatedAgainAfterSourceFieldChanged() throws Exception {
+        final Message msg = new Message("The short message", "source", Tools.iso8601());
+        msg.addField("somefield", "foo id:9001");
+
+        final RegexExtractor cut = new RegexExtractor(metricRegistry, "cut", "cut", 0, Extractor.CursorStrategy.CUT,
+                "somefield", "first_result", config("(foo) "), "user", noConverters(), Extractor.ConditionType.STRING, "foo");
+        final RegexExtractor copy = new RegexExtractor(metricRegistry, "copy", "copy", 1, Extractor.CursorStrategy.COPY,
+                "somefield", "second_result", config("id:(\\d+)"), "user", noConverters(), Extractor.ConditionType.STRING, "foo");
+        final RegexExtractor unconditional = new RegexExtractor(metricRegistry, "none", "none", 2, Extractor.CursorStrategy.COPY,
+                "somefield", "third_result", config("id:(\\d+)"), "user", noConverters(), Extractor.ConditionType.NONE, null);
+
+        new ExtractorPipeline(ImmutableList.<Extractor>of(cut, copy, unconditional)).run(msg);
+
+        assertEquals("foo", msg.getField("first_result"));
+        assertEquals("id:9001", msg.getField("somefield"));
+        assertNull(msg.getField("second_result"));
+        assertEquals("9001", msg.getField("third_result"));
+    }
+
+    @Test
+    public void testSkipsNonStringSourceFieldsAndCountsExceptions() throws Exception {
+        final Extractor missing = conditionalExtractor("foo");
+        when(missing.getSourceField()).thenReturn("missing");
+        final Extractor failing = conditionalExtractor("bar");
+        when(failing.conditionMatches(anyString())).thenThrow(new IllegalStateException("boom"));
+        final Message msg = new Message("foo", "source", Tools.iso8601());
+
+        new ExtractorPipeline(ImmutableList.of(missing, failing)).run(msg);
+
+        verify(missing, never()).conditionMatches(anyString());
+        verify(failing).incrementExceptions();
+        verify(failing, never()).runExtractor(msg, "foo");
+        assertFalse(msg.hasField("missing"));
+    }
+
+    private Extractor conditionalExtractor(String condition) {
+        final Extractor extractor = mock(Extractor.class);
+        when(extractor.getSourceField()).thenReturn("message");
+        when(extractor.getConditionType()).thenReturn(Extractor.ConditionType.STRING);
+        when(extractor.getConditionValue()).thenReturn(condition);
+        when(extractor.conditionMatches(anyString())).thenReturn(true);
+        return extractor;
+    }
+
+    private static Map<String, Object> config(String regex) {
+        return Collections.<String, Object>singletonMap("regex_value", regex);
+    }
+
+    private static List<Converter> noConverters() {
+        return Collections.emptyList();
+    }
+}
@@ -16,10 +16,15 @@
  */
 package org.graylog2.inputs.extractors;
 
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import oi.thekraken.grok.api.Grok;
+import oi.thekraken.grok.api.Match;
 import org.graylog2.ConfigurationException;
+import org.graylog2.grok.CompiledGrokCache;
 import org.graylog2.grok.GrokPattern;
 import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.inputs.Converter;
@@ -31,11 +36,14 @@ import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class GrokExtractorTest {
 
     private Set<GrokPattern> patternSet;
+    private CompiledGrokCache compiledGrokCache;
 
     @Before
     public void setUp() throws Exception {
@@ -49,8 +57,20 @@ public class GrokExtractorTest {
         number.name = "NUMBER";
         number.pattern = "(?:%{BASE10NUM:UNWANTED})";
 
+        final GrokPattern word = new GrokPattern();
+        word.name = "WORD";
+        word.pattern = "\\b\\w+\\b";
+
         patternSet.add(baseNum);
         patternSet.add(number);
+        patternSet.add(word);
+
+        final GrokPattern quotedString = new GrokPattern();
+        quotedString.name = "QS";
+        quotedString.pattern = "\"[^\"]*\"";
+        patternSet.add(quotedString);
+
+        compiledGrokCache = new CompiledGrokCache();
     }
 
     @Test
@@ -63,6 +83,61 @@ public class GrokExtractorTest {
         assertEquals(199999, results[0].getValue());
     }
 
+    @Test
+    public void testNamedCapturesExtraction() {
+        final GrokExtractor extractor = makeExtractor("%{WORD:verb} %{NUMBER:status} %{WORD}(?: %{WORD:optional})?");
+
+        final Extractor.Result[] results = extractor.run("GET 200 ok");
+        assertEquals("Unnamed patterns generate a field named after the pattern, UNWANTED and missing captures don't", 3, results.length);
+        assertEquals("WORD", results[0].getTarget());
+        assertEquals("ok", results[0].getValue());
+        assertEquals("status", results[1].getTarget());
+        assertEquals("200", results[1].getValue());
+        assertEquals("verb", results[2].getTarget());
+        assertEquals("GET", results[2].getValue());
+    }
+
+    @Test
+    public void testMatchesLikeGrokLibrary() throws Exception {
+        final String pattern = "%{WORD:verb} %{QS:quoted}(?: %{NUMBER:num})? %{WORD:verb}";
+        final Grok grok = new Grok();
+        for (GrokPattern grokPattern : patternSet) {
+            grok.addPattern(grokPattern.name, grokPattern.pattern);
+        }
+        grok.compile(pattern);
+        final GrokExtractor extractor = makeExtractor(pattern);
+        assertTrue(compiledGrokCache.get(patternSet, pattern).isMatchedNatively());
+
+        for (String value : new String[]{"GET \"/index.html\" 12 done", "GET \"\" done", "prefix POST \"x\" 1.5 ok"}) {
+            final Match match = grok.match(value);
+            match.captures();
+            final Map<String, Object> expected = Maps.newHashMap(match.toMap());
+            Iterables.removeIf(expected.values(), Predicates.isNull());
+            assertFalse(expected.isEmpty());
+
+            final Map<String, Object> actual = Maps.newHashMap();
+            for (Extractor.Result result : extractor.run(value)) {
+                actual.put(result.getTarget(), result.getValue());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testNoMatch() {
+        assertEquals(0, makeExtractor("%{NUMBER:status}").run("no number").length);
+        assertEquals(0, makeExtractor("%{NUMBER:status}").run("   ").length);
+    }
+
+    @Test
+    public void testCompiledPatternIsShared() {
+        makeExtractor("%{NUMBER:status}");
+        makeExtractor("%{NUMBER:status}");
+        makeExtractor("%{NUMBER:number;int}");
+
+        assertEquals(2, compiledGrokCache.size());
+    }
+
     private GrokExtractor makeExtractor(String pattern) {
         Map<String, Object> config = Maps.newHashMap();
         config.put("grok_pattern", pattern);
@@ -70,6 +145,7 @@ public class GrokExtractorTest {
         try {
             return new GrokExtractor(new LocalMetricRegistry(),
                                      patternSet,
+                                     compiledGrokCache,
                                      "id",
                                      "title",
                                      0,
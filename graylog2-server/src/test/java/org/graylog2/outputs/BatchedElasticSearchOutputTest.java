@@ -19,23 +19,34 @@ package org.graylog2.outputs;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.jayway.awaitility.Duration;
+import org.elasticsearch.ElasticsearchException;
 import org.graylog2.Configuration;
 import org.graylog2.indexer.cluster.Cluster;
 import org.graylog2.indexer.messages.Messages;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.Tools;
+import org.graylog2.shared.journal.Journal;
 import org.graylog2.shared.journal.NoopJournal;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import static com.jayway.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -151,6 +162,142 @@ public class BatchedElasticSearchOutputTest {
         verify(messages, never()).bulkIndex(anyListOf(Message.class));
     }
 
+    @Test
+    public void keepBufferedMessagesUntilElasticsearchIsHealthy() throws Exception {
+        final Configuration config = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return 10;
+            }
+        };
+        when(cluster.isConnected()).thenReturn(true);
+        when(cluster.isHealthy()).thenReturn(false);
+
+        final List<Message> messageList = buildMessages(3);
+        final BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, new NoopJournal());
+        output.write(messageList);
+
+        output.flush(false);
+        verify(messages, never()).bulkIndex(anyListOf(Message.class));
+
+        when(cluster.isHealthy()).thenReturn(true);
+        output.flush(false);
+        verify(messages, times(1)).bulkIndex(eq(messageList));
+    }
+
+    @Test
+    public void commitJournalOffsetsOnlyAfterSuccessfulWrite() throws Exception {
+        final Configuration config = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return 10;
+            }
+        };
+        when(cluster.isConnected()).thenReturn(true);
+        when(cluster.isHealthy()).thenReturn(true);
+        final List<Message> messageList = buildMessages(2);
+        final Journal journal = mock(Journal.class);
+        when(messages.bulkIndex(eq(messageList)))
+                .thenThrow(new ElasticsearchException("unavailable"))
+                .thenReturn(true);
+
+        final BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, journal);
+        output.write(messageList);
+        output.flush(false);
+
+        final InOrder inOrder = inOrder(messages, journal);
+        inOrder.verify(messages, times(2)).bulkIndex(eq(messageList));
+        inOrder.verify(journal, times(2)).markJournalOffsetCommitted(anyLong());
+    }
+
+    @Test
+    public void keepRetryingFailedBatchesUntilWritten() throws Exception {
+        final Configuration config = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return 10;
+            }
+        };
+        when(cluster.isConnected()).thenReturn(true);
+        when(cluster.isHealthy()).thenReturn(true);
+        final List<Message> messageList = buildMessages(2);
+        final Journal journal = mock(Journal.class);
+        when(messages.bulkIndex(eq(messageList)))
+                .thenThrow(new ElasticsearchException("unavailable"))
+                .thenThrow(new ElasticsearchException("unavailable"))
+                .thenThrow(new ElasticsearchException("unavailable"))
+                .thenReturn(true);
+
+        final BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, journal);
+        output.write(messageList);
+        output.flush(false);
+
+        verify(messages, times(4)).bulkIndex(eq(messageList));
+        verify(journal, times(2)).markJournalOffsetCommitted(anyLong());
+    }
+
+    @Test
+    public void retryWaitGrowsExponentiallyUpToOneMinute() {
+        assertEquals(250L, BatchedElasticSearchOutput.retryWaitMillis(1));
+        assertEquals(500L, BatchedElasticSearchOutput.retryWaitMillis(2));
+        assertEquals(1000L, BatchedElasticSearchOutput.retryWaitMillis(3));
+        assertEquals(60000L, BatchedElasticSearchOutput.retryWaitMillis(10));
+        assertEquals(60000L, BatchedElasticSearchOutput.retryWaitMillis(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void blockWritersWhileAllBatchesAreInFlight() throws Exception {
+        final int batchSize = 2;
+        final Configuration config = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return batchSize;
+            }
+
+            @Override
+            public int getOutputMaxConcurrentBatches() {
+                return 1;
+            }
+        };
+        when(cluster.isConnected()).thenReturn(true);
+        when(cluster.isHealthy()).thenReturn(true);
+        final CountDownLatch bulkRequestLatch = new CountDownLatch(1);
+        when(messages.bulkIndex(anyListOf(Message.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                bulkRequestLatch.await();
+                return true;
+            }
+        });
+
+        final BatchedElasticSearchOutput output = new BatchedElasticSearchOutput(metricRegistry, messages, cluster, config, new NoopJournal());
+        output.write(buildMessages(batchSize));
+
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    output.write(buildMessages(batchSize));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        writer.start();
+        writer.join(200L);
+        assertTrue(writer.isAlive());
+
+        bulkRequestLatch.countDown();
+        writer.join(5000L);
+        assertFalse(writer.isAlive());
+        await().atMost(Duration.FIVE_SECONDS).until(new Runnable() {
+            @Override
+            public void run() {
+                verify(messages, times(2)).bulkIndex(anyListOf(Message.class));
+            }
+        });
+    }
+
     private List<Message> buildMessages(final int count) {
         final ImmutableList.Builder<Message> builder = ImmutableList.builder();
         for (int i = 0; i < count; i++) {
@@ -0,0 +1,139 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.StringText;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.highlight.HighlightField;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.graylog2.indexer.results.ScrollResult;
+import org.graylog2.shared.rest.AdditionalMediaType;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ScrollChunkWriterTest {
+    private static final List<String> FIELDS = ImmutableList.of("source", "message", "count");
+
+    private ScrollChunkWriter writer;
+    private ScrollResult scrollResult;
+
+    @Before
+    public void setUp() throws Exception {
+        writer = new ScrollChunkWriter();
+        // without slices the scroll result doesn't read anything, it's only needed to create chunks
+        scrollResult = new ScrollResult(mock(Client.class), "*", BytesArray.EMPTY, TimeValue.timeValueMillis(1L), 0L,
+                Collections.<SearchRequest>emptyList(), FIELDS, 1, 1, mock(Executor.class));
+    }
+
+    @Test
+    public void csvHeaderIsOnlyWrittenForFirstChunk() throws Exception {
+        final String first = write(chunk(0, "{\"source\":\"host1\",\"message\":\"foo\",\"count\":1}"),
+                AdditionalMediaType.TEXT_CSV_TYPE);
+        final String second = write(chunk(1, "{\"source\":\"host2\",\"message\":\"bar\"}"),
+                AdditionalMediaType.TEXT_CSV_TYPE);
+
+        assertThat(first).isEqualTo("\"source\",\"message\",\"count\"\n\"host1\",\"foo\",\"1\"\n");
+        assertThat(second).isEqualTo("\"host2\",\"bar\",\n");
+    }
+
+    @Test
+    public void csvEscapesLineBreaks() throws Exception {
+        final String csv = write(chunk(1, "{\"source\":\"host1\",\"message\":\"foo\\nbar\\r\\nbaz\"}"),
+                AdditionalMediaType.TEXT_CSV_TYPE);
+
+        assertThat(csv).isEqualTo("\"host1\",\"foo\\nbar\\r\\nbaz\",\n");
+    }
+
+    @Test
+    public void buffersAreReusedAcrossChunks() throws Exception {
+        // larger than the byte buffer, with multi byte characters crossing its boundaries
+        final String longMessage = Strings.repeat("ü€", 50 * 1024);
+        final String large = write(chunk(1, "{\"source\":\"host1\",\"message\":\"" + longMessage + "\"}"),
+                AdditionalMediaType.TEXT_CSV_TYPE);
+        final String small = write(chunk(2, "{\"source\":\"host2\",\"message\":\"foo\"}"),
+                AdditionalMediaType.TEXT_CSV_TYPE);
+        final String json = write(chunk(3, "{\"source\":\"host3\",\"message\":\"bar\"}"),
+                AdditionalMediaType.APPLICATION_NDJSON_TYPE);
+
+        assertThat(large).isEqualTo("\"host1\",\"" + longMessage + "\",\n");
+        assertThat(small).isEqualTo("\"host2\",\"foo\",\n");
+        assertThat(json).isEqualTo("{\"source\":\"host3\",\"message\":\"bar\"}\n");
+    }
+
+    @Test
+    public void ndjsonWritesOneObjectPerLine() throws Exception {
+        final String json = write(chunk(0,
+                        "{\"source\":\"host1\",\"message\":\"foo\\nbar\",\"count\":42,\"other\":\"ignored\"}",
+                        "{\"message\":\"baz\",\"count\":[1,2]}"),
+                AdditionalMediaType.APPLICATION_NDJSON_TYPE);
+
+        assertThat(json).isEqualTo(
+                "{\"source\":\"host1\",\"message\":\"foo\\nbar\",\"count\":42}\n" +
+                        "{\"message\":\"baz\",\"count\":\"[1, 2]\"}\n");
+    }
+
+    @Test
+    public void isWriteableForCsvAndNdjsonOnly() throws Exception {
+        final Annotation[] annotations = new Annotation[0];
+
+        assertThat(writer.isWriteable(ScrollResult.ScrollChunk.class, null, annotations, AdditionalMediaType.TEXT_CSV_TYPE)).isTrue();
+        assertThat(writer.isWriteable(ScrollResult.ScrollChunk.class, null, annotations, AdditionalMediaType.APPLICATION_NDJSON_TYPE)).isTrue();
+        assertThat(writer.isWriteable(ScrollResult.ScrollChunk.class, null, annotations, MediaType.APPLICATION_JSON_TYPE)).isFalse();
+        assertThat(writer.isWriteable(String.class, null, annotations, AdditionalMediaType.TEXT_CSV_TYPE)).isFalse();
+    }
+
+    private String write(ScrollResult.ScrollChunk chunk, MediaType mediaType) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(chunk, ScrollResult.ScrollChunk.class, null, new Annotation[0], mediaType,
+                new MultivaluedHashMap<String, Object>(), out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private ScrollResult.ScrollChunk chunk(int chunkNumber, String... sources) {
+        final InternalSearchHit[] hits = new InternalSearchHit[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            final InternalSearchHit hit = new InternalSearchHit(i, "id-" + i, new StringText("message"),
+                    Collections.<String, SearchHitField>emptyMap());
+            hit.sourceRef(new BytesArray(sources[i]));
+            hit.shard(new SearchShardTarget("node", "graylog_0", 0));
+            hit.highlightFields(Collections.<String, HighlightField>emptyMap());
+            hits[i] = hit;
+        }
+        return scrollResult.new ScrollChunk(new InternalSearchHits(hits, hits.length, 1.0f), FIELDS, chunkNumber);
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.JournalSignal;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JournallingMessageHandlerTest {
+    @Mock
+    private KafkaJournal journal;
+    @Mock
+    private JournalSignal journalSignal;
+
+    private JournallingMessageHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        handler = new JournallingMessageHandler(new MetricRegistry(), journal, journalSignal, 0, 1);
+    }
+
+    @Test(timeout = 5000)
+    public void batchWithoutConvertibleMessagesIsSkipped() throws Exception {
+        // events without an encoded message can't be converted into journal entries
+        handler.onEvent(new RawMessageEvent(), 0L, false);
+        handler.onEvent(new RawMessageEvent(), 1L, true);
+
+        verify(journal, never()).write(anyListOf(Journal.Entry.class));
+        verify(journalSignal, never()).written(anyInt());
+    }
+
+    @Test(timeout = 5000)
+    public void nothingIsSignalledIfNothingHasBeenWritten() throws Exception {
+        when(journal.write(anyListOf(Journal.Entry.class))).thenReturn(-1L);
+
+        handler.onEvent(event("id", "message"), 0L, true);
+
+        verify(journal).write(anyListOf(Journal.Entry.class));
+        verify(journalSignal, never()).written(anyInt());
+    }
+
+    @Test(timeout = 5000)
+    public void readerOfWrittenPartitionIsSignalled() throws Exception {
+        when(journal.write(anyListOf(Journal.Entry.class))).thenReturn(KafkaJournal.journalOffset(3, 42L));
+
+        handler.onEvent(event("id", "message"), 0L, true);
+
+        verify(journalSignal).written(3);
+    }
+
+    private RawMessageEvent event(String id, String message) {
+        when(journal.createEntry(any(byte[].class), any(byte[].class))).thenReturn(
+                new Journal.Entry(id.getBytes(StandardCharsets.UTF_8), message.getBytes(StandardCharsets.UTF_8)));
+
+        final RawMessageEvent event = new RawMessageEvent();
+        event.setMessageIdBytes(id.getBytes(StandardCharsets.UTF_8));
+        event.setEncodedRawMessage(message.getBytes(StandardCharsets.UTF_8));
+        return event;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.journal;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.graylog2.plugin.configuration.Configuration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class CodecConfigDictionaryTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File journalDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        journalDirectory = temporaryFolder.newFolder();
+    }
+
+    @Test
+    public void assignsStableIds() {
+        final CodecConfigDictionary dictionary = new CodecConfigDictionary(journalDirectory);
+        final Configuration config1 = new Configuration(ImmutableMap.<String, Object>of("foo", "bar", "port", 12201));
+        final Configuration config2 = new Configuration(ImmutableMap.<String, Object>of("foo", "baz"));
+
+        final int id1 = dictionary.getId(config1);
+        final int id2 = dictionary.getId(config2);
+
+        assertNotEquals(0, id1);
+        assertNotEquals(id1, id2);
+        assertEquals(id1, dictionary.getId(config1));
+        // equal configurations share the id even if they are different instances
+        assertEquals(id1, dictionary.getId(new Configuration(ImmutableMap.<String, Object>of("foo", "bar", "port", 12201))));
+        assertEquals(2, dictionary.size());
+        assertEquals("bar", dictionary.get(id1).getString("foo"));
+        assertNull(dictionary.get(42));
+    }
+
+    @Test
+    public void loadsPersistedConfigs() {
+        final CodecConfigDictionary dictionary = new CodecConfigDictionary(journalDirectory);
+        final int id = dictionary.getId(new Configuration(ImmutableMap.<String, Object>of("foo", "bar")));
+        final int emptyId = dictionary.getId(Configuration.EMPTY_CONFIGURATION);
+
+        final CodecConfigDictionary reloaded = new CodecConfigDictionary(journalDirectory);
+
+        assertEquals(2, reloaded.size());
+        assertEquals("bar", reloaded.get(id).getString("foo"));
+        assertEquals(Collections.emptyMap(), reloaded.get(emptyId).getSource());
+
+        // new ids must not collide with the ones handed out before the restart
+        final int newId = reloaded.getId(new Configuration(ImmutableMap.<String, Object>of("foo", "qux")));
+        assertNotEquals(id, newId);
+        assertNotEquals(emptyId, newId);
+    }
+
+    @Test
+    public void skipsPartiallyWrittenLines() throws IOException {
+        final CodecConfigDictionary dictionary = new CodecConfigDictionary(journalDirectory);
+        final int id = dictionary.getId(new Configuration(ImmutableMap.<String, Object>of("foo", "bar")));
+        Files.append("2", new File(journalDirectory, CodecConfigDictionary.FILENAME), UTF_8);
+
+        final CodecConfigDictionary reloaded = new CodecConfigDictionary(journalDirectory);
+
+        assertEquals(1, reloaded.size());
+        assertEquals("bar", reloaded.get(id).getString("foo"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsUnknownVersion() throws IOException {
+        Files.write("version 99\n", new File(journalDirectory, CodecConfigDictionary.FILENAME), UTF_8);
+
+        new CodecConfigDictionary(journalDirectory);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.journal;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JournalSignalTest {
+    @Test(timeout = 5000)
+    public void writesWakeUpOnlyTheReaderOfTheirPartition() throws Exception {
+        final JournalSignal signal = new JournalSignal(2);
+        final CountDownLatch partition0Woken = new CountDownLatch(1);
+        final CountDownLatch partition1Woken = new CountDownLatch(1);
+        final Thread reader0 = awaitInBackground(signal, 0, partition0Woken);
+        final Thread reader1 = awaitInBackground(signal, 1, partition1Woken);
+
+        signal.written(1);
+        assertTrue(partition1Woken.await(1, TimeUnit.SECONDS));
+        assertEquals(1, partition0Woken.getCount());
+
+        signal.written(0);
+        assertTrue(partition0Woken.await(1, TimeUnit.SECONDS));
+
+        reader0.join();
+        reader1.join();
+    }
+
+    @Test(timeout = 5000)
+    public void accumulatedWritesAreConsumedAtOnce() throws Exception {
+        final JournalSignal signal = new JournalSignal(1);
+        signal.written(0);
+        signal.written(0);
+        signal.written(0);
+
+        signal.awaitWritten(0);
+
+        final CountDownLatch woken = new CountDownLatch(1);
+        final Thread reader = awaitInBackground(signal, 0, woken);
+        assertFalse(woken.await(100, TimeUnit.MILLISECONDS));
+
+        signal.written(0);
+        assertTrue(woken.await(1, TimeUnit.SECONDS));
+        reader.join();
+    }
+
+    private static Thread awaitInBackground(final JournalSignal signal, final int partition, final CountDownLatch woken) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    signal.awaitWritten(partition);
+                    woken.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
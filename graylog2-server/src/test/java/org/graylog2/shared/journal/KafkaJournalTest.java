@@ -37,6 +37,7 @@ import org.junit.rules.TemporaryFolder;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
@@ -47,6 +48,7 @@ import static org.apache.commons.io.filefilter.FileFilterUtils.fileFileFilter;
 import static org.apache.commons.io.filefilter.FileFilterUtils.nameFileFilter;
 import static org.apache.commons.io.filefilter.FileFilterUtils.suffixFileFilter;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
@@ -91,6 +93,7 @@ public class KafkaJournalTest {
         final Journal.JournalReadEntry firstMessage = Iterators.getOnlyElement(messages.iterator());
 
         assertEquals(new String(firstMessage.getPayload(), UTF_8), "message");
+        assertEquals(messageBytes.length, firstMessage.getPayloadBuffer().remaining());
     }
 
     @Test
@@ -302,6 +305,143 @@ public class KafkaJournalTest {
         assertEquals(countSegmentsInDir(messageJournalDir), 1);
     }
 
+    @Test
+    public void writeToAndReadFromMultiplePartitions() throws Exception {
+        final KafkaJournal journal = new KafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                2,
+                new MetricRegistry());
+        assertEquals(2, journal.getNumberOfPartitions());
+        assertTrue(new File(journalDirectory, "messagejournal-0").exists());
+        assertTrue(new File(journalDirectory, "messagejournal-1").exists());
+
+        final long position1 = journal.write("id1".getBytes(UTF_8), "message1".getBytes(UTF_8));
+        final long position2 = journal.write("id2".getBytes(UTF_8), "message2".getBytes(UTF_8));
+
+        // consecutive writes are spread over the partitions
+        assertEquals(0, KafkaJournal.partitionOf(position1));
+        assertEquals(1, KafkaJournal.partitionOf(position2));
+        assertEquals(0L, KafkaJournal.logOffsetOf(position1));
+        assertEquals(0L, KafkaJournal.logOffsetOf(position2));
+        assertEquals(1L, journal.getLogEndOffset(0));
+        assertEquals(1L, journal.getLogEndOffset(1));
+
+        final Journal.JournalReadEntry entry2 = Iterators.getOnlyElement(journal.readNext(1, 10).iterator());
+        assertEquals("message2", new String(entry2.getPayload(), UTF_8));
+        assertEquals(position2, entry2.getOffset());
+        assertTrue(journal.readNext(1, 10).isEmpty());
+
+        final Journal.JournalReadEntry entry1 = Iterators.getOnlyElement(journal.read(10).iterator());
+        assertEquals("message1", new String(entry1.getPayload(), UTF_8));
+        assertEquals(position1, entry1.getOffset());
+        assertTrue(journal.read(10).isEmpty());
+    }
+
+    @Test
+    public void writingNoEntriesReturnsNegativeOffset() throws Exception {
+        final KafkaJournal journal = new KafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                2,
+                new MetricRegistry());
+
+        assertEquals(-1L, journal.write(Collections.<Journal.Entry>emptyList()));
+        assertEquals(0L, journal.getLogEndOffset(0));
+        assertEquals(0L, journal.getLogEndOffset(1));
+    }
+
+    @Test
+    public void commitOffsetsPerPartition() throws Exception {
+        final KafkaJournal journal = new KafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                2,
+                new MetricRegistry());
+        journal.startAsync().awaitRunning();
+
+        final List<Journal.Entry> entries = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            entries.add(journal.createEntry(("id" + i).getBytes(UTF_8), ("message" + i).getBytes(UTF_8)));
+        }
+        final long position1 = journal.write(entries);
+        final long position2 = journal.write(entries);
+        assertEquals(6L, journal.getUncommittedEntries());
+
+        journal.markJournalOffsetCommitted(position2);
+        assertEquals(KafkaJournal.DEFAULT_COMMITTED_OFFSET, journal.getCommittedOffset(0));
+        assertEquals(2L, journal.getCommittedOffset(1));
+        assertEquals(3L, journal.getUncommittedEntries());
+
+        // committing an older offset of another partition must not affect the committed offsets
+        journal.markJournalOffsetCommitted(KafkaJournal.journalOffset(0, 1L));
+        journal.markJournalOffsetCommitted(KafkaJournal.journalOffset(1, 0L));
+        assertEquals(1L, journal.getCommittedOffset(0));
+        assertEquals(2L, journal.getCommittedOffset(1));
+        assertEquals(1L, journal.getUncommittedEntries());
+
+        // messages which have not been read from the journal are ignored
+        journal.markJournalOffsetCommitted(Long.MIN_VALUE);
+        assertEquals(1L, journal.getCommittedOffset(0));
+        assertEquals(2L, KafkaJournal.logOffsetOf(position1));
+        assertFalse(journal.isFromPreviousRun(position1));
+
+        journal.stopAsync().awaitTerminated();
+
+        // reopening the journal with less partitions keeps the existing ones and their committed offsets
+        final KafkaJournal reopenedJournal = new KafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                new MetricRegistry());
+        assertEquals(2, reopenedJournal.getNumberOfPartitions());
+        assertEquals(1L, reopenedJournal.getCommittedOffset(0));
+        assertEquals(2L, reopenedJournal.getCommittedOffset(1));
+        assertEquals(2L, reopenedJournal.getNextReadOffset(0));
+        assertEquals(3L, reopenedJournal.getNextReadOffset(1));
+
+        final Journal.JournalReadEntry entry = Iterators.getOnlyElement(reopenedJournal.read(10).iterator());
+        assertEquals("message2", new String(entry.getPayload(), UTF_8));
+        assertEquals(position1, entry.getOffset());
+
+        // entries written before reopening the journal are read again
+        assertTrue(reopenedJournal.isFromPreviousRun(position1));
+        assertTrue(reopenedJournal.isFromPreviousRun(position2));
+        assertFalse(reopenedJournal.isFromPreviousRun(reopenedJournal.write(entries)));
+        assertFalse(reopenedJournal.isFromPreviousRun(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void journalOffsetOfFirstPartitionIsLogOffset() {
+        assertEquals(42L, KafkaJournal.journalOffset(0, 42L));
+        assertEquals(0, KafkaJournal.partitionOf(42L));
+        assertEquals(42L, KafkaJournal.logOffsetOf(42L));
+
+        final long journalOffset = KafkaJournal.journalOffset(KafkaJournal.MAX_PARTITIONS - 1, 42L);
+        assertTrue(journalOffset > 0);
+        assertEquals(KafkaJournal.MAX_PARTITIONS - 1, KafkaJournal.partitionOf(journalOffset));
+        assertEquals(42L, KafkaJournal.logOffsetOf(journalOffset));
+    }
+
     @Test(expected = RuntimeException.class)
     public void lockedJournalDir() throws Exception {
         // Grab the lock before starting the KafkaJournal.
@@ -18,6 +18,7 @@
 package org.graylog2.streams;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -37,6 +38,8 @@ import org.mockito.runners.MockitoJUnitRunner;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -46,6 +49,7 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -578,6 +582,145 @@ public class StreamRouterEngineTest {
         assertThat(result).doesNotContain(stream);
     }
 
+    @Test
+    public void testMatchesLikeRuleByRuleEvaluation() throws Exception {
+        final String[] fields = {"field1", "field2", "field3"};
+        final Object[] values = {"foo", " foo ", "", "1", "5", "10.5", "-3", "NaN", 5, 10.5d, Double.NaN, null};
+        final String[] ruleValues = {"foo", "5", "10", "-3", "10.5", "NaN", "bar", "^f", "o+", ""};
+        final StreamRuleType[] types = StreamRuleType.values();
+        final Random random = new Random(42L);
+
+        for (int round = 0; round < 20; round++) {
+            final List<Stream> streams = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                final List<StreamRule> rules = Lists.newArrayList();
+                final int numberOfRules = random.nextInt(4);
+                for (int j = 0; j < numberOfRules; j++) {
+                    final StreamRule rule = getStreamRuleMock("rule-" + round + "-" + i + "-" + j,
+                            types[random.nextInt(types.length)],
+                            fields[random.nextInt(fields.length)],
+                            ruleValues[random.nextInt(ruleValues.length)]);
+                    when(rule.getInverted()).thenReturn(random.nextBoolean());
+                    rules.add(rule);
+                }
+
+                final Stream stream = mock(Stream.class);
+                when(stream.getId()).thenReturn("stream-" + round + "-" + i);
+                when(stream.getMatchingType()).thenReturn(random.nextBoolean() ? Stream.MatchingType.AND : Stream.MatchingType.OR);
+                when(stream.getStreamRules()).thenReturn(rules);
+                streams.add(stream);
+            }
+
+            final StreamRouterEngine engine = newEngine(streams);
+            for (int i = 0; i < 10; i++) {
+                final Message message = getMessage();
+                for (String field : fields) {
+                    if (random.nextBoolean()) {
+                        message.addField(field, values[random.nextInt(values.length)]);
+                    }
+                }
+
+                assertEquals(message.getFields().toString(),
+                        matchRuleByRule(streams, message), Sets.newHashSet(engine.match(message)));
+            }
+        }
+    }
+
+    @Test
+    public void testExactMatchWithoutValue() throws Exception {
+        final Stream stream1 = mock(Stream.class);
+        final Stream stream2 = mock(Stream.class);
+        when(stream1.getId()).thenReturn("stream1");
+        when(stream2.getId()).thenReturn("stream2");
+        when(stream1.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        when(stream2.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        final StreamRule rule1 = getStreamRuleMock("rule1", StreamRuleType.EXACT, "testfield", null);
+        final StreamRule rule2 = getStreamRuleMock("rule2", StreamRuleType.EXACT, "testfield", null);
+        when(rule2.getInverted()).thenReturn(true);
+        when(stream1.getStreamRules()).thenReturn(Lists.newArrayList(rule1));
+        when(stream2.getStreamRules()).thenReturn(Lists.newArrayList(rule2));
+
+        final List<Stream> streams = Lists.newArrayList(stream1, stream2);
+        final StreamRouterEngine engine = newEngine(streams);
+
+        // no value is equal to the missing rule value, so only the inverted rule matches
+        final Message message = getMessage();
+        message.addField("testfield", "foo");
+        assertThat(engine.match(message)).containsOnly(stream2);
+        assertThat(engine.match(message)).containsOnlyElementsOf(matchRuleByRule(streams, message));
+
+        // but not if the field doesn't exist
+        final Message messageWithoutField = getMessage();
+        assertThat(engine.match(messageWithoutField)).isEmpty();
+        assertThat(matchRuleByRule(streams, messageWithoutField)).isEmpty();
+    }
+
+    @Test
+    public void testCombinedRegexMatch() throws Exception {
+        final Stream stream1 = mock(Stream.class);
+        final Stream stream2 = mock(Stream.class);
+        when(stream1.getId()).thenReturn("stream1");
+        when(stream2.getId()).thenReturn("stream2");
+        when(stream1.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        when(stream2.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        final StreamRule rule1 = getStreamRuleMock("rule1", StreamRuleType.REGEX, "testfield", "^foo");
+        final StreamRule rule2 = getStreamRuleMock("rule2", StreamRuleType.REGEX, "testfield", "bar$");
+        when(rule2.getInverted()).thenReturn(true);
+        when(stream1.getStreamRules()).thenReturn(Lists.newArrayList(rule1));
+        when(stream2.getStreamRules()).thenReturn(Lists.newArrayList(rule2));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream1, stream2));
+
+        final Message message = getMessage();
+        message.addField("testfield", "baz");
+        assertThat(engine.match(message)).containsOnly(stream2);
+
+        message.addField("testfield", "foobar");
+        assertThat(engine.match(message)).containsOnly(stream1);
+
+        message.addField("testfield", "foobaz");
+        assertThat(engine.match(message)).containsOnly(stream1, stream2);
+    }
+
+    @Test
+    public void testRegexMatchTimeout() throws Exception {
+        when(streamFaultManager.getStreamProcessingTimeout()).thenReturn(50L);
+        final Stream stream = mock(Stream.class);
+        when(stream.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        final StreamRule rule = getStreamRuleMock("rule", StreamRuleType.REGEX, "testfield", "^(a|aa)+$");
+        when(stream.getStreamRules()).thenReturn(Lists.newArrayList(rule));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream));
+
+        final Message message = getMessage();
+        message.addField("testfield", Strings.repeat("a", 64) + "b");
+        assertTrue(engine.match(message).isEmpty());
+        verify(streamFaultManager).registerFailure(stream);
+    }
+
+    // straightforward evaluation of all rules, the engine has to produce the same results
+    private Set<Stream> matchRuleByRule(List<Stream> streams, Message message) throws Exception {
+        final Set<Stream> result = Sets.newHashSet();
+        for (Stream stream : streams) {
+            boolean matched = false;
+            boolean failed = false;
+            for (StreamRule rule : stream.getStreamRules()) {
+                if (rule.getType() != StreamRuleType.PRESENCE && !message.hasField(rule.getField())) {
+                    continue;
+                }
+                if (StreamRuleMatcherFactory.build(rule.getType()).match(message, rule)) {
+                    matched = true;
+                } else {
+                    failed = true;
+                }
+            }
+            if (matched && (stream.getMatchingType() == Stream.MatchingType.OR || !failed)) {
+                result.add(stream);
+            }
+        }
+        return result;
+    }
+
     private StreamMock getStreamMock(String title) {
         return new StreamMock(ImmutableMap.<String, Object>of("_id", new ObjectId(), "title", title));
     }
@@ -0,0 +1,411 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams.rollups;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import com.google.common.eventbus.EventBus;
+import com.mongodb.MongoException;
+import org.graylog2.Configuration;
+import org.graylog2.indexer.ranges.IndexRange;
+import org.graylog2.indexer.ranges.IndexRangeService;
+import org.graylog2.indexer.ranges.IndexRangesUpdatedEvent;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.system.NodeId;
+import org.graylog2.shared.journal.KafkaJournal;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StreamCountRollupsTest {
+    private static final DateTime NOW = new DateTime(2015, 6, 10, 12, 30, 15, DateTimeZone.UTC);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private StreamCountRollupStore store;
+    private IndexRangeService indexRangeService;
+    private ServerStatus serverStatus;
+    private EventBus eventBus;
+    private KafkaJournal journal;
+    private StreamCountRollups rollups;
+
+    @Before
+    public void setUp() {
+        DateTimeUtils.setCurrentMillisFixed(NOW.getMillis());
+
+        store = mock(StreamCountRollupStore.class);
+        indexRangeService = mock(IndexRangeService.class);
+        serverStatus = mock(ServerStatus.class);
+        final NodeId nodeId = mock(NodeId.class);
+        when(nodeId.toString()).thenReturn("node-1");
+        when(serverStatus.getNodeId()).thenReturn(nodeId);
+        eventBus = new EventBus("test");
+        journal = mock(KafkaJournal.class);
+        final Configuration configuration = mock(Configuration.class);
+        when(configuration.isStreamCountRollupsEnabled()).thenReturn(true);
+        when(store.find(anyString(), any(Granularity.class), anyLong(), anyLong())).thenReturn(Collections.<Long, Long>emptyMap());
+        when(indexRangeService.findAll()).thenReturn(ImmutableSortedSet.<IndexRange>of());
+
+        rollups = new StreamCountRollups(store, indexRangeService, serverStatus, journal, eventBus, configuration);
+    }
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void testSegments() {
+        final long day = NOW.withTimeAtStartOfDay().getMillis();
+
+        final List<StreamCountRollups.Segment> minutes = StreamCountRollups.segments(day + 5 * MINUTE, day + 50 * MINUTE);
+        assertEquals(1, minutes.size());
+        assertSegment(minutes.get(0), Granularity.MINUTE, day + 5 * MINUTE, day + 50 * MINUTE);
+
+        final List<StreamCountRollups.Segment> hours = StreamCountRollups.segments(day + 5 * MINUTE, day + 3 * HOUR + 10 * MINUTE);
+        assertEquals(3, hours.size());
+        assertSegment(hours.get(0), Granularity.MINUTE, day + 5 * MINUTE, day + HOUR);
+        assertSegment(hours.get(1), Granularity.HOUR, day + HOUR, day + 3 * HOUR);
+        assertSegment(hours.get(2), Granularity.MINUTE, day + 3 * HOUR, day + 3 * HOUR + 10 * MINUTE);
+
+        final List<StreamCountRollups.Segment> days = StreamCountRollups.segments(day - 2 * HOUR, day + 2 * DAY + HOUR);
+        assertEquals(3, days.size());
+        assertSegment(days.get(0), Granularity.HOUR, day - 2 * HOUR, day);
+        assertSegment(days.get(1), Granularity.DAY, day, day + 2 * DAY);
+        assertSegment(days.get(2), Granularity.HOUR, day + 2 * DAY, day + 2 * DAY + HOUR);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlushWritesCountsOfPreviousFlush() {
+        rollups.record(message(NOW, "stream1", "stream2"));
+        rollups.record(message(NOW.plusSeconds(10), "stream1"));
+        rollups.record(message(NOW.minusMinutes(5), "stream1"));
+
+        rollups.flush();
+        verify(store, never()).increment(any(Map.class));
+
+        rollups.record(message(NOW, "stream2"));
+        rollups.flush();
+
+        final ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(store).increment(captor.capture());
+        final long minute = Granularity.MINUTE.floor(NOW.getMillis());
+        assertEquals(ImmutableMap.of(
+                "stream1", ImmutableMap.of(minute, 2L, minute - 5 * MINUTE, 1L),
+                "stream2", ImmutableMap.of(minute, 1L)), captor.getValue());
+
+        rollups.flushAll();
+        verify(store).increment((Map) ImmutableMap.of("stream2", ImmutableMap.of(minute, 1L)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMessagesReadFromJournalAgainAfterRestartAreNotCounted() {
+        when(journal.isFromPreviousRun(anyLong())).thenReturn(true);
+        when(journal.isFromPreviousRun(100L)).thenReturn(false);
+        rollups.record(message(NOW, 1L, "stream1"));
+        rollups.record(message(NOW.minusMinutes(1), 2L, "stream1"));
+        rollups.record(message(NOW.minusMinutes(5), 3L, "stream1"));
+        rollups.record(message(NOW, 100L, "stream1"));
+
+        rollups.flushAll();
+
+        final long minute = Granularity.MINUTE.floor(NOW.getMillis());
+        verify(store).increment((Map) ImmutableMap.of("stream1", ImmutableMap.of(minute, 1L)));
+        final ArgumentCaptor<List<StreamCountRollupStore.Hole>> captor = (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+        verify(store).addHoles(captor.capture());
+        final List<StreamCountRollupStore.Hole> holes = captor.getValue();
+        assertEquals(2, holes.size());
+        assertEquals(minute - 5 * MINUTE, holes.get(0).getFrom());
+        assertEquals(minute - 4 * MINUTE - 1, holes.get(0).getTo());
+        assertEquals(minute - MINUTE, holes.get(1).getFrom());
+        assertEquals(minute + MINUTE - 1, holes.get(1).getTo());
+
+        // the holes are only written once
+        rollups.flush();
+        verify(store).addHoles(anyListOf(StreamCountRollupStore.Hole.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedWriteExcludesMinutesFromRollups() {
+        loadCoverage(NOW.minusDays(10).getMillis());
+        final long from = NOW.minusHours(4).getMillis();
+        assertNotNull(rollups.count("stream1", from, NOW.getMillis()));
+
+        final long minute = Granularity.MINUTE.floor(NOW.minusHours(2).getMillis());
+        doThrow(new MongoException("increment failed")).when(store).increment(any(Map.class));
+        doThrow(new MongoException("addHoles failed")).doNothing().when(store).addHoles(anyListOf(StreamCountRollupStore.Hole.class));
+        rollups.record(message(NOW.minusHours(2), "stream1"));
+        rollups.flush();
+        try {
+            rollups.flush();
+            fail("The failure to record the holes should have been thrown.");
+        } catch (MongoException e) {
+            assertEquals("addHoles failed", e.getMessage());
+        }
+
+        // the counts might have been written partially, the minute has to be searched
+        assertNull(rollups.count("stream1", from, NOW.getMillis()));
+        assertNull(rollups.histogram("stream1", Granularity.HOUR, from, NOW.getMillis()));
+        assertNotNull(rollups.count("stream1", NOW.minusHours(10).getMillis(), NOW.minusHours(3).getMillis()));
+
+        // the minute is recorded as a hole once the store is available again, the counts are not written again
+        rollups.flush();
+        final ArgumentCaptor<List<StreamCountRollupStore.Hole>> captor = (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+        verify(store, times(2)).addHoles(captor.capture());
+        final StreamCountRollupStore.Hole hole = Iterables.getOnlyElement(captor.getValue());
+        assertEquals(minute, hole.getFrom());
+        assertEquals(minute + MINUTE - 1, hole.getTo());
+        verify(store, times(1)).increment(any(Map.class));
+        assertNull(rollups.count("stream1", from, NOW.getMillis()));
+
+        when(store.loadCoverage(anyLong())).thenReturn(new StreamCountRollupStore.Coverage(NOW.minusDays(10).getMillis(),
+                ImmutableList.of(hole)));
+        DateTimeUtils.setCurrentMillisFixed(NOW.plusMinutes(2).getMillis());
+        rollups.updateCoverage();
+        assertNull(rollups.count("stream1", from, NOW.getMillis()));
+        assertNotNull(rollups.count("stream1", NOW.minusHours(10).getMillis(), NOW.minusHours(3).getMillis()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlushMarksUnflushedCountsBeforeWriting() {
+        rollups.record(message(NOW.minusHours(3), "stream1"));
+        rollups.flush();
+        rollups.record(message(NOW.plusMinutes(2), "stream1"));
+        rollups.flush();
+
+        final InOrder inOrder = inOrder(store);
+        final ArgumentCaptor<StreamCountRollupStore.Hole> captor = ArgumentCaptor.forClass(StreamCountRollupStore.Hole.class);
+        inOrder.verify(store, times(2)).markUnflushed(eq("node-1"), captor.capture());
+        inOrder.verify(store).increment(any(Map.class));
+        final StreamCountRollupStore.Hole unflushed = captor.getValue();
+        assertEquals(Granularity.MINUTE.floor(NOW.minusHours(3).getMillis()), unflushed.getFrom());
+        assertEquals(Granularity.MINUTE.ceil(NOW.plusMinutes(2).getMillis()) - 1, unflushed.getTo());
+        verify(store, never()).clearUnflushed(anyString());
+
+        rollups.flushAll();
+        verify(store).clearUnflushed("node-1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnflushedCountsAreKeptMarkedIfTheyCannotBeExcluded() {
+        doThrow(new MongoException("increment failed")).when(store).increment(any(Map.class));
+        doThrow(new MongoException("addHoles failed")).when(store).addHoles(anyListOf(StreamCountRollupStore.Hole.class));
+        rollups.record(message(NOW, "stream1"));
+
+        try {
+            rollups.flushAll();
+            fail("The failure to record the holes should have been thrown.");
+        } catch (MongoException e) {
+            assertEquals("addHoles failed", e.getMessage());
+        }
+        verify(store, never()).clearUnflushed(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnflushedCountsOfPreviousRunAreExcluded() {
+        when(store.findUnflushed("node-1")).thenReturn(
+                new StreamCountRollupStore.Hole(NOW.minusHours(3).getMillis(), NOW.minusHours(2).getMillis()));
+        rollups.flush();
+
+        final ArgumentCaptor<List<StreamCountRollupStore.Hole>> captor = (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+        verify(store).addHoles(captor.capture());
+        final StreamCountRollupStore.Hole hole = Iterables.getOnlyElement(captor.getValue());
+        assertEquals(NOW.minusHours(3).getMillis(), hole.getFrom());
+        assertEquals(NOW.getMillis(), hole.getTo());
+
+        when(store.loadCoverage(anyLong())).thenReturn(new StreamCountRollupStore.Coverage(NOW.minusDays(10).getMillis(),
+                ImmutableList.of(hole)));
+        rollups.updateCoverage();
+        assertNull(rollups.count("stream1", NOW.minusHours(4).getMillis(), NOW.getMillis()));
+        assertNotNull(rollups.count("stream1", NOW.minusHours(10).getMillis(), NOW.minusHours(4).getMillis()));
+
+        // only once
+        rollups.flush();
+        rollups.updateCoverage();
+        verify(store).findUnflushed("node-1");
+        verify(store).addHoles(anyListOf(StreamCountRollupStore.Hole.class));
+    }
+
+    @Test
+    public void testCount() {
+        loadCoverage(NOW.minusDays(10).getMillis());
+        final long day = NOW.withTimeAtStartOfDay().getMillis();
+        when(store.find("stream1", Granularity.DAY, day - 3 * DAY, day)).thenReturn(ImmutableMap.of(day - 2 * DAY, 100L));
+        when(store.find("stream1", Granularity.HOUR, day, day + 12 * HOUR)).thenReturn(ImmutableMap.of(day + HOUR, 10L));
+        when(store.find("stream1", Granularity.MINUTE, day + 12 * HOUR, day + 12 * HOUR + 29 * MINUTE))
+                .thenReturn(ImmutableMap.of(day + 12 * HOUR, 1L, day + 12 * HOUR + 28 * MINUTE, 2L));
+
+        // the last minute has not settled yet, the partial first minute is not covered
+        final StreamCountRollups.RolledUpCount count = rollups.count("stream1", day - 3 * DAY - 1000L, NOW.getMillis());
+
+        assertNotNull(count);
+        assertEquals(day - 3 * DAY, count.getFrom());
+        assertEquals(day + 12 * HOUR + 29 * MINUTE, count.getTo());
+        assertEquals(113L, count.getCount());
+    }
+
+    @Test
+    public void testCountUsesCoarserBucketsForOldTimeRanges() {
+        loadCoverage(NOW.minusDays(100).getMillis());
+        final long from = NOW.minusDays(90).getMillis();
+
+        final StreamCountRollups.RolledUpCount count = rollups.count("stream1", from, NOW.minusDays(80).getMillis());
+
+        assertNotNull(count);
+        assertEquals(Granularity.DAY.ceil(from), count.getFrom());
+        assertEquals(Granularity.DAY.floor(NOW.minusDays(80).getMillis()), count.getTo());
+        verify(store, never()).find(anyString(), eq(Granularity.MINUTE), anyLong(), anyLong());
+        verify(store, never()).find(anyString(), eq(Granularity.HOUR), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testCountOnlyUsesCoveredTimeRanges() {
+        loadCoverage(NOW.minusHours(5).getMillis());
+
+        assertNull(rollups.count("stream1", NOW.minusHours(6).getMillis(), NOW.getMillis()));
+        assertNull(rollups.count("stream1", NOW.minusMinutes(30).getMillis(), NOW.getMillis()));
+        assertNotNull(rollups.count("stream1", NOW.minusHours(4).getMillis(), NOW.getMillis()));
+
+        when(store.loadCoverage(anyLong())).thenReturn(new StreamCountRollupStore.Coverage(NOW.minusHours(5).getMillis(),
+                ImmutableList.of(new StreamCountRollupStore.Hole(NOW.minusHours(3).getMillis(), NOW.minusHours(2).getMillis()))));
+        eventBus.post(IndexRangesUpdatedEvent.create(Collections.singleton("graylog_1")));
+        rollups.updateCoverage();
+
+        assertNull(rollups.count("stream1", NOW.minusHours(4).getMillis(), NOW.getMillis()));
+        assertNotNull(rollups.count("stream1", NOW.minusMinutes(110).getMillis(), NOW.getMillis()));
+    }
+
+    @Test
+    public void testHistogram() {
+        loadCoverage(NOW.minusDays(10).getMillis());
+        final long from = NOW.minusHours(5).getMillis();
+        final long firstHour = Granularity.HOUR.ceil(from);
+        final long lastHour = Granularity.HOUR.floor(NOW.getMillis());
+        when(store.find("stream1", Granularity.HOUR, firstHour, lastHour)).thenReturn(ImmutableMap.of(firstHour, 42L));
+
+        final StreamCountRollups.RolledUpHistogram histogram = rollups.histogram("stream1", Granularity.HOUR, from, NOW.getMillis());
+
+        assertNotNull(histogram);
+        assertEquals(firstHour, histogram.getFrom());
+        assertEquals(lastHour, histogram.getTo());
+        assertEquals(ImmutableMap.of(firstHour, 42L), histogram.getCounts());
+        assertNull(rollups.histogram("stream1", Granularity.MINUTE, NOW.minusDays(5).getMillis(), NOW.getMillis()));
+    }
+
+    @Test
+    public void testUpdateCoverageTracksRemovedIndices() {
+        final IndexRange oldest = indexRange("graylog_0", NOW.minusDays(3), NOW.minusDays(2));
+        final IndexRange older = indexRange("graylog_1", NOW.minusDays(2), NOW.minusDays(1));
+        final IndexRange newest = indexRange("graylog_2", NOW.minusDays(1), NOW.minusHours(1));
+        when(indexRangeService.findAll()).thenReturn(ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR).add(oldest, older, newest).build());
+        when(serverStatus.hasCapability(ServerStatus.Capability.MASTER)).thenReturn(true);
+        loadCoverage(NOW.minusDays(5).getMillis());
+        verify(store).advanceCoverage(NOW.minusDays(3).getMillis());
+
+        when(indexRangeService.findAll()).thenReturn(ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR).add(oldest, newest).build());
+        eventBus.post(IndexRangesUpdatedEvent.create(Collections.singleton("graylog_1")));
+        rollups.updateCoverage();
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<List<StreamCountRollupStore.Hole>> captor = (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+        verify(store).addHoles(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(NOW.minusDays(2).getMillis(), captor.getValue().get(0).getFrom());
+        assertEquals(NOW.minusDays(1).getMillis(), captor.getValue().get(0).getTo());
+    }
+
+    @Test
+    public void testNonMasterDoesNotDropRollups() {
+        when(indexRangeService.findAll()).thenReturn(ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR)
+                .add(indexRange("graylog_0", NOW.minusDays(3), NOW.minusDays(2))).build());
+        loadCoverage(NOW.minusDays(5).getMillis());
+
+        verify(store, never()).advanceCoverage(anyLong());
+        verify(store, never()).addHoles(anyListOf(StreamCountRollupStore.Hole.class));
+    }
+
+    private void loadCoverage(long since) {
+        when(store.loadCoverage(anyLong())).thenReturn(
+                new StreamCountRollupStore.Coverage(since, ImmutableList.<StreamCountRollupStore.Hole>of()));
+        rollups.updateCoverage();
+    }
+
+    private static void assertSegment(StreamCountRollups.Segment segment, Granularity granularity, long from, long to) {
+        assertEquals(granularity, segment.granularity);
+        assertEquals(from, segment.from);
+        assertEquals(to, segment.to);
+    }
+
+    private static Message message(DateTime timestamp, String... streamIds) {
+        return message(timestamp, 0L, streamIds);
+    }
+
+    private static Message message(DateTime timestamp, long journalOffset, String... streamIds) {
+        final Message message = new Message("test", "localhost", timestamp);
+        message.setJournalOffset(journalOffset);
+        final ImmutableList.Builder<Stream> streams = ImmutableList.builder();
+        for (String streamId : streamIds) {
+            final Stream stream = mock(Stream.class);
+            when(stream.getId()).thenReturn(streamId);
+            streams.add(stream);
+        }
+        message.setStreams(streams.build());
+        return message;
+    }
+
+    private static IndexRange indexRange(String indexName, DateTime begin, DateTime end) {
+        return IndexRange.create(indexName, begin, end, NOW, 0);
+    }
+}
@@ -28,6 +28,8 @@ import com.squareup.okhttp.OkHttpClient;
 import org.graylog2.plugin.IOState;
 import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.buffers.InputBuffer;
+import org.graylog2.plugin.dns.ReverseDnsBackend;
+import org.graylog2.plugin.dns.SystemReverseDnsBackend;
 import org.graylog2.plugin.inputs.MessageInput;
 import org.graylog2.plugin.inputs.util.ThroughputCounter;
 import org.graylog2.plugin.system.NodeId;
@@ -39,16 +41,16 @@ import org.graylog2.shared.bindings.providers.NodeIdProvider;
 import org.graylog2.shared.bindings.providers.ServiceManagerProvider;
 import org.graylog2.shared.bindings.providers.SystemOkHttpClientProvider;
 import org.graylog2.shared.buffers.InputBufferImpl;
+import org.graylog2.shared.buffers.JournallingMessageHandler;
 import org.graylog2.shared.buffers.ProcessBuffer;
 import org.graylog2.shared.buffers.processors.DecodingProcessor;
+import org.graylog2.shared.inputs.CodecInstanceRegistry;
 import org.graylog2.shared.inputs.InputRegistry;
 import org.graylog2.shared.inputs.InputStateListener;
 import org.graylog2.shared.stats.ThroughputStats;
 import org.jboss.netty.util.HashedWheelTimer;
 import org.msgpack.MessagePack;
 
-import java.util.concurrent.Semaphore;
-
 public class GenericBindings extends AbstractModule {
 
     @Override
@@ -59,6 +61,7 @@ public class GenericBindings extends AbstractModule {
         bind(ThroughputStats.class).toInstance(new ThroughputStats());
 
         install(new FactoryModuleBuilder().build(DecodingProcessor.Factory.class));
+        install(new FactoryModuleBuilder().build(JournallingMessageHandler.Factory.class));
 
         bind(ProcessBuffer.class).asEagerSingleton();
         bind(InputBuffer.class).to(InputBufferImpl.class);
@@ -69,13 +72,14 @@ public class GenericBindings extends AbstractModule {
         bind(HashedWheelTimer.class).toInstance(new HashedWheelTimer());
         bind(ThroughputCounter.class);
 
-        bind(EventBus.class).toProvider(EventBusProvider.class).in(Scopes.SINGLETON);
+        bind(ReverseDnsBackend.class).to(SystemReverseDnsBackend.class);
 
-        bind(Semaphore.class).annotatedWith(Names.named("JournalSignal")).toInstance(new Semaphore(0));
+        bind(EventBus.class).toProvider(EventBusProvider.class).in(Scopes.SINGLETON);
 
         install(new FactoryModuleBuilder().build(new TypeLiteral<IOState.Factory<MessageInput>>(){}));
 
         bind(InputRegistry.class).asEagerSingleton();
+        bind(CodecInstanceRegistry.class).asEagerSingleton();
 
         bindEventBusListeners();
         
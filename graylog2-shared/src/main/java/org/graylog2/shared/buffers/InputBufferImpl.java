@@ -28,6 +28,8 @@ import org.graylog2.plugin.BaseConfiguration;
 import org.graylog2.plugin.GlobalMetricNames;
 import org.graylog2.plugin.buffers.InputBuffer;
 import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.KafkaJournal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,7 +57,8 @@ public class InputBufferImpl implements InputBuffer {
                            BaseConfiguration configuration,
                            Provider<DirectMessageHandler> directMessageHandlerProvider,
                            Provider<RawMessageEncoderHandler> rawMessageEncoderHandlerProvider,
-                           Provider<JournallingMessageHandler> spoolingMessageHandlerProvider) {
+                           JournallingMessageHandler.Factory spoolingMessageHandlerFactory,
+                           Journal journal) {
         final Disruptor<RawMessageEvent> disruptor = new Disruptor<>(
                 RawMessageEvent.FACTORY,
                 configuration.getInputBufferRingSize(),
@@ -72,8 +75,15 @@ public class InputBufferImpl implements InputBuffer {
             for (int i = 0 ; i < numberOfHandlers; i++) {
                 handlers[i] = rawMessageEncoderHandlerProvider.get();
             }
+            // one journal writer per partition, a single partition must not be written concurrently anyway
+            final int numberOfJournallingHandlers =
+                    journal instanceof KafkaJournal ? ((KafkaJournal) journal).getNumberOfPartitions() : 1;
+            final JournallingMessageHandler[] journallingHandlers = new JournallingMessageHandler[numberOfJournallingHandlers];
+            for (int i = 0; i < numberOfJournallingHandlers; i++) {
+                journallingHandlers[i] = spoolingMessageHandlerFactory.create(i, numberOfJournallingHandlers);
+            }
             disruptor.handleEventsWithWorkerPool(handlers)
-                    .then(spoolingMessageHandlerProvider.get());
+                    .then(journallingHandlers);
         } else{
             LOG.info("Message journal is disabled.");
             final DirectMessageHandler[] handlers = new DirectMessageHandler[numberOfHandlers];
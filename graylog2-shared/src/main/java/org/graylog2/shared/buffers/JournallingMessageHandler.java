@@ -25,23 +25,31 @@ import com.github.rholder.retry.WaitStrategies;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
 import com.lmax.disruptor.EventHandler;
 import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.JournalSignal;
+import org.graylog2.shared.journal.KafkaJournal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
-import javax.inject.Inject;
-import javax.inject.Named;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.collect.Lists.transform;
 
+/**
+ * Writes the encoded raw messages to the journal.
+ * <p>
+ * Multiple handlers can write to a partitioned journal in parallel, each of them only handles the events whose
+ * sequence matches its ordinal.
+ * </p>
+ */
 public class JournallingMessageHandler implements EventHandler<RawMessageEvent> {
     private static final Logger log = LoggerFactory.getLogger(JournallingMessageHandler.class);
 
@@ -61,20 +69,34 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
     private final List<RawMessageEvent> batch = Lists.newArrayList();
     private final Counter byteCounter;
     private final Journal journal;
-    private final Semaphore journalFilled;
+    private final JournalSignal journalSignal;
+    private final int ordinal;
+    private final int numberOfHandlers;
+
+    public interface Factory {
+        JournallingMessageHandler create(@Assisted("ordinal") int ordinal, @Assisted("numberOfHandlers") int numberOfHandlers);
+    }
 
-    @Inject
-    public JournallingMessageHandler(MetricRegistry metrics, Journal journal, @Named("JournalSignal") Semaphore journalFilled) {
+    @AssistedInject
+    public JournallingMessageHandler(MetricRegistry metrics,
+                                     Journal journal,
+                                     JournalSignal journalSignal,
+                                     @Assisted("ordinal") int ordinal,
+                                     @Assisted("numberOfHandlers") int numberOfHandlers) {
         this.journal = journal;
-        this.journalFilled = journalFilled;
+        this.journalSignal = journalSignal;
+        this.ordinal = ordinal;
+        this.numberOfHandlers = numberOfHandlers;
         byteCounter = metrics.counter(MetricRegistry.name(JournallingMessageHandler.class, "written_bytes"));
     }
 
     @Override
     public void onEvent(RawMessageEvent event, long sequence, boolean endOfBatch) throws Exception {
-        batch.add(event);
+        if (sequence % numberOfHandlers == ordinal) {
+            batch.add(event);
+        }
 
-        if (endOfBatch) {
+        if (endOfBatch && !batch.isEmpty()) {
             log.debug("End of batch, journalling {} messages", batch.size());
             // write batch to journal
 
@@ -89,6 +111,11 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
             // objects in there have been set to null and cannot be used anymore.
             batch.clear();
 
+            if (entries.isEmpty()) {
+                log.debug("No message of the batch could be converted, nothing to journal");
+                return;
+            }
+
             // Catch all exceptions that might happen during the journal write and retry the operation.
             // This basically blocks if the journal write always throws an exception. Once the write succeeds, we will
             // continue.
@@ -114,7 +141,12 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
         log.debug("Processed batch, wrote {} bytes, last journal offset: {}, signalling reader.",
                 converter.getBytesWritten(),
                 lastOffset);
-        journalFilled.release();
+        if (lastOffset < 0) {
+            // nothing has been written
+            return;
+        }
+        // only the reader of the partition written to has to wake up
+        journalSignal.written(journal instanceof KafkaJournal ? KafkaJournal.partitionOf(lastOffset) : 0);
     }
 
     private class Converter implements Function<RawMessageEvent, Journal.Entry> {
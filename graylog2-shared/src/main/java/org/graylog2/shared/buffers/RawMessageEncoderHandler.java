@@ -19,6 +19,8 @@ package org.graylog2.shared.buffers;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.lmax.disruptor.WorkHandler;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.journal.CodecConfigDictionary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,17 +31,24 @@ import static com.codahale.metrics.MetricRegistry.name;
 public class RawMessageEncoderHandler implements WorkHandler<RawMessageEvent> {
     private static final Logger log = LoggerFactory.getLogger(RawMessageEncoderHandler.class);
     private final Meter incomingMessages;
+    private final CodecConfigDictionary codecConfigDictionary;
 
     @Inject
-    public RawMessageEncoderHandler(MetricRegistry metricRegistry) {
+    public RawMessageEncoderHandler(MetricRegistry metricRegistry, CodecConfigDictionary codecConfigDictionary) {
+        this.codecConfigDictionary = codecConfigDictionary;
         incomingMessages = metricRegistry.meter(name(RawMessageEncoderHandler.class, "incomingMessages"));
     }
 
     @Override
     public void onEvent(RawMessageEvent event) throws Exception {
         incomingMessages.mark();
-        event.setEncodedRawMessage(event.getRawMessage().encode());
-        event.setMessageIdBytes(event.getRawMessage().getIdBytes());
+        final RawMessage rawMessage = event.getRawMessage();
+        // only reference the codec configuration instead of writing it into every journal entry
+        if (rawMessage.getCodecConfig() != null) {
+            rawMessage.setCodecConfigId(codecConfigDictionary.getId(rawMessage.getCodecConfig()));
+        }
+        event.setEncodedRawMessage(rawMessage.encode());
+        event.setMessageIdBytes(rawMessage.getIdBytes());
         
         if (log.isTraceEnabled()) {
             log.trace("Serialized message {} for journal, size {} bytes",
@@ -17,11 +17,13 @@
 
 package org.graylog2.shared.buffers.processors;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.net.InetAddresses;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
@@ -33,6 +35,7 @@ import org.graylog2.plugin.buffers.MessageEvent;
 import org.graylog2.plugin.inputs.codecs.Codec;
 import org.graylog2.plugin.inputs.codecs.MultiMessageCodec;
 import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.inputs.CodecInstanceRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,24 +51,30 @@ import static com.codahale.metrics.MetricRegistry.name;
 public class DecodingProcessor implements EventHandler<MessageEvent> {
     private static final Logger LOG = LoggerFactory.getLogger(DecodingProcessor.class);
 
+    // upper bound of cached metric handles, only reached if inputs are created very frequently
+    private static final int MAX_CACHED_METRICS = 1024;
+
     private final Timer decodeTime;
 
     public interface Factory {
         public DecodingProcessor create(@Assisted("decodeTime") Timer decodeTime, @Assisted("parseTime") Timer parseTime);
     }
 
-    private final Map<String, Codec.Factory<? extends Codec>> codecFactory;
+    private final CodecInstanceRegistry.Cache codecCache;
     private final ServerStatus serverStatus;
     private final MetricRegistry metricRegistry;
     private final Timer parseTime;
+    // metric handles by input id, confined to the processor thread like the codec cache
+    private final Map<String, CodecMetrics> codecMetrics = Maps.newHashMap();
 
     @AssistedInject
-    public DecodingProcessor(Map<String, Codec.Factory<? extends Codec>> codecFactory,
+    public DecodingProcessor(CodecInstanceRegistry codecInstanceRegistry,
                              final ServerStatus serverStatus,
                              final MetricRegistry metricRegistry,
                              @Assisted("decodeTime") Timer decodeTime,
                              @Assisted("parseTime") Timer parseTime) {
-        this.codecFactory = codecFactory;
+        // every processor thread gets its own cache, codec instances are not required to be thread-safe
+        this.codecCache = codecInstanceRegistry.newCache();
         this.serverStatus = serverStatus;
         this.metricRegistry = metricRegistry;
 
@@ -101,14 +110,6 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
     private void processMessage(final MessageEvent event) throws ExecutionException {
         final RawMessage raw = event.getRaw();
 
-        final Codec.Factory<? extends Codec> factory = codecFactory.get(raw.getCodecName());
-        if (factory == null) {
-            LOG.warn("Couldn't find factory for codec {}, skipping message.", raw.getCodecName());
-            return;
-        }
-
-        final Codec codec = factory.create(raw.getCodecConfig());
-
         // for backwards compatibility: the last source node should contain the input we use.
         // this means that extractors etc defined on the prior inputs are silently ignored.
         // TODO fix the above
@@ -119,7 +120,13 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
         } catch (NoSuchElementException e) {
             inputIdOnCurrentNode = null;
         }
-        final String baseMetricName = name(codec.getClass(), inputIdOnCurrentNode);
+
+        final Codec codec = codecCache.get(inputIdOnCurrentNode, raw);
+        if (codec == null) {
+            LOG.warn("Couldn't find factory for codec {}, skipping message.", raw.getCodecName());
+            return;
+        }
+        final CodecMetrics metrics = getCodecMetrics(codec, inputIdOnCurrentNode);
 
         Message message = null;
         Collection<Message> messages = null;
@@ -135,36 +142,54 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
                 message = codec.decode(raw);
             }
         } catch (RuntimeException e) {
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            metrics.failures.mark();
             throw e;
         } finally {
             decodeTime = decodeTimeCtx.stop();
         }
 
         if (message != null) {
-            event.setMessage(postProcessMessage(raw, codec, inputIdOnCurrentNode, baseMetricName, message, decodeTime));
+            final Message processedMessage = postProcessMessage(raw, codec, inputIdOnCurrentNode, metrics, message, decodeTime);
+            if (processedMessage != null) {
+                metrics.processedMessages.mark();
+            }
+            event.setMessage(processedMessage);
         } else if (messages != null && !messages.isEmpty()) {
             final List<Message> processedMessages = Lists.newArrayListWithCapacity(messages.size());
 
             for (final Message msg : messages) {
-                final Message processedMessage = postProcessMessage(raw, codec, inputIdOnCurrentNode, baseMetricName, msg, decodeTime);
+                final Message processedMessage = postProcessMessage(raw, codec, inputIdOnCurrentNode, metrics, msg, decodeTime);
 
                 if (processedMessage != null) {
                     processedMessages.add(processedMessage);
                 }
             }
 
+            // a single update for all messages decoded from the same raw message
+            metrics.processedMessages.mark(processedMessages.size());
             event.setMessages(processedMessages);
         }
     }
 
-    private Message postProcessMessage(RawMessage raw, Codec codec, String inputIdOnCurrentNode, String baseMetricName, Message message, long decodeTime) {
+    private CodecMetrics getCodecMetrics(Codec codec, String inputId) {
+        CodecMetrics metrics = codecMetrics.get(inputId);
+        if (metrics == null || metrics.codecClass != codec.getClass()) {
+            if (codecMetrics.size() >= MAX_CACHED_METRICS) {
+                codecMetrics.clear();
+            }
+            metrics = new CodecMetrics(metricRegistry, codec.getClass(), inputId);
+            codecMetrics.put(inputId, metrics);
+        }
+        return metrics;
+    }
+
+    private Message postProcessMessage(RawMessage raw, Codec codec, String inputIdOnCurrentNode, CodecMetrics metrics, Message message, long decodeTime) {
         if (message == null) {
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            metrics.failures.mark();
             return null;
         }
         if (!message.isComplete()) {
-            metricRegistry.meter(name(baseMetricName, "incomplete")).mark();
+            metrics.incomplete.mark();
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping incomplete message. Parsed fields: [{}]", message.getFields());
             }
@@ -173,7 +198,7 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
 
         message.setJournalOffset(raw.getJournalOffset());
         message.recordTiming(serverStatus, "parse", decodeTime);
-        metricRegistry.timer(name(baseMetricName, "parseTime")).update(decodeTime, TimeUnit.NANOSECONDS);
+        metrics.parseTime.update(decodeTime, TimeUnit.NANOSECONDS);
 
         for (final RawMessage.SourceNode node : raw.getSourceNodes()) {
             switch (node.type) {
@@ -230,7 +255,26 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             message.setSource("unknown");
         }
 
-        metricRegistry.meter(name(baseMetricName, "processedMessages")).mark();
         return message;
     }
+
+    /**
+     * Metric handles of a single input, resolved once instead of looking them up by name for every message.
+     */
+    private static class CodecMetrics {
+        private final Class<?> codecClass;
+        private final Meter failures;
+        private final Meter incomplete;
+        private final Meter processedMessages;
+        private final Timer parseTime;
+
+        private CodecMetrics(MetricRegistry metricRegistry, Class<?> codecClass, String inputId) {
+            final String baseMetricName = name(codecClass, inputId);
+            this.codecClass = codecClass;
+            this.failures = metricRegistry.meter(name(baseMetricName, "failures"));
+            this.incomplete = metricRegistry.meter(name(baseMetricName, "incomplete"));
+            this.processedMessages = metricRegistry.meter(name(baseMetricName, "processedMessages"));
+            this.parseTime = metricRegistry.timer(name(baseMetricName, "parseTime"));
+        }
+    }
 }
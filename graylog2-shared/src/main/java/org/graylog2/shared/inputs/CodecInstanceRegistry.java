@@ -0,0 +1,175 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.inputs;
+
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.graylog2.plugin.IOState;
+import org.graylog2.plugin.events.inputs.IOStateChangedEvent;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.journal.RawMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hands out codec instances keyed by input id, codec name and codec configuration fingerprint so decoders don't have
+ * to build a new codec for every message.
+ * <p>
+ * Codecs are not required to be thread-safe, so every decoder thread gets its own {@link Cache} from
+ * {@link #newCache()}. The registry itself only keeps track of the caches and invalidates the entries of an input
+ * whenever the input changes its state, i. e. when it is restarted, reconfigured or removed.
+ * </p>
+ */
+@Singleton
+public class CodecInstanceRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(CodecInstanceRegistry.class);
+
+    // upper bound of codec instances per cache, only reached if inputs are reconfigured very frequently
+    private static final int MAX_CACHED_CODECS = 1024;
+
+    private final Map<String, Codec.Factory<? extends Codec>> codecFactory;
+    private final CopyOnWriteArrayList<Cache> caches = new CopyOnWriteArrayList<>();
+
+    @Inject
+    public CodecInstanceRegistry(Map<String, Codec.Factory<? extends Codec>> codecFactory, EventBus eventBus) {
+        this.codecFactory = codecFactory;
+        eventBus.register(this);
+    }
+
+    public Cache newCache() {
+        final Cache cache = new Cache();
+        caches.add(cache);
+        return cache;
+    }
+
+    public void invalidate(String inputId) {
+        LOG.debug("Invalidating cached codecs of input {}", inputId);
+        for (Cache cache : caches) {
+            cache.invalidations.add(inputId);
+        }
+    }
+
+    @Subscribe
+    public void inputStateChanged(IOStateChangedEvent<MessageInput> event) {
+        final IOState.Type newState = event.newState();
+        if (newState == IOState.Type.STARTING || newState == IOState.Type.STOPPED || newState == IOState.Type.TERMINATED) {
+            invalidate(event.changedState().getStoppable().getId());
+        }
+    }
+
+    /**
+     * Codec instance cache confined to a single decoder thread.
+     */
+    public class Cache {
+        private final Map<Key, Codec> codecs = Maps.newHashMap();
+        private final Queue<String> invalidations = new ConcurrentLinkedQueue<>();
+
+        private Cache() {
+        }
+
+        /**
+         * Returns the codec for the given raw message, creating it if necessary.
+         *
+         * @param inputId the id of the input the message was received on, may be {@code null}
+         * @param raw     the raw message to decode
+         * @return the codec, or {@code null} if there is no factory for the codec of the message
+         */
+        @Nullable
+        public Codec get(@Nullable String inputId, RawMessage raw) {
+            processInvalidations();
+
+            final Key key = new Key(inputId, raw.getCodecName(), raw.getCodecConfigFingerprint());
+            Codec codec = codecs.get(key);
+            if (codec == null) {
+                final Codec.Factory<? extends Codec> factory = codecFactory.get(raw.getCodecName());
+                if (factory == null) {
+                    return null;
+                }
+
+                codec = factory.create(raw.getCodecConfig());
+                if (codecs.size() >= MAX_CACHED_CODECS) {
+                    codecs.clear();
+                }
+                codecs.put(key, codec);
+            }
+
+            return codec;
+        }
+
+        public int size() {
+            processInvalidations();
+            return codecs.size();
+        }
+
+        private void processInvalidations() {
+            String inputId;
+            while ((inputId = invalidations.poll()) != null) {
+                final Iterator<Key> it = codecs.keySet().iterator();
+                while (it.hasNext()) {
+                    if (inputId.equals(it.next().inputId)) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Key {
+        private final String inputId;
+        private final String codecName;
+        private final Object configFingerprint;
+        private final int hashCode;
+
+        private Key(String inputId, String codecName, Object configFingerprint) {
+            this.inputId = inputId;
+            this.codecName = codecName;
+            this.configFingerprint = configFingerprint;
+            int result = Objects.hashCode(inputId);
+            result = 31 * result + Objects.hashCode(codecName);
+            result = 31 * result + Objects.hashCode(configFingerprint);
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final Key that = (Key) o;
+            return Objects.equals(this.inputId, that.inputId)
+                    && Objects.equals(this.codecName, that.codecName)
+                    && Objects.equals(this.configFingerprint, that.configFingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
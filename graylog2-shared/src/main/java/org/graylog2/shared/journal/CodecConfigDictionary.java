@@ -0,0 +1,180 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.journal;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+import org.graylog2.plugin.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Dictionary of codec configurations referenced by the entries of the message journal.
+ * <p>
+ * Instead of serializing the full codec configuration into every journal entry, the entries only carry a small id
+ * which is resolved through this dictionary when reading the journal. The dictionary is kept in memory and persisted
+ * in an append-only file next to the journal segments. Each line of that file contains the id and the JSON
+ * serialized configuration, the first line holds the format version.
+ * </p>
+ * <p>
+ * Ids are never reused, thus journal entries written before a restart still resolve to the right configuration.
+ * </p>
+ */
+@Singleton
+public class CodecConfigDictionary {
+    private static final Logger LOG = LoggerFactory.getLogger(CodecConfigDictionary.class);
+
+    public static final String FILENAME = "graylog2-codec-configs";
+    public static final int VERSION = 1;
+    private static final String VERSION_PREFIX = "version ";
+
+    private final File dictionaryFile;
+    private final ConcurrentMap<Integer, Configuration> configsById = Maps.newConcurrentMap();
+    private final Map<String, Integer> idsByJson = Maps.newHashMap();
+    // identity based, inputs reuse the same configuration instance for all of their messages
+    private final ConcurrentMap<Configuration, Integer> idsByInstance = new MapMaker().weakKeys().makeMap();
+    private int lastId = 0;
+
+    @Inject
+    public CodecConfigDictionary(@Named("message_journal_dir") File journalDirectory) {
+        if (!journalDirectory.exists() && !journalDirectory.mkdirs()) {
+            LOG.error("Cannot create journal directory at {}, please check the permissions",
+                    journalDirectory.getAbsolutePath());
+            Throwables.propagate(new AccessDeniedException(journalDirectory.getAbsolutePath(), null, "Could not create journal directory."));
+        }
+
+        dictionaryFile = new File(journalDirectory, FILENAME);
+        try {
+            if (dictionaryFile.createNewFile()) {
+                append(VERSION_PREFIX + VERSION);
+            } else {
+                load();
+            }
+        } catch (IOException e) {
+            LOG.error("Cannot access codec config dictionary file: {}", e.getMessage());
+            Throwables.propagate(new AccessDeniedException(dictionaryFile.getAbsolutePath(), null, e.getMessage()));
+        }
+    }
+
+    private void load() throws IOException {
+        final List<String> lines = Files.readLines(dictionaryFile, Charsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).startsWith(VERSION_PREFIX)) {
+            throw new IllegalStateException("Missing version header in codec config dictionary " + dictionaryFile);
+        }
+        final int version = Integer.parseInt(lines.get(0).substring(VERSION_PREFIX.length()).trim());
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported codec config dictionary version " + version + ", expected " + VERSION);
+        }
+
+        for (String line : lines.subList(1, lines.size())) {
+            final int separator = line.indexOf(' ');
+            final Integer id = separator < 1 ? null : Ints.tryParse(line.substring(0, separator));
+            if (id == null) {
+                // probably a partially written line, the corresponding journal entries have never been written
+                LOG.warn("Skipping invalid line in codec config dictionary: {}", line);
+                continue;
+            }
+            final String json = line.substring(separator + 1);
+
+            configsById.put(id, Configuration.deserializeFromJson(json));
+            idsByJson.put(json, id);
+            lastId = Math.max(lastId, id);
+        }
+        LOG.debug("Loaded {} codec configurations from {}", configsById.size(), dictionaryFile);
+    }
+
+    /**
+     * Returns the id of the given codec configuration, adding it to the dictionary if necessary.
+     *
+     * @param configuration the codec configuration
+     * @return the id of the configuration, or {@code 0} if it could not be added to the dictionary and should be
+     * stored inline
+     */
+    public int getId(Configuration configuration) {
+        final Integer id = idsByInstance.get(configuration);
+        if (id != null) {
+            return id;
+        }
+
+        return register(configuration);
+    }
+
+    private synchronized int register(Configuration configuration) {
+        final String serialized = configuration.serializeToJson();
+        final String json = isNullOrEmpty(serialized) ? "" : serialized;
+
+        Integer id = idsByJson.get(json);
+        if (id == null) {
+            final int newId = lastId + 1;
+            try {
+                // make sure the dictionary entry is on disk before any journal entry references it
+                append(newId + " " + json);
+            } catch (IOException e) {
+                LOG.error("Unable to add codec configuration to " + dictionaryFile + ", storing it inline.", e);
+                return 0;
+            }
+            lastId = newId;
+            id = newId;
+            idsByJson.put(json, id);
+            configsById.put(id, configuration);
+        }
+        idsByInstance.put(configuration, id);
+
+        return id;
+    }
+
+    /**
+     * Resolves a codec configuration id written to the journal.
+     *
+     * @param id the config id
+     * @return the codec configuration, or {@code null} if the id is unknown
+     */
+    @Nullable
+    public Configuration get(int id) {
+        return configsById.get(id);
+    }
+
+    public int size() {
+        return configsById.size();
+    }
+
+    private void append(String line) throws IOException {
+        try (final FileOutputStream fos = new FileOutputStream(dictionaryFile, true)) {
+            fos.write((line + "\n").getBytes(Charsets.UTF_8));
+            fos.flush();
+            fos.getFD().sync();
+        }
+    }
+}
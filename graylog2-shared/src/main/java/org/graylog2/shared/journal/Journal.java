@@ -16,6 +16,7 @@
  */
 package org.graylog2.shared.journal;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public interface Journal {
@@ -47,12 +48,22 @@ public interface Journal {
         }
     }
 
+    /**
+     * An entry read from the journal.
+     * <p>
+     * The payload might be a view of the journal's read buffer, it is only valid until the next read.
+     * </p>
+     */
     public static class JournalReadEntry {
 
-        private final byte[] payload;
+        private final ByteBuffer payload;
         private final long offset;
 
         public JournalReadEntry(byte[] payload, long offset) {
+            this(ByteBuffer.wrap(payload), offset);
+        }
+
+        public JournalReadEntry(ByteBuffer payload, long offset) {
             this.payload = payload;
             this.offset = offset;
         }
@@ -61,8 +72,25 @@ public interface Journal {
             return offset;
         }
 
+        /**
+         * Returns a copy of the payload.
+         *
+         * @return the payload bytes
+         * @see #getPayloadBuffer()
+         */
         public byte[] getPayload() {
-            return payload;
+            final byte[] bytes = new byte[payload.remaining()];
+            payload.duplicate().get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Returns the payload without copying it.
+         *
+         * @return a view of the payload, which must not be modified
+         */
+        public ByteBuffer getPayloadBuffer() {
+            return payload.duplicate();
         }
     }
 }
@@ -22,10 +22,11 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.common.util.concurrent.Uninterruptibles;
 import javax.inject.Inject;
-import javax.inject.Named;
+import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.plugin.lifecycles.Lifecycle;
 import org.graylog2.shared.buffers.ProcessBuffer;
@@ -34,35 +35,46 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+/**
+ * Reads the message journal and feeds the process buffer.
+ * <p>
+ * Every partition of a {@link KafkaJournal} is read by its own thread, the first one being the service thread.
+ * </p>
+ */
 public class JournalReader extends AbstractExecutionThreadService {
     private static final Logger log = LoggerFactory.getLogger(JournalReader.class);
     private final Journal journal;
     private final ProcessBuffer processBuffer;
-    private final Semaphore journalFilled;
+    private final JournalSignal journalSignal;
     private final MetricRegistry metricRegistry;
     private final EventBus eventBus;
+    private final CodecConfigDictionary codecConfigDictionary;
     private final Meter readMessages;
     private volatile boolean shouldBeReading;
     private Histogram requestedReadCount;
     private final Counter readBlocked;
     private Thread executionThread;
+    private ExecutorService partitionReaders;
 
     @Inject
     public JournalReader(Journal journal,
                          ProcessBuffer processBuffer,
-                         @Named("JournalSignal") Semaphore journalFilled,
+                         JournalSignal journalSignal,
                          MetricRegistry metricRegistry,
-                         EventBus eventBus) {
+                         EventBus eventBus,
+                         CodecConfigDictionary codecConfigDictionary) {
         this.journal = journal;
         this.processBuffer = processBuffer;
-        this.journalFilled = journalFilled;
+        this.journalSignal = journalSignal;
         this.metricRegistry = metricRegistry;
         this.eventBus = eventBus;
+        this.codecConfigDictionary = codecConfigDictionary;
         shouldBeReading = false;
         readBlocked = metricRegistry.counter(name(this.getClass(), "readBlocked"));
         readMessages = metricRegistry.meter(name(this.getClass(), "readMessages"));
@@ -77,11 +89,17 @@ public class JournalReader extends AbstractExecutionThreadService {
     @Override
     protected void shutDown() throws Exception {
         eventBus.unregister(this);
+        if (partitionReaders != null) {
+            partitionReaders.shutdown();
+        }
     }
 
     @Override
     protected void triggerShutdown() {
         executionThread.interrupt();
+        if (partitionReaders != null) {
+            partitionReaders.shutdownNow();
+        }
     }
 
     @Subscribe
@@ -123,6 +141,25 @@ public class JournalReader extends AbstractExecutionThreadService {
             throw e;
         }
 
+        final int numberOfPartitions = journal instanceof KafkaJournal ? ((KafkaJournal) journal).getNumberOfPartitions() : 1;
+        if (numberOfPartitions > 1) {
+            partitionReaders = Executors.newFixedThreadPool(numberOfPartitions - 1,
+                    new ThreadFactoryBuilder().setNameFormat("journal-reader-%d").build());
+            for (int partition = 1; partition < numberOfPartitions; partition++) {
+                final int partitionId = partition;
+                partitionReaders.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        readPartition(partitionId, numberOfPartitions);
+                    }
+                });
+            }
+        }
+        readPartition(0, numberOfPartitions);
+        log.info("Stopping.");
+    }
+
+    private void readPartition(int partition, int numberOfPartitions) {
         while (isRunning()) {
             // TODO interfere with reading if we are not 100% certain we should be reading, see #listenForLifecycleChanges
             if (!shouldBeReading) {
@@ -130,28 +167,28 @@ public class JournalReader extends AbstractExecutionThreadService {
                 // don't read immediately, but check if we should be shutting down.
                 continue;
             }
-            // approximate count to read from the journal to backfill the processing chain
-            final long remainingCapacity = processBuffer.getRemainingCapacity();
+            // approximate count to read from the journal to backfill the processing chain, shared by all partitions
+            final long remainingCapacity = processBuffer.getRemainingCapacity() / numberOfPartitions;
             requestedReadCount.update(remainingCapacity);
-            final List<Journal.JournalReadEntry> encodedRawMessages = journal.read(remainingCapacity);
+            final List<Journal.JournalReadEntry> encodedRawMessages = numberOfPartitions > 1
+                    ? ((KafkaJournal) journal).readNext(partition, remainingCapacity)
+                    : journal.read(remainingCapacity);
             if (encodedRawMessages.isEmpty()) {
                 log.debug("No messages to read from Journal, waiting until the writer adds more messages.");
                 // block until something is written to the journal again
                 try {
                     readBlocked.inc();
-                    journalFilled.acquire();
+                    journalSignal.awaitWritten(partition);
                 } catch (InterruptedException ignored) {
                     // this can happen when we are blocked but the system wants to shut down. We don't have to do anything in that case.
                     continue;
                 }
                 log.debug("Messages have been written to Journal, continuing to read.");
-                // we don't care how many messages were inserted in the meantime, we'll read all of them eventually
-                journalFilled.drainPermits();
             } else {
                 readMessages.mark(encodedRawMessages.size());
                 log.debug("Processing {} messages from journal.", encodedRawMessages.size());
                 for (final Journal.JournalReadEntry encodedRawMessage : encodedRawMessages) {
-                    final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayload(),
+                    final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayloadBuffer(),
                                                                     encodedRawMessage.getOffset());
                     if (rawMessage == null) {
                         // never insert null objects into the ringbuffer, as that is useless
@@ -159,12 +196,26 @@ public class JournalReader extends AbstractExecutionThreadService {
                         journal.markJournalOffsetCommitted(encodedRawMessage.getOffset());
                         continue;
                     }
+                    resolveCodecConfig(rawMessage);
 
                     processBuffer.insertBlocking(rawMessage);
                 }
             }
         }
-        log.info("Stopping.");
+    }
+
+    private void resolveCodecConfig(RawMessage rawMessage) {
+        final int configId = rawMessage.getCodecConfigId();
+        if (configId > 0) {
+            final Configuration codecConfig = codecConfigDictionary.get(configId);
+            if (codecConfig == null) {
+                log.error("Unknown codec configuration id {} for message {}, using empty configuration.",
+                          configId, rawMessage.getId());
+                rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+            } else {
+                rawMessage.setCodecConfig(codecConfig);
+            }
+        }
     }
 
 
@@ -0,0 +1,68 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.journal;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Wakes up the readers of the message journal after the writers appended to it.
+ * <p>
+ * Every journal partition has its own signal, so a reader only ever consumes the wake-ups of the partition it reads
+ * and never starves the readers of the other partitions.
+ * </p>
+ */
+@Singleton
+public class JournalSignal {
+    private final Semaphore[] partitions;
+
+    @Inject
+    public JournalSignal() {
+        this(KafkaJournal.MAX_PARTITIONS);
+    }
+
+    public JournalSignal(int maximumPartitions) {
+        checkArgument(maximumPartitions > 0, "The number of partitions must be positive");
+        partitions = new Semaphore[maximumPartitions];
+        for (int i = 0; i < maximumPartitions; i++) {
+            partitions[i] = new Semaphore(0);
+        }
+    }
+
+    /**
+     * Signals the reader of the given partition that entries have been written to it.
+     */
+    public void written(int partition) {
+        partitions[partition].release();
+    }
+
+    /**
+     * Blocks until entries have been written to the given partition since the last call.
+     * <p>
+     * Must only be called by the single reader of the partition. All wake-ups that accumulated in the meantime are
+     * consumed, the reader reads all entries written until then anyway.
+     * </p>
+     */
+    public void awaitWritten(int partition) throws InterruptedException {
+        final Semaphore signal = partitions[partition];
+        signal.acquire();
+        signal.drainPermits();
+    }
+}
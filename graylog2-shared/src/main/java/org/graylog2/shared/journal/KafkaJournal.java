@@ -24,7 +24,9 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.github.joschi.jadconfig.util.Size;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -69,6 +71,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.SyncFailedException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.file.AccessDeniedException;
 import java.util.Collections;
@@ -85,8 +88,10 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.github.joschi.jadconfig.util.Size.megabytes;
 import static java.util.concurrent.TimeUnit.DAYS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -95,6 +100,16 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.graylog2.plugin.Tools.bytesToHex;
 
+/**
+ * Message journal backed by one or more Kafka logs.
+ * <p>
+ * The journal can be split into several partitions, each of them being a separate Kafka log with its own read and
+ * committed offsets, so that multiple threads can write to and read from the journal in parallel. The offsets handed
+ * out by {@link #write(List)} and {@link #read(long)} carry the partition number in their upper bits, see
+ * {@link #journalOffset(int, long)}. For the first partition these are just the plain Kafka log offsets, so a journal
+ * with a single partition behaves exactly like the unpartitioned journal it replaces.
+ * </p>
+ */
 @Singleton
 public class KafkaJournal extends AbstractIdleService implements Journal {
     private static final Logger LOG = LoggerFactory.getLogger(KafkaJournal.class);
@@ -102,6 +117,12 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
     public static final long DEFAULT_COMMITTED_OFFSET = Long.MIN_VALUE;
     public static final int NOTIFY_ON_UTILIZATION_PERCENTAGE = 95;
+    public static final int MAX_PARTITIONS = 128;
+
+    private static final String TOPIC = "messagejournal";
+    private static final String COMMITTED_READ_OFFSET_FILENAME = "graylog2-committed-read-offset";
+    private static final int PARTITION_SHIFT = 56;
+    private static final long PARTITION_OFFSET_MASK = (1L << PARTITION_SHIFT) - 1;
 
     // this exists so we can use JodaTime's millis provider in tests.
     // kafka really only cares about the milliseconds() method in here
@@ -123,9 +144,8 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     };
 
     private final LogManager logManager;
-    private final Log kafkaLog;
-    private final File committedReadOffsetFile;
-    private final AtomicLong committedOffset = new AtomicLong(DEFAULT_COMMITTED_OFFSET);
+    private final List<JournalPartition> partitions;
+    private final AtomicInteger nextWritePartition = new AtomicInteger();
     private final ScheduledExecutorService scheduler;
     private final Timer writeTime;
 
@@ -139,7 +159,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     private final RecoveryCheckpointFlusher recoveryCheckpointFlusher;
     private final LogRetentionCleaner logRetentionCleaner;
 
-    private long nextReadOffset = 0L;
     private ScheduledFuture<?> checkpointFlusherFuture;
     private ScheduledFuture<?> dirtyLogFlushFuture;
     private ScheduledFuture<?> logRetentionFuture;
@@ -148,6 +167,19 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     private final AtomicReference<ThrottleState> throttleState = new AtomicReference<>();
     private final AtomicInteger purgedSegmentsInLastRetention = new AtomicInteger();
 
+    public KafkaJournal(File journalDirectory,
+                        ScheduledExecutorService scheduler,
+                        Size segmentSize,
+                        Duration segmentAge,
+                        Size retentionSize,
+                        Duration retentionAge,
+                        long flushInterval,
+                        Duration flushAge,
+                        MetricRegistry metricRegistry) {
+        this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
+                1, metricRegistry);
+    }
+
     @Inject
     public KafkaJournal(@Named("message_journal_dir") File journalDirectory,
                         @Named("scheduler") ScheduledExecutorService scheduler,
@@ -157,7 +189,10 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                         @Named("message_journal_max_age") Duration retentionAge,
                         @Named("message_journal_flush_interval") long flushInterval,
                         @Named("message_journal_flush_age") Duration flushAge,
+                        @Named("message_journal_partitions") int numberOfPartitions,
                         MetricRegistry metricRegistry) {
+        checkArgument(numberOfPartitions > 0 && numberOfPartitions <= MAX_PARTITIONS,
+                "Number of journal partitions must be between 1 and " + MAX_PARTITIONS);
         this.scheduler = scheduler;
 
         this.writtenMessages = metricRegistry.meter(name(this.getClass(), "writtenMessages"));
@@ -169,6 +204,14 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         this.writeTime = registerHdrTimer(metricRegistry, name(this.getClass(), "writeTime"));
         this.readTime = registerHdrTimer(metricRegistry, name(this.getClass(), "readTime"));
 
+        // never abandon existing partitions when the number of partitions has been lowered, they are still read
+        // until they have been fully processed and expire eventually
+        final int partitionCount = Math.max(numberOfPartitions, existingPartitionCount(journalDirectory));
+        if (partitionCount > numberOfPartitions) {
+            LOG.warn("Journal at {} contains {} partitions, more than the configured {}. Keeping all of them.",
+                    journalDirectory, partitionCount, numberOfPartitions);
+        }
+
         // these are the default values as per kafka 0.8.1.1
         final LogConfig defaultConfig =
                 new LogConfig(
@@ -182,8 +225,8 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                         flushInterval,
                         // flushMs: The amount of time the log can have dirty data before a flush is forced
                         flushAge.getMillis(),
-                        // retentionSize: The approximate total number of bytes this log can use
-                        retentionSize.toBytes(),
+                        // retentionSize: The approximate total number of bytes this log can use, shared by all partitions
+                        retentionSize.toBytes() / partitionCount,
                         // retentionMs: The age approximate maximum age of the last segment that is retained
                         retentionAge.getMillis(),
                         // maxMessageSize: The maximum size of a message in the log
@@ -227,24 +270,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             Throwables.propagate(new AccessDeniedException(journalDirectory.getAbsolutePath(), null, "Could not create journal directory."));
         }
 
-        // TODO add check for directory, etc
-        committedReadOffsetFile = new File(journalDirectory, "graylog2-committed-read-offset");
-        try {
-            if (!committedReadOffsetFile.createNewFile()) {
-                final String line = Files.readFirstLine(committedReadOffsetFile, Charsets.UTF_8);
-                // the file contains the last offset graylog2 has successfully processed.
-                // thus the nextReadOffset is one beyond that number
-                if (line != null) {
-                    committedOffset.set(Long.parseLong(line.trim()));
-                    nextReadOffset = committedOffset.get() + 1;
-                }
-            }
-        } catch (IOException e) {
-            LOG.error("Cannot access offset file: {}", e.getMessage());
-            Throwables.propagate(new AccessDeniedException(committedReadOffsetFile.getAbsolutePath(),
-                                                           null,
-                                                           e.getMessage()));
-        }
         try {
             final BrokerState brokerState = new BrokerState();
             brokerState.newState(RunningAsBroker.state());
@@ -263,14 +288,12 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                     brokerState,
                     JODA_TIME);
 
-            final TopicAndPartition topicAndPartition = new TopicAndPartition("messagejournal", 0);
-            final Option<Log> messageLog = logManager.getLog(topicAndPartition);
-            if (messageLog.isEmpty()) {
-                kafkaLog = logManager.createLog(topicAndPartition, logManager.defaultConfig());
-            } else {
-                kafkaLog = messageLog.get();
+            final ImmutableList.Builder<JournalPartition> partitionsBuilder = ImmutableList.builder();
+            for (int partition = 0; partition < partitionCount; partition++) {
+                partitionsBuilder.add(new JournalPartition(partition, journalDirectory));
             }
-            LOG.info("Initialized Kafka based journal at {}", journalDirectory);
+            partitions = partitionsBuilder.build();
+            LOG.info("Initialized Kafka based journal at {} with {} partition(s)", journalDirectory, partitions.size());
             setupKafkaLogMetrics(metricRegistry);
 
             offsetFlusher = new OffsetFileFlusher();
@@ -285,6 +308,32 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
     }
 
+    /**
+     * Returns the number of partitions of the journal found on disk, {@code 0} for a new journal.
+     * <p>
+     * Kafka keeps the log of each partition in a directory named {@code <topic>-<partition>}.
+     * </p>
+     */
+    private static int existingPartitionCount(File journalDirectory) {
+        int partitionCount = 0;
+        final File[] logDirectories = journalDirectory.listFiles();
+        if (logDirectories == null) {
+            return partitionCount;
+        }
+        final String prefix = TOPIC + "-";
+        for (File logDirectory : logDirectories) {
+            final String name = logDirectory.getName();
+            if (logDirectory.isDirectory() && name.startsWith(prefix)) {
+                try {
+                    partitionCount = Math.max(partitionCount, Integer.parseInt(name.substring(prefix.length())) + 1);
+                } catch (NumberFormatException ignored) {
+                    // not a partition log
+                }
+            }
+        }
+        return partitionCount;
+    }
+
     private Timer registerHdrTimer(MetricRegistry metricRegistry, final String metricName) {
         Timer timer;
         try {
@@ -307,7 +356,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                                     new Gauge<Long>() {
                                         @Override
                                         public Long getValue() {
-                                            return Math.max(0, getLogEndOffset() - 1 - committedOffset.get());
+                                            return getUncommittedEntries();
                                         }
                                     });
         } catch (IllegalArgumentException ignored) {
@@ -323,37 +372,53 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         metricRegistry.register(name(KafkaJournal.class, "size"), new Gauge<Long>() {
             @Override
             public Long getValue() {
-                return kafkaLog.size();
+                return size();
             }
         });
         metricRegistry.register(name(KafkaJournal.class, "logEndOffset"), new Gauge<Long>() {
             @Override
             public Long getValue() {
-                return kafkaLog.logEndOffset();
+                long logEndOffset = 0L;
+                for (JournalPartition partition : partitions) {
+                    logEndOffset += partition.log.logEndOffset();
+                }
+                return logEndOffset;
             }
         });
         metricRegistry.register(name(KafkaJournal.class, "numberOfSegments"), new Gauge<Integer>() {
             @Override
             public Integer getValue() {
-                return kafkaLog.numberOfSegments();
+                return numberOfSegments();
             }
         });
         metricRegistry.register(name(KafkaJournal.class, "unflushedMessages"), new Gauge<Long>() {
             @Override
             public Long getValue() {
-                return kafkaLog.unflushedMessages();
+                long unflushedMessages = 0L;
+                for (JournalPartition partition : partitions) {
+                    unflushedMessages += partition.log.unflushedMessages();
+                }
+                return unflushedMessages;
             }
         });
         metricRegistry.register(name(KafkaJournal.class, "recoveryPoint"), new Gauge<Long>() {
             @Override
             public Long getValue() {
-                return kafkaLog.recoveryPoint();
+                long recoveryPoint = 0L;
+                for (JournalPartition partition : partitions) {
+                    recoveryPoint += partition.log.recoveryPoint();
+                }
+                return recoveryPoint;
             }
         });
         metricRegistry.register(name(KafkaJournal.class, "lastFlushTime"), new Gauge<Long>() {
             @Override
             public Long getValue() {
-                return kafkaLog.lastFlushTime();
+                long lastFlushTime = Long.MAX_VALUE;
+                for (JournalPartition partition : partitions) {
+                    lastFlushTime = Math.min(lastFlushTime, partition.log.lastFlushTime());
+                }
+                return lastFlushTime;
             }
         });
         metricRegistry.register(GlobalMetricNames.JOURNAL_OLDEST_SEGMENT, new Gauge<Date>() {
@@ -384,12 +449,21 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
     /**
      * Writes the list of entries to the journal.
+     * <p>
+     * All entries are appended to the same partition, concurrent writers are spread over the partitions which are
+     * not currently being written to.
+     * </p>
      *
      * @param entries journal entries to be written
-     * @return the last position written to in the journal
+     * @return the last position written to in the journal, {@code -1} if there were no entries
      */
     @Override
     public long write(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            // an empty message set doesn't have a last offset, it would be mistaken for one of another partition
+            return -1L;
+        }
+        final JournalPartition partition = lockPartitionForWrite();
         try (Timer.Context ignored = writeTime.time()) {
             long payloadSize = 0L;
 
@@ -408,15 +482,33 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
             final ByteBufferMessageSet messageSet = new ByteBufferMessageSet(JavaConversions.asScalaBuffer(messages));
 
-            final Log.LogAppendInfo appendInfo = kafkaLog.append(messageSet, true);
+            final Log.LogAppendInfo appendInfo = partition.log.append(messageSet, true);
             long lastWriteOffset = appendInfo.lastOffset();
-            LOG.debug("Wrote {} messages to journal: {} bytes, log position {} to {}",
-                    entries.size(), payloadSize, appendInfo.firstOffset(), lastWriteOffset);
+            LOG.debug("Wrote {} messages to journal partition {}: {} bytes, log position {} to {}",
+                    entries.size(), partition.id, payloadSize, appendInfo.firstOffset(), lastWriteOffset);
             writtenMessages.mark(entries.size());
-            return lastWriteOffset;
+            return journalOffset(partition.id, lastWriteOffset);
+        } finally {
+            partition.writeLock.unlock();
         }
     }
 
+    private JournalPartition lockPartitionForWrite() {
+        final int partitionCount = partitions.size();
+        final int first = (nextWritePartition.getAndIncrement() & Integer.MAX_VALUE) % partitionCount;
+        for (int i = 0; i < partitionCount; i++) {
+            final JournalPartition partition = partitions.get((first + i) % partitionCount);
+            if (partition.writeLock.tryLock()) {
+                return partition;
+            }
+        }
+
+        // all partitions are busy, queue up on one of them
+        final JournalPartition partition = partitions.get(first);
+        partition.writeLock.lock();
+        return partition;
+    }
+
     /**
      * Writes a single message to the journal and returns the new write position
      *
@@ -430,12 +522,43 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         return write(Collections.singletonList(journalEntry));
     }
 
+    /**
+     * Reads the next entries from the first partition which has unread entries.
+     * <p>
+     * Readers of a partitioned journal should use {@link #readNext(int, long)} to read the partitions in parallel.
+     * </p>
+     */
     @Override
     public List<JournalReadEntry> read(long requestedMaximumCount) {
-        return read(nextReadOffset, requestedMaximumCount);
+        for (JournalPartition partition : partitions) {
+            final List<JournalReadEntry> entries = readNext(partition.id, requestedMaximumCount);
+            if (!entries.isEmpty()) {
+                return entries;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reads the next entries of the given partition, starting after the last entry read from it.
+     * <p>
+     * Each partition must only be read by a single thread at a time.
+     * </p>
+     *
+     * @param partition             the partition to read from
+     * @param requestedMaximumCount the maximum number of entries to read
+     * @return the entries read, their offsets contain the partition
+     */
+    public List<JournalReadEntry> readNext(int partition, long requestedMaximumCount) {
+        return read(partition, getNextReadOffset(partition), requestedMaximumCount);
     }
 
     public List<JournalReadEntry> read(long readOffset, long requestedMaximumCount) {
+        return read(0, readOffset, requestedMaximumCount);
+    }
+
+    public List<JournalReadEntry> read(int partitionId, long readOffset, long requestedMaximumCount) {
+        final JournalPartition partition = partitions.get(partitionId);
         // Always read at least one!
         final long maximumCount = Math.max(1, requestedMaximumCount);
         long maxOffset = readOffset + maximumCount;
@@ -445,7 +568,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             return messages;
         }
         try (Timer.Context ignored = readTime.time()) {
-            final long logStartOffset = getLogStartOffset();
+            final long logStartOffset = getLogStartOffset(partitionId);
 
             if (readOffset < logStartOffset) {
                 LOG.error(
@@ -459,7 +582,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                     maximumCount, readOffset, maxOffset);
 
             // TODO benchmark and make read-ahead strategy configurable for performance tuning
-            final MessageSet messageSet = kafkaLog.read(readOffset,
+            final MessageSet messageSet = partition.log.read(readOffset,
                     5 * 1024 * 1024,
                     Option.<Object>apply(maxOffset)).messageSet();
 
@@ -474,23 +597,26 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                 // always remember the last seen offset for debug purposes below
                 lastOffset = messageAndOffset.offset();
 
-                final byte[] payloadBytes = Utils.readBytes(messageAndOffset.message().payload());
+                // no copy, the payload is a slice of the buffer the message set has been read into
+                final ByteBuffer payload = messageAndOffset.message().payload();
                 if (LOG.isTraceEnabled()) {
                     final byte[] keyBytes = Utils.readBytes(messageAndOffset.message().key());
-                    LOG.trace("Read message {} contains {}", bytesToHex(keyBytes), bytesToHex(payloadBytes));
+                    LOG.trace("Read message {} contains {}", bytesToHex(keyBytes), bytesToHex(Utils.readBytes(payload)));
                 }
-                totalBytes += payloadBytes.length;
-                messages.add(new JournalReadEntry(payloadBytes, messageAndOffset.offset()));
+                totalBytes += payload.remaining();
+                messages.add(new JournalReadEntry(payload, journalOffset(partitionId, messageAndOffset.offset())));
                 // remember where to read from
-                nextReadOffset = messageAndOffset.nextOffset();
+                partition.nextReadOffset = messageAndOffset.nextOffset();
             }
             if (messages.isEmpty()) {
-                LOG.debug("No messages available to read for offset interval [{}, {}).", readOffset, maxOffset);
+                LOG.debug("No messages available to read for offset interval [{}, {}) of partition {}.",
+                        readOffset, maxOffset, partitionId);
             } else {
                 LOG.debug(
-                        "Read {} messages, total payload size {}, from journal, offset interval [{}, {}], requested read at {}",
+                        "Read {} messages, total payload size {}, from journal partition {}, offset interval [{}, {}], requested read at {}",
                         messages.size(),
                         totalBytes,
+                        partitionId,
                         firstOffset,
                         lastOffset,
                         readOffset);
@@ -521,11 +647,26 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     /**
      * Upon fully processing, and persistently storing, a batch of messages, the system should mark the message with the
      * highest offset as committed. A background job will write the last position to disk periodically.
+     * <p>
+     * The committed offsets are tracked for each partition separately.
+     * </p>
      *
-     * @param offset the offset of the latest committed message
+     * @param journalOffset the offset of the latest committed message
      */
     @Override
-    public void markJournalOffsetCommitted(long offset) {
+    public void markJournalOffsetCommitted(long journalOffset) {
+        if (journalOffset < 0) {
+            // message did not come from the journal
+            return;
+        }
+        final int partitionId = partitionOf(journalOffset);
+        if (partitionId >= partitions.size()) {
+            LOG.warn("Ignoring commit of offset {} for unknown journal partition {}", journalOffset, partitionId);
+            return;
+        }
+        final AtomicLong committedOffset = partitions.get(partitionId).committedOffset;
+        final long offset = logOffsetOf(journalOffset);
+
         long prev;
         // the caller will not care about offsets going backwards, so we need to make sure we don't backtrack
         int i = 0;
@@ -567,12 +708,78 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    /**
+     * Returns the journal offset of an entry, which contains the partition number in its upper bits.
+     *
+     * @param partition the partition of the entry
+     * @param logOffset the offset of the entry in the log of the partition
+     * @return the journal offset
+     */
+    public static long journalOffset(int partition, long logOffset) {
+        return ((long) partition << PARTITION_SHIFT) | logOffset;
+    }
+
+    public static int partitionOf(long journalOffset) {
+        return (int) (journalOffset >>> PARTITION_SHIFT);
+    }
+
+    public static long logOffsetOf(long journalOffset) {
+        return journalOffset & PARTITION_OFFSET_MASK;
+    }
+
+    /**
+     * Returns whether the entry has been written before the journal was opened. Such entries might have been read and
+     * processed already when the node stopped before their offsets were committed.
+     *
+     * @param journalOffset the offset of the entry in the journal
+     * @return {@code true} if the entry is read again after a restart
+     */
+    public boolean isFromPreviousRun(long journalOffset) {
+        if (journalOffset < 0) {
+            return false;
+        }
+        final int partition = partitionOf(journalOffset);
+        return partition < partitions.size() && logOffsetOf(journalOffset) < partitions.get(partition).endOffsetAtStartup;
+    }
+
+    public int getNumberOfPartitions() {
+        return partitions.size();
+    }
+
     public long getCommittedOffset() {
-        return committedOffset.get();
+        return getCommittedOffset(0);
+    }
+
+    public long getCommittedOffset(int partition) {
+        return partitions.get(partition).committedOffset.get();
     }
 
     public long getNextReadOffset() {
-        return nextReadOffset;
+        return getNextReadOffset(0);
+    }
+
+    public long getNextReadOffset(int partition) {
+        return partitions.get(partition).nextReadOffset;
+    }
+
+    /**
+     * Returns the number of journal entries which have not been committed yet, summed up over all partitions.
+     *
+     * @return number of uncommitted entries
+     */
+    public long getUncommittedEntries() {
+        long uncommittedEntries = 0L;
+        for (JournalPartition partition : partitions) {
+            final long lastOffset = partition.log.logEndOffset() - 1;
+            final long committedOffset = partition.committedOffset.get();
+            if (committedOffset == DEFAULT_COMMITTED_OFFSET) {
+                // nothing has been committed yet, everything in the log is uncommitted
+                uncommittedEntries += partition.log.size() == 0 ? 0 : lastOffset - getLogStartOffset(partition.id) + 1;
+            } else {
+                uncommittedEntries += Math.max(0, lastOffset - committedOffset);
+            }
+        }
+        return uncommittedEntries;
     }
 
     @Override
@@ -632,25 +839,38 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
     // default visibility for tests
     public Iterable<LogSegment> getSegments() {
-        return JavaConversions.asJavaIterable(kafkaLog.logSegments());
+        return Iterables.concat(Lists.transform(partitions, new Function<JournalPartition, Iterable<LogSegment>>() {
+            @Override
+            public Iterable<LogSegment> apply(JournalPartition partition) {
+                return JavaConversions.asJavaIterable(partition.log.logSegments());
+            }
+        }));
     }
 
     /**
-     * Returns the journal size in bytes, exluding index files.
+     * Returns the journal size in bytes of all partitions, exluding index files.
      *
      * @return journal size in bytes
      */
     public long size() {
-        return kafkaLog.size();
+        long size = 0L;
+        for (JournalPartition partition : partitions) {
+            size += partition.log.size();
+        }
+        return size;
     }
 
     /**
-     * Returns the number of segments this journal consists of.
+     * Returns the number of segments all partitions of this journal consist of.
      *
      * @return number of segments
      */
     public int numberOfSegments() {
-        return kafkaLog.numberOfSegments();
+        int numberOfSegments = 0;
+        for (JournalPartition partition : partitions) {
+            numberOfSegments += partition.log.numberOfSegments();
+        }
+        return numberOfSegments;
     }
 
     /**
@@ -664,25 +884,33 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
      * @return the offset of the last message which has been successfully processed.
      */
     public long getCommittedReadOffset() {
-        return committedOffset.get();
+        return getCommittedOffset(0);
     }
 
     /**
-     * Discards all data in the journal prior to the given offset.
+     * Discards all data in the first partition of the journal prior to the given offset.
      *
      * @param offset offset to truncate to, so that no offset in the journal is larger than this.
      */
     public void truncateTo(long offset) {
-        kafkaLog.truncateTo(offset);
+        truncateTo(0, offset);
+    }
+
+    public void truncateTo(int partition, long offset) {
+        partitions.get(partition).log.truncateTo(offset);
     }
 
     /**
-     * Returns the first valid offset in the entire journal.
+     * Returns the first valid offset in the first partition of the journal.
      *
      * @return first offset
      */
     public long getLogStartOffset() {
-        final Iterable<LogSegment> logSegments = JavaConversions.asJavaIterable(kafkaLog.logSegments());
+        return getLogStartOffset(0);
+    }
+
+    public long getLogStartOffset(int partition) {
+        final Iterable<LogSegment> logSegments = JavaConversions.asJavaIterable(partitions.get(partition).log.logSegments());
         final LogSegment segment = Iterables.getFirst(logSegments, null);
         if (segment == null) {
             return 0;
@@ -691,12 +919,16 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     }
 
     /**
-     * returns the offset for the next value to be inserted in the entire journal.
+     * returns the offset for the next value to be inserted in the first partition of the journal.
      *
      * @return the next offset value (last valid offset is this number - 1)
      */
     public long getLogEndOffset() {
-        return kafkaLog.logEndOffset();
+        return getLogEndOffset(0);
+    }
+
+    public long getLogEndOffset(int partition) {
+        return partitions.get(partition).log.logEndOffset();
     }
 
     /**
@@ -713,15 +945,64 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     }
 
 
+    private class JournalPartition {
+        private final int id;
+        private final Log log;
+        private final File committedReadOffsetFile;
+        private final AtomicLong committedOffset = new AtomicLong(DEFAULT_COMMITTED_OFFSET);
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final long endOffsetAtStartup;
+        private volatile long nextReadOffset = 0L;
+
+        private JournalPartition(int id, File journalDirectory) {
+            this.id = id;
+
+            // the first partition keeps the file name of the unpartitioned journal
+            committedReadOffsetFile = new File(journalDirectory,
+                    id == 0 ? COMMITTED_READ_OFFSET_FILENAME : COMMITTED_READ_OFFSET_FILENAME + "-" + id);
+            try {
+                if (!committedReadOffsetFile.createNewFile()) {
+                    final String line = Files.readFirstLine(committedReadOffsetFile, Charsets.UTF_8);
+                    // the file contains the last offset graylog2 has successfully processed.
+                    // thus the nextReadOffset is one beyond that number
+                    if (line != null) {
+                        committedOffset.set(Long.parseLong(line.trim()));
+                        nextReadOffset = committedOffset.get() + 1;
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Cannot access offset file: {}", e.getMessage());
+                Throwables.propagate(new AccessDeniedException(committedReadOffsetFile.getAbsolutePath(),
+                                                               null,
+                                                               e.getMessage()));
+            }
+
+            final TopicAndPartition topicAndPartition = new TopicAndPartition(TOPIC, id);
+            final Option<Log> messageLog = logManager.getLog(topicAndPartition);
+            if (messageLog.isEmpty()) {
+                log = logManager.createLog(topicAndPartition, logManager.defaultConfig());
+            } else {
+                log = messageLog.get();
+            }
+            endOffsetAtStartup = log.logEndOffset();
+        }
+    }
+
     public class OffsetFileFlusher implements Runnable {
         @Override
         public void run() {
+            for (JournalPartition partition : partitions) {
+                flush(partition.committedReadOffsetFile, partition.committedOffset.get());
+            }
+        }
+
+        private void flush(File committedReadOffsetFile, long committedOffset) {
             // Do not write the file if committedOffset has never been updated.
-            if (committedOffset.get() == DEFAULT_COMMITTED_OFFSET) {
+            if (committedOffset == DEFAULT_COMMITTED_OFFSET) {
                 return;
             }
             try (final FileOutputStream fos = new FileOutputStream(committedReadOffsetFile)) {
-                fos.write(String.valueOf(committedOffset.get()).getBytes(Charsets.UTF_8));
+                fos.write(String.valueOf(committedOffset).getBytes(Charsets.UTF_8));
                 // flush stream
                 fos.flush();
                 // actually sync to disk
@@ -755,14 +1036,16 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         public Integer call() throws Exception {
             loggerForCleaner.debug("Beginning log cleanup");
             int total = 0;
+            int purged = 0;
             final Timer.Context ctx = new Timer().time();
-            for (final Log kafkaLog : JavaConversions.asJavaIterable(logManager.allLogs())) {
-                if (kafkaLog.config().compact()) continue;
+            for (final JournalPartition partition : partitions) {
+                final Log kafkaLog = partition.log;
                 loggerForCleaner.debug("Garbage collecting {}", kafkaLog.name());
-                total += cleanupExpiredSegments(kafkaLog) +
-                        cleanupSegmentsToMaintainSize(kafkaLog) +
-                        cleanupSegmentsToRemoveCommitted(kafkaLog);
+                final int purgedSegments = cleanupExpiredSegments(kafkaLog) + cleanupSegmentsToMaintainSize(kafkaLog);
+                purged += purgedSegments;
+                total += purgedSegments + cleanupSegmentsToRemoveCommitted(kafkaLog, partition.committedOffset.get());
             }
+            KafkaJournal.this.purgedSegmentsInLastRetention.set(purged);
 
             loggerForCleaner.debug("Log cleanup completed. {} files deleted in {} seconds",
                     total,
@@ -773,7 +1056,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         private int cleanupExpiredSegments(final Log kafkaLog) {
             // don't run if nothing will be done
             if (kafkaLog.size() == 0 && kafkaLog.numberOfSegments() < 1) {
-                KafkaJournal.this.purgedSegmentsInLastRetention.set(0);
                 return 0;
             }
             int deletedSegments = kafkaLog.deleteOldSegments(new AbstractFunction1<LogSegment, Object>() {
@@ -790,7 +1072,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                     return shouldDelete;
                 }
             });
-            KafkaJournal.this.purgedSegmentsInLastRetention.set(deletedSegments);
             return deletedSegments;
         }
 
@@ -803,7 +1084,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                         KafkaJournal.NOTIFY_ON_UTILIZATION_PERCENTAGE);
             }
             if (retentionSize < 0 || currentSize < retentionSize) {
-                KafkaJournal.this.purgedSegmentsInLastRetention.set(0);
                 return 0;
             }
             final long[] diff = {currentSize - retentionSize};
@@ -824,11 +1104,10 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                     }
                 }
             });
-            KafkaJournal.this.purgedSegmentsInLastRetention.set(deletedSegments);
             return deletedSegments;
         }
 
-        private int cleanupSegmentsToRemoveCommitted(Log kafkaLog) {
+        private int cleanupSegmentsToRemoveCommitted(Log kafkaLog, final long committedOffset) {
             if (kafkaLog.numberOfSegments() <= 1) {
                 loggerForCleaner.debug(
                         "[cleanup-committed] The journal is already minimal at {} segment(s), not trying to remove more segments.",
@@ -838,7 +1117,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             // we need to iterate through all segments to the find the cutoff point for the committed offset.
             // unfortunately finding the largest offset contained in a segment is expensive (it involves reading the entire file)
             // so we have to get a global view.
-            final long committedOffset = KafkaJournal.this.committedOffset.get();
             final HashSet<LogSegment> logSegments = Sets.newHashSet(
                     JavaConversions.asJavaIterable(kafkaLog.logSegments(committedOffset, Long.MAX_VALUE))
             );
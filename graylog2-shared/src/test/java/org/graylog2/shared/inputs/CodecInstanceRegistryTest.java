@@ -0,0 +1,136 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.inputs;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.plugin.IOState;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.events.inputs.IOStateChangedEvent;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.journal.RawMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CodecInstanceRegistryTest {
+    private EventBus eventBus;
+    private CodecInstanceRegistry registry;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        final Codec.Factory<Codec> factory = mock(Codec.Factory.class);
+        when(factory.create(any(Configuration.class))).thenAnswer(new Answer<Codec>() {
+            @Override
+            public Codec answer(InvocationOnMock invocation) {
+                return mock(Codec.class);
+            }
+        });
+        final Map<String, Codec.Factory<? extends Codec>> factories =
+                ImmutableMap.<String, Codec.Factory<? extends Codec>>of("test", factory);
+
+        eventBus = new EventBus("test");
+        registry = new CodecInstanceRegistry(factories, eventBus);
+    }
+
+    @Test
+    public void testReusesCodecForSameInputAndConfig() {
+        final CodecInstanceRegistry.Cache cache = registry.newCache();
+        final Configuration config = new Configuration(Collections.<String, Object>singletonMap("foo", "bar"));
+
+        final Codec codec1 = cache.get("input1", rawMessage("test", config));
+        final Codec codec2 = cache.get("input1", rawMessage("test", config));
+
+        assertSame(codec1, codec2);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testReusesCodecForSerializedConfig() {
+        final CodecInstanceRegistry.Cache cache = registry.newCache();
+        final Configuration config = new Configuration(Collections.<String, Object>singletonMap("foo", "bar"));
+
+        final RawMessage raw1 = RawMessage.decode(rawMessage("test", config).encode(), 1L);
+        final RawMessage raw2 = RawMessage.decode(rawMessage("test", config).encode(), 2L);
+
+        assertSame(cache.get("input1", raw1), cache.get("input1", raw2));
+    }
+
+    @Test
+    public void testSeparatesInputsAndConfigs() {
+        final CodecInstanceRegistry.Cache cache = registry.newCache();
+        final Configuration config1 = new Configuration(Collections.<String, Object>singletonMap("foo", "bar"));
+        final Configuration config2 = new Configuration(Collections.<String, Object>singletonMap("foo", "baz"));
+
+        final Codec codec = cache.get("input1", rawMessage("test", config1));
+
+        assertNotSame(codec, cache.get("input2", rawMessage("test", config1)));
+        assertNotSame(codec, cache.get("input1", rawMessage("test", config2)));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testUnknownCodec() {
+        final CodecInstanceRegistry.Cache cache = registry.newCache();
+
+        assertNull(cache.get("input1", rawMessage("unknown", Configuration.EMPTY_CONFIGURATION)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInvalidatesCodecsOnInputRestart() {
+        final CodecInstanceRegistry.Cache cache1 = registry.newCache();
+        final CodecInstanceRegistry.Cache cache2 = registry.newCache();
+        final Configuration config = Configuration.EMPTY_CONFIGURATION;
+
+        final Codec codec = cache1.get("input1", rawMessage("test", config));
+        cache1.get("input2", rawMessage("test", config));
+        cache2.get("input1", rawMessage("test", config));
+
+        final MessageInput input = mock(MessageInput.class);
+        when(input.getId()).thenReturn("input1");
+        final IOState<MessageInput> state = new IOState<>(eventBus, input, IOState.Type.RUNNING);
+        eventBus.post(IOStateChangedEvent.create(IOState.Type.RUNNING, IOState.Type.STARTING, state));
+
+        assertEquals(1, cache1.size());
+        assertEquals(0, cache2.size());
+        assertNotSame(codec, cache1.get("input1", rawMessage("test", config)));
+    }
+
+    private static RawMessage rawMessage(String codecName, Configuration config) {
+        final RawMessage rawMessage = new RawMessage("test".getBytes(Charsets.UTF_8));
+        rawMessage.setCodecName(codecName);
+        rawMessage.setCodecConfig(config);
+        return rawMessage;
+    }
+}